@@ -36,8 +36,12 @@ import org.apache.usergrid.corepersistence.index.CoreIndexFig;
 import org.apache.usergrid.corepersistence.index.IndexLocationStrategyFactory;
 import org.apache.usergrid.corepersistence.index.IndexLocationStrategyFactoryImpl;
 import org.apache.usergrid.corepersistence.index.IndexProcessorFig;
+import org.apache.usergrid.corepersistence.index.IndexRepairQueue;
+import org.apache.usergrid.corepersistence.index.IndexRepairQueueImpl;
 import org.apache.usergrid.corepersistence.index.IndexService;
 import org.apache.usergrid.corepersistence.index.IndexServiceImpl;
+import org.apache.usergrid.corepersistence.index.IndexRebuildService;
+import org.apache.usergrid.corepersistence.index.IndexRebuildServiceImpl;
 import org.apache.usergrid.corepersistence.index.ReIndexService;
 import org.apache.usergrid.corepersistence.index.ReIndexServiceImpl;
 import org.apache.usergrid.corepersistence.migration.CoreMigration;
@@ -159,6 +163,8 @@ public class CoreModule extends AbstractModule {
 
         bind( IndexService.class ).to( IndexServiceImpl.class );
 
+        bind( IndexRepairQueue.class ).to( IndexRepairQueueImpl.class );
+
         //bind the event handlers
         bind( EventBuilder.class ).to( EventBuilderImpl.class );
         bind( ApplicationIndexBucketLocator.class );
@@ -169,6 +175,8 @@ public class CoreModule extends AbstractModule {
 
         bind( ReIndexService.class ).to( ReIndexServiceImpl.class );
 
+        bind( IndexRebuildService.class ).to( IndexRebuildServiceImpl.class );
+
         install( new FactoryModuleBuilder().implement( AggregationService.class, AggregationServiceImpl.class )
                                            .build( AggregationServiceFactory.class ) );
 
@@ -52,6 +52,7 @@ import org.apache.usergrid.persistence.CollectionRef;
 import org.apache.usergrid.persistence.ConnectedEntityRef;
 import org.apache.usergrid.persistence.ConnectionRef;
 import org.apache.usergrid.persistence.Entity;
+import org.apache.usergrid.persistence.EntityCreateResult;
 import org.apache.usergrid.persistence.EntityFactory;
 import org.apache.usergrid.persistence.EntityManager;
 import org.apache.usergrid.persistence.EntityRef;
@@ -71,8 +72,11 @@ import org.apache.usergrid.persistence.cassandra.ConnectionRefImpl;
 import org.apache.usergrid.persistence.cassandra.CounterUtils;
 import org.apache.usergrid.persistence.cassandra.util.TraceParticipant;
 import org.apache.usergrid.persistence.collection.EntityCollectionManager;
+import org.apache.usergrid.persistence.collection.EntityWriteResult;
 import org.apache.usergrid.persistence.collection.FieldSet;
 import org.apache.usergrid.persistence.collection.exception.WriteUniqueVerifyException;
+import org.apache.usergrid.persistence.collection.serialization.UniqueValue;
+import org.apache.usergrid.persistence.collection.serialization.UniqueValueSet;
 import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.entities.Application;
@@ -972,14 +976,25 @@ public class CpEntityManager implements EntityManager {
 
         String propertyName = Schema.getDefaultSchema().aliasProperty( collName );
 
-        Map<String, EntityRef> results = new HashMap<>();
+        List<Field> fields = new ArrayList<>( aliases.size() );
 
         for ( String alias : aliases ) {
+            fields.add( new StringField( propertyName, alias ) );
+        }
+
+        //read every alias at once, rather than one unique value per alias
+        final UniqueValueSet uniqueValues =
+            ecm.getUniqueValues( Inflector.getInstance().singularize( collName ), fields ).toBlocking().last();
+
+        Map<String, EntityRef> results = new HashMap<>();
+
+        for ( int i = 0; i < aliases.size(); i++ ) {
 
-            Iterable<EntityRef> refs = getEntityRefsForUniqueProperty( collName, propertyName, alias );
+            final UniqueValue uniqueValue = uniqueValues.getValue( fields.get( i ) );
 
-            for ( EntityRef ref : refs ) {
-                results.put( alias, ref );
+            if ( uniqueValue != null ) {
+                final Id id = uniqueValue.getEntityId();
+                results.put( aliases.get( i ), new SimpleEntityRef( id.getType(), id.getUuid() ) );
             }
         }
 
@@ -2642,6 +2657,202 @@ public class CpEntityManager implements EntityManager {
                                             UUID importId)
             throws Exception {
 
+        final PendingCreate<A> created = prepareCreate( entityType, entityClass, properties, importId );
+
+        if ( created == null ) {
+            return null;
+        }
+
+        A entity = created.entity;
+
+        //events are counted, not written
+        if ( created.cpEntity == null ) {
+            return entity;
+        }
+
+        org.apache.usergrid.persistence.model.entity.Entity cpEntity = created.cpEntity;
+
+        // prepare to write and index Core Persistence Entity into default scope
+
+        if ( logger.isTraceEnabled() ) {
+            logger.trace( "Writing entity {}:{} into app {}\n",
+                    entity.getType(),
+                    entity.getUuid(),
+                    applicationId,
+                    CpEntityMapUtils.toMap( cpEntity ));
+
+        }
+
+        try {
+
+            if(logger.isTraceEnabled()) {
+                logger.trace( "About to Write {}:{} version {}",
+                    cpEntity.getId().getType(), cpEntity.getId().getUuid(), cpEntity.getVersion() );
+            }
+
+            //this does the write so before adding to a collection everything already exists already.
+            cpEntity = ecm.write( cpEntity ).toBlocking().last();
+            entity.setSize(cpEntity.getSize());
+
+            if(logger.isTraceEnabled()) {
+                logger.trace( "Wrote {}:{} version {}",
+                    cpEntity.getId().getType(), cpEntity.getId().getUuid(), cpEntity.getVersion() );
+            }
+
+        }
+        catch ( WriteUniqueVerifyException wuve ) {
+            handleWriteUniqueVerifyException( entity, wuve );
+        }
+
+        // reflect changes in the legacy Entity
+        entity.setUuid( cpEntity.getId().getUuid() );
+        entity.setProperties( cpEntity );
+
+        // add to and index in collection of the application
+        if ( !TYPE_APPLICATION.equals( entity.getType() ) ) {
+
+            String collectionName = Schema.defaultCollectionName( entity.getType() );
+            CpRelationManager cpr = ( CpRelationManager ) getRelationManager( getApplication() );
+            cpr.addToCollection( collectionName, entity );
+
+            // Invoke counters
+            incrementEntityCollection( collectionName, created.timestamp );
+        }
+
+        //write to our types map
+        MapManager mm = getMapManagerForTypes();
+        mm.putString( entity.getUuid().toString(), entity.getType() );
+
+        return entity;
+    }
+
+
+    @Override
+    public List<EntityCreateResult> createAll( final List<Entity> entities ) throws Exception {
+
+        Timer.Context timeEntityCassCreation = entCreateBatchTimer.time();
+
+        final EntityCreateResult[] results = new EntityCreateResult[entities.size()];
+
+        //prepare every entity as batchCreate does, an entity we can't prepare fails alone
+        final List<PendingCreate<Entity>> pending = new ArrayList<>( entities.size() );
+        final List<Integer> positions = new ArrayList<>( entities.size() );
+
+        for ( int i = 0; i < entities.size(); i++ ) {
+            final Entity entity = entities.get( i );
+
+            try {
+                final PendingCreate<Entity> created =
+                    prepareCreate( entity.getType(), null, entity.getProperties(), entity.getUuid() );
+
+                //nothing to write, either nothing was created or it was an event
+                if ( created == null || created.cpEntity == null ) {
+                    results[i] = EntityCreateResult.success( created == null ? null : created.entity );
+                    continue;
+                }
+
+                pending.add( created );
+                positions.add( i );
+            }
+            catch ( Exception e ) {
+                results[i] = EntityCreateResult.failure( entity, e );
+            }
+        }
+
+        if ( pending.isEmpty() ) {
+            timeEntityCassCreation.stop();
+            return Arrays.asList( results );
+        }
+
+        //write them all in batches, then add the ones that were written to their collections
+        final List<EntityWriteResult> written =
+            ecm.write( Observable.from( pending ).map( created -> created.cpEntity ) ).toList().toBlocking().last();
+
+        final List<PendingCreate<Entity>> members = new ArrayList<>( written.size() );
+
+        for ( int i = 0; i < written.size(); i++ ) {
+            final PendingCreate<Entity> created = pending.get( i );
+            final EntityWriteResult result = written.get( i );
+            final int position = positions.get( i );
+
+            if ( !result.isSuccess() ) {
+                results[position] =
+                    EntityCreateResult.failure( created.entity, toCreateException( created.entity, result ) );
+                continue;
+            }
+
+            // reflect changes in the legacy Entity
+            created.cpEntity = result.getEntity();
+            created.entity.setUuid( created.cpEntity.getId().getUuid() );
+            created.entity.setProperties( created.cpEntity );
+
+            results[position] = EntityCreateResult.success( created.entity );
+
+            if ( !TYPE_APPLICATION.equals( created.entity.getType() ) ) {
+                members.add( created );
+            }
+        }
+
+        // add to and index in collections of the application
+        if ( !members.isEmpty() ) {
+            final List<org.apache.usergrid.persistence.model.entity.Entity> memberEntities =
+                new ArrayList<>( members.size() );
+
+            for ( final PendingCreate<Entity> created : members ) {
+                memberEntities.add( created.cpEntity );
+            }
+
+            CpRelationManager cpr = ( CpRelationManager ) getRelationManager( getApplication() );
+            cpr.addToDefaultCollections( memberEntities );
+
+            // Invoke counters
+            for ( final PendingCreate<Entity> created : members ) {
+                incrementEntityCollection( Schema.defaultCollectionName( created.entity.getType() ),
+                    created.timestamp );
+            }
+        }
+
+        //write to our types map
+        MapManager mm = getMapManagerForTypes();
+
+        for ( final EntityCreateResult result : results ) {
+            if ( result.isSuccess() && result.getEntity() != null && result.getEntity().getUuid() != null
+                && !Event.ENTITY_TYPE.equals( result.getEntity().getType() ) ) {
+                mm.putString( result.getEntity().getUuid().toString(), result.getEntity().getType() );
+            }
+        }
+
+        timeEntityCassCreation.stop();
+
+        return Arrays.asList( results );
+    }
+
+
+    /**
+     * Get the exception create would have thrown for an entity that could not be written
+     */
+    private Exception toCreateException( final Entity entity, final EntityWriteResult result ) {
+        final Exception error = result.getError().get();
+
+        if ( error instanceof WriteUniqueVerifyException ) {
+            return toDuplicateException( entity, ( WriteUniqueVerifyException ) error );
+        }
+
+        return error;
+    }
+
+
+    /**
+     * Build the legacy entity and the core persistence entity to write, as create does.  Events are counted here,
+     * since they're never written
+     *
+     * @return The entities to write, with no core persistence entity for events, or null if there is nothing to
+     * create
+     */
+    private <A extends Entity> PendingCreate<A> prepareCreate( String entityType, Class<A> entityClass,
+                                                               Map<String, Object> properties, UUID importId )
+            throws Exception {
+
         String eType = Schema.normalizeEntityType( entityType );
 
         Schema schema = Schema.getDefaultSchema();
@@ -2769,63 +2980,28 @@ public class CpEntityManager implements EntityManager {
 
             incrementEntityCollection( "events", timestamp );
 
-            return entity;
-        }
-
-        org.apache.usergrid.persistence.model.entity.Entity cpEntity = entityToCpEntity( entity, importId );
-
-        // prepare to write and index Core Persistence Entity into default scope
-
-        if ( logger.isTraceEnabled() ) {
-            logger.trace( "Writing entity {}:{} into app {}\n",
-                    entity.getType(),
-                    entity.getUuid(),
-                    applicationId,
-                    CpEntityMapUtils.toMap( cpEntity ));
-
+            return new PendingCreate<>( entity, null, timestamp );
         }
 
-        try {
-
-            if(logger.isTraceEnabled()) {
-                logger.trace( "About to Write {}:{} version {}",
-                    cpEntity.getId().getType(), cpEntity.getId().getUuid(), cpEntity.getVersion() );
-            }
-
-            //this does the write so before adding to a collection everything already exists already.
-            cpEntity = ecm.write( cpEntity ).toBlocking().last();
-            entity.setSize(cpEntity.getSize());
-
-            if(logger.isTraceEnabled()) {
-                logger.trace( "Wrote {}:{} version {}",
-                    cpEntity.getId().getType(), cpEntity.getId().getUuid(), cpEntity.getVersion() );
-            }
-
-        }
-        catch ( WriteUniqueVerifyException wuve ) {
-            handleWriteUniqueVerifyException( entity, wuve );
-        }
+        return new PendingCreate<>( entity, entityToCpEntity( entity, importId ), timestamp );
+    }
 
-        // reflect changes in the legacy Entity
-        entity.setUuid( cpEntity.getId().getUuid() );
-        entity.setProperties( cpEntity );
 
-        // add to and index in collection of the application
-        if ( !is_application ) {
+    /**
+     * An entity that is ready to be written
+     */
+    private static final class PendingCreate<A extends Entity> {
+        private final A entity;
+        private final long timestamp;
+        private org.apache.usergrid.persistence.model.entity.Entity cpEntity;
 
-            String collectionName = Schema.defaultCollectionName( eType );
-            CpRelationManager cpr = ( CpRelationManager ) getRelationManager( getApplication() );
-            cpr.addToCollection( collectionName, entity );
 
-            // Invoke counters
-            incrementEntityCollection( collectionName, timestamp );
+        private PendingCreate( final A entity, final org.apache.usergrid.persistence.model.entity.Entity cpEntity,
+                               final long timestamp ) {
+            this.entity = entity;
+            this.cpEntity = cpEntity;
+            this.timestamp = timestamp;
         }
-
-        //write to our types map
-        MapManager mm = getMapManagerForTypes();
-        mm.putString( itemId.toString(), entity.getType() );
-
-        return entity;
     }
 
 
@@ -2852,17 +3028,24 @@ public class CpEntityManager implements EntityManager {
     private void handleWriteUniqueVerifyException( Entity entity, WriteUniqueVerifyException wuve )
             throws DuplicateUniquePropertyExistsException {
 
+        throw toDuplicateException( entity, wuve );
+    }
+
+
+    private DuplicateUniquePropertyExistsException toDuplicateException( Entity entity,
+                                                                         WriteUniqueVerifyException wuve ) {
+
         // we may have multiple conflicts, but caller expects only one
         Map<String, Field> violiations = wuve.getVioliations();
 
         if ( violiations != null ) {
             Field conflict = violiations.get( violiations.keySet().iterator().next() );
 
-            throw new DuplicateUniquePropertyExistsException( entity.getType(), conflict.getName(),
+            return new DuplicateUniquePropertyExistsException( entity.getType(), conflict.getName(),
                     conflict.getValue() );
         }
         else {
-            throw new DuplicateUniquePropertyExistsException( entity.getType(), "Unknown property name",
+            return new DuplicateUniquePropertyExistsException( entity.getType(), "Unknown property name",
                     "Unknown property value" );
         }
     }
@@ -397,26 +397,33 @@ public class CpRelationManager implements RelationManager {
 
         GraphManager gm = managerCache.getGraphManager( applicationScope );
 
-        gm.writeEdge( edge ).doOnNext( writtenEdge -> {
-            if ( logger.isDebugEnabled() ) {
-                logger.debug( "Wrote edge {}", writtenEdge );
-            }
-        } ).filter( writtenEdge -> linkedCollection != null ).flatMap( writtenEdge -> {
+        final List<Edge> edges = new ArrayList<>( 2 );
+        edges.add( edge );
+
+        //reverse
+        final Edge reverseEdge;
+        if ( linkedCollection != null ) {
             final String pluralType = InflectionUtils.pluralize( cpHeadEntity.getId().getType() );
-            final Edge reverseEdge = createCollectionEdge( memberEntity.getId(), pluralType, cpHeadEntity.getId() );
-
-            //reverse
-            return gm.writeEdge( reverseEdge ).doOnNext( reverseEdgeWritten -> {
-                indexService.queueNewEdge( applicationScope, cpHeadEntity, reverseEdge );
-            } );
-        } ).doOnCompleted( () -> {
-            indexService.queueNewEdge( applicationScope, memberEntity, edge );
+            reverseEdge = createCollectionEdge( memberEntity.getId(), pluralType, cpHeadEntity.getId() );
+            edges.add( reverseEdge );
+        }
+        else {
+            reverseEdge = null;
+        }
+
+        //write both directions in a single batch
+        gm.writeEdges( Observable.from( edges ) ).doOnNext( writtenEdge -> {
             if ( logger.isDebugEnabled() ) {
-                logger.debug( "Added entity {}:{} to collection {}",
-                    itemRef.getUuid().toString(), itemRef.getType(), collectionName );
+                logger.debug( "Wrote edge {}", writtenEdge );
             }
         } ).toBlocking().lastOrDefault( null );
 
+        if ( reverseEdge != null ) {
+            indexService.queueNewEdge( applicationScope, cpHeadEntity, reverseEdge );
+        }
+
+        indexService.queueNewEdge( applicationScope, memberEntity, edge );
+
 
         // remove any duplicate edges (keeps the duplicate edge with same timestamp)
         removeDuplicateEdgesAsync(gm, edge);
@@ -432,6 +439,56 @@ public class CpRelationManager implements RelationManager {
     }
 
 
+    /**
+     * Add entities that were just written to the default collections of their types, as addToCollection does.  The
+     * edges of every entity are written in one batch, and the entities aren't loaded again since we have them as
+     * written.
+     */
+    void addToDefaultCollections( final List<org.apache.usergrid.persistence.model.entity.Entity> memberEntities ) {
+
+        final List<Edge> edges = new ArrayList<>( memberEntities.size() );
+        final List<Edge> reverseEdges = new ArrayList<>();
+
+        for ( final org.apache.usergrid.persistence.model.entity.Entity memberEntity : memberEntities ) {
+            final String collectionName = Schema.defaultCollectionName( memberEntity.getId().getType() );
+            final CollectionInfo collection =
+                getDefaultSchema().getCollection( headEntity.getType(), collectionName );
+
+            edges.add( createCollectionEdge( cpHeadEntity.getId(), collectionName, memberEntity.getId() ) );
+
+            if ( collection != null && collection.getLinkedCollection() != null ) {
+                final String pluralType = InflectionUtils.pluralize( cpHeadEntity.getId().getType() );
+                reverseEdges.add( createCollectionEdge( memberEntity.getId(), pluralType, cpHeadEntity.getId() ) );
+            }
+        }
+
+        GraphManager gm = managerCache.getGraphManager( applicationScope );
+
+        //write every edge in batches
+        gm.writeEdges( Observable.from( edges ).concatWith( Observable.from( reverseEdges ) ) )
+          .doOnNext( writtenEdge -> {
+              if ( logger.isDebugEnabled() ) {
+                  logger.debug( "Wrote edge {}", writtenEdge );
+              }
+          } ).toBlocking().lastOrDefault( null );
+
+        for ( final Edge reverseEdge : reverseEdges ) {
+            indexService.queueNewEdge( applicationScope, cpHeadEntity, reverseEdge );
+        }
+
+        for ( int i = 0; i < edges.size(); i++ ) {
+            indexService.queueNewEdge( applicationScope, memberEntities.get( i ), edges.get( i ) );
+
+            // remove any duplicate edges (keeps the duplicate edge with same timestamp)
+            removeDuplicateEdgesAsync( gm, edges.get( i ) );
+        }
+
+        if ( logger.isDebugEnabled() ) {
+            logger.debug( "Added {} entities to their collections", memberEntities.size() );
+        }
+    }
+
+
     @Override
     public Entity createItemInCollection( String collectionName, String itemType, Map<String, Object> properties )
         throws Exception {
@@ -469,15 +526,8 @@ public class CpRelationManager implements RelationManager {
 
         if ( itemEntity != null ) {
 
+            //writes the edges of both directions for linked collections
             addToCollection( collectionName, itemEntity );
-
-            if ( collection != null && collection.getLinkedCollection() != null ) {
-                Id itemEntityId = new SimpleId( itemEntity.getUuid(), itemEntity.getType() );
-                final Edge edge = createCollectionEdge( cpHeadEntity.getId(), collectionName, itemEntityId );
-
-                GraphManager gm = managerCache.getGraphManager( applicationScope );
-                gm.writeEdge( edge );
-            }
         }
 
         return itemEntity;
@@ -767,7 +817,7 @@ public class CpRelationManager implements RelationManager {
         final SearchByEdge search = createConnectionSearchByEdge( sourceId, connectionType, targetEntity.getId() );
 
         //delete all the edges and queue their processing
-        gm.loadEdgeVersions( search ).flatMap( returnedEdge -> gm.markEdge( returnedEdge ) )
+        gm.markEdges( gm.loadEdgeVersions( search ) )
           .doOnNext( returnedEdge -> indexService.queueDeleteEdge( applicationScope, returnedEdge ) ).toBlocking()
           .lastOrDefault( null );
     }
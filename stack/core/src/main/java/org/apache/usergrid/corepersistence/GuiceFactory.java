@@ -31,14 +31,22 @@ import com.google.inject.Module;
 import org.apache.usergrid.persistence.collection.service.impl.ServiceModule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.stereotype.Component;
 
 import org.apache.commons.lang.StringUtils;
 
+import org.apache.usergrid.corepersistence.index.IndexRebuildService;
+import org.apache.usergrid.corepersistence.index.IndexRepairQueue;
+import org.apache.usergrid.corepersistence.index.ReIndexWorker;
 import org.apache.usergrid.persistence.PersistenceModule;
+import org.apache.usergrid.persistence.cache.CacheInvalidationBroadcaster;
+import org.apache.usergrid.persistence.index.impl.IndexProducer;
 
 import com.google.common.base.Preconditions;
 import com.google.inject.Guice;
@@ -50,10 +58,12 @@ import me.prettyprint.cassandra.service.CassandraHostConfigurator;
 
 
 /**
- * Factory for configuring Guice then returning it
+ * Factory for configuring Guice then returning it.  Stops the Guice services that run their own threads when the
+ * context is closed.
  */
 @Component
-public class GuiceFactory implements FactoryBean<Injector> {
+public class GuiceFactory
+    implements FactoryBean<Injector>, DisposableBean, ApplicationListener<ContextRefreshedEvent> {
 
     private static final Logger logger = LoggerFactory.getLogger( GuiceFactory.class );
 
@@ -158,6 +168,51 @@ public class GuiceFactory implements FactoryBean<Injector> {
     }
 
 
+    /**
+     * Start the background services once every bean is wired, so they don't run while the context is being built
+     */
+    @Override
+    public void onApplicationEvent( final ContextRefreshedEvent event ) {
+        if ( injector == null ) {
+            return;
+        }
+
+        //run the re-index partitions this node claims
+        injector.getInstance( ReIndexWorker.class ).startPolling();
+
+        //remove the stale documents queries find
+        injector.getInstance( IndexRepairQueue.class ).start();
+
+        //drop locally cached values other nodes changed
+        injector.getInstance( CacheInvalidationBroadcaster.class ).start();
+    }
+
+
+    @Override
+    public void destroy() {
+        if ( injector == null ) {
+            return;
+        }
+
+        logger.info( "Stopping Core Persistence services" );
+
+        //stop re-indexing before the index producer, since partitions send to it
+        injector.getInstance( ReIndexWorker.class ).shutdown();
+
+        //an index rebuild can't continue on another node, so undo its dual writes
+        injector.getInstance( IndexRebuildService.class ).rollbackRunning();
+
+        //remove the stale documents still queued while the index producer can take them
+        injector.getInstance( IndexRepairQueue.class ).shutdown();
+
+        //send what is buffered to the index
+        injector.getInstance( IndexProducer.class ).shutdown();
+
+        //stop reading invalidations, and remove this node's queue
+        injector.getInstance( CacheInvalidationBroadcaster.class ).shutdown();
+    }
+
+
     @Override
     public Class<?> getObjectType() {
         return Injector.class;
@@ -62,6 +62,7 @@ import org.apache.usergrid.persistence.queue.QueueManager;
 import org.apache.usergrid.persistence.queue.QueueManagerFactory;
 import org.apache.usergrid.persistence.queue.QueueMessage;
 import org.apache.usergrid.persistence.queue.QueueScope;
+import org.apache.usergrid.persistence.queue.QueueSendException;
 import org.apache.usergrid.persistence.queue.impl.QueueScopeImpl;
 
 import com.codahale.metrics.Counter;
@@ -216,12 +217,22 @@ public class AsyncEventServiceImpl implements AsyncEventService {
         }
     }
 
+    /**
+     * Queue the operations.  Unlike {@link #offer(Serializable)} this blocks until SQS accepted every operation, so
+     * it must not be called where the caller can't wait out the send retries.
+     *
+     * @throws RuntimeException if some operations could not be queued, caused by a {@link QueueSendException}
+     * with the operations that were not queued.  The others were queued, so only those should be offered again.
+     */
     private void offerBatch(final List operations){
         final Timer.Context timer = this.writeTimer.time();
 
         try {
             //signal to SQS
             this.queue.sendMessages(operations);
+        } catch (QueueSendException e) {
+            throw new RuntimeException("Unable to queue " + e.getFailedBodies().size() + " of "
+                + operations.size() + " messages", e);
         } catch (IOException e) {
             throw new RuntimeException("Unable to queue message", e);
         } finally {
@@ -67,4 +67,21 @@ public interface CoreIndexFig extends GuicyFig {
     @Default( "0" )
     @Key( "elasticsearch.index_bucket_offset" )
     int getBucketOffset();
+
+
+
+    /**
+     * The most candidates a search fetches for each entity it returns, when candidates on the edge are often found to
+     * be stale.  Set to 1 to never fetch more than the limit
+     */
+    @Default( "3" )
+    @Key( "usergrid.query.overfetch_max_factor" )
+    double getOverfetchMaxFactor();
+
+    /**
+     * The number of edges to track stale candidate ratios for
+     */
+    @Default( "10000" )
+    @Key( "usergrid.query.overfetch_edge_count" )
+    int getOverfetchEdgeCount();
 }
@@ -46,6 +46,26 @@ public interface IndexProcessorFig extends GuicyFig {
 
     String REINDEX_CONCURRENCY_FACTOR = "elasticsearch.reindex.concurrency.factor";
 
+    String REINDEX_LEASE_SECONDS = "elasticsearch.reindex.lease_seconds";
+
+    String REINDEX_POLL_INTERVAL = "elasticsearch.reindex.poll_interval";
+
+    String REINDEX_RATE_LIMIT = "elasticsearch.reindex.rate_limit";
+
+    String REBUILD_ALIAS_WAIT = "elasticsearch.rebuild.alias_wait";
+
+    String REBUILD_MIN_COUNT_RATIO = "elasticsearch.rebuild.min_count_ratio";
+
+    String REBUILD_VERIFY_TIMEOUT = "elasticsearch.rebuild.verify_timeout";
+
+    String REBUILD_REINDEX_TIMEOUT = "elasticsearch.rebuild.reindex_timeout";
+
+    String REBUILD_DELETE_RETIRED = "elasticsearch.rebuild.delete_retired";
+
+    String REPAIR_QUEUE_SIZE = "elasticsearch.repair.queue_size";
+
+    String REPAIR_BATCH_SIZE = "elasticsearch.repair.batch_size";
+
 
     /**
      * Set the amount of time to wait when Elasticsearch rejects a requests before
@@ -95,12 +115,90 @@ public interface IndexProcessorFig extends GuicyFig {
     int getReindexBufferSize();
 
     /**
-     * The number of parallel buffers during re-index that can be processed
+     * The number of re-index partitions a node processes in parallel
      */
     @Default("10")
     @Key(REINDEX_CONCURRENCY_FACTOR)
     int getReindexConcurrencyFactor();
 
+    /**
+     * How long a node holds the lease on a re-index partition without checkpointing it before another node can
+     * claim the partition. (in seconds)
+     */
+    @Default("60")
+    @Key(REINDEX_LEASE_SECONDS)
+    int getReindexLeaseSeconds();
+
+    /**
+     * How often a node looks for unclaimed re-index partitions, 0 for a node that shouldn't re-index.
+     * (in milliseconds)
+     */
+    @Default("10000")
+    @Key(REINDEX_POLL_INTERVAL)
+    long getReindexPollInterval();
+
+    /**
+     * The most entities per second sent to be re-indexed across all nodes, 0 for no limit
+     */
+    @Default("0")
+    @Key(REINDEX_RATE_LIMIT)
+    int getReindexRateLimit();
+
+    /**
+     * How long an index rebuild waits after adding the new index to the write aliases before re-indexing, so every
+     * node has reloaded its cached aliases and writes to both indexes.  Longer than the alias cache refresh.
+     * (in milliseconds)
+     */
+    @Default("330000")
+    @Key(REBUILD_ALIAS_WAIT)
+    long getRebuildAliasWait();
+
+    /**
+     * The least fraction of an application's documents in its current index that must be in the rebuilt index
+     * before reads are swapped to it.  The current index can hold stale documents the rebuilt one doesn't.
+     */
+    @Default("0.99")
+    @Key(REBUILD_MIN_COUNT_RATIO)
+    double getRebuildMinCountRatio();
+
+    /**
+     * How long an index rebuild waits for the document counts to match before failing, without swapping.
+     * (in milliseconds)
+     */
+    @Default("1800000")
+    @Key(REBUILD_VERIFY_TIMEOUT)
+    long getRebuildVerifyTimeout();
+
+    /**
+     * How long an index rebuild waits for each of its re-index jobs to complete before failing, without swapping.
+     * (in milliseconds)
+     */
+    @Default("86400000")
+    @Key(REBUILD_REINDEX_TIMEOUT)
+    long getRebuildReIndexTimeout();
+
+    /**
+     * Delete the previous indexes once no application's aliases use them after a rebuild
+     */
+    @Default("false")
+    @Key(REBUILD_DELETE_RETIRED)
+    boolean isRebuildDeleteRetired();
+
+    /**
+     * The number of stale documents found by queries that can wait to be removed from the index.  Beyond this they
+     * are left for a later query to find again
+     */
+    @Default("10000")
+    @Key(REPAIR_QUEUE_SIZE)
+    int getRepairQueueSize();
+
+    /**
+     * The most stale documents removed in a single batch
+     */
+    @Default("500")
+    @Key(REPAIR_BATCH_SIZE)
+    int getRepairBatchSize();
+
     /**
      * Flag to resolve the LOCAL queue implementation service synchronously.
      */
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.corepersistence.index;
+
+
+import java.util.UUID;
+
+import com.google.common.base.Optional;
+
+
+/**
+ * Rebuilds the index of applications into a new index, with different shards or mappings, while the current index
+ * keeps serving reads.  New documents are written to both indexes, the new index is filled by a re-index, and once it
+ * holds as many documents as the current one the read alias is swapped to it.
+ */
+public interface IndexRebuildService {
+
+    /**
+     * Start rebuilding the index.  The progress is kept in the StatusService under the returned job id, with the
+     * application id, or the management application id when every application is rebuilt.
+     *
+     * @param applicationId    The application to rebuild, absent for every application
+     * @param indexName        The name of the index to create
+     * @param shards           The number of shards of the new index
+     * @param replicas         The number of replicas of the new index
+     * @param writeConsistency The write consistency of the new index
+     * @return The job id
+     */
+    UUID rebuild( final Optional<UUID> applicationId, final String indexName, final int shards, final int replicas,
+                  final String writeConsistency );
+
+
+    /**
+     * Roll back the rebuilds running on this node that haven't swapped yet, called when the node shuts down
+     */
+    void rollbackRunning();
+
+
+    /**
+     * The phases of a rebuild, in order
+     */
+    enum Phase {
+        CREATING, DUAL_WRITING, BACKFILLING, CATCHING_UP, VERIFYING, SWAPPING, RETIRING
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.corepersistence.index;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.corepersistence.rx.impl.AllApplicationsObservable;
+import org.apache.usergrid.corepersistence.service.StatusService;
+import org.apache.usergrid.corepersistence.util.CpNamingUtils;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.index.EntityIndex;
+import org.apache.usergrid.persistence.index.EntityIndexFactory;
+import org.apache.usergrid.persistence.index.IndexFig;
+import org.apache.usergrid.persistence.model.util.UUIDGenerator;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+
+/**
+ * Runs each index rebuild on its own thread, through the phases of {@link IndexRebuildService.Phase}.  A rebuild
+ * that fails before swapping, or is still running when this node shuts down, is rolled back by removing the new index
+ * from the write alias.  Reads stay on the current index, and the new index is left for a later rebuild to reuse.
+ * The phase and index name are kept in the job status, should a node die without rolling back.
+ */
+@Singleton
+public class IndexRebuildServiceImpl implements IndexRebuildService {
+
+    private static final Logger logger = LoggerFactory.getLogger( IndexRebuildServiceImpl.class );
+
+    /**
+     * How often the re-index status and document counts are checked
+     */
+    private static final long POLL_INTERVAL = 10000;
+
+    private final EntityIndexFactory entityIndexFactory;
+    private final IndexLocationStrategyFactory indexLocationStrategyFactory;
+    private final AllApplicationsObservable allApplicationsObservable;
+    private final ReIndexService reIndexService;
+    private final StatusService statusService;
+    private final IndexProcessorFig indexProcessorFig;
+    private final IndexFig indexFig;
+
+    /**
+     * Rebuilds running on this node, rolled back if it shuts down before they complete
+     */
+    private final Set<Rebuild> running = ConcurrentHashMap.newKeySet();
+
+
+    @Inject
+    public IndexRebuildServiceImpl( final EntityIndexFactory entityIndexFactory,
+                                    final IndexLocationStrategyFactory indexLocationStrategyFactory,
+                                    final AllApplicationsObservable allApplicationsObservable,
+                                    final ReIndexService reIndexService, final StatusService statusService,
+                                    final IndexProcessorFig indexProcessorFig, final IndexFig indexFig ) {
+        this.entityIndexFactory = entityIndexFactory;
+        this.indexLocationStrategyFactory = indexLocationStrategyFactory;
+        this.allApplicationsObservable = allApplicationsObservable;
+        this.reIndexService = reIndexService;
+        this.statusService = statusService;
+        this.indexProcessorFig = indexProcessorFig;
+        this.indexFig = indexFig;
+    }
+
+
+    @Override
+    public UUID rebuild( final Optional<UUID> applicationId, final String indexName, final int shards,
+                         final int replicas, final String writeConsistency ) {
+
+        Preconditions.checkNotNull( indexName, "indexName is required" );
+        Preconditions.checkArgument( shards > 0, "shards must be greater than 0" );
+
+        final UUID jobId = UUIDGenerator.newTimeUUID();
+
+        final Rebuild rebuild = new Rebuild( jobId, applicationId, indexName, shards, replicas,
+            writeConsistency == null ? indexFig.getWriteConsistencyLevel() : writeConsistency );
+
+        rebuild.setStatus( StatusService.Status.STARTED );
+
+        running.add( rebuild );
+
+        final Thread thread = new Thread( rebuild::run, "IndexRebuild-" + jobId );
+        thread.setDaemon( true );
+        thread.start();
+
+        return jobId;
+    }
+
+
+    @Override
+    public void rollbackRunning() {
+        for ( final Rebuild rebuild : running ) {
+            rebuild.rollback( "Node shut down during the rebuild" );
+        }
+    }
+
+
+    private EntityIndex getEntityIndex( final ApplicationScope applicationScope ) {
+        return entityIndexFactory
+            .createEntityIndex( indexLocationStrategyFactory.getIndexLocationStrategy( applicationScope ) );
+    }
+
+
+    /**
+     * The state of a single rebuild
+     */
+    private final class Rebuild {
+
+        private final UUID jobId;
+        private final Optional<UUID> applicationId;
+        private final UUID statusApplicationId;
+        private final String indexName;
+        private final int shards;
+        private final int replicas;
+        private final String writeConsistency;
+
+        private final Map<String, Object> data = Collections.synchronizedMap( new LinkedHashMap<>() );
+        private final Map<String, Object> counts = Collections.synchronizedMap( new LinkedHashMap<>() );
+
+        /**
+         * The applications whose write alias includes the new index
+         */
+        private final List<ApplicationScope> dualWriting = new ArrayList<>();
+
+        /**
+         * Set once the aliases are swapped, after which there is nothing to roll back.  Changed while holding this
+         */
+        private volatile boolean swapped;
+
+        /**
+         * Set once the rebuild is rolled back, which stops its thread.  Changed while holding this
+         */
+        private volatile boolean rolledBack;
+
+
+        private Rebuild( final UUID jobId, final Optional<UUID> applicationId, final String indexName,
+                         final int shards, final int replicas, final String writeConsistency ) {
+            this.jobId = jobId;
+            this.applicationId = applicationId;
+            this.statusApplicationId = applicationId.or( CpNamingUtils.MANAGEMENT_APPLICATION_ID );
+            this.indexName = indexName;
+            this.shards = shards;
+            this.replicas = replicas;
+            this.writeConsistency = writeConsistency;
+
+            data.put( "indexName", indexName );
+            data.put( "counts", counts );
+        }
+
+
+        private void run() {
+            try {
+                execute();
+            }
+            catch ( Throwable t ) {
+                logger.error( "Unable to rebuild index {} for job {}", indexName, jobId, t );
+
+                rollback( String.valueOf( t.getMessage() ) );
+            }
+            finally {
+                running.remove( this );
+            }
+        }
+
+
+        private void execute() throws InterruptedException {
+            final List<ApplicationScope> applications = getApplications();
+
+            //anything written from here on may have missed the new index on a node with stale aliases
+            final long dualWriteStart = System.currentTimeMillis();
+
+            setPhase( Phase.CREATING );
+
+            for ( final ApplicationScope applicationScope : applications ) {
+                //held while adding so a rollback sees every alias that was added
+                synchronized ( this ) {
+                    checkRunning();
+
+                    dualWriting.add( applicationScope );
+
+                    getEntityIndex( applicationScope ).addRebuildIndex( indexName, shards, replicas,
+                        writeConsistency );
+                }
+            }
+
+            setPhase( Phase.DUAL_WRITING );
+
+            Thread.sleep( indexProcessorFig.getRebuildAliasWait() );
+
+            setPhase( Phase.BACKFILLING );
+
+            reIndex( Optional.absent() );
+
+            setPhase( Phase.CATCHING_UP );
+
+            reIndex( Optional.of( dualWriteStart ) );
+
+            setPhase( Phase.VERIFYING );
+
+            for ( final ApplicationScope applicationScope : applications ) {
+                if ( !verify( applicationScope ) ) {
+                    rollback( "Index " + indexName + " is missing documents of application "
+                        + applicationScope.getApplication().getUuid() + ", reads were not swapped" );
+                    return;
+                }
+            }
+
+            final Set<String> previousIndexes = new LinkedHashSet<>();
+
+            //a rollback must not remove the write alias of applications that already swapped
+            synchronized ( this ) {
+                setPhase( Phase.SWAPPING );
+
+                for ( final ApplicationScope applicationScope : applications ) {
+                    Collections.addAll( previousIndexes, getEntityIndex( applicationScope ).swapIndex( indexName ) );
+                }
+
+                swapped = true;
+            }
+
+            data.put( "previousIndexes", new ArrayList<>( previousIndexes ) );
+
+            if ( indexProcessorFig.isRebuildDeleteRetired() && !applications.isEmpty() ) {
+                setPhase( Phase.RETIRING );
+
+                final EntityIndex entityIndex = getEntityIndex( applications.get( 0 ) );
+                final List<String> retired = new ArrayList<>();
+
+                for ( final String previousIndex : previousIndexes ) {
+                    if ( entityIndex.retireIndex( previousIndex ) ) {
+                        retired.add( previousIndex );
+                    }
+                }
+
+                data.put( "retiredIndexes", retired );
+            }
+
+            logger.info( "Rebuilt index {} for {} applications", indexName, applications.size() );
+
+            setStatus( StatusService.Status.COMPLETE );
+        }
+
+
+        /**
+         * Stop writing to the new index and fail the rebuild, unless it already swapped
+         */
+        private synchronized void rollback( final String error ) {
+            if ( swapped || rolledBack ) {
+                return;
+            }
+
+            rolledBack = true;
+
+            logger.warn( "Rolling back index rebuild {} of index {}: {}", jobId, indexName, error );
+
+            data.put( "error", error );
+
+            for ( final ApplicationScope applicationScope : dualWriting ) {
+                try {
+                    getEntityIndex( applicationScope ).removeRebuildIndex( indexName );
+                }
+                catch ( Exception e ) {
+                    logger.error( "Unable to remove index {} from the write alias of application {}", indexName,
+                        applicationScope.getApplication().getUuid(), e );
+                }
+            }
+
+            data.put( "rolledBack", true );
+            setStatus( StatusService.Status.FAILED );
+        }
+
+
+        private List<ApplicationScope> getApplications() {
+            if ( applicationId.isPresent() ) {
+                return Collections.singletonList( CpNamingUtils.getApplicationScope( applicationId.get() ) );
+            }
+
+            return allApplicationsObservable.getData().toList().toBlocking().last();
+        }
+
+
+        /**
+         * Re-index the applications, which writes to both indexes, and wait for it to complete
+         */
+        private void reIndex( final Optional<Long> updatedSince ) throws InterruptedException {
+            final ReIndexRequestBuilder request = reIndexService.getBuilder();
+
+            if ( applicationId.isPresent() ) {
+                request.withApplicationId( applicationId.get() );
+            }
+
+            if ( updatedSince.isPresent() ) {
+                request.withStartTimestamp( updatedSince.get() );
+            }
+
+            ReIndexService.ReIndexStatus status = reIndexService.rebuildIndex( request );
+
+            final String reIndexJobId = status.getJobId();
+            final long timeout = System.currentTimeMillis() + indexProcessorFig.getRebuildReIndexTimeout();
+
+            data.put( "reIndexJobId", reIndexJobId );
+
+            while ( true ) {
+                status = reIndexService.getStatus( reIndexJobId );
+
+                data.put( "processed", status.getNumberProcessed() );
+
+                if ( status.getStatus() == ReIndexService.Status.COMPLETE ) {
+                    return;
+                }
+
+                if ( status.getStatus() == ReIndexService.Status.UNKNOWN ) {
+                    throw new IllegalStateException( "Re-index job " + reIndexJobId + " was lost" );
+                }
+
+                //planning failed, or no node is running the job's partitions
+                if ( System.currentTimeMillis() >= timeout ) {
+                    throw new IllegalStateException(
+                        "Re-index job " + reIndexJobId + " did not complete in time, it is " + status.getStatus() );
+                }
+
+                checkRunning();
+
+                setStatus( StatusService.Status.INPROGRESS );
+
+                Thread.sleep( POLL_INTERVAL );
+            }
+        }
+
+
+        /**
+         * Wait for the new index to hold the documents of the application in its current indexes.  Re-indexed
+         * documents are still queued when the re-index completes.
+         *
+         * @return false if it didn't before the verify timeout
+         */
+        private boolean verify( final ApplicationScope applicationScope ) throws InterruptedException {
+            final EntityIndex entityIndex = getEntityIndex( applicationScope );
+            final long timeout = System.currentTimeMillis() + indexProcessorFig.getRebuildVerifyTimeout();
+
+            while ( true ) {
+                long current = 0;
+
+                for ( final String index : entityIndex.getIndexes( EntityIndex.AliasType.Read ) ) {
+                    if ( !index.equals( indexName ) ) {
+                        current += entityIndex.getDocumentCount( index );
+                    }
+                }
+
+                final long rebuilt = entityIndex.getDocumentCount( indexName );
+
+                final Map<String, Long> applicationCounts = new LinkedHashMap<>();
+                applicationCounts.put( "current", current );
+                applicationCounts.put( "rebuilt", rebuilt );
+
+                counts.put( applicationScope.getApplication().getUuid().toString(), applicationCounts );
+
+                if ( rebuilt >= current * indexProcessorFig.getRebuildMinCountRatio() ) {
+                    return true;
+                }
+
+                if ( System.currentTimeMillis() >= timeout ) {
+                    return false;
+                }
+
+                checkRunning();
+
+                setStatus( StatusService.Status.INPROGRESS );
+
+                Thread.sleep( POLL_INTERVAL );
+            }
+        }
+
+
+        private void setPhase( final Phase phase ) {
+            checkRunning();
+
+            logger.info( "Index rebuild {} of index {} is {}", jobId, indexName, phase );
+
+            data.put( "phase", phase.name() );
+            setStatus( StatusService.Status.INPROGRESS );
+        }
+
+
+        /**
+         * Stop the rebuild thread once the rebuild was rolled back from elsewhere
+         */
+        private void checkRunning() {
+            if ( rolledBack ) {
+                throw new IllegalStateException( "Index rebuild " + jobId + " was rolled back" );
+            }
+        }
+
+
+        private void setStatus( final StatusService.Status status ) {
+            final Map<String, Object> snapshot;
+
+            synchronized ( data ) {
+                snapshot = new LinkedHashMap<>( data );
+            }
+
+            try {
+                statusService.setStatus( statusApplicationId, jobId, status, snapshot ).toBlocking()
+                             .lastOrDefault( null );
+            }
+            catch ( Exception e ) {
+                //the rebuild carries on, the next status replaces this one
+                logger.error( "Unable to set the status of index rebuild {}", jobId, e );
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.corepersistence.index;
+
+
+import java.util.UUID;
+
+import org.apache.usergrid.persistence.index.EntityIndex;
+import org.apache.usergrid.persistence.index.SearchEdge;
+import org.apache.usergrid.persistence.model.entity.Id;
+
+
+/**
+ * Removes stale documents found while reading search results, in the background so queries don't wait on
+ * Elasticsearch
+ */
+public interface IndexRepairQueue {
+
+    /**
+     * Queue removal of the document for the entity version on the edge.  Requests for a document that is already
+     * queued are coalesced, and requests are dropped when the queue is full since the next query to find the document
+     * will queue it again
+     *
+     * @param entityIndex The index holding the document
+     * @param searchEdge The edge the document was found on
+     * @param entityId The id of the entity
+     * @param version The stale version
+     */
+    void deindex( final EntityIndex entityIndex, final SearchEdge searchEdge, final Id entityId, final UUID version );
+
+
+    /**
+     * Start removing queued documents
+     */
+    void start();
+
+
+    /**
+     * Stop the background removal and remove what is still queued.  Requests made after this are dropped
+     */
+    void shutdown();
+}
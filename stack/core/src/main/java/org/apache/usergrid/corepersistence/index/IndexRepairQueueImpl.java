@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.corepersistence.index;
+
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.index.EntityIndex;
+import org.apache.usergrid.persistence.index.EntityIndexBatch;
+import org.apache.usergrid.persistence.index.SearchEdge;
+import org.apache.usergrid.persistence.index.impl.IndexProducer;
+import org.apache.usergrid.persistence.model.entity.Id;
+
+import com.codahale.metrics.Meter;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+
+/**
+ * A bounded queue of stale documents, drained in batches by a single daemon thread.  The thread is started and stopped
+ * with the application context, and what is still queued when it stops is removed before the index producer shuts down.
+ */
+@Singleton
+public class IndexRepairQueueImpl implements IndexRepairQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger( IndexRepairQueueImpl.class );
+
+    /**
+     * How long the worker waits for a repair before checking if it was stopped
+     */
+    private static final long POLL_MILLIS = 1000;
+
+    /**
+     * How long shutdown waits for the worker to finish its current batch
+     */
+    private static final long STOP_WAIT_MILLIS = 30000;
+
+    private final IndexProducer indexProducer;
+    private final int batchSize;
+
+    /**
+     * Documents waiting to be removed, in order
+     */
+    private final BlockingQueue<Repair> queue;
+
+    /**
+     * Documents queued or being removed, and the index they are in
+     */
+    private final Map<Repair, EntityIndex> pending = new ConcurrentHashMap<>();
+
+    private final Meter queuedMeter;
+    private final Meter coalescedMeter;
+    private final Meter droppedMeter;
+
+    private Thread worker;
+    private volatile boolean stopped;
+
+
+    @Inject
+    public IndexRepairQueueImpl( final IndexProducer indexProducer, final IndexProcessorFig indexProcessorFig,
+                                 final MetricsFactory metricsFactory ) {
+        this.indexProducer = indexProducer;
+        this.batchSize = indexProcessorFig.getRepairBatchSize();
+        this.queue = new LinkedBlockingQueue<>( indexProcessorFig.getRepairQueueSize() );
+
+        this.queuedMeter = metricsFactory.getMeter( IndexRepairQueueImpl.class, "index.repair.queued" );
+        this.coalescedMeter = metricsFactory.getMeter( IndexRepairQueueImpl.class, "index.repair.coalesced" );
+        this.droppedMeter = metricsFactory.getMeter( IndexRepairQueueImpl.class, "index.repair.dropped" );
+    }
+
+
+    @Override
+    public synchronized void start() {
+        if ( worker != null || stopped ) {
+            return;
+        }
+
+        worker = new Thread( this::drain, "IndexRepair-worker" );
+        worker.setDaemon( true );
+        worker.start();
+    }
+
+
+    @Override
+    public synchronized void shutdown() {
+        stopped = true;
+
+        if ( worker != null ) {
+            try {
+                worker.join( STOP_WAIT_MILLIS );
+            }
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+
+            if ( worker.isAlive() ) {
+                logger.warn( "Index repair worker did not stop within {} ms, interrupting it", STOP_WAIT_MILLIS );
+                worker.interrupt();
+                return;
+            }
+        }
+
+        //the worker is done, remove what it left behind
+        final List<Repair> repairs = new ArrayList<>( batchSize );
+
+        while ( queue.drainTo( repairs, batchSize ) > 0 ) {
+            deindexQuietly( repairs );
+        }
+    }
+
+
+    @Override
+    public void deindex( final EntityIndex entityIndex, final SearchEdge searchEdge, final Id entityId,
+                         final UUID version ) {
+
+        final Repair repair = new Repair( searchEdge, entityId, version );
+
+        if ( stopped ) {
+            droppedMeter.mark();
+            return;
+        }
+
+        if ( pending.putIfAbsent( repair, entityIndex ) != null ) {
+            coalescedMeter.mark();
+            return;
+        }
+
+        if ( !queue.offer( repair ) ) {
+            pending.remove( repair );
+            droppedMeter.mark();
+
+            if ( logger.isDebugEnabled() ) {
+                logger.debug( "Repair queue is full, dropping deindex of entityId {} and version {} on edge {}",
+                    entityId, version, searchEdge );
+            }
+            return;
+        }
+
+        queuedMeter.mark();
+    }
+
+
+    /**
+     * Remove queued documents until stopped or interrupted
+     */
+    private void drain() {
+        final List<Repair> repairs = new ArrayList<>( batchSize );
+
+        while ( !stopped && !Thread.currentThread().isInterrupted() ) {
+            try {
+                final Repair repair = queue.poll( POLL_MILLIS, TimeUnit.MILLISECONDS );
+
+                if ( repair == null ) {
+                    continue;
+                }
+
+                repairs.add( repair );
+                queue.drainTo( repairs, batchSize - 1 );
+
+                deindexQuietly( repairs );
+            }
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    /**
+     * Remove the documents, and forget them whether or not that worked
+     */
+    private void deindexQuietly( final List<Repair> repairs ) {
+        try {
+            deindex( repairs );
+        }
+        catch ( Throwable t ) {
+            //the next query to find these documents will queue them again
+            logger.error( "Unable to deindex {} stale documents", repairs.size(), t );
+        }
+        finally {
+            for ( Repair repair : repairs ) {
+                pending.remove( repair );
+            }
+            repairs.clear();
+        }
+    }
+
+
+    /**
+     * Remove the documents with one batch per index
+     */
+    private void deindex( final List<Repair> repairs ) {
+
+        //indexes are cached by the factory, so the same index is the same instance
+        final Map<EntityIndex, EntityIndexBatch> batches = new IdentityHashMap<>();
+
+        for ( Repair repair : repairs ) {
+            final EntityIndex entityIndex = pending.get( repair );
+
+            EntityIndexBatch batch = batches.get( entityIndex );
+
+            if ( batch == null ) {
+                batch = entityIndex.createBatch();
+                batches.put( entityIndex, batch );
+            }
+
+            batch.deindex( repair.searchEdge, repair.entityId, repair.version );
+        }
+
+        for ( EntityIndexBatch batch : batches.values() ) {
+            indexProducer.put( batch.build() ).toBlocking().lastOrDefault( null );
+        }
+
+        if ( logger.isTraceEnabled() ) {
+            logger.trace( "Deindexed {} stale documents in {} batches", repairs.size(), batches.size() );
+        }
+    }
+
+
+    /**
+     * A document to remove
+     */
+    private static final class Repair {
+        private final SearchEdge searchEdge;
+        private final Id entityId;
+        private final UUID version;
+
+
+        private Repair( final SearchEdge searchEdge, final Id entityId, final UUID version ) {
+            this.searchEdge = searchEdge;
+            this.entityId = entityId;
+            this.version = version;
+        }
+
+
+        @Override
+        public boolean equals( final Object o ) {
+            if ( this == o ) {
+                return true;
+            }
+            if ( !( o instanceof Repair ) ) {
+                return false;
+            }
+
+            final Repair repair = ( Repair ) o;
+
+            return searchEdge.equals( repair.searchEdge ) && entityId.equals( repair.entityId ) && version
+                .equals( repair.version );
+        }
+
+
+        @Override
+        public int hashCode() {
+            int result = searchEdge.hashCode();
+            result = 31 * result + entityId.hashCode();
+            result = 31 * result + version.hashCode();
+            return result;
+        }
+    }
+}
@@ -19,6 +19,8 @@ package org.apache.usergrid.corepersistence.index;
 
 import java.util.Map;
 
+import org.apache.usergrid.persistence.index.IndexFieldFilter;
+
 import com.google.common.base.Optional;
 
 
@@ -31,6 +33,13 @@ public interface IndexSchemaCache {
      */
     public Optional<Map> getCollectionSchema( String collectionName );
 
+    /**
+     * Get the fields of the collection to index, compiled from its schema.  Absent if every field is indexed
+     * @param collectionName
+     * @return
+     */
+    Optional<IndexFieldFilter> getFieldsToIndex( String collectionName );
+
     void putCollectionSchema( String collectionName, String collectionSchema );
 
     void deleteCollectionSchema( String collectionName );
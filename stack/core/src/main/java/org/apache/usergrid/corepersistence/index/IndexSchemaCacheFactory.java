@@ -19,25 +19,35 @@ package org.apache.usergrid.corepersistence.index;
 
 
 import org.apache.usergrid.persistence.map.MapManager;
+import org.apache.usergrid.persistence.map.MapScope;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
 
 /**
- * This can only be implemented after we have the impl for the application cache.
+ * Hands out one index schema cache per map scope, so the cached schemas outlive a single request.
  */
 @Singleton
 public class IndexSchemaCacheFactory {
     private final IndexSchemaCacheFig fig;
+    private final Cache<MapScope, IndexSchemaCache> instances;
 
     @Inject
     public IndexSchemaCacheFactory(IndexSchemaCacheFig fig){
         this.fig = fig;
+        this.instances = CacheBuilder.newBuilder().maximumSize( fig.getCacheSize() ).build();
     }
 
     public IndexSchemaCache getInstance(MapManager mapManager ){
-        return new IndexSchemaCacheImpl( mapManager,fig );
+        try {
+            return instances.get( mapManager.getScope(), () -> new IndexSchemaCacheImpl( mapManager, fig ) );
+        }
+        catch ( Exception e ) {
+            throw new RuntimeException( "Unable to create index schema cache for " + mapManager.getScope(), e );
+        }
     }
 
 
@@ -18,11 +18,17 @@
 package org.apache.usergrid.corepersistence.index;
 
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.usergrid.persistence.Schema;
+import org.apache.usergrid.persistence.index.IndexFieldFilter;
 import org.apache.usergrid.persistence.map.MapManager;
 import org.apache.usergrid.utils.JsonUtils;
 
@@ -42,6 +48,7 @@ public class IndexSchemaCacheImpl implements IndexSchemaCache {
     private static final Logger logger = LoggerFactory.getLogger(IndexSchemaCacheImpl.class );
 
     private final LoadingCache<String,Optional<Map>> indexSchemaCache;
+    private final LoadingCache<String,Optional<IndexFieldFilter>> fieldFilterCache;
     private final MapManager mapManager;
 
 
@@ -49,13 +56,50 @@ public class IndexSchemaCacheImpl implements IndexSchemaCache {
         this.mapManager = mapManager;
         indexSchemaCache = CacheBuilder.newBuilder()
             .maximumSize( indexSchemaCacheFig.getCacheSize() )
-            //.expireAfterWrite( indexSchemaCacheFig.getCacheTimeout(), TimeUnit.MILLISECONDS ) <-- I don't think we want this to expire that quickly.
+            //instances are shared, so pick up schema changes made on other nodes
+            .expireAfterWrite( indexSchemaCacheFig.getCacheTimeout(), TimeUnit.MILLISECONDS )
             .build( new CacheLoader<String, Optional<Map>>() {
                 @Override
                 public Optional<Map> load( final String collectionName ) throws Exception {
                     return Optional.fromNullable( retrieveCollectionSchema( collectionName ) );
                 }
             } );
+        //compile each schema once rather than every time an entity is indexed
+        fieldFilterCache = CacheBuilder.newBuilder()
+            .maximumSize( indexSchemaCacheFig.getCacheSize() )
+            .expireAfterWrite( indexSchemaCacheFig.getCacheTimeout(), TimeUnit.MILLISECONDS )
+            .build( new CacheLoader<String, Optional<IndexFieldFilter>>() {
+                @Override
+                public Optional<IndexFieldFilter> load( final String collectionName ) throws Exception {
+                    return compileFieldsToIndex( collectionName );
+                }
+            } );
+    }
+
+    /**
+     * Compile the fields to index from the schema. The required properties of the collection are always indexed.
+     */
+    private Optional<IndexFieldFilter> compileFieldsToIndex( final String collectionName ){
+        Optional<Map> collectionIndexingSchema = getCollectionSchema( collectionName );
+
+        //If we don't have a schema, or it has a * field, we index everything
+        if ( collectionIndexingSchema == null || !collectionIndexingSchema.isPresent() ) {
+            return Optional.absent();
+        }
+
+        Collection<String> fieldsToKeep = ( Collection<String> ) collectionIndexingSchema.get().get( "fields" );
+
+        if ( fieldsToKeep.contains( "*" ) ) {
+            return Optional.absent();
+        }
+
+        Set<String> fieldsToIndex = new HashSet<>( fieldsToKeep );
+        Set<String> requiredProperties = Schema.getDefaultSchema().getRequiredProperties( collectionName );
+        if ( requiredProperties != null ) {
+            fieldsToIndex.addAll( requiredProperties );
+        }
+
+        return Optional.of( IndexFieldFilter.compile( fieldsToIndex ) );
     }
 
     private Map retrieveCollectionSchema( final String collectionName ){
@@ -87,6 +131,11 @@ public class IndexSchemaCacheImpl implements IndexSchemaCache {
         return null;
     }
 
+    @Override
+    public Optional<IndexFieldFilter> getFieldsToIndex( final String collectionName ) {
+        return fieldFilterCache.getUnchecked( collectionName );
+    }
+
     @Override
     public void putCollectionSchema( final String collectionName, final String collectionSchema ){
         mapManager.putString( collectionName, collectionSchema );
@@ -102,6 +151,7 @@ public class IndexSchemaCacheImpl implements IndexSchemaCache {
     @Override
     public void evictCollectionSchema( final String collectionName ) {
         indexSchemaCache.invalidate( collectionName );
+        fieldFilterCache.invalidate( collectionName );
         if(logger.isDebugEnabled() ){
             logger.debug( "Invalidated key {}",collectionName );
         }
@@ -112,6 +162,7 @@ public class IndexSchemaCacheImpl implements IndexSchemaCache {
     @Override
     public void evictCache() {
         indexSchemaCache.invalidateAll();
+        fieldFilterCache.invalidateAll();
         if(logger.isDebugEnabled()){
             logger.debug( "Invalidated all keys" );
         }
@@ -21,9 +21,10 @@ package org.apache.usergrid.corepersistence.index;
 
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
@@ -31,7 +32,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.usergrid.corepersistence.util.CpNamingUtils;
-import org.apache.usergrid.persistence.Schema;
 import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
 import org.apache.usergrid.persistence.core.metrics.ObservableTimer;
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
@@ -46,9 +46,14 @@ import org.apache.usergrid.persistence.index.EntityIndex;
 import org.apache.usergrid.persistence.index.EntityIndexBatch;
 import org.apache.usergrid.persistence.index.EntityIndexFactory;
 import org.apache.usergrid.persistence.index.IndexEdge;
+import org.apache.usergrid.persistence.index.IndexFieldFilter;
 import org.apache.usergrid.persistence.index.IndexFig;
+import org.apache.usergrid.persistence.index.IndexLocationStrategy;
 import org.apache.usergrid.persistence.index.SearchEdge;
+import org.apache.usergrid.persistence.index.impl.EntityDocumentWriter;
+import org.apache.usergrid.persistence.index.impl.IndexFingerprintSerialization;
 import org.apache.usergrid.persistence.index.impl.IndexOperationMessage;
+import org.apache.usergrid.persistence.index.impl.IndexingUtils;
 import org.apache.usergrid.persistence.map.MapManager;
 import org.apache.usergrid.persistence.map.MapManagerFactory;
 import org.apache.usergrid.persistence.map.MapScope;
@@ -59,6 +64,7 @@ import org.apache.usergrid.utils.InflectionUtils;
 import org.apache.usergrid.utils.JsonUtils;
 import org.apache.usergrid.utils.UUIDUtils;
 
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
 import com.google.common.base.Optional;
 import com.google.inject.Inject;
@@ -88,8 +94,11 @@ public class IndexServiceImpl implements IndexService {
     private final EdgesObservable edgesObservable;
     private final IndexFig indexFig;
     private final IndexLocationStrategyFactory indexLocationStrategyFactory;
+    private final IndexFingerprintSerialization indexFingerprintSerialization;
     private final Timer indexTimer;
     private final Timer addTimer;
+    private final Timer fingerprintTimer;
+    private final Meter unchangedSkippedMeter;
 
 
     @Inject
@@ -98,6 +107,7 @@ public class IndexServiceImpl implements IndexService {
                              final IndexSchemaCacheFactory indexSchemaCacheFactory,
                              final EdgesObservable edgesObservable, final IndexFig indexFig,
                              final IndexLocationStrategyFactory indexLocationStrategyFactory,
+                             final IndexFingerprintSerialization indexFingerprintSerialization,
                              final MetricsFactory metricsFactory ) {
         this.graphManagerFactory = graphManagerFactory;
         this.entityIndexFactory = entityIndexFactory;
@@ -106,8 +116,11 @@ public class IndexServiceImpl implements IndexService {
         this.indexFig = indexFig;
         this.indexLocationStrategyFactory = indexLocationStrategyFactory;
         this.indexSchemaCacheFactory = indexSchemaCacheFactory;
+        this.indexFingerprintSerialization = indexFingerprintSerialization;
         this.indexTimer = metricsFactory.getTimer( IndexServiceImpl.class, "index.update_all");
         this.addTimer = metricsFactory.getTimer( IndexServiceImpl.class, "index.add" );
+        this.fingerprintTimer = metricsFactory.getTimer( IndexServiceImpl.class, "index.fingerprint_read" );
+        this.unchangedSkippedMeter = metricsFactory.getMeter( IndexServiceImpl.class, "index.unchanged_skipped" );
     }
 
 
@@ -116,7 +129,10 @@ public class IndexServiceImpl implements IndexService {
                                                           final Entity entity ) {
         //bootstrap the lower modules from their caches
         final GraphManager gm = graphManagerFactory.createEdgeManager( applicationScope );
-        final EntityIndex ei = entityIndexFactory.createEntityIndex(indexLocationStrategyFactory.getIndexLocationStrategy(applicationScope));
+        final IndexLocationStrategy indexLocationStrategy =
+            indexLocationStrategyFactory.getIndexLocationStrategy( applicationScope );
+        final EntityIndex ei = entityIndexFactory.createEntityIndex( indexLocationStrategy );
+        final String writeAlias = indexLocationStrategy.getAlias().getWriteAlias();
 
         final Id entityId = entity.getId();
 
@@ -134,19 +150,36 @@ public class IndexServiceImpl implements IndexService {
             .buffer(indexFig.getIndexBatchSize() )
 
             //map into batches based on our buffer size
-            .flatMap( buffer -> Observable.from( buffer )
-                //collect results into a single batch
-                .collect( () -> ei.createBatch(), ( batch, indexEdge ) -> {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("adding edge {} to batch for entity {}", indexEdge, entity);
-                    }
-
-                    final Optional<Set<String>> fieldsToIndex = getFilteredStringObjectMap( indexEdge );
-
-                    batch.index( indexEdge, entity ,fieldsToIndex);
-                } )
-                    //return the future from the batch execution
-                .map( batch -> batch.build() ) );
+            .flatMap( buffer -> {
+                //the fingerprints of the documents this version already has, read once per buffer
+                final Map<String, String> fingerprints = getFingerprints( applicationScope, entity, buffer );
+
+                return Observable.from( buffer )
+                    //collect results into a single batch
+                    .collect( () -> ei.createBatch(), ( batch, indexEdge ) -> {
+                        final Optional<IndexFieldFilter> fieldsToIndex = getFieldsToIndex( indexEdge );
+
+                        //this version's document for the edge is already written as is, nothing to do
+                        if ( isUnchanged( fingerprints, applicationScope, writeAlias, indexEdge, entity,
+                            fieldsToIndex ) ) {
+
+                            if (logger.isDebugEnabled()) {
+                                logger.debug("skipping unchanged edge {} for entity {}", indexEdge, entity);
+                            }
+
+                            unchangedSkippedMeter.mark();
+                            return;
+                        }
+
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("adding edge {} to batch for entity {}", indexEdge, entity);
+                        }
+
+                        batch.index( indexEdge, entity ,fieldsToIndex);
+                    } )
+                        //return the future from the batch execution
+                    .map( batch -> batch.build() );
+            } );
 
         return ObservableTimer.time( batches, indexTimer );
     }
@@ -174,7 +207,7 @@ public class IndexServiceImpl implements IndexService {
                 logger.debug("adding edge {} to batch for entity {}", indexEdge, entity);
             }
 
-            Optional<Set<String>> fieldsToIndex = getFilteredStringObjectMap( indexEdge );
+            Optional<IndexFieldFilter> fieldsToIndex = getFieldsToIndex( indexEdge );
 
             batch.index( indexEdge, entity ,fieldsToIndex);
 
@@ -187,52 +220,79 @@ public class IndexServiceImpl implements IndexService {
     }
 
     /**
-     * This method takes in an entity and flattens it out then begins the process to filter out
-     * properties that we do not want to index. Once flatted we parse through each property
-     * and verify that we want it to be indexed on. The set of default properties that will always be indexed are as follows.
-     * UUID - TYPE - MODIFIED - CREATED. Depending on the schema this may change. For instance, users will always require
-     * NAME, but the above four will always be taken in.
+     * Get the fingerprints recorded for the documents of the entity version on the edges.  Empty when unchanged
+     * documents aren't skipped, or the fingerprints can't be read, so every edge is written
+     */
+    private Map<String, String> getFingerprints( final ApplicationScope applicationScope, final Entity entity,
+                                                 final List<IndexEdge> indexEdges ) {
 
-     * @param indexEdge
-     * @return This returns a filtered map that contains the flatted properties of the entity. If there isn't a schema
-     * associated with the collection then return null ( and index the entity in its entirety )
+        if ( !indexFig.isSkipUnchangedEnabled() ) {
+            return Collections.emptyMap();
+        }
+
+        final List<String> documentIds = new ArrayList<>( indexEdges.size() );
+
+        for ( final IndexEdge indexEdge : indexEdges ) {
+            documentIds.add( IndexingUtils.createIndexDocId( applicationScope, entity, indexEdge ) );
+        }
+
+        final Timer.Context timer = fingerprintTimer.time();
+
+        try {
+            return indexFingerprintSerialization.getFingerprints( applicationScope, entity.getId(), documentIds );
+        }
+        catch ( RuntimeException e ) {
+            logger.warn( "Unable to read the index fingerprints of entity {}, writing all of its documents",
+                entity.getId(), e );
+            return Collections.emptyMap();
+        }
+        finally {
+            timer.stop();
+        }
+    }
+
+
+    /**
+     * True if the fingerprint recorded for the document matches the document we'd write
      */
-    private Optional<Set<String>> getFilteredStringObjectMap( final IndexEdge indexEdge ) {
+    private boolean isUnchanged( final Map<String, String> fingerprints, final ApplicationScope applicationScope,
+                                 final String writeAlias, final IndexEdge indexEdge, final Entity entity,
+                                 final Optional<IndexFieldFilter> fieldsToIndex ) {
 
-        Id mapOwner = new SimpleId( indexEdge.getNodeId().getUuid(), TYPE_APPLICATION );
+        if ( fingerprints.isEmpty() ) {
+            return false;
+        }
 
-        final MapScope ms = CpNamingUtils.getEntityTypeMapScope( mapOwner );
+        final String fingerprint =
+            fingerprints.get( IndexingUtils.createIndexDocId( applicationScope, entity, indexEdge ) );
 
-        MapManager mm = mapManagerFactory.createMapManager( ms );
+        return fingerprint != null
+            && fingerprint.equals( EntityDocumentWriter.fingerprint( writeAlias, indexEdge, entity, fieldsToIndex ) );
+    }
 
-        Set<String> defaultProperties;
-        ArrayList fieldsToKeep;
 
-        String collectionName = CpNamingUtils.getCollectionNameFromEdgeName( indexEdge.getEdgeName() );
+    /**
+     * Get the fields of the entity to index from the schema of its collection.  The set of default properties that
+     * will always be indexed are as follows. UUID - TYPE - MODIFIED - CREATED. Depending on the schema this may
+     * change. For instance, users will always require NAME, but the above four will always be taken in.
 
-        IndexSchemaCache indexSchemaCache = indexSchemaCacheFactory.getInstance( mm );
+     * @param indexEdge
+     * @return The fields to index, compiled once per schema. If there isn't a schema associated with the collection
+     * then return absent ( and index the entity in its entirety )
+     */
+    private Optional<IndexFieldFilter> getFieldsToIndex( final IndexEdge indexEdge ) {
 
-        Optional<Map> collectionIndexingSchema =  indexSchemaCache.getCollectionSchema( collectionName );
+        Id mapOwner = new SimpleId( indexEdge.getNodeId().getUuid(), TYPE_APPLICATION );
 
-        //If we do have a schema then parse it and add it to a list of properties we want to keep.Otherwise return.
-        if ( collectionIndexingSchema.isPresent()) {
+        final MapScope ms = CpNamingUtils.getEntityTypeMapScope( mapOwner );
 
-            Map jsonMapData = collectionIndexingSchema.get();
-            Schema schema = Schema.getDefaultSchema();
-            defaultProperties = schema.getRequiredProperties( collectionName );
-            fieldsToKeep = ( ArrayList ) jsonMapData.get( "fields" );
+        MapManager mm = mapManagerFactory.createMapManager( ms );
 
-            if(fieldsToKeep.contains( "*" )){
-                return Optional.absent();
-            }
+        String collectionName = CpNamingUtils.getCollectionNameFromEdgeName( indexEdge.getEdgeName() );
 
-            defaultProperties.addAll( fieldsToKeep );
-        }
-        else {
-            return Optional.absent();
-        }
+        IndexSchemaCache indexSchemaCache = indexSchemaCacheFactory.getInstance( mm );
 
-        return Optional.of(defaultProperties);
+        return indexSchemaCache.getFieldsToIndex( collectionName );
     }
 
     //Steps to delete an IndexEdge.
@@ -0,0 +1,478 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.corepersistence.index;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.corepersistence.util.CpNamingUtils;
+import org.apache.usergrid.locking.Lock;
+import org.apache.usergrid.locking.LockManager;
+import org.apache.usergrid.locking.exception.UGLockException;
+import org.apache.usergrid.persistence.graph.Edge;
+import org.apache.usergrid.persistence.graph.impl.SimpleEdge;
+import org.apache.usergrid.persistence.map.MapManager;
+import org.apache.usergrid.persistence.map.MapManagerFactory;
+import org.apache.usergrid.persistence.map.MapScope;
+import org.apache.usergrid.persistence.map.impl.MapScopeImpl;
+import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.entity.SimpleId;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+
+/**
+ * The state of re-index jobs, shared by every node through the map.  A job is a list of partitions, each with its
+ * own lease, checkpoint and count.  The map has no conditional writes, so changes that read a value before writing
+ * it, to the active jobs and to leases, are made while holding a distributed lock.
+ */
+@Singleton
+public class ReIndexJobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger( ReIndexJobStore.class );
+
+    static final MapScope RESUME_MAP_SCOPE =
+        new MapScopeImpl( CpNamingUtils.getManagementApplicationId(), "reindexresume" );
+
+    //Keep cursors to resume re-index for 10 days.  This is far beyond it's useful real world implications anyway.
+    static final int INDEX_TTL = 60 * 60 * 24 * 10;
+
+    private static final String ACTIVE_JOBS_KEY = "activejobs";
+
+    private static final String MAP_PARTITIONS_KEY = "partitions";
+    private static final String MAP_PARTITION_KEY = "partition";
+    private static final String MAP_UPDATED_SINCE_KEY = "updatedSince";
+    private static final String MAP_LEASE_KEY = "lease";
+    private static final String MAP_CHECKPOINT_KEY = "checkpoint";
+    private static final String MAP_PROCESSED_KEY = "processed";
+    private static final String MAP_DONE_KEY = "done";
+    private static final String MAP_UPDATED_KEY = "partitionsUpdated";
+
+    private static final String JOB_SEPARATOR = ",";
+    private static final String CHECKPOINT_SEPARATOR = ",";
+
+    private static final String LOCK_PATH = "reindex";
+
+    /**
+     * How long to wait for a lock held by another node, in milliseconds
+     */
+    private static final long LOCK_WAIT = 5000;
+
+    private final MapManager mapManager;
+    private final LockManager lockManager;
+
+
+    @Inject
+    public ReIndexJobStore( final MapManagerFactory mapManagerFactory, final LockManager lockManager ) {
+        this.mapManager = mapManagerFactory.createMapManager( RESUME_MAP_SCOPE );
+        this.lockManager = lockManager;
+    }
+
+
+    /**
+     * Get the map the job state is stored in
+     */
+    public MapManager getMapManager() {
+        return mapManager;
+    }
+
+
+    /**
+     * Get the jobs nodes should look for partitions to claim in
+     */
+    public Set<String> getActiveJobs() {
+        final String jobs = mapManager.getStringHighConsistency( ACTIVE_JOBS_KEY );
+
+        if ( jobs == null || jobs.isEmpty() ) {
+            return new LinkedHashSet<>();
+        }
+
+        return new LinkedHashSet<>( Arrays.asList( jobs.split( JOB_SEPARATOR ) ) );
+    }
+
+
+    /**
+     * Add a job for nodes to work on.  The node that started a job adds it again until it completes, in case the lock
+     * couldn't be taken.
+     *
+     * @return False if the active jobs are locked by another node
+     */
+    public boolean addActiveJob( final String jobId ) {
+        return locked( () -> {
+            final Set<String> jobs = getActiveJobs();
+
+            if ( jobs.add( jobId ) ) {
+                putActiveJobs( jobs );
+            }
+
+            return true;
+        }, LOCK_PATH, ACTIVE_JOBS_KEY );
+    }
+
+
+    /**
+     * Remove a job that has completed
+     *
+     * @return False if the active jobs are locked by another node
+     */
+    public boolean removeActiveJob( final String jobId ) {
+        return locked( () -> {
+            final Set<String> jobs = getActiveJobs();
+
+            if ( jobs.remove( jobId ) ) {
+                putActiveJobs( jobs );
+            }
+
+            return true;
+        }, LOCK_PATH, ACTIVE_JOBS_KEY );
+    }
+
+
+    private void putActiveJobs( final Set<String> jobs ) {
+        mapManager.putString( ACTIVE_JOBS_KEY, Joiner.on( JOB_SEPARATOR ).join( jobs ), INDEX_TTL );
+    }
+
+
+    /**
+     * Write the partitions of a job, and the timestamp entities must have been updated since to be indexed
+     */
+    public void putPartitions( final String jobId, final List<ReIndexPartition> partitions, final long updatedSince ) {
+        for ( int i = 0; i < partitions.size(); i++ ) {
+            mapManager.putString( key( jobId, MAP_PARTITION_KEY, i ), partitions.get( i ).serialize(), INDEX_TTL );
+        }
+
+        mapManager.putString( jobId + MAP_UPDATED_SINCE_KEY, String.valueOf( updatedSince ), INDEX_TTL );
+
+        //written last, nodes ignore the job until all its partitions are present
+        mapManager.putString( jobId + MAP_PARTITIONS_KEY, String.valueOf( partitions.size() ), INDEX_TTL );
+    }
+
+
+    /**
+     * Get the partitions of the job, absent if the job hasn't been planned
+     */
+    public Optional<List<ReIndexPartition>> getPartitions( final String jobId ) {
+        final String count = mapManager.getStringHighConsistency( jobId + MAP_PARTITIONS_KEY );
+
+        if ( count == null ) {
+            return Optional.absent();
+        }
+
+        final List<String> keys = keys( jobId, MAP_PARTITION_KEY, Integer.parseInt( count ) );
+        final Map<String, String> values = mapManager.getStrings( keys );
+
+        final List<ReIndexPartition> partitions = new ArrayList<>( keys.size() );
+
+        for ( final String key : keys ) {
+            final String partition = values.get( key );
+
+            if ( partition == null ) {
+                return Optional.absent();
+            }
+
+            partitions.add( ReIndexPartition.deserialize( partition ) );
+        }
+
+        return Optional.of( partitions );
+    }
+
+
+    /**
+     * Get the timestamp entities must have been updated since to be indexed by the job
+     */
+    public long getUpdatedSince( final String jobId ) {
+        final String updatedSince = mapManager.getString( jobId + MAP_UPDATED_SINCE_KEY );
+
+        return updatedSince == null ? Long.MIN_VALUE : Long.parseLong( updatedSince );
+    }
+
+
+    /**
+     * Get the node holding the lease of each partition, null if the partition isn't leased
+     */
+    public List<String> getLeases( final String jobId, final int partitionCount ) {
+        return getValues( jobId, MAP_LEASE_KEY, partitionCount );
+    }
+
+
+    /**
+     * Get the partitions that have been completed, by index
+     */
+    public boolean[] getCompleted( final String jobId, final int partitionCount ) {
+        final List<String> done = getValues( jobId, MAP_DONE_KEY, partitionCount );
+
+        final boolean[] completed = new boolean[partitionCount];
+
+        for ( int i = 0; i < partitionCount; i++ ) {
+            completed[i] = done.get( i ) != null;
+        }
+
+        return completed;
+    }
+
+
+    /**
+     * Get the number of entities sent to be indexed for each partition
+     */
+    public long[] getProcessed( final String jobId, final int partitionCount ) {
+        final List<String> processed = getValues( jobId, MAP_PROCESSED_KEY, partitionCount );
+
+        final long[] counts = new long[partitionCount];
+
+        for ( int i = 0; i < partitionCount; i++ ) {
+            counts[i] = processed.get( i ) == null ? 0 : Long.parseLong( processed.get( i ) );
+        }
+
+        return counts;
+    }
+
+
+    /**
+     * Get the last time any partition of the job was checkpointed, 0 if none have been
+     */
+    public long getLastUpdated( final String jobId ) {
+        final String updated = mapManager.getString( jobId + MAP_UPDATED_KEY );
+
+        return updated == null ? 0 : Long.parseLong( updated );
+    }
+
+
+    /**
+     * Claim the lease of a partition.  The lease is checked and written under the partition's lock, so only one node
+     * can claim it.
+     *
+     * @return True if the node holds the lease, false if another node holds it or its lock
+     */
+    public boolean claim( final String jobId, final int partition, final String nodeId, final int leaseSeconds ) {
+        final String leaseKey = key( jobId, MAP_LEASE_KEY, partition );
+
+        return locked( () -> {
+            if ( mapManager.getStringHighConsistency( key( jobId, MAP_DONE_KEY, partition ) ) != null ) {
+                return false;
+            }
+
+            final String owner = mapManager.getStringHighConsistency( leaseKey );
+
+            if ( owner != null && !owner.equals( nodeId ) ) {
+                return false;
+            }
+
+            mapManager.putString( leaseKey, nodeId, leaseSeconds );
+
+            return true;
+        }, LOCK_PATH, jobId, String.valueOf( partition ) );
+    }
+
+
+    /**
+     * Extend the lease of a partition the node is running, under the partition's lock so it can't overwrite the lease
+     * of a node that claimed the partition after the lease expired
+     *
+     * @return False if another node has taken the partition over, and this node should stop
+     */
+    public boolean renew( final String jobId, final int partition, final String nodeId, final int leaseSeconds ) {
+        final String leaseKey = key( jobId, MAP_LEASE_KEY, partition );
+
+        final boolean renewed = locked( () -> {
+            final String owner = mapManager.getStringHighConsistency( leaseKey );
+
+            if ( owner != null && !owner.equals( nodeId ) ) {
+                return false;
+            }
+
+            mapManager.putString( leaseKey, nodeId, leaseSeconds );
+
+            return true;
+        }, LOCK_PATH, jobId, String.valueOf( partition ) );
+
+        //the lock is only held by claims that will find our lease, keep running while we still hold it
+        return renewed || nodeId.equals( mapManager.getStringHighConsistency( leaseKey ) );
+    }
+
+
+    /**
+     * Release the lease of a partition so another node can claim it straight away
+     */
+    public void release( final String jobId, final int partition ) {
+        mapManager.delete( key( jobId, MAP_LEASE_KEY, partition ) );
+    }
+
+
+    /**
+     * Get the number of entities sent to be indexed and the last edge they were read from, to resume the partition
+     */
+    public Checkpoint getCheckpoint( final String jobId, final int partition,
+                                     final ReIndexPartition reIndexPartition ) {
+        final String processed = mapManager.getStringHighConsistency( key( jobId, MAP_PROCESSED_KEY, partition ) );
+        final String edge = mapManager.getStringHighConsistency( key( jobId, MAP_CHECKPOINT_KEY, partition ) );
+
+        if ( edge == null ) {
+            return new Checkpoint( Optional.absent(), 0 );
+        }
+
+        //the target type is last, so it can contain anything
+        final String[] parts = edge.split( CHECKPOINT_SEPARATOR, 3 );
+
+        final Edge lastEdge = new SimpleEdge( reIndexPartition.getApplicationScope().getApplication(),
+            reIndexPartition.getEdgeType(), new SimpleId( UUID.fromString( parts[1] ), parts[2] ),
+            Long.parseLong( parts[0] ) );
+
+        return new Checkpoint( Optional.of( lastEdge ), processed == null ? 0 : Long.parseLong( processed ) );
+    }
+
+
+    /**
+     * Write the checkpoint of a partition once every edge up to and including the last edge has been sent to be
+     * indexed
+     */
+    public void putCheckpoint( final String jobId, final int partition, final Checkpoint checkpoint ) {
+        final Edge lastEdge = checkpoint.getLastEdge().get();
+        final Id targetNode = lastEdge.getTargetNode();
+
+        final String edge = lastEdge.getTimestamp() + CHECKPOINT_SEPARATOR + targetNode.getUuid()
+            + CHECKPOINT_SEPARATOR + targetNode.getType();
+
+        mapManager.putString( key( jobId, MAP_CHECKPOINT_KEY, partition ), edge, INDEX_TTL );
+        mapManager.putString( key( jobId, MAP_PROCESSED_KEY, partition ), String.valueOf( checkpoint.getProcessed() ),
+            INDEX_TTL );
+        mapManager.putString( jobId + MAP_UPDATED_KEY, String.valueOf( System.currentTimeMillis() ), INDEX_TTL );
+    }
+
+
+    /**
+     * Mark the partition complete and release its lease
+     */
+    public void complete( final String jobId, final int partition, final long processed ) {
+        mapManager.putString( key( jobId, MAP_PROCESSED_KEY, partition ), String.valueOf( processed ), INDEX_TTL );
+        mapManager.putString( key( jobId, MAP_DONE_KEY, partition ), String.valueOf( System.currentTimeMillis() ),
+            INDEX_TTL );
+        mapManager.putString( jobId + MAP_UPDATED_KEY, String.valueOf( System.currentTimeMillis() ), INDEX_TTL );
+
+        release( jobId, partition );
+    }
+
+
+    /**
+     * Run the action while holding the lock of the path
+     *
+     * @return The result of the action, or false if the lock couldn't be taken
+     */
+    private boolean locked( final BooleanSupplier action, final String... path ) {
+        final Lock lock = lockManager.createLock( CpNamingUtils.MANAGEMENT_APPLICATION_ID, path );
+
+        try {
+            if ( !lock.tryLock( LOCK_WAIT, TimeUnit.MILLISECONDS ) ) {
+                return false;
+            }
+        }
+        catch ( UGLockException e ) {
+            logger.error( "Unable to lock {}", path, e );
+            return false;
+        }
+
+        try {
+            return action.getAsBoolean();
+        }
+        finally {
+            try {
+                lock.unlock();
+            }
+            catch ( UGLockException e ) {
+                logger.error( "Unable to unlock {}", path, e );
+            }
+        }
+    }
+
+
+    private List<String> getValues( final String jobId, final String name, final int partitionCount ) {
+        final List<String> keys = keys( jobId, name, partitionCount );
+        final Map<String, String> values = mapManager.getStrings( keys );
+
+        final List<String> results = new ArrayList<>( partitionCount );
+
+        for ( final String key : keys ) {
+            results.add( values.get( key ) );
+        }
+
+        return results;
+    }
+
+
+    private static List<String> keys( final String jobId, final String name, final int partitionCount ) {
+        final List<String> keys = new ArrayList<>( partitionCount );
+
+        for ( int i = 0; i < partitionCount; i++ ) {
+            keys.add( key( jobId, name, i ) );
+        }
+
+        return keys;
+    }
+
+
+    private static String key( final String jobId, final String name, final int partition ) {
+        return jobId + name + partition;
+    }
+
+
+    /**
+     * How far a partition has been indexed
+     */
+    public static final class Checkpoint {
+
+        private final Optional<Edge> lastEdge;
+        private final long processed;
+
+
+        public Checkpoint( final Optional<Edge> lastEdge, final long processed ) {
+            this.lastEdge = lastEdge;
+            this.processed = processed;
+        }
+
+
+        /**
+         * The last edge sent to be indexed, absent if the partition hasn't been started
+         */
+        public Optional<Edge> getLastEdge() {
+            return lastEdge;
+        }
+
+
+        /**
+         * The number of entities sent to be indexed
+         */
+        public long getProcessed() {
+            return processed;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.corepersistence.index;
+
+
+import java.util.UUID;
+
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.core.scope.ApplicationScopeImpl;
+import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.entity.SimpleId;
+
+import com.google.common.base.Preconditions;
+
+
+/**
+ * A part of a re-index job that one node processes at a time, the edges of a single type from an application to its
+ * entities.  The edges of one type are read in order, so the last edge indexed is a safe point to resume from.
+ */
+public final class ReIndexPartition {
+
+    private static final String SEPARATOR = ",";
+
+    private final ApplicationScope applicationScope;
+    private final String edgeType;
+
+
+    public ReIndexPartition( final ApplicationScope applicationScope, final String edgeType ) {
+        this.applicationScope = applicationScope;
+        this.edgeType = edgeType;
+    }
+
+
+    public ApplicationScope getApplicationScope() {
+        return applicationScope;
+    }
+
+
+    public String getEdgeType() {
+        return edgeType;
+    }
+
+
+    /**
+     * Write the partition as a string to store
+     */
+    public String serialize() {
+        final Id applicationId = applicationScope.getApplication();
+
+        //the edge type is last, so it can contain anything
+        return applicationId.getUuid() + SEPARATOR + applicationId.getType() + SEPARATOR + edgeType;
+    }
+
+
+    /**
+     * Read a partition from its serialized string
+     */
+    public static ReIndexPartition deserialize( final String serialized ) {
+        final String[] parts = serialized.split( SEPARATOR, 3 );
+
+        Preconditions.checkArgument( parts.length == 3, "Invalid re-index partition " + serialized );
+
+        final Id applicationId = new SimpleId( UUID.fromString( parts[0] ), parts[1] );
+
+        return new ReIndexPartition( new ApplicationScopeImpl( applicationId ), parts[2] );
+    }
+
+
+    @Override
+    public boolean equals( final Object o ) {
+        if ( this == o ) {
+            return true;
+        }
+        if ( !( o instanceof ReIndexPartition ) ) {
+            return false;
+        }
+
+        final ReIndexPartition that = ( ReIndexPartition ) o;
+
+        return applicationScope.equals( that.applicationScope ) && edgeType.equals( that.edgeType );
+    }
+
+
+    @Override
+    public int hashCode() {
+        return 31 * applicationScope.hashCode() + edgeType.hashCode();
+    }
+
+
+    @Override
+    public String toString() {
+        return "ReIndexPartition{" +
+            "applicationScope=" + applicationScope +
+            ", edgeType='" + edgeType + '\'' +
+            '}';
+    }
+}
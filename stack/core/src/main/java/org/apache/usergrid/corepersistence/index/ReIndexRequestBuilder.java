@@ -46,7 +46,8 @@ public interface ReIndexRequestBuilder {
     ReIndexRequestBuilder withCollection( final String collectionName );
 
     /**
-     * Set our cursor to resume processing
+     * Set our cursor to resume processing, the jobId of a re-index that didn't complete.  Cursors of re-index jobs
+     * started before jobs were partitioned are rejected.
      * @param cursor
      * @return
      */
@@ -23,32 +23,23 @@ package org.apache.usergrid.corepersistence.index;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 
 import org.apache.usergrid.persistence.index.EntityIndexFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.usergrid.corepersistence.asyncevents.AsyncEventService;
-import org.apache.usergrid.corepersistence.pipeline.cursor.CursorSerializerUtil;
-import org.apache.usergrid.corepersistence.pipeline.read.CursorSeek;
 import org.apache.usergrid.corepersistence.rx.impl.AllApplicationsObservable;
 import org.apache.usergrid.corepersistence.rx.impl.AllEntityIdsObservable;
-import org.apache.usergrid.corepersistence.rx.impl.EdgeScope;
 import org.apache.usergrid.corepersistence.util.CpNamingUtils;
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.core.util.StringUtils;
-import org.apache.usergrid.persistence.graph.Edge;
 import org.apache.usergrid.persistence.map.MapManager;
 import org.apache.usergrid.persistence.map.MapManagerFactory;
-import org.apache.usergrid.persistence.map.MapScope;
-import org.apache.usergrid.persistence.map.impl.MapScopeImpl;
 import org.apache.usergrid.persistence.model.util.UUIDGenerator;
 import org.apache.usergrid.utils.InflectionUtils;
 import org.apache.usergrid.utils.JsonUtils;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
@@ -63,27 +54,23 @@ public class ReIndexServiceImpl implements ReIndexService {
 
     private static final Logger logger = LoggerFactory.getLogger( ReIndexServiceImpl.class );
 
-    private static final MapScope RESUME_MAP_SCOPE =
-        new MapScopeImpl( CpNamingUtils.getManagementApplicationId(), "reindexresume" );
-
-    //Keep cursors to resume re-index for 10 days.  This is far beyond it's useful real world implications anyway.
-    private static final int INDEX_TTL = 60 * 60 * 24 * 10;
-
-    private static final String MAP_CURSOR_KEY = "cursor";
-    private static final String MAP_COUNT_KEY = "count";
     private static final String MAP_STATUS_KEY = "status";
-    private static final String MAP_UPDATED_KEY = "lastUpdated";
+
+    /**
+     * Cursors handed out before re-index jobs were partitioned were the job id with this suffix
+     */
+    private static final String LEGACY_CURSOR_SUFFIX = "cursor";
 
 
     private final AllApplicationsObservable allApplicationsObservable;
     private final IndexLocationStrategyFactory indexLocationStrategyFactory;
     private final AllEntityIdsObservable allEntityIdsObservable;
-    private final IndexProcessorFig indexProcessorFig;
     private final MapManager mapManager;
     private final MapManagerFactory mapManagerFactory;
-    private final AsyncEventService indexService;
     private final EntityIndexFactory entityIndexFactory;
     private final IndexSchemaCacheFactory indexSchemaCacheFactory;
+    private final ReIndexJobStore jobStore;
+    private final ReIndexWorker reIndexWorker;
 
 
     @Inject
@@ -92,18 +79,18 @@ public class ReIndexServiceImpl implements ReIndexService {
                                final AllEntityIdsObservable allEntityIdsObservable,
                                final MapManagerFactory mapManagerFactory,
                                final AllApplicationsObservable allApplicationsObservable,
-                               final IndexProcessorFig indexProcessorFig,
                                final IndexSchemaCacheFactory indexSchemaCacheFactory,
-                               final AsyncEventService indexService ) {
+                               final ReIndexJobStore jobStore,
+                               final ReIndexWorker reIndexWorker ) {
         this.entityIndexFactory = entityIndexFactory;
         this.indexLocationStrategyFactory = indexLocationStrategyFactory;
         this.allEntityIdsObservable = allEntityIdsObservable;
         this.allApplicationsObservable = allApplicationsObservable;
-        this.indexProcessorFig = indexProcessorFig;
-        this.indexService = indexService;
         this.indexSchemaCacheFactory = indexSchemaCacheFactory;
         this.mapManagerFactory = mapManagerFactory;
-        this.mapManager = mapManagerFactory.createMapManager( RESUME_MAP_SCOPE );
+        this.jobStore = jobStore;
+        this.reIndexWorker = reIndexWorker;
+        this.mapManager = jobStore.getMapManager();
     }
 
 
@@ -111,31 +98,22 @@ public class ReIndexServiceImpl implements ReIndexService {
     @Override
     public ReIndexStatus rebuildIndex( final ReIndexRequestBuilder reIndexRequestBuilder ) {
 
-        //load our last emitted Scope if a cursor is present
-
-        final Optional<EdgeScope> cursor = parseCursor( reIndexRequestBuilder.getCursor() );
-
-
-        final CursorSeek<Edge> cursorSeek = getResumeEdge( cursor );
+        final Optional<String> cursor = reIndexRequestBuilder.getCursor();
 
         final Optional<ApplicationScope> appId = reIndexRequestBuilder.getApplicationScope();
 
-        final Optional<Integer> delayTimer = reIndexRequestBuilder.getDelayTimer();
-
-        final Optional<TimeUnit> timeUnitOptional = reIndexRequestBuilder.getTimeUnitOptional();
-
         Preconditions.checkArgument( !(cursor.isPresent() && appId.isPresent()),
             "You cannot specify an app id and a cursor.  When resuming with cursor you must omit the appid" );
 
-        final Observable<ApplicationScope> applicationScopes = getApplications( cursor, appId );
-
+        //the cursor is the job to resume, its partitions continue from their checkpoints
+        if ( cursor.isPresent() ) {
+            return resume( cursor.get() );
+        }
 
         final String jobId = StringUtils.sanitizeUUID( UUIDGenerator.newTimeUUID() );
 
         final long modifiedSince = reIndexRequestBuilder.getUpdateTimestamp().or( Long.MIN_VALUE );
 
-        // create an observable that loads a batch to be indexed
-
         if(reIndexRequestBuilder.getCollectionName().isPresent()) {
             String collectionName =  InflectionUtils.pluralize( CpNamingUtils.getNameFromEdgeType(reIndexRequestBuilder.getCollectionName().get() ));
             MapManager collectionMapStorage = mapManagerFactory.createMapManager( CpNamingUtils.getEntityTypeMapScope( appId.get().getApplication()  ) );
@@ -155,26 +133,21 @@ public class ReIndexServiceImpl implements ReIndexService {
 
         }
 
-        Observable<List<EdgeScope>> runningReIndex = allEntityIdsObservable.getEdgesToEntities( applicationScopes,
-            reIndexRequestBuilder.getCollectionName(), cursorSeek.getSeekValue() )
+        mapManager.putString( jobId + MAP_STATUS_KEY, Status.STARTED.name(), ReIndexJobStore.INDEX_TTL );
 
-            .buffer( indexProcessorFig.getReindexBufferSize())
-            .flatMap( edgeScopes -> Observable.just(edgeScopes)
-                .doOnNext(edges -> {
+        //split the job into a partition per application collection, any node can then claim and run each of them
+        getApplications( appId )
+            .flatMap( applicationScope -> getEdgeTypes( applicationScope, reIndexRequestBuilder.getCollectionName() )
+                .map( edgeType -> new ReIndexPartition( applicationScope, edgeType ) ) )
+            .toList()
+            .doOnNext( partitions -> {
+                logger.info( "Re-index job {} has {} partitions", jobId, partitions.size() );
 
-                    logger.info("Sending batch of {} to be indexed.", edges.size());
-                    indexService.indexBatch(edges, modifiedSince);
-                })
-                .subscribeOn( Schedulers.io() ), indexProcessorFig.getReindexConcurrencyFactor());
-
-
-        //start our sampler and state persistence
-        //take a sample every sample interval to allow us to resume state with minimal loss
-        //create our flushing collector and flush the edge scopes to it
-        runningReIndex.collect(() -> new FlushingCollector(jobId),
-            ((flushingCollector, edgeScopes) -> flushingCollector.flushBuffer(edgeScopes))).doOnNext( flushingCollector-> flushingCollector.complete() )
-                //subscribe on our I/O scheduler and run the task
-            .subscribeOn( Schedulers.io() ).subscribe(); //want reindex to continually run so leave subscribe.
+                jobStore.putPartitions( jobId, partitions, modifiedSince );
+                reIndexWorker.start( jobId );
+            } )
+            .subscribeOn( Schedulers.io() )
+            .subscribe( partitions -> { }, t -> logger.error( "Unable to plan re-index job {}", jobId, t ) );
 
 
         return new ReIndexStatus( jobId, Status.STARTED, 0, 0 );
@@ -195,67 +168,33 @@ public class ReIndexServiceImpl implements ReIndexService {
 
 
     /**
-     * Simple collector that counts state, then flushed every time a buffer is provided.  Writes final state when complete
-     */
-    private class FlushingCollector {
-
-        private final String jobId;
-        private long count;
-
-
-        private FlushingCollector( final String jobId ) {
-            this.jobId = jobId;
-        }
-
-
-        public void flushBuffer( final List<EdgeScope> buffer ) {
-            count += buffer.size();
-
-            //write our cursor state
-            if ( buffer.size() > 0 ) {
-                writeCursorState( jobId, buffer.get( buffer.size() - 1 ) );
-            }
-
-            writeStateMeta( jobId, Status.INPROGRESS, count, System.currentTimeMillis() );
-        }
-
-        public void complete(){
-            writeStateMeta( jobId, Status.COMPLETE, count, System.currentTimeMillis() );
-        }
-    }
-
-
-    /**
-     * Get the resume edge scope
+     * Start the partitions of an existing job that haven't completed again
      *
-     * @param edgeScope The optional edge scope from the cursor
+     * @param cursor The job id of the job to resume
      */
-    private CursorSeek<Edge> getResumeEdge( final Optional<EdgeScope> edgeScope ) {
+    private ReIndexStatus resume( final String cursor ) {
+        Preconditions.checkArgument( !cursor.endsWith( LEGACY_CURSOR_SUFFIX ),
+            "Cursor " + cursor + " is from a re-index started before this version and can't be resumed.  "
+                + "Start a new re-index, optionally with an updated timestamp, or resume with the jobId of a "
+                + "re-index started since" );
 
+        final String jobId = cursor;
 
-        if ( edgeScope.isPresent() ) {
-            return new CursorSeek<>( Optional.of( edgeScope.get().getEdge() ) );
-        }
+        Preconditions.checkArgument( jobStore.getPartitions( jobId ).isPresent(),
+            "There is no re-index job " + jobId + " to resume, the cursor must be the jobId of a re-index" );
 
-        return new CursorSeek<>( Optional.absent() );
+        reIndexWorker.start( jobId );
+
+        return getIndexResponse( jobId );
     }
 
 
     /**
      * Generate an observable for our appliation scope
      */
-    private Observable<ApplicationScope> getApplications( final Optional<EdgeScope> cursor,
-                                                          final Optional<ApplicationScope> appId ) {
-        //cursor is present use it and skip until we hit that app
-        if (cursor.isPresent()) {
-
-            final EdgeScope cursorValue = cursor.get();
-            //we have a cursor and an application scope that was used.
-            return allApplicationsObservable.getData().skipWhile(
-                applicationScope -> !cursorValue.getApplicationScope().equals(applicationScope));
-        }
+    private Observable<ApplicationScope> getApplications( final Optional<ApplicationScope> appId ) {
         //this is intentional.  If
-        else if (appId.isPresent()) {
+        if (appId.isPresent()) {
             return Observable.just(appId.get());
         }
 
@@ -270,83 +209,65 @@ public class ReIndexServiceImpl implements ReIndexService {
 
 
     /**
-     * Swap our cursor for an optional edgescope
+     * Get the edge types to re-index in the application, only the collection's if one was requested
      */
-    private Optional<EdgeScope> parseCursor( final Optional<String> cursor ) {
-
-        if ( !cursor.isPresent() ) {
-            return Optional.absent();
+    private Observable<String> getEdgeTypes( final ApplicationScope applicationScope,
+                                             final Optional<String> collectionEdgeType ) {
+        if ( collectionEdgeType.isPresent() ) {
+            return Observable.just( collectionEdgeType.get() );
         }
 
-        //get our cursor
-        final String persistedCursor = mapManager.getString( cursor.get() );
-
-        if ( persistedCursor == null ) {
-            return Optional.absent();
-        }
-
-        final JsonNode node = CursorSerializerUtil.fromString( persistedCursor );
-
-        final EdgeScope edgeScope = EdgeScopeSerializer.INSTANCE.fromJsonNode( node, CursorSerializerUtil.getMapper() );
-
-        return Optional.of( edgeScope );
+        return allEntityIdsObservable.getEdgeTypesToEntities( applicationScope );
     }
 
 
     /**
-     * Write the cursor state to the map in cassandra
+     * Get the index response from the jobId, summing the progress of its partitions
+     * @param jobId
+     * @return
      */
-    private void writeCursorState( final String jobId, final EdgeScope edge ) {
-
-        final JsonNode node = EdgeScopeSerializer.INSTANCE.toNode( CursorSerializerUtil.getMapper(), edge );
-
-        final String serializedState = CursorSerializerUtil.asString( node );
+    private ReIndexStatus getIndexResponse( final String jobId ) {
 
-        mapManager.putString( jobId + MAP_CURSOR_KEY, serializedState, INDEX_TTL );
-    }
+        final Optional<List<ReIndexPartition>> partitions = jobStore.getPartitions( jobId );
 
+        if ( !partitions.isPresent() ) {
+            final String stringStatus = mapManager.getString( jobId + MAP_STATUS_KEY );
 
-    /**
-     * Write our state meta data into cassandra so everyone can see it
-     * @param jobId
-     * @param status
-     * @param processedCount
-     * @param lastUpdated
-     */
-    private void writeStateMeta( final String jobId, final Status status, final long processedCount,
-                                 final long lastUpdated ) {
+            if ( stringStatus == null ) {
+                return new ReIndexStatus( jobId, Status.UNKNOWN, 0, 0 );
+            }
 
-        if(logger.isDebugEnabled()) {
-            logger.debug( "Flushing state for jobId {}, status {}, processedCount {}, lastUpdated {}",
-                    jobId, status, processedCount, lastUpdated);
+            //still being split into partitions
+            return new ReIndexStatus( jobId, Status.STARTED, 0, 0 );
         }
 
-        mapManager.putString( jobId + MAP_STATUS_KEY, status.name() );
-        mapManager.putLong( jobId + MAP_COUNT_KEY, processedCount );
-        mapManager.putLong( jobId + MAP_UPDATED_KEY, lastUpdated );
-    }
-
+        final int partitionCount = partitions.get().size();
+        final boolean[] completed = jobStore.getCompleted( jobId, partitionCount );
+        final long[] processed = jobStore.getProcessed( jobId, partitionCount );
 
-    /**
-     * Get the index response from the jobId
-     * @param jobId
-     * @return
-     */
-    private ReIndexStatus getIndexResponse( final String jobId ) {
+        long processedCount = 0;
+        int completedCount = 0;
 
-        final String stringStatus = mapManager.getString( jobId+MAP_STATUS_KEY );
+        for ( int i = 0; i < partitionCount; i++ ) {
+            processedCount += processed[i];
 
-        if(stringStatus == null){
-           return new ReIndexStatus( jobId, Status.UNKNOWN, 0, 0 );
+            if ( completed[i] ) {
+                completedCount++;
+            }
         }
 
-        final Status status = Status.valueOf( stringStatus );
+        final Status status;
 
-        final long processedCount = mapManager.getLong( jobId + MAP_COUNT_KEY );
-        final long lastUpdated = mapManager.getLong( jobId + MAP_COUNT_KEY );
+        if ( completedCount == partitionCount ) {
+            status = Status.COMPLETE;
+        }
+        else if ( completedCount > 0 || processedCount > 0 ) {
+            status = Status.INPROGRESS;
+        }
+        else {
+            status = Status.STARTED;
+        }
 
-        return new ReIndexStatus( jobId, status, processedCount, lastUpdated );
+        return new ReIndexStatus( jobId, status, processedCount, jobStore.getLastUpdated( jobId ) );
     }
 }
-
-
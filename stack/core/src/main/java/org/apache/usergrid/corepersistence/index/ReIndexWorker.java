@@ -0,0 +1,411 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.corepersistence.index;
+
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.corepersistence.asyncevents.AsyncEventService;
+import org.apache.usergrid.corepersistence.rx.impl.AllEntityIdsObservable;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.graph.Edge;
+import org.apache.usergrid.persistence.model.util.UUIDGenerator;
+
+import com.codahale.metrics.Meter;
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import rx.Observable;
+
+
+/**
+ * Runs the partitions of re-index jobs on this node.  Every node polls the active jobs and claims the lease of
+ * partitions no other node holds, up to the re-index concurrency factor.  A partition is checkpointed after each
+ * buffer is sent to be indexed, and a node that fails leaves its lease to expire so another node resumes from the
+ * checkpoint.
+ *
+ * The rate limit is shared across nodes by the leases they hold, each node takes its share of the partitions being
+ * run.
+ *
+ * Nothing runs until {@link #startPolling()} is called, and {@link #shutdown()} abandons the running partitions after
+ * their current buffer, leaving their leases to expire.
+ */
+@Singleton
+public class ReIndexWorker {
+
+    private static final Logger logger = LoggerFactory.getLogger( ReIndexWorker.class );
+
+    private final ReIndexJobStore jobStore;
+    private final AllEntityIdsObservable allEntityIdsObservable;
+    private final AsyncEventService indexService;
+    private final IndexProcessorFig indexProcessorFig;
+
+    private final String nodeId = UUIDGenerator.newTimeUUID().toString();
+
+    private final Optional<RateLimiter> rateLimiter;
+    private final Semaphore wakeup = new Semaphore( 0 );
+
+    /**
+     * Runs the claimed partitions, null until started
+     */
+    private volatile ExecutorService executor;
+
+    private Thread poller;
+
+    private volatile boolean stopped;
+
+    /**
+     * The partitions running on this node
+     */
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The jobs started on this node, added to the active jobs again until they complete
+     */
+    private final Set<String> startedJobs = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The partitions of active jobs, they never change once written
+     */
+    private final Map<String, List<ReIndexPartition>> partitions = new ConcurrentHashMap<>();
+
+    private final Meter indexedMeter;
+    private final Meter completedMeter;
+
+
+    @Inject
+    public ReIndexWorker( final ReIndexJobStore jobStore, final AllEntityIdsObservable allEntityIdsObservable,
+                          final AsyncEventService indexService, final IndexProcessorFig indexProcessorFig,
+                          final MetricsFactory metricsFactory ) {
+        this.jobStore = jobStore;
+        this.allEntityIdsObservable = allEntityIdsObservable;
+        this.indexService = indexService;
+        this.indexProcessorFig = indexProcessorFig;
+
+        final int rateLimit = indexProcessorFig.getReindexRateLimit();
+        this.rateLimiter = rateLimit > 0 ? Optional.of( RateLimiter.create( rateLimit ) ) : Optional.absent();
+
+        this.indexedMeter = metricsFactory.getMeter( ReIndexWorker.class, "reindex.entities" );
+        this.completedMeter = metricsFactory.getMeter( ReIndexWorker.class, "reindex.partitions.completed" );
+    }
+
+
+    /**
+     * Start running partitions, and polling the active jobs if a poll interval is set
+     */
+    public synchronized void startPolling() {
+        if ( executor != null || stopped ) {
+            return;
+        }
+
+        executor = Executors.newFixedThreadPool( indexProcessorFig.getReindexConcurrencyFactor(),
+            new ThreadFactoryBuilder().setDaemon( true ).setNameFormat( "ReIndex-partition-%d" ).build() );
+
+        if ( indexProcessorFig.getReindexPollInterval() > 0 ) {
+            poller = new Thread( this::pollUntilInterrupted, "ReIndex-poller" );
+            poller.setDaemon( true );
+            poller.start();
+        }
+    }
+
+
+    /**
+     * Stop polling, and abandon the running partitions once their current buffer is checkpointed.  Their leases are
+     * left to expire, so other nodes resume them from the checkpoint.
+     */
+    public synchronized void shutdown() {
+        stopped = true;
+
+        if ( poller != null ) {
+            poller.interrupt();
+        }
+
+        if ( executor == null ) {
+            return;
+        }
+
+        executor.shutdown();
+
+        try {
+            if ( !executor.awaitTermination( indexProcessorFig.getReindexLeaseSeconds(), TimeUnit.SECONDS ) ) {
+                logger.warn( "Re-index partitions did not stop within their lease, interrupting them" );
+                executor.shutdownNow();
+            }
+        }
+        catch ( InterruptedException e ) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Start a job whose partitions have been written
+     */
+    public void start( final String jobId ) {
+        startedJobs.add( jobId );
+        jobStore.addActiveJob( jobId );
+
+        wakeup.release();
+    }
+
+
+    private void pollUntilInterrupted() {
+        final long pollInterval = indexProcessorFig.getReindexPollInterval();
+
+        while ( !Thread.currentThread().isInterrupted() ) {
+            try {
+                poll();
+
+                wakeup.tryAcquire( pollInterval, TimeUnit.MILLISECONDS );
+                wakeup.drainPermits();
+            }
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+            catch ( Throwable t ) {
+                logger.error( "Unable to poll re-index jobs", t );
+
+                try {
+                    Thread.sleep( pollInterval );
+                }
+                catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Claim any partitions of the active jobs this node has room for, and remove the jobs that are complete
+     */
+    void poll() {
+        final Set<String> activeJobs = jobStore.getActiveJobs();
+
+        for ( final String jobId : startedJobs ) {
+            if ( activeJobs.add( jobId ) ) {
+                jobStore.addActiveJob( jobId );
+            }
+        }
+
+        int leased = 0;
+
+        for ( final String jobId : activeJobs ) {
+            final List<ReIndexPartition> jobPartitions = getPartitions( jobId );
+
+            //the job is still being planned
+            if ( jobPartitions == null ) {
+                continue;
+            }
+
+            final boolean[] completed = jobStore.getCompleted( jobId, jobPartitions.size() );
+            final List<String> leases = jobStore.getLeases( jobId, jobPartitions.size() );
+
+            boolean complete = true;
+
+            for ( int i = 0; i < jobPartitions.size(); i++ ) {
+                if ( completed[i] ) {
+                    continue;
+                }
+
+                complete = false;
+
+                if ( leases.get( i ) != null ) {
+                    leased++;
+                }
+                else if ( claim( jobId, i, jobPartitions.get( i ) ) ) {
+                    leased++;
+                }
+            }
+
+            if ( complete ) {
+                logger.info( "Re-index job {} is complete", jobId );
+
+                jobStore.removeActiveJob( jobId );
+                startedJobs.remove( jobId );
+                partitions.remove( jobId );
+            }
+        }
+
+        updateRate( leased );
+    }
+
+
+    private List<ReIndexPartition> getPartitions( final String jobId ) {
+        List<ReIndexPartition> jobPartitions = partitions.get( jobId );
+
+        if ( jobPartitions == null ) {
+            final Optional<List<ReIndexPartition>> stored = jobStore.getPartitions( jobId );
+
+            if ( !stored.isPresent() ) {
+                return null;
+            }
+
+            jobPartitions = stored.get();
+            partitions.put( jobId, jobPartitions );
+        }
+
+        return jobPartitions;
+    }
+
+
+    /**
+     * Claim the partition if this node has room for it, and run it
+     */
+    private boolean claim( final String jobId, final int partition, final ReIndexPartition reIndexPartition ) {
+        if ( executor == null || stopped || running.size() >= indexProcessorFig.getReindexConcurrencyFactor() ) {
+            return false;
+        }
+
+        final String runningKey = jobId + ":" + partition;
+
+        if ( !running.add( runningKey ) ) {
+            return false;
+        }
+
+        if ( !jobStore.claim( jobId, partition, nodeId, indexProcessorFig.getReindexLeaseSeconds() ) ) {
+            running.remove( runningKey );
+            return false;
+        }
+
+        try {
+            executor.execute( () -> {
+                try {
+                    run( jobId, partition, reIndexPartition );
+                }
+                catch ( Throwable t ) {
+                    //leave the lease to expire, so the partition is resumed after the node recovers
+                    logger.error( "Unable to re-index partition {} of job {}", reIndexPartition, jobId, t );
+                }
+                finally {
+                    running.remove( runningKey );
+                }
+            } );
+        }
+        catch ( RejectedExecutionException e ) {
+            //shut down after the claim, the lease expires like an abandoned partition's
+            running.remove( runningKey );
+            return false;
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Send the entities of the partition to be indexed from its checkpoint.  The edges are buffered in order and each
+     * buffer is checkpointed after it has been sent, so the partition never resumes past an edge that wasn't sent.
+     */
+    void run( final String jobId, final int partition, final ReIndexPartition reIndexPartition ) {
+
+        final ReIndexJobStore.Checkpoint checkpoint = jobStore.getCheckpoint( jobId, partition, reIndexPartition );
+        final long updatedSince = jobStore.getUpdatedSince( jobId );
+        final int leaseSeconds = indexProcessorFig.getReindexLeaseSeconds();
+
+        logger.info( "Re-indexing partition {} of job {} from {} entities", reIndexPartition, jobId,
+            checkpoint.getProcessed() );
+
+        final AtomicBoolean lost = new AtomicBoolean();
+        final AtomicBoolean abandoned = new AtomicBoolean();
+
+        final ReIndexJobStore.Checkpoint last = allEntityIdsObservable
+            .getEdgesToEntities( Observable.just( reIndexPartition.getApplicationScope() ),
+                Optional.of( reIndexPartition.getEdgeType() ), checkpoint.getLastEdge() )
+            .buffer( indexProcessorFig.getReindexBufferSize() )
+            .takeWhile( edges -> {
+                if ( stopped ) {
+                    abandoned.set( true );
+                    return false;
+                }
+
+                if ( jobStore.renew( jobId, partition, nodeId, leaseSeconds ) ) {
+                    return true;
+                }
+
+                lost.set( true );
+                return false;
+            } )
+            .scan( checkpoint, ( previous, edges ) -> {
+                if ( rateLimiter.isPresent() ) {
+                    rateLimiter.get().acquire( edges.size() );
+                }
+
+                indexService.indexBatch( edges, updatedSince );
+                indexedMeter.mark( edges.size() );
+
+                final Edge lastEdge = edges.get( edges.size() - 1 ).getEdge();
+                final ReIndexJobStore.Checkpoint next =
+                    new ReIndexJobStore.Checkpoint( Optional.of( lastEdge ), previous.getProcessed() + edges.size() );
+
+                jobStore.putCheckpoint( jobId, partition, next );
+
+                return next;
+            } )
+            .toBlocking().last();
+
+        if ( lost.get() ) {
+            logger.info( "Partition {} of job {} was taken over by another node after {} entities", reIndexPartition,
+                jobId, last.getProcessed() );
+            return;
+        }
+
+        if ( abandoned.get() ) {
+            logger.info( "Abandoned partition {} of job {} after {} entities, its lease will expire", reIndexPartition,
+                jobId, last.getProcessed() );
+            return;
+        }
+
+        jobStore.complete( jobId, partition, last.getProcessed() );
+        completedMeter.mark();
+
+        logger.info( "Re-indexed partition {} of job {}, {} entities", reIndexPartition, jobId,
+            last.getProcessed() );
+    }
+
+
+    /**
+     * Take this node's share of the rate limit, by the partitions it runs out of every partition leased
+     */
+    private void updateRate( final int leased ) {
+        if ( !rateLimiter.isPresent() ) {
+            return;
+        }
+
+        final double share = leased == 0 ? 1 : Math.min( 1, ( double ) Math.max( running.size(), 1 ) / leased );
+
+        rateLimiter.get().setRate( indexProcessorFig.getReindexRateLimit() * share );
+    }
+}
@@ -43,12 +43,13 @@ import java.util.Collection;
 /**
  * Command for reading graph edges
  */
-public abstract class AbstractElasticSearchFilter extends AbstractPathFilter<Id, Candidate, Integer> {
+public abstract class AbstractElasticSearchFilter extends AbstractPathFilter<Id, Candidate, ElasticsearchCursor> {
 
     private static final Logger logger = LoggerFactory.getLogger( AbstractElasticSearchFilter.class );
 
     private final EntityIndexFactory entityIndexFactory;
     private final IndexLocationStrategyFactory indexLocationStrategyFactory;
+    private final StaleCandidateTracker staleCandidateTracker;
     private final String query;
     private final Timer searchTimer;
 
@@ -59,9 +60,11 @@ public abstract class AbstractElasticSearchFilter extends AbstractPathFilter<Id,
     public AbstractElasticSearchFilter( final EntityIndexFactory entityIndexFactory,
                                         final MetricsFactory metricsFactory,
                                         final IndexLocationStrategyFactory indexLocationStrategyFactory,
+                                        final StaleCandidateTracker staleCandidateTracker,
                                         final String query ) {
         this.entityIndexFactory = entityIndexFactory;
         this.indexLocationStrategyFactory = indexLocationStrategyFactory;
+        this.staleCandidateTracker = staleCandidateTracker;
         this.query = query;
         this.searchTimer = metricsFactory.getTimer( AbstractElasticSearchFilter.class, "query.search" );
     }
@@ -92,11 +95,14 @@ public abstract class AbstractElasticSearchFilter extends AbstractPathFilter<Id,
                 //our offset to our start value.  This will be set the first time we emit
                 //after we receive new ids, we want to reset this to 0
                 //set our our constant state
-                final Optional<Integer> startFromCursor = getSeekValue();
+                final Optional<ElasticsearchCursor> startFromCursor = getSeekValue();
 
-                final int startOffset = startFromCursor.or( 0 );
+                int currentOffSet = startFromCursor.isPresent() ? startFromCursor.get().getOffset() : 0;
 
-                int currentOffSet = startOffset;
+                //in the default sort order we resume behind the last candidate instead of skipping an offset,
+                //so later pages cost the same as the first
+                Optional<SearchSeek> currentSeek =
+                    startFromCursor.isPresent() ? startFromCursor.get().getSeek() : Optional.<SearchSeek>absent();
 
                 subscriber.onStart();
 
@@ -104,12 +110,18 @@ public abstract class AbstractElasticSearchFilter extends AbstractPathFilter<Id,
                 while ( !subscriber.isUnsubscribed() ) {
 
                     try {
-                        final CandidateResults candidateResults =
-                            applicationEntityIndex.search( searchEdge, searchTypes, query, limit, currentOffSet );
+                        //fetch extra candidates when this edge often returns stale ones, so the page fills from a
+                        //single search.  Anything past the page is left behind the cursor for the next request
+                        final int fetchSize = staleCandidateTracker.getFetchSize( searchEdge, limit );
+
+                        final CandidateResults candidateResults = currentSeek.isPresent() ?
+                            applicationEntityIndex.search( searchEdge, searchTypes, query, fetchSize, currentSeek.get() ) :
+                            applicationEntityIndex.search( searchEdge, searchTypes, query, fetchSize, currentOffSet );
 
 
                         Collection<SelectFieldMapping> fieldMappingCollection = candidateResults.getGetFieldMappings();
 
+                        int index = 0;
 
                         for( CandidateResult candidateResult: candidateResults){
 
@@ -118,20 +130,32 @@ public abstract class AbstractElasticSearchFilter extends AbstractPathFilter<Id,
                                 return;
                             }
 
-                            final Candidate candidate = new Candidate( candidateResult, searchEdge, fieldMappingCollection );
+                            final Candidate candidate = new Candidate( candidateResult, searchEdge, fieldMappingCollection,
+                                index == candidateResults.size() - 1 );
+
+                            //the cursor points at this candidate, so it resumes behind the previous one
+                            final ElasticsearchCursor cursor = currentSeek.isPresent() ?
+                                ElasticsearchCursor.fromSeek( currentSeek.get() ) :
+                                ElasticsearchCursor.fromOffset( currentOffSet );
 
                             final FilterResult<Candidate>
-                                result = createFilterResult( candidate, currentOffSet, idFilterResult.getPath() );
+                                result = createFilterResult( candidate, cursor, idFilterResult.getPath() );
 
                             subscriber.onNext( result );
 
                             currentOffSet++;
+
+                            if ( candidateResults.hasSeeks() ) {
+                                currentSeek = candidateResults.getSeek( index );
+                            }
+
+                            index++;
                         }
 
                         /**
                          * No candidates, we're done
                          */
-                        if (candidateResults.size() < limit) {
+                        if (candidateResults.size() < fetchSize) {
                             subscriber.onCompleted();
                             return;
                         }
@@ -155,7 +179,7 @@ public abstract class AbstractElasticSearchFilter extends AbstractPathFilter<Id,
 
 
     @Override
-    protected CursorSerializer<Integer> getCursorSerializer() {
+    protected CursorSerializer<ElasticsearchCursor> getCursorSerializer() {
         return ElasticsearchCursorSerializer.INSTANCE;
     }
 
@@ -36,6 +36,7 @@ public class Candidate {
     private final CandidateResult candidateResult;
     private final SearchEdge searchEdge;
     private final Collection<SelectFieldMapping>  fields;
+    private final boolean lastInSearch;
 
 
     /**
@@ -45,9 +46,23 @@ public class Candidate {
      * @param fields
      */
     public Candidate( final CandidateResult candidateResult, final SearchEdge searchEdge, final Collection<SelectFieldMapping> fields ) {
+        this( candidateResult, searchEdge, fields, false );
+    }
+
+
+    /**
+     * Create a new Candidate for further processing
+     * @param candidateResult  The candidate result
+     * @param searchEdge The search edge this was searched on
+     * @param fields
+     * @param lastInSearch True if this is the last candidate returned by its search request
+     */
+    public Candidate( final CandidateResult candidateResult, final SearchEdge searchEdge,
+                      final Collection<SelectFieldMapping> fields, final boolean lastInSearch ) {
         this.candidateResult = candidateResult;
         this.searchEdge = searchEdge;
         this.fields = fields;
+        this.lastInSearch = lastInSearch;
     }
 
 
@@ -61,4 +76,12 @@ public class Candidate {
     }
 
     public Collection<SelectFieldMapping>  getFields(){ return fields; }
+
+
+    /**
+     * Return true if this is the last candidate returned by the search request that found it
+     */
+    public boolean isLastInSearch() {
+        return lastInSearch;
+    }
 }
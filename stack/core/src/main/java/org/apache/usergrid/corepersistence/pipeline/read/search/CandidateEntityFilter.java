@@ -23,8 +23,8 @@ package org.apache.usergrid.corepersistence.pipeline.read.search;
 import java.util.*;
 
 import org.apache.usergrid.corepersistence.index.IndexLocationStrategyFactory;
+import org.apache.usergrid.corepersistence.index.IndexRepairQueue;
 import org.apache.usergrid.persistence.index.*;
-import org.apache.usergrid.persistence.index.impl.IndexProducer;
 import org.apache.usergrid.persistence.model.field.DistanceField;
 import org.apache.usergrid.persistence.model.field.DoubleField;
 import org.apache.usergrid.persistence.model.field.Field;
@@ -38,15 +38,19 @@ import org.apache.usergrid.persistence.collection.EntityCollectionManager;
 import org.apache.usergrid.persistence.collection.EntityCollectionManagerFactory;
 import org.apache.usergrid.persistence.collection.EntitySet;
 import org.apache.usergrid.persistence.collection.MvccEntity;
+import org.apache.usergrid.persistence.collection.MvccLogEntry;
+import org.apache.usergrid.persistence.collection.serialization.impl.EntitySetImpl;
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.model.entity.Entity;
 import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.Query;
 
 import com.fasterxml.uuid.UUIDComparator;
 import com.google.common.base.Optional;
 import com.google.inject.Inject;
 
 import rx.Observable;
+import rx.Subscriber;
 
 
 /**
@@ -59,19 +63,22 @@ public class CandidateEntityFilter extends AbstractFilter<FilterResult<Candidate
     private final EntityCollectionManagerFactory entityCollectionManagerFactory;
     private final EntityIndexFactory entityIndexFactory;
     private final IndexLocationStrategyFactory indexLocationStrategyFactory;
-    private final IndexProducer indexProducer;
+    private final IndexRepairQueue indexRepairQueue;
+    private final StaleCandidateTracker staleCandidateTracker;
 
 
     @Inject
     public CandidateEntityFilter( final EntityCollectionManagerFactory entityCollectionManagerFactory,
                                   final EntityIndexFactory entityIndexFactory,
                                   final IndexLocationStrategyFactory indexLocationStrategyFactory,
-                                  final IndexProducer indexProducer
+                                  final IndexRepairQueue indexRepairQueue,
+                                  final StaleCandidateTracker staleCandidateTracker
                                   ) {
         this.entityCollectionManagerFactory = entityCollectionManagerFactory;
         this.entityIndexFactory = entityIndexFactory;
         this.indexLocationStrategyFactory = indexLocationStrategyFactory;
-        this.indexProducer = indexProducer;
+        this.indexRepairQueue = indexRepairQueue;
+        this.staleCandidateTracker = staleCandidateTracker;
     }
 
 
@@ -94,8 +101,9 @@ public class CandidateEntityFilter extends AbstractFilter<FilterResult<Candidate
         final EntityIndex applicationIndex =
             entityIndexFactory.createEntityIndex(indexLocationStrategyFactory.getIndexLocationStrategy(applicationScope) );
 
-        //buffer them to get a page size we can make 1 network hop
-        final Observable<FilterResult<Entity>> searchIdSetObservable = candidateResultsObservable.buffer( pipelineContext.getLimit() )
+        //buffer each search response, which may be larger than our limit, so we can make 1 network hop
+        final Observable<FilterResult<Entity>> searchIdSetObservable = candidateResultsObservable
+            .lift( new SearchResponseBuffer( pipelineContext.getLimit() ) )
 
             //load them
             .flatMap( candidateResults -> {
@@ -108,14 +116,33 @@ public class CandidateEntityFilter extends AbstractFilter<FilterResult<Candidate
                 final Observable<FilterResult<Entity>> entitySetObservable =
                     candidates.flatMap(candidatesList -> {
                         Collection<SelectFieldMapping> mappings = candidatesList.get(0).getFields();
-                        Observable<EntitySet> entitySets = Observable.from(candidatesList)
-                            .map(candidateEntry -> candidateEntry.getCandidateResult().getId()).toList()
-                            .flatMap(idList -> entityCollectionManager.load(idList));
-                        //now we have a collection, validate our canidate set is correct.
-                        return entitySets.map(
-                            entitySet -> new EntityVerifier(
-                                applicationIndex.createBatch(), entitySet, candidateResults,indexProducer)
-                        )
+
+                        //verify the candidates whose selects were read from the index, then load everything else
+                        Observable<EntityVerifier> entityVerifiers = verifyProjections( entityCollectionManager, candidatesList )
+                            .flatMap( projections -> {
+                                final List<Id> idList = new ArrayList<>( candidatesList.size() );
+
+                                for ( final Candidate candidate : candidatesList ) {
+                                    final CandidateResult candidateResult = candidate.getCandidateResult();
+
+                                    if ( !isProjected( projections, candidateResult ) ) {
+                                        idList.add( candidateResult.getId() );
+                                    }
+                                }
+
+                                final Observable<EntitySet> entitySets = idList.isEmpty()
+                                    ? Observable.just( new EntitySetImpl( 0 ) )
+                                    : entityCollectionManager.load( idList );
+
+                                //now we have a collection, validate our canidate set is correct.
+                                return entitySets.map(
+                                    entitySet -> new EntityVerifier(
+                                        applicationIndex, entitySet, projections, candidateResults, indexRepairQueue,
+                                        staleCandidateTracker)
+                                );
+                            } );
+
+                        return entityVerifiers
                             .doOnNext(entityCollector -> entityCollector.merge())
                             .flatMap(entityCollector -> Observable.from(entityCollector.getResults()))
                             .map(entityFilterResult -> {
@@ -146,6 +173,133 @@ public class CandidateEntityFilter extends AbstractFilter<FilterResult<Candidate
 
 
 
+    /**
+     * Check the candidates that were projected from the index are still the latest version of their entity, which
+     * only reads the entity log instead of the entity data.
+     *
+     * @return The entities built from the projected fields of current candidates, keyed by id
+     */
+    private static Observable<Map<Id, Entity>> verifyProjections( final EntityCollectionManager entityCollectionManager,
+                                                                  final List<Candidate> candidates ) {
+
+        final List<CandidateResult> projected = new ArrayList<>();
+
+        for ( final Candidate candidate : candidates ) {
+            if ( candidate.getCandidateResult().getProjection().isPresent() ) {
+                projected.add( candidate.getCandidateResult() );
+            }
+        }
+
+        if ( projected.isEmpty() ) {
+            return Observable.just( Collections.<Id, Entity>emptyMap() );
+        }
+
+        final List<Id> ids = new ArrayList<>( projected.size() );
+
+        for ( final CandidateResult candidateResult : projected ) {
+            ids.add( candidateResult.getId() );
+        }
+
+        return entityCollectionManager.getLatestVersion( ids ).map( versionSet -> {
+
+            final Map<Id, Entity> entities = new HashMap<>( projected.size() );
+
+            for ( final CandidateResult candidateResult : projected ) {
+                final MvccLogEntry logEntry = versionSet.getMaxVersion( candidateResult.getId() );
+
+                //anything else is verified against the loaded entity as usual
+                if ( logEntry == null || !candidateResult.getVersion().equals( logEntry.getVersion() )
+                    || logEntry.getState() != MvccLogEntry.State.COMPLETE ) {
+                    continue;
+                }
+
+                final Entity entity = new Entity( candidateResult.getId(), candidateResult.getVersion() );
+
+                for ( final Field field : candidateResult.getProjection().get().values() ) {
+                    entity.setField( field );
+                }
+
+                entities.put( candidateResult.getId(), entity );
+            }
+
+            return entities;
+        } );
+    }
+
+
+    /**
+     * Return true if the candidate was verified from its projection, and doesn't need loading
+     */
+    private static boolean isProjected( final Map<Id, Entity> projections, final CandidateResult candidateResult ) {
+        final Entity projection = projections.get( candidateResult.getId() );
+
+        return projection != null && projection.getVersion().equals( candidateResult.getVersion() );
+    }
+
+
+    /**
+     * Buffers candidates until the last candidate of a search response, so each response is verified with a single load
+     * from cassandra no matter how many candidates were over-fetched.  Buffers never exceed {@link Query#MAX_LIMIT}
+     */
+    private static final class SearchResponseBuffer
+        implements Observable.Operator<List<FilterResult<Candidate>>, FilterResult<Candidate>> {
+
+        private final int maxSize;
+
+
+        private SearchResponseBuffer( final int limit ) {
+            this.maxSize = Math.max( limit, Query.MAX_LIMIT );
+        }
+
+
+        @Override
+        public Subscriber<? super FilterResult<Candidate>> call(
+            final Subscriber<? super List<FilterResult<Candidate>>> child ) {
+
+            final Subscriber<FilterResult<Candidate>> parent = new Subscriber<FilterResult<Candidate>>() {
+
+                private List<FilterResult<Candidate>> buffer = new ArrayList<>();
+
+
+                @Override
+                public void onNext( final FilterResult<Candidate> candidate ) {
+                    buffer.add( candidate );
+
+                    if ( candidate.getValue().isLastInSearch() || buffer.size() >= maxSize ) {
+                        final List<FilterResult<Candidate>> full = buffer;
+                        buffer = new ArrayList<>();
+                        child.onNext( full );
+                    }
+                }
+
+
+                @Override
+                public void onCompleted() {
+                    final List<FilterResult<Candidate>> remaining = buffer;
+                    buffer = null;
+
+                    if ( !remaining.isEmpty() ) {
+                        child.onNext( remaining );
+                    }
+
+                    child.onCompleted();
+                }
+
+
+                @Override
+                public void onError( final Throwable e ) {
+                    buffer = null;
+                    child.onError( e );
+                }
+            };
+
+            child.add( parent );
+
+            return parent;
+        }
+    }
+
+
     /**
      * Our collector to collect entities.  Not quite a true collector, but works within our operational flow as this state is mutable and difficult to represent functionally
      */
@@ -154,20 +308,26 @@ public class CandidateEntityFilter extends AbstractFilter<FilterResult<Candidate
         private static final Logger logger = LoggerFactory.getLogger( EntityVerifier.class );
         private List<FilterResult<Entity>> results = new ArrayList<>();
 
-        private final EntityIndexBatch batch;
+        private final EntityIndex entityIndex;
         private final List<FilterResult<Candidate>> candidateResults;
-        private final IndexProducer indexProducer;
+        private final IndexRepairQueue indexRepairQueue;
+        private final StaleCandidateTracker staleCandidateTracker;
         private final EntitySet entitySet;
+        private final Map<Id, Entity> projections;
 
 
-        public EntityVerifier( final EntityIndexBatch batch, final EntitySet entitySet,
+        public EntityVerifier( final EntityIndex entityIndex, final EntitySet entitySet,
+                               final Map<Id, Entity> projections,
                                final List<FilterResult<Candidate>> candidateResults,
-                               final IndexProducer indexProducer) {
-            this.batch = batch;
+                               final IndexRepairQueue indexRepairQueue,
+                               final StaleCandidateTracker staleCandidateTracker ) {
+            this.entityIndex = entityIndex;
             this.entitySet = entitySet;
+            this.projections = projections;
             this.candidateResults = candidateResults;
-            this.indexProducer = indexProducer;
-            this.results = new ArrayList<>( entitySet.size() );
+            this.indexRepairQueue = indexRepairQueue;
+            this.staleCandidateTracker = staleCandidateTracker;
+            this.results = new ArrayList<>( entitySet.size() + projections.size() );
         }
 
 
@@ -176,11 +336,28 @@ public class CandidateEntityFilter extends AbstractFilter<FilterResult<Candidate
          */
         public void merge() {
 
+            //candidates and results on each edge, almost always just one
+            final Map<SearchEdge, int[]> edgeCounts = new HashMap<>( 1 );
+
             for ( final FilterResult<Candidate> candidateResult : candidateResults ) {
+                final int before = results.size();
+
                 validate( candidateResult );
+
+                int[] counts = edgeCounts.get( candidateResult.getValue().getSearchEdge() );
+                if ( counts == null ) {
+                    counts = new int[2];
+                    edgeCounts.put( candidateResult.getValue().getSearchEdge(), counts );
+                }
+
+                counts[0]++;
+                counts[1] += results.size() - before;
             }
 
-            indexProducer.put(batch.build()).toBlocking().lastOrDefault(null); // want to rethrow if batch fails
+            for ( final Map.Entry<SearchEdge, int[]> entry : edgeCounts.entrySet() ) {
+                final int[] counts = entry.getValue();
+                staleCandidateTracker.record( entry.getKey(), counts[0], counts[0] - counts[1] );
+            }
 
         }
 
@@ -190,21 +367,22 @@ public class CandidateEntityFilter extends AbstractFilter<FilterResult<Candidate
         }
 
 
-        public EntityIndexBatch getBatch() {
-            return batch;
-        }
-
-
         private void validate( final FilterResult<Candidate> filterResult ) {
 
             final Candidate candidate = filterResult.getValue();
             final CandidateResult candidateResult = candidate.getCandidateResult();
-            final boolean isGeo = candidateResult instanceof GeoCandidateResult;
             final SearchEdge searchEdge = candidate.getSearchEdge();
             final Id candidateId = candidateResult.getId();
             final UUID candidateVersion = candidateResult.getVersion();
 
 
+            //the candidate is the latest version, return the fields we read from the index
+            if ( isProjected( projections, candidateResult ) ) {
+                addResult( filterResult, projections.get( candidateId ) );
+                return;
+            }
+
+
             final MvccEntity entity = entitySet.getEntity( candidateId );
 
 
@@ -240,7 +418,7 @@ public class CandidateEntityFilter extends AbstractFilter<FilterResult<Candidate
                         searchEdge, entityId, entityVersion);
                 }
 
-                batch.deindex( searchEdge, entityId, candidateVersion );
+                indexRepairQueue.deindex( entityIndex, searchEdge, entityId, candidateVersion );
                 return;
             }
 
@@ -259,8 +437,15 @@ public class CandidateEntityFilter extends AbstractFilter<FilterResult<Candidate
 
             //they're the same add it
 
-            final Entity returnEntity = entity.getEntity().get();
-            if(isGeo){
+            addResult( filterResult, entity.getEntity().get() );
+        }
+
+
+        private void addResult( final FilterResult<Candidate> filterResult, final Entity returnEntity ) {
+
+            final CandidateResult candidateResult = filterResult.getValue().getCandidateResult();
+
+            if ( candidateResult instanceof GeoCandidateResult ) {
                 returnEntity.setField(new DistanceField(((GeoCandidateResult)candidateResult).getDistance()));
             }
 
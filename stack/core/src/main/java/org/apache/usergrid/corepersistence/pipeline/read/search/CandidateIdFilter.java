@@ -25,8 +25,8 @@ import java.util.List;
 import java.util.UUID;
 
 import org.apache.usergrid.corepersistence.index.IndexLocationStrategyFactory;
+import org.apache.usergrid.corepersistence.index.IndexRepairQueue;
 import org.apache.usergrid.persistence.index.*;
-import org.apache.usergrid.persistence.index.impl.IndexProducer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,18 +54,18 @@ public class CandidateIdFilter extends AbstractFilter<FilterResult<Candidate>, F
     private final EntityCollectionManagerFactory entityCollectionManagerFactory;
     private final EntityIndexFactory entityIndexFactory;
     private final IndexLocationStrategyFactory indexLocationStrategyFactory;
-    private final IndexProducer indexProducer;
+    private final IndexRepairQueue indexRepairQueue;
 
 
     @Inject
     public CandidateIdFilter( final EntityCollectionManagerFactory entityCollectionManagerFactory,
                               final EntityIndexFactory entityIndexFactory,
                               final IndexLocationStrategyFactory indexLocationStrategyFactory,
-                              final IndexProducer indexProducer) {
+                              final IndexRepairQueue indexRepairQueue) {
         this.entityCollectionManagerFactory = entityCollectionManagerFactory;
         this.entityIndexFactory = entityIndexFactory;
         this.indexLocationStrategyFactory = indexLocationStrategyFactory;
-        this.indexProducer = indexProducer;
+        this.indexRepairQueue = indexRepairQueue;
     }
 
 
@@ -100,8 +100,8 @@ public class CandidateIdFilter extends AbstractFilter<FilterResult<Candidate>, F
                     //now we have a collection, validate our canidate set is correct.
 
                     return versionSetObservable.map(
-                        entitySet -> new EntityCollector( applicationIndex.createBatch(), entitySet,
-                            candidateResults, indexProducer ) ).doOnNext( entityCollector -> entityCollector.merge() ).flatMap(
+                        entitySet -> new EntityCollector( applicationIndex, entitySet,
+                            candidateResults, indexRepairQueue ) ).doOnNext( entityCollector -> entityCollector.merge() ).flatMap(
                         entityCollector -> Observable.from( entityCollector.collectResults() ) );
                 } );
 
@@ -117,18 +117,19 @@ public class CandidateIdFilter extends AbstractFilter<FilterResult<Candidate>, F
         private static final Logger logger = LoggerFactory.getLogger( EntityCollector.class );
         private List<FilterResult<Id>> results = new ArrayList<>();
 
-        private final EntityIndexBatch batch;
+        private final EntityIndex entityIndex;
         private final List<FilterResult<Candidate>> candidateResults;
-        private final IndexProducer indexProducer;
+        private final IndexRepairQueue indexRepairQueue;
         private final VersionSet versionSet;
 
 
-        public EntityCollector( final EntityIndexBatch batch, final VersionSet versionSet,
-                                final List<FilterResult<Candidate>> candidateResults, final IndexProducer indexProducer ) {
-            this.batch = batch;
+        public EntityCollector( final EntityIndex entityIndex, final VersionSet versionSet,
+                                final List<FilterResult<Candidate>> candidateResults,
+                                final IndexRepairQueue indexRepairQueue ) {
+            this.entityIndex = entityIndex;
             this.versionSet = versionSet;
             this.candidateResults = candidateResults;
-            this.indexProducer = indexProducer;
+            this.indexRepairQueue = indexRepairQueue;
             this.results = new ArrayList<>( versionSet.size() );
         }
 
@@ -142,8 +143,6 @@ public class CandidateIdFilter extends AbstractFilter<FilterResult<Candidate>, F
                 validate( candidateResult );
             }
 
-            indexProducer.put( batch.build()).toBlocking().lastOrDefault(null);//want to rethrow if batch fails
-
         }
 
 
@@ -174,7 +173,7 @@ public class CandidateIdFilter extends AbstractFilter<FilterResult<Candidate>, F
 
                 logger.warn( "Deindexing stale entity on edge {} for entityId {} and version {}",
                         searchEdge, entityId, entityVersion );
-                batch.deindex( searchEdge, entityId, entityVersion );
+                indexRepairQueue.deindex( entityIndex, searchEdge, entityId, entityVersion );
                 return;
             }
 
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.corepersistence.pipeline.read.search;
+
+
+import java.io.Serializable;
+import java.util.UUID;
+
+import org.apache.usergrid.persistence.index.SearchSeek;
+import org.apache.usergrid.persistence.model.entity.SimpleId;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Optional;
+
+
+/**
+ * The position of a candidate in an Elasticsearch search.  Queries in the default sort order resume directly behind
+ * the sort values of the previous candidate, all other queries resume at an offset.
+ */
+@JsonInclude( JsonInclude.Include.NON_NULL )
+public class ElasticsearchCursor implements Serializable {
+
+    @JsonProperty
+    private int offset;
+
+    @JsonProperty
+    private Long edgeTimestamp;
+
+    @JsonProperty
+    private UUID entityUuid;
+
+    @JsonProperty
+    private String entityType;
+
+    @JsonProperty
+    private UUID entityVersion;
+
+
+    /**
+     * Used by jackson
+     */
+    public ElasticsearchCursor() {
+    }
+
+
+    /**
+     * Create a cursor that resumes at the offset
+     */
+    public static ElasticsearchCursor fromOffset( final int offset ) {
+        final ElasticsearchCursor cursor = new ElasticsearchCursor();
+        cursor.offset = offset;
+
+        return cursor;
+    }
+
+
+    /**
+     * Create a cursor that resumes directly behind the seek
+     */
+    public static ElasticsearchCursor fromSeek( final SearchSeek seek ) {
+        final ElasticsearchCursor cursor = new ElasticsearchCursor();
+        cursor.edgeTimestamp = seek.getEdgeTimestamp();
+        cursor.entityUuid = seek.getEntityId().getUuid();
+        cursor.entityType = seek.getEntityId().getType();
+        cursor.entityVersion = seek.getEntityVersion();
+
+        return cursor;
+    }
+
+
+    /**
+     * The offset to resume at, only used when there is no seek
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+
+    /**
+     * The seek to resume behind, if present
+     */
+    @JsonIgnore
+    public Optional<SearchSeek> getSeek() {
+        if ( edgeTimestamp == null ) {
+            return Optional.absent();
+        }
+
+        return Optional.of(
+            new SearchSeek( edgeTimestamp, new SimpleId( entityUuid, entityType ), entityVersion ) );
+    }
+
+
+    @Override
+    public boolean equals( final Object o ) {
+        if ( this == o ) {
+            return true;
+        }
+        if ( !( o instanceof ElasticsearchCursor ) ) {
+            return false;
+        }
+
+        final ElasticsearchCursor that = ( ElasticsearchCursor ) o;
+
+        return offset == that.offset && getSeek().equals( that.getSeek() );
+    }
+
+
+    @Override
+    public int hashCode() {
+        return 31 * offset + getSeek().hashCode();
+    }
+}
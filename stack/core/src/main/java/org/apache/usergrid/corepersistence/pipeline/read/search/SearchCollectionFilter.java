@@ -50,10 +50,11 @@ public class SearchCollectionFilter extends AbstractElasticSearchFilter {
     public SearchCollectionFilter( final EntityIndexFactory entityIndexFactory,
                                    final IndexLocationStrategyFactory indexLocationStrategyFactory,
                                    final MetricsFactory metricsFactory,
+                                   final StaleCandidateTracker staleCandidateTracker,
                                    @Assisted( "query" ) final String query,
                                    @Assisted( "collectionName" ) final String collectionName,
                                    @Assisted( "entityType" ) final String entityType ) {
-        super( entityIndexFactory, metricsFactory, indexLocationStrategyFactory, query );
+        super( entityIndexFactory, metricsFactory, indexLocationStrategyFactory, staleCandidateTracker, query );
         this.collectionName = collectionName;
         this.entityType = entityType;
     }
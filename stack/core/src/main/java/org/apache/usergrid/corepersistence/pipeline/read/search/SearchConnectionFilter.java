@@ -48,10 +48,11 @@ public class SearchConnectionFilter extends AbstractElasticSearchFilter {
     public SearchConnectionFilter( final EntityIndexFactory entityIndexFactory,
                                    final MetricsFactory metricsFactory,
                                    final IndexLocationStrategyFactory indexLocationStrategyFactory,
+                                   final StaleCandidateTracker staleCandidateTracker,
                                    @Assisted( "query" ) final String query,
                                    @Assisted( "connectionName" ) final String connectionName,
                                    @Assisted( "connectedEntityType" ) final Optional<String> connectedEntityType ) {
-        super( entityIndexFactory, metricsFactory, indexLocationStrategyFactory, query );
+        super( entityIndexFactory, metricsFactory, indexLocationStrategyFactory, staleCandidateTracker, query );
 
         this.connectionName = connectionName;
         this.connectedEntityType = connectedEntityType;
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.corepersistence.pipeline.read.search;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.usergrid.corepersistence.index.CoreIndexFig;
+import org.apache.usergrid.persistence.Query;
+import org.apache.usergrid.persistence.index.SearchEdge;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+
+/**
+ * Tracks the fraction of search candidates on each edge that turn out to be stale, deleted or missing, so searches can
+ * over-fetch enough candidates to fill a page with a single round trip
+ */
+@Singleton
+public class StaleCandidateTracker {
+
+    /**
+     * Weight of the newest observation in the running ratio
+     */
+    private static final double WEIGHT = 0.2;
+
+    /**
+     * Ratios below this aren't worth fetching extra candidates for
+     */
+    private static final double MIN_RATIO = 0.01;
+
+    private final double maxFactor;
+
+    private final Cache<SearchEdge, StaleRatio> ratios;
+
+
+    @Inject
+    public StaleCandidateTracker( final CoreIndexFig coreIndexFig ) {
+        this.maxFactor = Math.max( 1, coreIndexFig.getOverfetchMaxFactor() );
+        this.ratios = CacheBuilder.newBuilder().maximumSize( coreIndexFig.getOverfetchEdgeCount() )
+                                  .expireAfterAccess( 1, TimeUnit.HOURS ).build();
+    }
+
+
+    /**
+     * Get the number of candidates to fetch from the edge to fill a page of the given size
+     */
+    public int getFetchSize( final SearchEdge searchEdge, final int limit ) {
+        final StaleRatio ratio = ratios.getIfPresent( searchEdge );
+
+        if ( ratio == null || ratio.value < MIN_RATIO ) {
+            return limit;
+        }
+
+        final double factor = Math.min( maxFactor, 1 / Math.max( 1 - ratio.value, 1 / maxFactor ) );
+
+        return Math.max( limit, Math.min( Query.MAX_LIMIT, ( int ) Math.ceil( limit * factor ) ) );
+    }
+
+
+    /**
+     * Record how many candidates from the edge were verified, and how many of them were dropped
+     */
+    public void record( final SearchEdge searchEdge, final int candidates, final int dropped ) {
+        if ( candidates == 0 ) {
+            return;
+        }
+
+        final double observed = ( double ) dropped / candidates;
+
+        StaleRatio ratio = ratios.getIfPresent( searchEdge );
+
+        if ( ratio == null ) {
+            //nothing stale on an edge we haven't seen, leave it out of the cache
+            if ( dropped == 0 ) {
+                return;
+            }
+
+            ratio = new StaleRatio( observed );
+            ratios.put( searchEdge, ratio );
+            return;
+        }
+
+        //racing updates can lose an observation, which is fine for an estimate
+        ratio.value = ratio.value * ( 1 - WEIGHT ) + observed * WEIGHT;
+    }
+
+
+    private static final class StaleRatio {
+        private volatile double value;
+
+
+        private StaleRatio( final double value ) {
+            this.value = value;
+        }
+    }
+}
@@ -20,6 +20,12 @@
 package org.apache.usergrid.corepersistence.pipeline.read.traverse;
 
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.usergrid.corepersistence.asyncevents.AsyncEventService;
 import org.apache.usergrid.corepersistence.asyncevents.EventBuilder;
 import org.apache.usergrid.corepersistence.asyncevents.EventBuilderImpl;
@@ -34,6 +40,7 @@ import org.apache.usergrid.corepersistence.pipeline.read.EdgePath;
 import org.apache.usergrid.corepersistence.pipeline.read.FilterResult;
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.graph.Edge;
+import org.apache.usergrid.persistence.graph.GraphFig;
 import org.apache.usergrid.persistence.graph.GraphManager;
 import org.apache.usergrid.persistence.graph.GraphManagerFactory;
 import org.apache.usergrid.persistence.graph.MarkedEdge;
@@ -55,6 +62,7 @@ public abstract class AbstractReadGraphFilter extends AbstractPathFilter<Id, Id,
     private static final Logger logger = LoggerFactory.getLogger( AbstractReadGraphFilter.class );
 
     private final GraphManagerFactory graphManagerFactory;
+    private final GraphFig graphFig;
     private final RxTaskScheduler rxTaskScheduler;
     private final EventBuilder eventBuilder;
     private final AsyncEventService asyncEventService;
@@ -64,10 +72,12 @@ public abstract class AbstractReadGraphFilter extends AbstractPathFilter<Id, Id,
      * Create a new instance of our command
      */
     public AbstractReadGraphFilter( final GraphManagerFactory graphManagerFactory,
+                                    final GraphFig graphFig,
                                     final RxTaskScheduler rxTaskScheduler,
                                     final EventBuilder eventBuilder,
                                     final AsyncEventService asyncEventService ) {
         this.graphManagerFactory = graphManagerFactory;
+        this.graphFig = graphFig;
         this.rxTaskScheduler = rxTaskScheduler;
         this.eventBuilder = eventBuilder;
         this.asyncEventService = asyncEventService;
@@ -89,29 +99,45 @@ public abstract class AbstractReadGraphFilter extends AbstractPathFilter<Id, Id,
         final EdgeState edgeCursorState = new EdgeState();
 
 
-        //return all ids that are emitted from this edge
-        return previousIds.flatMap( previousFilterValue -> {
+        //return all ids that are emitted from this edge, reading the edges of many ids at once.  A partial batch is
+        //read once the linger has passed, so a slow or small upstream doesn't hold back the first results
+        return previousIds.buffer( graphFig.getMultiSourceBatchLinger(), TimeUnit.MILLISECONDS,
+            graphFig.getMultiSourceBatchSize(), rxTaskScheduler.getAsyncIOScheduler() )
+                          .filter( previousFilterValues -> !previousFilterValues.isEmpty() )
+                          .concatMap( previousFilterValues -> {
 
             //set our our constant state
             final Optional<MarkedEdge> startFromCursor = getSeekValue();
-            final Id id = previousFilterValue.getValue();
 
 
             final Optional<Edge> typeWrapper = Optional.fromNullable(startFromCursor.orNull());
 
-            /**
-             * We do not want to filter.  This is intentional DO NOT REMOVE!!!
-             *
-             * We want to fire events on these edges if they exist, the delete was missed.
-             */
-            final SimpleSearchByEdgeType search =
-                new SimpleSearchByEdgeType( id, edgeName, Long.MAX_VALUE, SearchByEdgeType.Order.DESCENDING,
-                    typeWrapper, false );
+            //an id reached by more than one path is read once, and its edges emitted for every path
+            final Map<Id, List<Optional<EdgePath>>> pathsById = new LinkedHashMap<>();
+
+            for ( final FilterResult<Id> previousFilterValue : previousFilterValues ) {
+                pathsById.computeIfAbsent( previousFilterValue.getValue(), id -> new ArrayList<>() )
+                         .add( previousFilterValue.getPath() );
+            }
+
+            final List<SearchByEdgeType> searches = new ArrayList<>( pathsById.size() );
+
+            for ( final Id id : pathsById.keySet() ) {
+
+                /**
+                 * We do not want to filter.  This is intentional DO NOT REMOVE!!!
+                 *
+                 * We want to fire events on these edges if they exist, the delete was missed.
+                 */
+                searches.add(
+                    new SimpleSearchByEdgeType( id, edgeName, Long.MAX_VALUE, SearchByEdgeType.Order.DESCENDING,
+                        typeWrapper, false ) );
+            }
 
             /**
              * TODO, pass a message with pointers to our cursor values to be generated later
              */
-            return graphManager.loadEdgesFromSource( search ).filter(markedEdge -> {
+            return graphManager.loadEdgesFromSources( searches, false ).filter(markedEdge -> {
 
                 final boolean isDeleted = markedEdge.isDeleted();
                 final boolean isSourceNodeDeleted = markedEdge.isSourceNodeDelete();
@@ -186,8 +212,12 @@ public abstract class AbstractReadGraphFilter extends AbstractPathFilter<Id, Id,
                 } )
 
                     //map our id from the target edge  and set our cursor every edge we traverse
-                .map( edge -> createFilterResult( edge.getTargetNode(), edgeCursorState.getCursorEdge(),
-                    previousFilterValue.getPath() ) );
+                .concatMap( edge -> {
+                    final MarkedEdge cursorEdge = edgeCursorState.getCursorEdge();
+
+                    return Observable.from( pathsById.get( edge.getSourceNode() ) )
+                                     .map( path -> createFilterResult( edge.getTargetNode(), cursorEdge, path ) );
+                } );
         } );
     }
 
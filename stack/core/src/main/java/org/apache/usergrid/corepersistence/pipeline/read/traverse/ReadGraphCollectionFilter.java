@@ -24,6 +24,7 @@ import org.apache.usergrid.corepersistence.asyncevents.AsyncEventService;
 import org.apache.usergrid.corepersistence.asyncevents.EventBuilder;
 import org.apache.usergrid.corepersistence.rx.impl.AsyncRepair;
 import org.apache.usergrid.persistence.core.rx.RxTaskScheduler;
+import org.apache.usergrid.persistence.graph.GraphFig;
 import org.apache.usergrid.persistence.graph.GraphManagerFactory;
 
 import com.google.inject.Inject;
@@ -45,11 +46,12 @@ public class ReadGraphCollectionFilter extends AbstractReadGraphFilter {
      */
     @Inject
     public ReadGraphCollectionFilter( final GraphManagerFactory graphManagerFactory,
+                                      final GraphFig graphFig,
                                       @AsyncRepair final RxTaskScheduler rxTaskScheduler,
                                       final EventBuilder eventBuilder,
                                       final AsyncEventService asyncEventService,
                                       @Assisted final String collectionName ) {
-        super( graphManagerFactory, rxTaskScheduler, eventBuilder, asyncEventService );
+        super( graphManagerFactory, graphFig, rxTaskScheduler, eventBuilder, asyncEventService );
         this.collectionName = collectionName;
     }
 
@@ -50,4 +50,11 @@ public interface AllEntityIdsObservable {
      */
     Observable<EdgeScope> getEdgesToEntities(final Observable<ApplicationScope> appScopes, final Optional<String> edgeType, final Optional<Edge> lastEdge);
 
+    /**
+     * Get the types of the edges from the application to its entities
+     * @param applicationScope
+     * @return An observable of edge types
+     */
+    Observable<String> getEdgeTypesToEntities( final ApplicationScope applicationScope );
+
 }
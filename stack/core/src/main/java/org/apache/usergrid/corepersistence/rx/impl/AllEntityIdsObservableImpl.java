@@ -31,6 +31,7 @@ import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.graph.Edge;
 import org.apache.usergrid.persistence.graph.GraphManager;
 import org.apache.usergrid.persistence.graph.GraphManagerFactory;
+import org.apache.usergrid.persistence.graph.impl.SimpleSearchEdgeType;
 import org.apache.usergrid.persistence.graph.serialization.EdgesObservable;
 import org.apache.usergrid.persistence.graph.serialization.TargetIdObservable;
 import org.apache.usergrid.persistence.model.entity.Id;
@@ -91,4 +92,12 @@ public class AllEntityIdsObservableImpl implements AllEntityIdsObservable {
                                   .map( edge -> new EdgeScope(applicationScope, edge ));
         } );
     }
+
+
+    @Override
+    public Observable<String> getEdgeTypesToEntities( final ApplicationScope applicationScope ) {
+        final GraphManager gm = graphManagerFactory.createEdgeManager( applicationScope );
+
+        return gm.getEdgeTypesFromSource( new SimpleSearchEdgeType( applicationScope.getApplication(), null, null ) );
+    }
 }
@@ -19,16 +19,17 @@ package org.apache.usergrid.count;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Callable;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +44,10 @@ import com.yammer.metrics.core.TimerContext;
 /**
  * Base batcher implementation, handles concurrency and locking throughput throttling.
  *
+ * Counts are rolled up by counter name as they are added, so a batch holds one entry per distinct counter no matter
+ * how many times each is incremented.  Adds never block, a full batch is swapped for an empty one and submitted by the
+ * thread that filled it.
+ *
  * @author zznate
  */
 public abstract class AbstractBatcher implements Batcher {
@@ -50,7 +55,7 @@ public abstract class AbstractBatcher implements Batcher {
 
     protected static final Logger logger = LoggerFactory.getLogger( AbstractBatcher.class );
 
-    private volatile Batch batch;
+    private final AtomicReference<Batch> batch = new AtomicReference<>();
     private final AtomicLong opCount = new AtomicLong();
     private final Timer addTimer =
             Metrics.newTimer( AbstractBatcher.class, "add_invocation", TimeUnit.MICROSECONDS, TimeUnit.SECONDS );
@@ -99,22 +104,36 @@ public abstract class AbstractBatcher implements Batcher {
         invocationCounter.inc();
         final TimerContext context = addTimer.time();
         if ( batchSize == 1 ) {
-            getBatch().addSerial( count );
+            addSerial( count );
         }
         else {
-            getBatch().add( count );
+            Batch active;
+            int events;
+
+            //retry if the batch was swapped out between reading it and adding to it
+            do {
+                active = getBatch();
+                events = active.add( count );
+            }
+            while ( events < 0 );
+
+            //only the add that fills the batch submits it
+            if ( events == batchSize ) {
+                flush( active );
+            }
         }
         context.stop();
     }
 
 
     private Batch getBatch() {
-        Batch active = batch;
+        Batch active = batch.get();
         if ( active == null ) {
             synchronized ( this ) {
-                active = batch;
+                active = batch.get();
                 if ( active == null ) {
-                    batch = active = new Batch();
+                    active = new Batch();
+                    batch.set( active );
 
                     //now schedule our task for execution since we're creating a batch
                     scheduler.scheduleWithFixedDelay( new BatchFlusher(), this.batchIntervalSeconds,
@@ -124,22 +143,40 @@ public abstract class AbstractBatcher implements Batcher {
             }
         }
 
-        //we want to flush, and we have no capacity left, perform a flush
-        if ( batchSize > 1 && active.getCapacity() == 0 ) {
-            synchronized ( this ) {
-                if ( active.getCapacity() == 0 ) {
-                    active.flush();
-                }
-            }
+        return active;
+    }
+
+
+    /**
+     * Swap the batch for an empty one and submit it.  Does nothing if another thread already swapped it
+     */
+    private void flush( Batch active ) {
+        if ( !batch.compareAndSet( active, new Batch() ) ) {
+            return;
         }
 
-        return active;
+        final List<Count> flushed = active.close();
+
+        if ( flushed.isEmpty() ) {
+            return;
+        }
+
+        batchSubmitter.submit( flushed );
+        batchSubmissionCount.incrementAndGet();
+        opCount.incrementAndGet();
     }
 
-    private void flush(){
-        synchronized(this) {
-            getBatch().flush();
+
+    private void addSerial( Count count ) {
+        Future f = batchSubmitter.submit( Arrays.asList( count ) );
+        try {
+            f.get();
+        }
+        catch ( Exception ex ) {
+            logger.error( "Unable to add count, dropping count {}", count, ex );
         }
+        batchSubmissionCount.incrementAndGet();
+        opCount.incrementAndGet();
     }
 
 
@@ -151,7 +188,7 @@ public abstract class AbstractBatcher implements Batcher {
         @Override
         public void run() {
             //explicitly flush the batch
-            AbstractBatcher.this.flush();
+            AbstractBatcher.this.flush( getBatch() );
         }
     }
 
@@ -161,56 +198,125 @@ public abstract class AbstractBatcher implements Batcher {
     }
 
 
-    class Batch {
-        private BlockingQueue<Count> counts;
-        private final AtomicInteger localCallCounter = new AtomicInteger();
+    /**
+     * Identifies a counter by its table, key and column, without serializing them the way
+     * {@link Count#getCounterName()} does
+     */
+    private static final class CounterKey {
+        private final String tableName;
+        private final Object keyName;
+        private final Object columnName;
+        private final int hashCode;
+
+
+        private CounterKey( Count count ) {
+            this.tableName = count.getTableName();
+            this.keyName = count.getKeyName();
+            this.columnName = count.getColumnName();
+            this.hashCode = Objects.hash( tableName, keyName, columnName );
+        }
 
 
-        Batch() {
-            counts = new ArrayBlockingQueue<>( batchSize );
+        @Override
+        public boolean equals( final Object o ) {
+            if ( this == o ) {
+                return true;
+            }
+            if ( !( o instanceof CounterKey ) ) {
+                return false;
+            }
+
+            final CounterKey that = ( CounterKey ) o;
+
+            return hashCode == that.hashCode && Objects.equals( tableName, that.tableName ) && Objects
+                .equals( keyName, that.keyName ) && Objects.equals( columnName, that.columnName );
         }
 
 
-        int getCapacity() {
-            return counts.remainingCapacity();
+        @Override
+        public int hashCode() {
+            return hashCode;
         }
+    }
 
 
+    /**
+     * The running total for one counter in a batch
+     */
+    private static final class PendingCount {
+        private final Count count;
+        private final LongAdder value = new LongAdder();
 
 
-        void flush() {
-            ArrayList<Count> flushed = new ArrayList<Count>( batchSize );
-            counts.drainTo( flushed );
-            batchSubmitter.submit( flushed );
-            batchSubmissionCount.incrementAndGet();
-            opCount.incrementAndGet();
-            localCallCounter.incrementAndGet();
+        private PendingCount( Count count ) {
+            this.count = count;
         }
+    }
 
 
-        void add( Count count ) {
+    class Batch {
+        private final ConcurrentHashMap<CounterKey, PendingCount> counts = new ConcurrentHashMap<>();
+        private final AtomicInteger eventCount = new AtomicInteger();
+
+        /**
+         * Threads between checking closed and finishing their add, close waits for them before reading the counts
+         */
+        private final AtomicInteger writers = new AtomicInteger();
+        private volatile boolean closed;
+
+
+        /**
+         * Roll the count into this batch
+         *
+         * @return the number of counts added to this batch, or -1 if the batch has been closed and the count must go
+         * to the next one
+         */
+        int add( Count count ) {
+            writers.incrementAndGet();
             try {
-                counts.offer( count, 500, TimeUnit.MILLISECONDS );
+                if ( closed ) {
+                    return -1;
+                }
+
+                final CounterKey name = new CounterKey( count );
+
+                PendingCount pending = counts.get( name );
+                if ( pending == null ) {
+                    final PendingCount created = new PendingCount( count );
+                    pending = counts.putIfAbsent( name, created );
+                    if ( pending == null ) {
+                        pending = created;
+                    }
+                }
+
+                pending.value.add( count.getValue() );
+                return eventCount.incrementAndGet();
             }
-            catch ( Exception ex ) {
-                logger.error( "Unable to add count, dropping count {}", count, ex );
+            finally {
+                writers.decrementAndGet();
             }
         }
 
 
-        void addSerial( Count count ) {
-            Future f = batchSubmitter.submit( Arrays.asList( count ) );
-            try {
-                f.get();
-            }
-            catch ( Exception ex ) {
-                logger.error( "Unable to add count, dropping count {}", count, ex );
+        /**
+         * Stop accepting counts and return the totals, once every add in progress has finished
+         */
+        List<Count> close() {
+            closed = true;
+
+            while ( writers.get() > 0 ) {
+                Thread.yield();
             }
-            batchSubmissionCount.incrementAndGet();
-            opCount.incrementAndGet();
-            localCallCounter.incrementAndGet();
-        }
 
+            final List<Count> flushed = new ArrayList<>( counts.size() );
 
+            for ( PendingCount pending : counts.values() ) {
+                final Count count = pending.count;
+                flushed.add( new Count( count.getTableName(), count.getKeyName(), count.getColumnName(),
+                    pending.value.sum() ) );
+            }
+
+            return flushed;
+        }
     }
 }
@@ -22,6 +22,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,14 +44,44 @@ import static org.apache.usergrid.persistence.cassandra.Serializers.*;
 public class CassandraCounterStore implements CounterStore {
     private static final Logger logger = LoggerFactory.getLogger( CassandraCounterStore.class );
 
+    /**
+     * The most spilled counts replayed in a single mutation.  Counter increments are not idempotent, so a failed
+     * replay that partially applied can only ever double count this many.
+     */
+    private static final int REPLAY_BATCH_SIZE = 1000;
+
     // keep track of exceptions thrown in scheduler so we can reduce noise in logs
     private Map<String, Integer> counterInsertFailures = new HashMap<String, Integer>();
 
     private final Keyspace keyspace;
 
+    private final CounterSpillLog spillLog;
+
+    private final int replayBatchSize;
+
+    private final AtomicBoolean replaying = new AtomicBoolean();
+
+    // set by the last save, spilled counts are only replayed while cassandra is taking writes
+    private volatile boolean writable = true;
+
 
     public CassandraCounterStore( Keyspace keyspace ) {
+        this( keyspace, null );
+    }
+
+
+    /**
+     * @param spillLog Where to keep counts that could not be written, may be null to drop them
+     */
+    public CassandraCounterStore( Keyspace keyspace, CounterSpillLog spillLog ) {
+        this( keyspace, spillLog, REPLAY_BATCH_SIZE );
+    }
+
+
+    public CassandraCounterStore( Keyspace keyspace, CounterSpillLog spillLog, int replayBatchSize ) {
         this.keyspace = keyspace;
+        this.spillLog = spillLog;
+        this.replayBatchSize = replayBatchSize;
     }
 
 
@@ -60,6 +91,65 @@ public class CassandraCounterStore implements CounterStore {
 
 
     public void save( Collection<Count> counts ) {
+        Map<String, Count> countHolder = aggregate( counts );
+
+        writable = write( countHolder.values() );
+
+        if ( !writable && spillLog != null ) {
+            spillLog.append( countHolder.values() );
+        }
+    }
+
+
+    /**
+     * Return true if there are spilled counts and cassandra is taking writes again
+     */
+    public boolean isReplayNeeded() {
+        return writable && spillLog != null && spillLog.hasPending() && !replaying.get();
+    }
+
+
+    /**
+     * Write the oldest chunk of counts that previously failed, and remove them from the spill log.  Only one thread
+     * replays at a time.  This is meant to run off the save path, one chunk per call, so that a large backlog neither
+     * holds up new counts nor has to be written in one mutation.
+     *
+     * @return true if the chunk was written and more counts are waiting
+     */
+    public boolean replaySpillLog() {
+        if ( spillLog == null || !replaying.compareAndSet( false, true ) ) {
+            return false;
+        }
+
+        try {
+            CounterSpillLog.Replay replay = spillLog.read( replayBatchSize );
+
+            if ( replay == null ) {
+                return false;
+            }
+
+            // the spilled batches often repeat the same counters, so roll them up again
+            writable = write( aggregate( replay.getCounts() ).values() );
+
+            if ( !writable ) {
+                return false;
+            }
+
+            if ( logger.isDebugEnabled() ) {
+                logger.debug( "Replayed {} spilled counts", replay.getCounts().size() );
+            }
+
+            spillLog.commit( replay );
+
+            return spillLog.hasPending();
+        }
+        finally {
+            replaying.set( false );
+        }
+    }
+
+
+    private Map<String, Count> aggregate( Collection<Count> counts ) {
         Map<String, Count> countHolder = new HashMap<String, Count>();
         for ( Count count : counts ) {
             Count c = countHolder.get( count.getCounterName() );
@@ -70,14 +160,25 @@ public class CassandraCounterStore implements CounterStore {
                 countHolder.put( count.getCounterName(), count );
             }
         }
+        return countHolder;
+    }
+
+
+    /**
+     * Write the counts in a single mutation
+     *
+     * @return false if the write failed
+     */
+    private boolean write( Collection<Count> counts ) {
         Mutator<ByteBuffer> mutator = HFactory.createMutator( keyspace, be );
-        for ( Count count : countHolder.values() ) {
+        for ( Count count : counts ) {
             mutator.addCounter( count.getKeyNameBytes(), count.getTableName(),
                     new HCounterColumnImpl( count.getColumnName(), count.getValue(),
                             count.getColumnNameSerializer() ) );
         }
         try {
             mutator.execute();
+            return true;
         }
         catch ( Exception e ) {
 
@@ -93,6 +194,7 @@ public class CassandraCounterStore implements CounterStore {
 
                 logger.error("{} caused CounterStore insert failure, count = {}", error, count, e);
             }
+            return false;
         }
     }
 }
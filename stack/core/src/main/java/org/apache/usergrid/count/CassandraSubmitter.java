@@ -22,6 +22,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
@@ -64,12 +65,37 @@ public class CassandraSubmitter implements BatchSubmitter {
             public Object call() throws Exception {
                 cassandraCounterStore.save( counts );
                 timer.stop();
+                scheduleReplay();
                 return true;
             }
         } );
     }
 
 
+    /**
+     * Catch up on spilled counts on the executor, a chunk at a time, so new counts are not held up behind them
+     */
+    private void scheduleReplay() {
+        if ( !cassandraCounterStore.isReplayNeeded() ) {
+            return;
+        }
+
+        try {
+            executor.submit( new Runnable() {
+                @Override
+                public void run() {
+                    if ( cassandraCounterStore.replaySpillLog() ) {
+                        scheduleReplay();
+                    }
+                }
+            } );
+        }
+        catch ( RejectedExecutionException e ) {
+            logger.warn( "Not replaying spilled counts, the submitter is shutting down" );
+        }
+    }
+
+
     @Override
     public void shutdown() {
         logger.warn( "Shutting down CassandraSubmitter" );
@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.count;
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.count.common.Count;
+import org.apache.usergrid.count.common.CountSerDeUtils;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+
+
+/**
+ * Append only file of counts that could not be written to Cassandra, one serialized {@link Count} per line.  Counts
+ * stay in the file until they have been replayed successfully, and nothing more is accepted once the file reaches
+ * its maximum size.  Spilling is disabled when no file is configured.
+ */
+public class CounterSpillLog {
+    private static final Logger logger = LoggerFactory.getLogger( CounterSpillLog.class );
+
+    private final Counter pendingCounter = Metrics.newCounter( CounterSpillLog.class, "spill_pending" );
+    private final Counter replayedCounter = Metrics.newCounter( CounterSpillLog.class, "spill_replayed" );
+    private final Counter droppedCounter = Metrics.newCounter( CounterSpillLog.class, "spill_dropped" );
+
+    private final File file;
+    private final long maxBytes;
+
+
+    /**
+     * @param path The file to spill to, blank to drop counts that could not be written
+     */
+    public CounterSpillLog( final String path, final long maxBytes ) {
+        this.file = path == null || path.trim().isEmpty() ? null : new File( path );
+        this.maxBytes = maxBytes;
+
+        if ( file == null ) {
+            logger.info( "No counter spill file configured, counts that can't be written will be dropped" );
+            return;
+        }
+
+        truncateTornTail();
+
+        //counts left behind by a previous run are still pending
+        final long existing = hasPending() ? countLines() : 0;
+        if ( existing > 0 ) {
+            logger.info( "Found {} spilled counts in {}", existing, file );
+            pendingCounter.inc( existing );
+        }
+    }
+
+
+    /**
+     * Return true if counts that could not be written are kept
+     */
+    public boolean isEnabled() {
+        return file != null;
+    }
+
+
+    /**
+     * Append the counts to the end of the log
+     *
+     * @return false if the counts were dropped because the log is full or could not be written
+     */
+    public synchronized boolean append( final Collection<Count> counts ) {
+        if ( file == null ) {
+            droppedCounter.inc( counts.size() );
+            return false;
+        }
+
+        final StringBuilder lines = new StringBuilder();
+
+        for ( Count count : counts ) {
+            lines.append( CountSerDeUtils.serialize( count ) ).append( '\n' );
+        }
+
+        final byte[] bytes = lines.toString().getBytes( StandardCharsets.UTF_8 );
+
+        if ( file.length() + bytes.length > maxBytes ) {
+            logger.error( "Counter spill log {} is full, dropping {} counts", file, counts.size() );
+            droppedCounter.inc( counts.size() );
+            return false;
+        }
+
+        try {
+            final File parent = file.getAbsoluteFile().getParentFile();
+            if ( parent != null && !parent.exists() ) {
+                parent.mkdirs();
+            }
+
+            try ( FileOutputStream out = new FileOutputStream( file, true ) ) {
+                out.write( bytes );
+                //the whole point is surviving the loss of this process
+                out.getFD().sync();
+            }
+        }
+        catch ( IOException e ) {
+            logger.error( "Unable to write to counter spill log {}, dropping {} counts", file, counts.size(), e );
+            droppedCounter.inc( counts.size() );
+            return false;
+        }
+
+        pendingCounter.inc( counts.size() );
+        return true;
+    }
+
+
+    /**
+     * Return true if there are counts waiting to be replayed
+     */
+    public boolean hasPending() {
+        return file != null && file.length() > 0;
+    }
+
+
+    /**
+     * Read the oldest counts in the log.  The counts remain in the log until {@link #commit(Replay)} is called, so a
+     * failed replay can simply be abandoned
+     *
+     * @param maxCounts The most counts to read, so a large log is replayed in bounded chunks
+     * @return null if the log is empty
+     */
+    public synchronized Replay read( final int maxCounts ) {
+        if ( !hasPending() ) {
+            return null;
+        }
+
+        final List<Count> counts = new ArrayList<>();
+        long length = 0;
+
+        try ( BufferedReader reader = new BufferedReader(
+            new InputStreamReader( new FileInputStream( file ), StandardCharsets.UTF_8 ) ) ) {
+
+            String line;
+            while ( counts.size() < maxCounts && ( line = reader.readLine() ) != null ) {
+                length += line.getBytes( StandardCharsets.UTF_8 ).length + 1;
+
+                if ( line.isEmpty() ) {
+                    continue;
+                }
+
+                try {
+                    counts.add( CountSerDeUtils.deserialize( line ) );
+                }
+                catch ( RuntimeException e ) {
+                    logger.error( "Skipping unreadable count in spill log {}: {}", file, line, e );
+                }
+            }
+        }
+        catch ( IOException e ) {
+            logger.error( "Unable to read counter spill log {}", file, e );
+            return null;
+        }
+
+        return new Replay( counts, Math.min( length, file.length() ) );
+    }
+
+
+    /**
+     * Remove the replayed counts from the log, keeping anything appended since they were read
+     */
+    public synchronized void commit( final Replay replay ) {
+        try {
+            final long remaining = file.length() - replay.length;
+
+            if ( remaining <= 0 ) {
+                Files.deleteIfExists( file.toPath() );
+            }
+            else {
+                final File tail = new File( file.getPath() + ".tmp" );
+
+                try ( RandomAccessFile in = new RandomAccessFile( file, "r" );
+                      FileOutputStream out = new FileOutputStream( tail ) ) {
+                    in.getChannel().transferTo( replay.length, remaining, out.getChannel() );
+                    out.getFD().sync();
+                }
+
+                Files.move( tail.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE );
+            }
+        }
+        catch ( IOException e ) {
+            //the counts were already written, so they will be counted twice if this file is replayed again
+            logger.error( "Unable to remove {} replayed counts from spill log {}", replay.getCounts().size(), file,
+                e );
+        }
+
+        pendingCounter.dec( replay.getCounts().size() );
+        replayedCounter.inc( replay.getCounts().size() );
+    }
+
+
+    /**
+     * Count the lines in the log without holding them in memory
+     */
+    private long countLines() {
+        long lines = 0;
+
+        try ( BufferedReader reader = new BufferedReader(
+            new InputStreamReader( new FileInputStream( file ), StandardCharsets.UTF_8 ) ) ) {
+
+            String line;
+            while ( ( line = reader.readLine() ) != null ) {
+                if ( !line.isEmpty() ) {
+                    lines++;
+                }
+            }
+        }
+        catch ( IOException e ) {
+            logger.error( "Unable to read counter spill log {}", file, e );
+        }
+
+        return lines;
+    }
+
+
+    /**
+     * Drop a partial final line left by a crash mid append, so the next append starts on a line of its own
+     */
+    private void truncateTornTail() {
+        if ( !hasPending() ) {
+            return;
+        }
+
+        try ( RandomAccessFile raf = new RandomAccessFile( file, "rw" ) ) {
+            long end = raf.length();
+
+            while ( end > 0 ) {
+                raf.seek( end - 1 );
+                if ( raf.read() == '\n' ) {
+                    break;
+                }
+                end--;
+            }
+
+            if ( end < raf.length() ) {
+                logger.warn( "Truncating partial count at the end of spill log {}", file );
+                raf.setLength( end );
+            }
+        }
+        catch ( IOException e ) {
+            logger.error( "Unable to check the end of counter spill log {}", file, e );
+        }
+    }
+
+
+    /**
+     * Counts read from the log, and how many bytes of the log they occupy
+     */
+    public static final class Replay {
+        private final List<Count> counts;
+        private final long length;
+
+
+        private Replay( final List<Count> counts, final long length ) {
+            this.counts = counts;
+            this.length = length;
+        }
+
+
+        public List<Count> getCounts() {
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence;
+
+
+import com.google.common.base.Optional;
+
+
+/**
+ * The result of creating a single entity with {@link EntityManager#createAll(java.util.List)}
+ */
+public class EntityCreateResult {
+
+    private final Entity entity;
+    private final Optional<Exception> error;
+
+
+    private EntityCreateResult( final Entity entity, final Optional<Exception> error ) {
+        this.entity = entity;
+        this.error = error;
+    }
+
+
+    /**
+     * Create the result of an entity that was created.  The entity is null when there was nothing to create, as
+     * with {@link EntityManager#create(java.util.UUID, String, java.util.Map)}
+     */
+    public static EntityCreateResult success( final Entity entity ) {
+        return new EntityCreateResult( entity, Optional.<Exception>absent() );
+    }
+
+
+    /**
+     * Create the result of an entity that could not be created
+     */
+    public static EntityCreateResult failure( final Entity entity, final Exception error ) {
+        return new EntityCreateResult( entity, Optional.of( error ) );
+    }
+
+
+    /**
+     * Get the entity.  When it was created the entity has its properties as written
+     */
+    public Entity getEntity() {
+        return entity;
+    }
+
+
+    /**
+     * Return true if the entity was created
+     */
+    public boolean isSuccess() {
+        return !error.isPresent();
+    }
+
+
+    /**
+     * Get the reason the entity could not be created, such as a DuplicateUniquePropertyExistsException
+     */
+    public Optional<Exception> getError() {
+        return error;
+    }
+}
@@ -100,6 +100,20 @@ public interface EntityManager {
      */
     public Entity create(Id id, Map<String, Object> properties )
         throws Exception;
+
+    /**
+     * Creates many entities attached to the application, such as the entities of an import.  The entities are
+     * written together, then added to their collections and queued for indexing together.  An entity that can't be
+     * created, such as one with a duplicate unique property, fails on its own without failing the others.
+     *
+     * @param entities the type, properties and optionally the UUID of each entity to create
+     *
+     * @return the result of each entity, in the order of the entities
+     *
+     * @throws Exception the exception
+     */
+    public List<EntityCreateResult> createAll( List<Entity> entities ) throws Exception;
+
     public void createApplicationCollection( String entityType ) throws Exception;
 
     public EntityRef getAlias( String aliasType, String alias ) throws Exception;
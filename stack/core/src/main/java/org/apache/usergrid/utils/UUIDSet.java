@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.utils;
+
+
+import java.util.UUID;
+
+
+/**
+ * A set of UUIDs stored as pairs of primitive longs in a single open addressing table.  Each UUID costs 16 bytes
+ * in the table, instead of the UUID object, its boxing and the map entry a HashSet needs.  Not thread safe.
+ */
+public class UUIDSet {
+
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * Grow the table once it is this full
+     */
+    private static final float LOAD_FACTOR = 0.6f;
+
+    /**
+     * Pairs of most and least significant bits.  A pair of zeros marks an empty slot, so the nil UUID is tracked
+     * separately
+     */
+    private long[] table;
+
+    private int size;
+
+    private int resizeAt;
+
+    private boolean containsNil;
+
+
+    public UUIDSet() {
+        this( MIN_CAPACITY );
+    }
+
+
+    /**
+     * @param expectedSize The number of UUIDs to size the table for
+     */
+    public UUIDSet( final int expectedSize ) {
+        int capacity = MIN_CAPACITY;
+
+        while ( capacity * LOAD_FACTOR < expectedSize ) {
+            capacity <<= 1;
+        }
+
+        allocate( capacity );
+    }
+
+
+    /**
+     * Add the uuid to the set
+     *
+     * @return true if the uuid was not already present
+     */
+    public boolean add( final UUID uuid ) {
+        final long msb = uuid.getMostSignificantBits();
+        final long lsb = uuid.getLeastSignificantBits();
+
+        if ( msb == 0 && lsb == 0 ) {
+            if ( containsNil ) {
+                return false;
+            }
+
+            containsNil = true;
+            size++;
+            return true;
+        }
+
+        final int slot = find( table, msb, lsb );
+
+        if ( table[slot] == msb && table[slot + 1] == lsb ) {
+            return false;
+        }
+
+        table[slot] = msb;
+        table[slot + 1] = lsb;
+        size++;
+
+        if ( size > resizeAt ) {
+            grow();
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Return true if the uuid is in the set
+     */
+    public boolean contains( final UUID uuid ) {
+        final long msb = uuid.getMostSignificantBits();
+        final long lsb = uuid.getLeastSignificantBits();
+
+        if ( msb == 0 && lsb == 0 ) {
+            return containsNil;
+        }
+
+        final int slot = find( table, msb, lsb );
+
+        return table[slot] == msb && table[slot + 1] == lsb;
+    }
+
+
+    public int size() {
+        return size;
+    }
+
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+
+    /**
+     * The number of bytes held by the table, for reporting
+     */
+    public long getMemoryBytes() {
+        return ( long ) table.length * Long.BYTES;
+    }
+
+
+    /**
+     * Find the slot holding the uuid, or the empty slot it belongs in
+     */
+    private static int find( final long[] table, final long msb, final long lsb ) {
+        final int mask = table.length - 1;
+
+        int slot = ( hash( msb, lsb ) << 1 ) & mask;
+
+        while ( true ) {
+            final long slotMsb = table[slot];
+            final long slotLsb = table[slot + 1];
+
+            if ( ( slotMsb == msb && slotLsb == lsb ) || ( slotMsb == 0 && slotLsb == 0 ) ) {
+                return slot;
+            }
+
+            slot = ( slot + 2 ) & mask;
+        }
+    }
+
+
+    /**
+     * Mix the bits so time based UUIDs, which share most of their high bits, spread over the table
+     */
+    private static int hash( final long msb, final long lsb ) {
+        long h = msb * 0x9E3779B97F4A7C15L ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return ( int ) h;
+    }
+
+
+    private void grow() {
+        final long[] old = table;
+
+        allocate( old.length );
+
+        for ( int i = 0; i < old.length; i += 2 ) {
+            final long msb = old[i];
+            final long lsb = old[i + 1];
+
+            if ( msb == 0 && lsb == 0 ) {
+                continue;
+            }
+
+            final int slot = find( table, msb, lsb );
+            table[slot] = msb;
+            table[slot + 1] = lsb;
+        }
+    }
+
+
+    /**
+     * Allocate a table for the given number of uuids
+     */
+    private void allocate( final int capacity ) {
+        table = new long[capacity * 2];
+        resizeAt = ( int ) ( capacity * LOAD_FACTOR );
+    }
+}
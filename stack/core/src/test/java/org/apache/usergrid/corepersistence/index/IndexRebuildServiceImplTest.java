@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.corepersistence.index;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import org.apache.usergrid.corepersistence.rx.impl.AllApplicationsObservable;
+import org.apache.usergrid.corepersistence.service.StatusService;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.index.EntityIndex;
+import org.apache.usergrid.persistence.index.EntityIndexFactory;
+import org.apache.usergrid.persistence.index.IndexFig;
+import org.apache.usergrid.persistence.index.IndexLocationStrategy;
+
+import com.google.common.base.Optional;
+
+import rx.Observable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+public class IndexRebuildServiceImplTest {
+
+    private static final String INDEX_NAME = "rebuilt";
+
+    private final UUID applicationId = UUID.randomUUID();
+
+    private EntityIndex entityIndex;
+    private ReIndexService reIndexService;
+    private StatusService statusService;
+    private IndexProcessorFig indexProcessorFig;
+    private IndexRebuildService rebuildService;
+
+    private final List<ReIndexRequestBuilder> reIndexRequests = new ArrayList<>();
+
+
+    @Before
+    public void setup() {
+        entityIndex = mock( EntityIndex.class );
+        when( entityIndex.getIndexes( EntityIndex.AliasType.Read ) ).thenReturn( new String[] { "current" } );
+        when( entityIndex.swapIndex( INDEX_NAME ) ).thenReturn( new String[] { "current" } );
+
+        final EntityIndexFactory entityIndexFactory = mock( EntityIndexFactory.class );
+        when( entityIndexFactory.createEntityIndex( any( IndexLocationStrategy.class ) ) ).thenReturn( entityIndex );
+
+        final IndexLocationStrategyFactory indexLocationStrategyFactory = mock( IndexLocationStrategyFactory.class );
+        when( indexLocationStrategyFactory.getIndexLocationStrategy( any( ApplicationScope.class ) ) )
+            .thenReturn( mock( IndexLocationStrategy.class ) );
+
+        reIndexService = mock( ReIndexService.class );
+        when( reIndexService.getBuilder() ).thenAnswer( invocation -> {
+            final ReIndexRequestBuilder request = new ReIndexRequestBuilderImpl();
+            reIndexRequests.add( request );
+            return request;
+        } );
+        when( reIndexService.rebuildIndex( any( ReIndexRequestBuilder.class ) ) )
+            .thenReturn( new ReIndexService.ReIndexStatus( "job", ReIndexService.Status.STARTED, 0, 0 ) );
+        when( reIndexService.getStatus( "job" ) )
+            .thenReturn( new ReIndexService.ReIndexStatus( "job", ReIndexService.Status.COMPLETE, 10, 0 ) );
+
+        statusService = mock( StatusService.class );
+        when( statusService.setStatus( any( UUID.class ), any( UUID.class ), any( StatusService.Status.class ),
+            anyMap() ) ).thenReturn( Observable.empty() );
+
+        indexProcessorFig = mock( IndexProcessorFig.class );
+        when( indexProcessorFig.getRebuildAliasWait() ).thenReturn( 0L );
+        when( indexProcessorFig.getRebuildVerifyTimeout() ).thenReturn( 0L );
+        when( indexProcessorFig.getRebuildReIndexTimeout() ).thenReturn( 60000L );
+        when( indexProcessorFig.getRebuildMinCountRatio() ).thenReturn( 0.99 );
+
+        final IndexFig indexFig = mock( IndexFig.class );
+        when( indexFig.getWriteConsistencyLevel() ).thenReturn( "one" );
+
+        rebuildService = new IndexRebuildServiceImpl( entityIndexFactory, indexLocationStrategyFactory,
+            mock( AllApplicationsObservable.class ), reIndexService, statusService, indexProcessorFig, indexFig );
+    }
+
+
+    @Test
+    public void swapOnceRebuilt() {
+        when( entityIndex.getDocumentCount( "current" ) ).thenReturn( 100L );
+        when( entityIndex.getDocumentCount( INDEX_NAME ) ).thenReturn( 100L );
+
+        final UUID jobId = rebuildService.rebuild( Optional.of( applicationId ), INDEX_NAME, 6, 1, null );
+
+        verify( statusService, timeout( 5000 ) )
+            .setStatus( eq( applicationId ), eq( jobId ), eq( StatusService.Status.COMPLETE ), anyMap() );
+
+        final InOrder inOrder = inOrder( entityIndex, reIndexService );
+        inOrder.verify( entityIndex ).addRebuildIndex( INDEX_NAME, 6, 1, "one" );
+        inOrder.verify( reIndexService, times( 2 ) ).rebuildIndex( any( ReIndexRequestBuilder.class ) );
+        inOrder.verify( entityIndex ).swapIndex( INDEX_NAME );
+
+        //the backfill is complete, the catch up only re-indexes what was updated since writes went to both indexes
+        assertEquals( 2, reIndexRequests.size() );
+        assertFalse( reIndexRequests.get( 0 ).getUpdateTimestamp().isPresent() );
+        assertTrue( reIndexRequests.get( 1 ).getUpdateTimestamp().isPresent() );
+        assertEquals( applicationId, reIndexRequests.get( 1 ).getApplicationScope().get().getApplication().getUuid() );
+
+        verify( entityIndex, never() ).retireIndex( anyString() );
+    }
+
+
+    @Test
+    public void retireReplacedIndex() {
+        when( indexProcessorFig.isRebuildDeleteRetired() ).thenReturn( true );
+        when( entityIndex.getDocumentCount( "current" ) ).thenReturn( 100L );
+        when( entityIndex.getDocumentCount( INDEX_NAME ) ).thenReturn( 99L );
+
+        final UUID jobId = rebuildService.rebuild( Optional.of( applicationId ), INDEX_NAME, 6, 1, "all" );
+
+        verify( statusService, timeout( 5000 ) )
+            .setStatus( eq( applicationId ), eq( jobId ), eq( StatusService.Status.COMPLETE ), anyMap() );
+
+        verify( entityIndex ).addRebuildIndex( INDEX_NAME, 6, 1, "all" );
+        verify( entityIndex ).retireIndex( "current" );
+    }
+
+
+    @Test
+    public void keepReadsWhenMissingDocuments() {
+        when( entityIndex.getDocumentCount( "current" ) ).thenReturn( 100L );
+        when( entityIndex.getDocumentCount( INDEX_NAME ) ).thenReturn( 50L );
+
+        final UUID jobId = rebuildService.rebuild( Optional.of( applicationId ), INDEX_NAME, 6, 1, null );
+
+        final ArgumentCaptor<Map> data = ArgumentCaptor.forClass( Map.class );
+
+        verify( statusService, timeout( 5000 ) )
+            .setStatus( eq( applicationId ), eq( jobId ), eq( StatusService.Status.FAILED ), data.capture() );
+
+        assertEquals( IndexRebuildService.Phase.VERIFYING.name(), data.getValue().get( "phase" ) );
+        verify( entityIndex, never() ).swapIndex( anyString() );
+
+        //new documents are only written to the current index again
+        verify( entityIndex ).removeRebuildIndex( INDEX_NAME );
+    }
+
+
+    @Test
+    public void failWhenReIndexIsLost() {
+        when( reIndexService.getStatus( "job" ) )
+            .thenReturn( new ReIndexService.ReIndexStatus( "job", ReIndexService.Status.UNKNOWN, 0, 0 ) );
+
+        final UUID jobId = rebuildService.rebuild( Optional.of( applicationId ), INDEX_NAME, 6, 1, null );
+
+        verify( statusService, timeout( 5000 ) )
+            .setStatus( eq( applicationId ), eq( jobId ), eq( StatusService.Status.FAILED ), anyMap() );
+
+        verify( entityIndex ).removeRebuildIndex( INDEX_NAME );
+        verify( entityIndex, never() ).swapIndex( anyString() );
+    }
+
+
+    @Test
+    public void failWhenReIndexTimesOut() {
+        when( indexProcessorFig.getRebuildReIndexTimeout() ).thenReturn( 0L );
+        when( reIndexService.getStatus( "job" ) )
+            .thenReturn( new ReIndexService.ReIndexStatus( "job", ReIndexService.Status.STARTED, 0, 0 ) );
+
+        final UUID jobId = rebuildService.rebuild( Optional.of( applicationId ), INDEX_NAME, 6, 1, null );
+
+        final ArgumentCaptor<Map> data = ArgumentCaptor.forClass( Map.class );
+
+        verify( statusService, timeout( 5000 ) )
+            .setStatus( eq( applicationId ), eq( jobId ), eq( StatusService.Status.FAILED ), data.capture() );
+
+        assertEquals( IndexRebuildService.Phase.BACKFILLING.name(), data.getValue().get( "phase" ) );
+        verify( entityIndex ).removeRebuildIndex( INDEX_NAME );
+    }
+
+
+    @Test
+    public void rollbackOnShutdown() {
+        //still waiting for every node to write to both indexes
+        when( indexProcessorFig.getRebuildAliasWait() ).thenReturn( 60000L );
+
+        final UUID jobId = rebuildService.rebuild( Optional.of( applicationId ), INDEX_NAME, 6, 1, null );
+
+        verify( entityIndex, timeout( 5000 ) ).addRebuildIndex( INDEX_NAME, 6, 1, "one" );
+
+        rebuildService.rollbackRunning();
+
+        verify( entityIndex ).removeRebuildIndex( INDEX_NAME );
+        verify( statusService )
+            .setStatus( eq( applicationId ), eq( jobId ), eq( StatusService.Status.FAILED ), anyMap() );
+        verify( reIndexService, never() ).rebuildIndex( any( ReIndexRequestBuilder.class ) );
+    }
+}
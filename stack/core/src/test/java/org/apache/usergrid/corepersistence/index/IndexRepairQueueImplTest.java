@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.corepersistence.index;
+
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.index.EntityIndex;
+import org.apache.usergrid.persistence.index.EntityIndexBatch;
+import org.apache.usergrid.persistence.index.SearchEdge;
+import org.apache.usergrid.persistence.index.impl.IndexOperationMessage;
+import org.apache.usergrid.persistence.index.impl.IndexProducer;
+import org.apache.usergrid.persistence.index.impl.SearchEdgeImpl;
+import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.entity.SimpleId;
+import org.apache.usergrid.persistence.model.util.UUIDGenerator;
+
+import com.codahale.metrics.Meter;
+
+import rx.Observable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+public class IndexRepairQueueImplTest {
+
+    @Test
+    public void coalesceAndDrop() throws Exception {
+
+        final IndexProcessorFig fig = mock( IndexProcessorFig.class );
+        when( fig.getRepairQueueSize() ).thenReturn( 2 );
+        when( fig.getRepairBatchSize() ).thenReturn( 10 );
+
+        final Meter queued = new Meter();
+        final Meter coalesced = new Meter();
+        final Meter dropped = new Meter();
+
+        final MetricsFactory metricsFactory = mock( MetricsFactory.class );
+        when( metricsFactory.getMeter( any( Class.class ), anyString() ) ).thenAnswer( invocation -> {
+            final String name = ( String ) invocation.getArguments()[1];
+            return name.endsWith( "queued" ) ? queued : name.endsWith( "coalesced" ) ? coalesced : dropped;
+        } );
+
+        final IndexOperationMessage message = new IndexOperationMessage();
+
+        final EntityIndexBatch batch = mock( EntityIndexBatch.class );
+        when( batch.build() ).thenReturn( message );
+
+        final EntityIndex entityIndex = mock( EntityIndex.class );
+        when( entityIndex.createBatch() ).thenReturn( batch );
+
+        //hold the worker in its first write so the queue fills up behind it
+        final CountDownLatch writing = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+
+        final IndexProducer indexProducer = mock( IndexProducer.class );
+        when( indexProducer.put( any( IndexOperationMessage.class ) ) ).thenAnswer( invocation -> {
+            writing.countDown();
+            release.await();
+            return Observable.just( message );
+        } );
+
+        final IndexRepairQueue repairQueue = new IndexRepairQueueImpl( indexProducer, fig, metricsFactory );
+        repairQueue.start();
+
+        final SearchEdge edge = new SearchEdgeImpl( new SimpleId( "owner" ), "users", SearchEdge.NodeType.SOURCE );
+        final Id first = new SimpleId( "user" );
+        final UUID version = UUIDGenerator.newTimeUUID();
+
+        repairQueue.deindex( entityIndex, edge, first, version );
+        assertTrue( writing.await( 10, TimeUnit.SECONDS ) );
+
+        //still being removed
+        repairQueue.deindex( entityIndex, edge, first, version );
+
+        repairQueue.deindex( entityIndex, edge, new SimpleId( "user" ), version );
+        repairQueue.deindex( entityIndex, edge, new SimpleId( "user" ), version );
+
+        //queue is full
+        repairQueue.deindex( entityIndex, edge, new SimpleId( "user" ), version );
+
+        release.countDown();
+
+        //the two queued documents are removed in a single batch
+        verify( indexProducer, timeout( 10000 ).times( 2 ) ).put( any( IndexOperationMessage.class ) );
+        verify( batch, times( 3 ) ).deindex( any( SearchEdge.class ), any( Id.class ), any( UUID.class ) );
+
+        assertEquals( 3, queued.getCount() );
+        assertEquals( 1, coalesced.getCount() );
+        assertEquals( 1, dropped.getCount() );
+
+        repairQueue.shutdown();
+    }
+
+
+    @Test
+    public void shutdownRemovesQueued() throws Exception {
+
+        final IndexProcessorFig fig = mock( IndexProcessorFig.class );
+        when( fig.getRepairQueueSize() ).thenReturn( 10 );
+        when( fig.getRepairBatchSize() ).thenReturn( 2 );
+
+        final Meter dropped = new Meter();
+
+        final MetricsFactory metricsFactory = mock( MetricsFactory.class );
+        when( metricsFactory.getMeter( any( Class.class ), anyString() ) ).thenAnswer( invocation -> {
+            final String name = ( String ) invocation.getArguments()[1];
+            return name.endsWith( "dropped" ) ? dropped : new Meter();
+        } );
+
+        final IndexOperationMessage message = new IndexOperationMessage();
+
+        final EntityIndexBatch batch = mock( EntityIndexBatch.class );
+        when( batch.build() ).thenReturn( message );
+
+        final EntityIndex entityIndex = mock( EntityIndex.class );
+        when( entityIndex.createBatch() ).thenReturn( batch );
+
+        final IndexProducer indexProducer = mock( IndexProducer.class );
+        when( indexProducer.put( any( IndexOperationMessage.class ) ) ).thenReturn( Observable.just( message ) );
+
+        //never started, so everything stays queued until shutdown
+        final IndexRepairQueue repairQueue = new IndexRepairQueueImpl( indexProducer, fig, metricsFactory );
+
+        final SearchEdge edge = new SearchEdgeImpl( new SimpleId( "owner" ), "users", SearchEdge.NodeType.SOURCE );
+        final UUID version = UUIDGenerator.newTimeUUID();
+
+        for ( int i = 0; i < 3; i++ ) {
+            repairQueue.deindex( entityIndex, edge, new SimpleId( "user" ), version );
+        }
+
+        verify( indexProducer, never() ).put( any( IndexOperationMessage.class ) );
+
+        repairQueue.shutdown();
+
+        //removed in batches of two
+        verify( indexProducer, times( 2 ) ).put( any( IndexOperationMessage.class ) );
+        verify( batch, times( 3 ) ).deindex( any( SearchEdge.class ), any( Id.class ), any( UUID.class ) );
+
+        //requests after shutdown are dropped
+        repairQueue.deindex( entityIndex, edge, new SimpleId( "user" ), version );
+
+        verify( batch, times( 3 ) ).deindex( any( SearchEdge.class ), any( Id.class ), any( UUID.class ) );
+        assertEquals( 1, dropped.getCount() );
+    }
+}
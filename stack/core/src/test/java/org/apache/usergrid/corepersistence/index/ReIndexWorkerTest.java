@@ -0,0 +1,354 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.corepersistence.index;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.usergrid.corepersistence.asyncevents.AsyncEventService;
+import org.apache.usergrid.corepersistence.rx.impl.AllEntityIdsObservable;
+import org.apache.usergrid.corepersistence.rx.impl.EdgeScope;
+import org.apache.usergrid.locking.Lock;
+import org.apache.usergrid.locking.LockManager;
+import org.apache.usergrid.locking.noop.NoOpLockManagerImpl;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.core.scope.ApplicationScopeImpl;
+import org.apache.usergrid.persistence.graph.Edge;
+import org.apache.usergrid.persistence.graph.impl.SimpleEdge;
+import org.apache.usergrid.persistence.map.MapManager;
+import org.apache.usergrid.persistence.map.MapManagerFactory;
+import org.apache.usergrid.persistence.map.MapScope;
+import org.apache.usergrid.persistence.model.entity.SimpleId;
+
+import com.codahale.metrics.Meter;
+import com.google.common.base.Optional;
+
+import rx.Observable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+public class ReIndexWorkerTest {
+
+    private static final String JOB_ID = "job";
+
+    private final ApplicationScope applicationScope = new ApplicationScopeImpl( new SimpleId( "application" ) );
+
+    private final Map<String, List<Edge>> edgesByType = new ConcurrentHashMap<>();
+
+    /**
+     * Every batch sent to be indexed, by any node
+     */
+    private final List<List<EdgeScope>> indexed = new CopyOnWriteArrayList<>();
+
+    private MapManagerFactory mapManagerFactory;
+    private ReIndexJobStore jobStore;
+    private IndexProcessorFig fig;
+    private AllEntityIdsObservable allEntityIdsObservable;
+    private AsyncEventService indexService;
+    private MetricsFactory metricsFactory;
+
+
+    @Before
+    public void setup() {
+        final MapManager mapManager = inMemoryMap();
+
+        mapManagerFactory = mock( MapManagerFactory.class );
+        when( mapManagerFactory.createMapManager( any( MapScope.class ) ) ).thenReturn( mapManager );
+
+        jobStore = new ReIndexJobStore( mapManagerFactory, new NoOpLockManagerImpl() );
+
+        fig = mock( IndexProcessorFig.class );
+        when( fig.getReindexBufferSize() ).thenReturn( 2 );
+        when( fig.getReindexConcurrencyFactor() ).thenReturn( 1 );
+        when( fig.getReindexLeaseSeconds() ).thenReturn( 60 );
+        when( fig.getReindexPollInterval() ).thenReturn( 0L );
+
+        allEntityIdsObservable = mock( AllEntityIdsObservable.class );
+        when( allEntityIdsObservable.getEdgesToEntities( any( Observable.class ), any( Optional.class ),
+            any( Optional.class ) ) ).thenAnswer( invocation -> {
+            final String edgeType = ( ( Optional<String> ) invocation.getArguments()[1] ).get();
+            final Optional<Edge> resume = ( Optional<Edge> ) invocation.getArguments()[2];
+
+            final List<Edge> edges = edgesByType.get( edgeType );
+            final int start = resume.isPresent() ? edges.indexOf( resume.get() ) + 1 : 0;
+
+            return Observable.from( edges.subList( start, edges.size() ) )
+                             .map( edge -> new EdgeScope( applicationScope, edge ) );
+        } );
+
+        indexService = mock( AsyncEventService.class );
+        doAnswer( invocation -> indexed.add( ( List<EdgeScope> ) invocation.getArguments()[0] ) ).when( indexService )
+            .indexBatch( any( List.class ), anyLong() );
+
+        metricsFactory = mock( MetricsFactory.class );
+        when( metricsFactory.getMeter( any( Class.class ), anyString() ) ).thenAnswer( invocation -> new Meter() );
+    }
+
+
+    @Test
+    public void partitionsRunOnDifferentNodes() throws Exception {
+        final ReIndexPartition users = partition( "users", 3 );
+        final ReIndexPartition devices = partition( "devices", 4 );
+
+        jobStore.putPartitions( JOB_ID, Arrays.asList( users, devices ), 0 );
+
+        final ReIndexWorker first = worker();
+        final ReIndexWorker second = worker();
+
+        first.startPolling();
+        second.startPolling();
+
+        //each node has room for a single partition
+        first.start( JOB_ID );
+        first.poll();
+        second.poll();
+
+        waitForCompleted( 2 );
+
+        assertEquals( 7, countIndexed() );
+        assertEquals( 3, jobStore.getProcessed( JOB_ID, 2 )[0] );
+        assertEquals( 4, jobStore.getProcessed( JOB_ID, 2 )[1] );
+
+        first.poll();
+
+        assertFalse( "completed jobs are no longer active", jobStore.getActiveJobs().contains( JOB_ID ) );
+
+        first.shutdown();
+        second.shutdown();
+    }
+
+
+    @Test
+    public void nothingRunsUntilStarted() {
+        jobStore.putPartitions( JOB_ID, Arrays.asList( partition( "users", 3 ) ), 0 );
+
+        final ReIndexWorker worker = worker();
+
+        worker.start( JOB_ID );
+        worker.poll();
+
+        assertEquals( 0, countIndexed() );
+        assertEquals( null, jobStore.getLeases( JOB_ID, 1 ).get( 0 ) );
+    }
+
+
+    @Test
+    public void shutdownAbandonsPartitions() throws Exception {
+        final ReIndexPartition users = partition( "users", 6 );
+
+        jobStore.putPartitions( JOB_ID, Arrays.asList( users ), 0 );
+
+        final ReIndexWorker worker = worker();
+
+        //shut down while the first buffer is being sent
+        final CountDownLatch sending = new CountDownLatch( 1 );
+        final CountDownLatch stopping = new CountDownLatch( 1 );
+
+        doAnswer( invocation -> {
+            indexed.add( ( List<EdgeScope> ) invocation.getArguments()[0] );
+            sending.countDown();
+            stopping.await( 5, TimeUnit.SECONDS );
+            return null;
+        } ).when( indexService ).indexBatch( any( List.class ), anyLong() );
+
+        worker.startPolling();
+        worker.start( JOB_ID );
+        worker.poll();
+
+        assertTrue( sending.await( 5, TimeUnit.SECONDS ) );
+
+        final Thread shutdown = new Thread( worker::shutdown );
+        shutdown.start();
+
+        //the buffer being sent finishes, and no more are sent
+        Thread.sleep( 100 );
+        stopping.countDown();
+        shutdown.join( 5000 );
+
+        assertFalse( shutdown.isAlive() );
+        assertEquals( 2, countIndexed() );
+        assertEquals( 2, jobStore.getCheckpoint( JOB_ID, 0, users ).getProcessed() );
+
+        //the lease is left to expire, so another node resumes from the checkpoint
+        assertFalse( jobStore.getCompleted( JOB_ID, 1 )[0] );
+        assertFalse( jobStore.claim( JOB_ID, 0, "other", 60 ) );
+    }
+
+
+    @Test
+    public void skipClaimWhenLocked() throws Exception {
+        jobStore.putPartitions( JOB_ID, Arrays.asList( partition( "users", 3 ) ), 0 );
+
+        //another node is claiming the partition
+        final Lock lock = mock( Lock.class );
+        when( lock.tryLock( anyLong(), any( TimeUnit.class ) ) ).thenReturn( false );
+
+        final LockManager lockManager = mock( LockManager.class );
+        when( lockManager.createLock( any( UUID.class ), anyVararg() ) ).thenReturn( lock );
+
+        final ReIndexJobStore lockedStore = new ReIndexJobStore( mapManagerFactory, lockManager );
+
+        assertFalse( lockedStore.claim( JOB_ID, 0, "node", 60 ) );
+        assertEquals( null, jobStore.getLeases( JOB_ID, 1 ).get( 0 ) );
+
+        assertTrue( jobStore.claim( JOB_ID, 0, "node", 60 ) );
+    }
+
+
+    @Test
+    public void resumeFromCheckpoint() {
+        final ReIndexPartition users = partition( "users", 5 );
+
+        jobStore.putPartitions( JOB_ID, Arrays.asList( users ), 0 );
+
+        final Edge checkpointed = edgesByType.get( "users" ).get( 1 );
+        jobStore.putCheckpoint( JOB_ID, 0,
+            new ReIndexJobStore.Checkpoint( Optional.of( checkpointed ), 2 ) );
+
+        worker().run( JOB_ID, 0, users );
+
+        assertEquals( "only the edges after the checkpoint are indexed", 3, countIndexed() );
+        assertEquals( edgesByType.get( "users" ).get( 2 ), indexed.get( 0 ).get( 0 ).getEdge() );
+
+        assertEquals( 5, jobStore.getProcessed( JOB_ID, 1 )[0] );
+        assertTrue( jobStore.getCompleted( JOB_ID, 1 )[0] );
+    }
+
+
+    @Test
+    public void stopWhenLeaseIsLost() {
+        final ReIndexPartition users = partition( "users", 5 );
+
+        jobStore.putPartitions( JOB_ID, Arrays.asList( users ), 0 );
+
+        assertTrue( jobStore.claim( JOB_ID, 0, "other", 60 ) );
+        assertFalse( "a leased partition can't be claimed", jobStore.claim( JOB_ID, 0, "node", 60 ) );
+
+        worker().run( JOB_ID, 0, users );
+
+        assertEquals( 0, countIndexed() );
+        assertFalse( jobStore.getCompleted( JOB_ID, 1 )[0] );
+    }
+
+
+    private ReIndexWorker worker() {
+        return new ReIndexWorker( jobStore, allEntityIdsObservable, indexService, fig, metricsFactory );
+    }
+
+
+    private ReIndexPartition partition( final String edgeType, final int size ) {
+        final List<Edge> edges = new ArrayList<>();
+
+        for ( int i = 0; i < size; i++ ) {
+            edges.add( new SimpleEdge( applicationScope.getApplication(), edgeType, new SimpleId( edgeType ),
+                1000 - i ) );
+        }
+
+        edgesByType.put( edgeType, edges );
+
+        return new ReIndexPartition( applicationScope, edgeType );
+    }
+
+
+    private int countIndexed() {
+        return indexed.stream().mapToInt( List::size ).sum();
+    }
+
+
+    private void waitForCompleted( final int partitionCount ) throws InterruptedException {
+        for ( int i = 0; i < 100; i++ ) {
+            boolean complete = true;
+
+            for ( boolean completed : jobStore.getCompleted( JOB_ID, partitionCount ) ) {
+                complete &= completed;
+            }
+
+            if ( complete ) {
+                return;
+            }
+
+            Thread.sleep( 100 );
+        }
+
+        throw new AssertionError( "Partitions were not completed" );
+    }
+
+
+    /**
+     * A map manager backed by a map, ignoring time to live
+     */
+    private static MapManager inMemoryMap() {
+        final Map<String, String> values = new ConcurrentHashMap<>();
+
+        final MapManager mapManager = mock( MapManager.class );
+
+        when( mapManager.getString( anyString() ) )
+            .thenAnswer( invocation -> values.get( invocation.getArguments()[0] ) );
+        when( mapManager.getStringHighConsistency( anyString() ) )
+            .thenAnswer( invocation -> values.get( invocation.getArguments()[0] ) );
+        when( mapManager.getStrings( anyCollection() ) ).thenAnswer( invocation -> {
+            final Map<String, String> results = new ConcurrentHashMap<>();
+
+            for ( Object key : ( Collection<?> ) invocation.getArguments()[0] ) {
+                final String value = values.get( key );
+                if ( value != null ) {
+                    results.put( ( String ) key, value );
+                }
+            }
+
+            return results;
+        } );
+
+        doAnswer( invocation -> values.put( ( String ) invocation.getArguments()[0],
+            ( String ) invocation.getArguments()[1] ) ).when( mapManager ).putString( anyString(), anyString() );
+        doAnswer( invocation -> values.put( ( String ) invocation.getArguments()[0],
+            ( String ) invocation.getArguments()[1] ) ).when( mapManager )
+                                                         .putString( anyString(), anyString(), anyInt() );
+        doAnswer( invocation -> values.remove( invocation.getArguments()[0] ) ).when( mapManager )
+                                                                                .delete( anyString() );
+
+        return mapManager;
+    }
+}
@@ -25,12 +25,17 @@ package org.apache.usergrid.corepersistence.pipeline.cursor;
 import org.junit.Test;
 
 import org.apache.usergrid.corepersistence.pipeline.read.EdgePath;
+import org.apache.usergrid.corepersistence.pipeline.read.search.ElasticsearchCursor;
 import org.apache.usergrid.corepersistence.pipeline.read.search.ElasticsearchCursorSerializer;
 import org.apache.usergrid.corepersistence.pipeline.read.traverse.EdgeCursorSerializer;
 import org.apache.usergrid.persistence.graph.Edge;
 import org.apache.usergrid.persistence.graph.MarkedEdge;
 import org.apache.usergrid.persistence.graph.impl.SimpleEdge;
 import org.apache.usergrid.persistence.graph.impl.SimpleMarkedEdge;
+import org.apache.usergrid.persistence.index.SearchSeek;
+import org.apache.usergrid.persistence.model.util.UUIDGenerator;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import com.google.common.base.Optional;
 
@@ -51,18 +56,19 @@ public class CursorTest {
 
 
 
-        final Integer query1 = 10;
+        final ElasticsearchCursor query1 = ElasticsearchCursor.fromOffset( 10 );
 
-        final Integer query2 = 20;
+        final ElasticsearchCursor query2 = ElasticsearchCursor
+            .fromSeek( new SearchSeek( 120, createId( "target3" ), UUIDGenerator.newTimeUUID() ) );
 
 
 
-        final EdgePath<Integer> filter3Path = new EdgePath<>( 3, query2, ElasticsearchCursorSerializer.INSTANCE, Optional.absent() );
+        final EdgePath<ElasticsearchCursor> filter3Path = new EdgePath<>( 3, query2, ElasticsearchCursorSerializer.INSTANCE, Optional.absent() );
 
         final EdgePath<MarkedEdge> filter2Path =
             new EdgePath<>( 2, edge2, EdgeCursorSerializer.INSTANCE, Optional.of( filter3Path ) );
 
-        final EdgePath<Integer> filter1Path = new EdgePath<>( 1, query1, ElasticsearchCursorSerializer.INSTANCE, Optional.of(filter2Path) );
+        final EdgePath<ElasticsearchCursor> filter1Path = new EdgePath<>( 1, query1, ElasticsearchCursorSerializer.INSTANCE, Optional.of(filter2Path) );
 
         final EdgePath<MarkedEdge> filter0Path = new EdgePath<>( 0, edge1, EdgeCursorSerializer.INSTANCE, Optional.of( filter1Path ) );
 
@@ -83,7 +89,7 @@ public class CursorTest {
 
 
 
-        final Integer parsedQuery2 = requestCursor.getCursor( 3, ElasticsearchCursorSerializer.INSTANCE );
+        final ElasticsearchCursor parsedQuery2 = requestCursor.getCursor( 3, ElasticsearchCursorSerializer.INSTANCE );
 
         assertEquals(query2, parsedQuery2);
 
@@ -91,7 +97,7 @@ public class CursorTest {
 
         assertEquals( edge2, parsedEdge2 );
 
-        final Integer parsedQuery1 = requestCursor.getCursor( 1, ElasticsearchCursorSerializer.INSTANCE );
+        final ElasticsearchCursor parsedQuery1 = requestCursor.getCursor( 1, ElasticsearchCursorSerializer.INSTANCE );
 
         assertEquals( query1, parsedQuery1 );
 
@@ -102,4 +108,22 @@ public class CursorTest {
 
     }
 
+
+    @Test
+    public void testOffsetOnlyElasticsearchCursor(){
+
+        //cursors issued before seeking was supported only contain the offset
+        final ObjectNode map = CursorSerializerUtil.getMapper().createObjectNode();
+
+        map.put( "1", 30 );
+
+        final RequestCursor requestCursor = new RequestCursor( Optional.of( CursorSerializerUtil.asString( map ) ) );
+
+        final ElasticsearchCursor parsed = requestCursor.getCursor( 1, ElasticsearchCursorSerializer.INSTANCE );
+
+        assertEquals( 30, parsed.getOffset() );
+
+        assertFalse( parsed.getSeek().isPresent() );
+    }
+
 }
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.corepersistence.pipeline.read.search;
+
+
+import org.junit.Test;
+
+import org.apache.usergrid.corepersistence.index.CoreIndexFig;
+import org.apache.usergrid.persistence.Query;
+import org.apache.usergrid.persistence.index.SearchEdge;
+import org.apache.usergrid.persistence.index.impl.SearchEdgeImpl;
+import org.apache.usergrid.persistence.model.entity.SimpleId;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+public class StaleCandidateTrackerTest {
+
+    private final SearchEdge edge = new SearchEdgeImpl( new SimpleId( "owner" ), "users", SearchEdge.NodeType.SOURCE );
+
+
+    private StaleCandidateTracker createTracker( final double maxFactor ) {
+        final CoreIndexFig fig = mock( CoreIndexFig.class );
+        when( fig.getOverfetchMaxFactor() ).thenReturn( maxFactor );
+        when( fig.getOverfetchEdgeCount() ).thenReturn( 100 );
+
+        return new StaleCandidateTracker( fig );
+    }
+
+
+    @Test
+    public void noStaleCandidates() {
+        final StaleCandidateTracker tracker = createTracker( 3 );
+
+        assertEquals( 10, tracker.getFetchSize( edge, 10 ) );
+
+        tracker.record( edge, 10, 0 );
+
+        assertEquals( 10, tracker.getFetchSize( edge, 10 ) );
+    }
+
+
+    @Test
+    public void overFetchForStaleRatio() {
+        final StaleCandidateTracker tracker = createTracker( 3 );
+
+        //half the candidates were stale, fetch twice as many
+        tracker.record( edge, 10, 5 );
+        assertEquals( 20, tracker.getFetchSize( edge, 10 ) );
+
+        //recovers as the index catches up
+        for ( int i = 0; i < 50; i++ ) {
+            tracker.record( edge, 10, 0 );
+        }
+
+        assertEquals( 10, tracker.getFetchSize( edge, 10 ) );
+    }
+
+
+    @Test
+    public void overFetchCapped() {
+        final StaleCandidateTracker tracker = createTracker( 3 );
+
+        tracker.record( edge, 10, 10 );
+        assertEquals( 30, tracker.getFetchSize( edge, 10 ) );
+        assertEquals( Query.MAX_LIMIT, tracker.getFetchSize( edge, 500 ) );
+
+        final StaleCandidateTracker disabled = createTracker( 1 );
+        disabled.record( edge, 10, 10 );
+        assertEquals( 10, disabled.getFetchSize( edge, 10 ) );
+
+        assertTrue( "other edges are unaffected", tracker.getFetchSize(
+            new SearchEdgeImpl( new SimpleId( "owner" ), "devices", SearchEdge.NodeType.SOURCE ), 10 ) == 10 );
+    }
+}
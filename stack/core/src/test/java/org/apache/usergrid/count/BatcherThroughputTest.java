@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.count;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.StressTest;
+import org.apache.usergrid.count.common.Count;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
+
+import static org.junit.Assert.assertEquals;
+
+
+/**
+ * Compares contended add throughput of the aggregating batcher with the queue and lock it replaced.  Hot counters
+ * are modelled by every thread incrementing the same few counter names.
+ */
+@Category(StressTest.class)
+public class BatcherThroughputTest {
+
+    private static final Logger logger = LoggerFactory.getLogger( BatcherThroughputTest.class );
+
+    private static final int THREADS = 16;
+    private static final int ADDS_PER_THREAD = 200000;
+    private static final int DISTINCT_COUNTERS = 8;
+    private static final int BATCH_SIZE = 50000;
+
+
+    @Test
+    public void contendedAdd() throws Exception {
+        //warm up both before measuring
+        run( new QueueAdder() );
+        run( new BatcherAdder() );
+
+        final long queueMillis = run( new QueueAdder() );
+        final BatcherAdder batcherAdder = new BatcherAdder();
+        final long batcherMillis = run( batcherAdder );
+
+        final long total = ( long ) THREADS * ADDS_PER_THREAD;
+
+        logger.info( "{} threads adding {} counts: queue {} ms ({} adds/s), aggregating batcher {} ms ({} adds/s)",
+            THREADS, total, queueMillis, total * 1000 / Math.max( 1, queueMillis ), batcherMillis,
+            total * 1000 / Math.max( 1, batcherMillis ) );
+
+        //nothing may be lost while batches are swapped under contention
+        batcherAdder.flushOpenBatch();
+        assertEquals( total, batcherAdder.submitted.get() );
+    }
+
+
+    private long run( final Adder adder ) throws Exception {
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final CountDownLatch done = new CountDownLatch( THREADS );
+
+        for ( int t = 0; t < THREADS; t++ ) {
+            final int thread = t;
+            new Thread( () -> {
+                try {
+                    start.await();
+                    for ( int i = 0; i < ADDS_PER_THREAD; i++ ) {
+                        adder.add( new Count( "Counters", "app", "counter" + ( ( thread + i ) % DISTINCT_COUNTERS ),
+                            1 ) );
+                    }
+                }
+                catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+                finally {
+                    done.countDown();
+                }
+            } ).start();
+        }
+
+        final long startTime = System.currentTimeMillis();
+        start.countDown();
+        done.await();
+        return System.currentTimeMillis() - startTime;
+    }
+
+
+    private interface Adder {
+        void add( Count count ) throws InterruptedException;
+    }
+
+
+    /**
+     * The aggregating batcher, totals the values it is asked to submit
+     */
+    private static final class BatcherAdder implements Adder, BatchSubmitter {
+        private final AtomicLong submitted = new AtomicLong();
+        private final SimpleBatcher batcher = new SimpleBatcher();
+
+
+        private BatcherAdder() {
+            batcher.setBatchSize( BATCH_SIZE );
+            batcher.setBatchInterval( 3600 );
+            batcher.setBatchSubmitter( this );
+        }
+
+
+        @Override
+        public void add( final Count count ) {
+            batcher.add( count );
+        }
+
+
+        /**
+         * Fill the open batch with zeros so it is submitted
+         */
+        private void flushOpenBatch() {
+            for ( int i = 0; i < BATCH_SIZE; i++ ) {
+                batcher.add( new Count( "Counters", "app", "counter0", 0 ) );
+            }
+        }
+
+
+        @Override
+        public Future<?> submit( final Collection<Count> counts ) {
+            for ( Count count : counts ) {
+                submitted.addAndGet( count.getValue() );
+            }
+            return null;
+        }
+
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+
+    /**
+     * The previous batcher, every count is queued and a full queue is drained under a lock.  Records the same
+     * metrics as the batcher so only the batching differs
+     */
+    private static final class QueueAdder implements Adder {
+        private final Timer addTimer =
+            Metrics.newTimer( QueueAdder.class, "add_invocation", TimeUnit.MICROSECONDS, TimeUnit.SECONDS );
+        private final Counter invocationCounter = Metrics.newCounter( QueueAdder.class, "batch_add_invocations" );
+        private final BlockingQueue<Count> counts = new ArrayBlockingQueue<>( BATCH_SIZE );
+
+
+        @Override
+        public void add( final Count count ) throws InterruptedException {
+            invocationCounter.inc();
+            final TimerContext context = addTimer.time();
+            final BlockingQueue<Count> active = counts;
+
+            if ( active.remainingCapacity() == 0 ) {
+                synchronized ( this ) {
+                    if ( active.remainingCapacity() == 0 ) {
+                        final List<Count> flushed = new ArrayList<>( BATCH_SIZE );
+                        active.drainTo( flushed );
+                    }
+                }
+            }
+
+            active.offer( count, 500, TimeUnit.MILLISECONDS );
+            context.stop();
+        }
+    }
+}
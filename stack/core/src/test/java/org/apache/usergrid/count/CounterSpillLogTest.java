@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.count;
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.apache.usergrid.count.common.Count;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class CounterSpillLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    @Test
+    public void appendReadCommit() throws Exception {
+        final String path = new File( folder.getRoot(), "spill.log" ).getPath();
+        final CounterSpillLog spillLog = new CounterSpillLog( path, 1024 * 1024 );
+
+        assertFalse( spillLog.hasPending() );
+        assertNull( spillLog.read( 100 ) );
+
+        assertTrue( spillLog.append(
+            Arrays.<Count>asList( new Count( "Counters", "k1", "c1", 1 ), new Count( "Counters", "k1", "c2", 2 ) ) ) );
+
+        final CounterSpillLog.Replay replay = spillLog.read( 100 );
+        assertEquals( 2, replay.getCounts().size() );
+        assertEquals( 2, replay.getCounts().get( 1 ).getValue() );
+
+        //appended while the first counts are being replayed
+        spillLog.append( Collections.<Count>singletonList( new Count( "Counters", "k2", "c1", 3 ) ) );
+
+        spillLog.commit( replay );
+
+        final CounterSpillLog.Replay remaining = spillLog.read( 100 );
+        assertEquals( 1, remaining.getCounts().size() );
+        assertEquals( "k2", remaining.getCounts().get( 0 ).getKeyName() );
+
+        spillLog.commit( remaining );
+        assertFalse( spillLog.hasPending() );
+    }
+
+
+    @Test
+    public void survivesRestart() throws Exception {
+        final String path = new File( folder.getRoot(), "spill.log" ).getPath();
+
+        new CounterSpillLog( path, 1024 * 1024 )
+            .append( Collections.<Count>singletonList( new Count( "Counters", "k1", "c1", 1 ) ) );
+
+        //simulate a crash part way through the next append
+        try ( FileOutputStream out = new FileOutputStream( path, true ) ) {
+            out.write( "{\"tableName\":\"Coun".getBytes( "UTF-8" ) );
+        }
+
+        final CounterSpillLog reopened = new CounterSpillLog( path, 1024 * 1024 );
+        reopened.append( Collections.<Count>singletonList( new Count( "Counters", "k2", "c1", 2 ) ) );
+
+        final CounterSpillLog.Replay replay = reopened.read( 100 );
+        assertEquals( 2, replay.getCounts().size() );
+        assertEquals( "k1", replay.getCounts().get( 0 ).getKeyName() );
+        assertEquals( "k2", replay.getCounts().get( 1 ).getKeyName() );
+    }
+
+
+    @Test
+    public void readInChunks() throws Exception {
+        final String path = new File( folder.getRoot(), "spill.log" ).getPath();
+        final CounterSpillLog spillLog = new CounterSpillLog( path, 1024 * 1024 );
+
+        spillLog.append( Arrays.<Count>asList( new Count( "Counters", "k1", "c1", 1 ),
+            new Count( "Counters", "k2", "c1", 1 ), new Count( "Counters", "k3", "c1", 1 ) ) );
+
+        final CounterSpillLog.Replay first = spillLog.read( 2 );
+        assertEquals( 2, first.getCounts().size() );
+
+        spillLog.commit( first );
+
+        final CounterSpillLog.Replay second = spillLog.read( 2 );
+        assertEquals( 1, second.getCounts().size() );
+        assertEquals( "k3", second.getCounts().get( 0 ).getKeyName() );
+
+        spillLog.commit( second );
+        assertFalse( spillLog.hasPending() );
+    }
+
+
+    @Test
+    public void disabledWithoutPath() throws Exception {
+        final CounterSpillLog spillLog = new CounterSpillLog( "", 1024 * 1024 );
+
+        assertFalse( spillLog.isEnabled() );
+        assertFalse( spillLog.append( Collections.<Count>singletonList( new Count( "Counters", "k1", "c1", 1 ) ) ) );
+        assertFalse( spillLog.hasPending() );
+        assertNull( spillLog.read( 100 ) );
+    }
+
+
+    @Test
+    public void dropsWhenFull() throws Exception {
+        final String path = new File( folder.getRoot(), "spill.log" ).getPath();
+        final CounterSpillLog spillLog = new CounterSpillLog( path, 100 );
+
+        assertTrue( spillLog.append( Collections.<Count>singletonList( new Count( "Counters", "k1", "c1", 1 ) ) ) );
+        assertFalse( spillLog.append( Collections.<Count>singletonList( new Count( "Counters", "k1", "c1", 1 ) ) ) );
+
+        assertEquals( 1, spillLog.read( 100 ).getCounts().size() );
+    }
+}
@@ -36,6 +36,7 @@ import org.apache.usergrid.corepersistence.util.CpNamingUtils;
 import org.apache.usergrid.persistence.Query.Level;
 import org.apache.usergrid.persistence.entities.Group;
 import org.apache.usergrid.persistence.entities.User;
+import org.apache.usergrid.persistence.exceptions.DuplicateUniquePropertyExistsException;
 import org.apache.usergrid.persistence.model.util.UUIDGenerator;
 import org.apache.usergrid.utils.UUIDUtils;
 
@@ -617,4 +618,64 @@ public class EntityManagerIT extends AbstractCoreIT {
         assertEquals(1, results.getEntities().size());
     }
 
+
+    @Test
+    public void testCreateAll() throws Exception {
+        logger.info( "EntityManagerIT.testCreateAll" );
+
+        EntityManager em = app.getEntityManager();
+
+        final UUID importId = UUIDGenerator.newTimeUUID();
+
+        List<Entity> entities = new ArrayList<Entity>();
+
+        for ( int i = 0; i < 5; i++ ) {
+            Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            properties.put( "username", "bulkuser" + i );
+            properties.put( "email", "bulkuser" + i + "@usergrid.com" );
+
+            entities.add( new DynamicEntity( "user", i == 0 ? importId : null, properties ) );
+        }
+
+        //a second user with the same username must fail alone
+        Map<String, Object> duplicate = new LinkedHashMap<String, Object>();
+        duplicate.put( "username", "bulkuser1" );
+        duplicate.put( "email", "bulkduplicate@usergrid.com" );
+
+        entities.add( new DynamicEntity( "user", null, duplicate ) );
+
+        List<EntityCreateResult> results = em.createAll( entities );
+
+        assertEquals( entities.size(), results.size() );
+
+        for ( int i = 0; i < 5; i++ ) {
+            EntityCreateResult result = results.get( i );
+
+            assertTrue( result.isSuccess() );
+            assertEquals( "bulkuser" + i, result.getEntity().getProperty( "username" ) );
+
+            Entity user = em.get( new SimpleEntityRef( "user", result.getEntity().getUuid() ) );
+            assertNotNull( user );
+            assertEquals( "bulkuser" + i, user.getProperty( "username" ) );
+        }
+
+        assertEquals( importId, results.get( 0 ).getEntity().getUuid() );
+
+        assertFalse( results.get( 5 ).isSuccess() );
+        assertTrue( results.get( 5 ).getError().get() instanceof DuplicateUniquePropertyExistsException );
+
+        app.refreshIndex();
+
+        //the created users were added to the collection and indexed
+        Results found = em.searchCollection( em.getApplicationRef(), "users",
+            Query.fromQL( "select * where username = 'bulkuser*'" ).withLimit( 10 ) );
+
+        assertEquals( 5, found.size() );
+
+        EntityRef userRef = em.getAlias( new SimpleEntityRef( "application", app.getId() ), "users", "bulkuser3" );
+
+        assertNotNull( userRef );
+        assertEquals( results.get( 3 ).getEntity().getUuid(), userRef.getUuid() );
+    }
+
 }
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.utils;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class UUIDSetTest {
+
+    @Test
+    public void addAndContains() {
+        final UUIDSet set = new UUIDSet();
+        final List<UUID> added = new ArrayList<>();
+
+        //enough time uuids to force several resizes
+        for ( int i = 0; i < 10000; i++ ) {
+            final UUID uuid = UUIDUtils.newTimeUUID();
+            added.add( uuid );
+            assertTrue( set.add( uuid ) );
+        }
+
+        assertEquals( added.size(), set.size() );
+
+        for ( UUID uuid : added ) {
+            assertTrue( set.contains( uuid ) );
+            assertFalse( "duplicates should be rejected", set.add( uuid ) );
+        }
+
+        assertEquals( added.size(), set.size() );
+        assertFalse( set.contains( UUIDUtils.newTimeUUID() ) );
+    }
+
+
+    @Test
+    public void nilUuid() {
+        final UUIDSet set = new UUIDSet();
+        final UUID nil = new UUID( 0, 0 );
+
+        assertFalse( set.contains( nil ) );
+        assertTrue( set.add( nil ) );
+        assertFalse( set.add( nil ) );
+        assertTrue( set.contains( nil ) );
+        assertEquals( 1, set.size() );
+    }
+
+
+    @Test
+    public void presized() {
+        final UUIDSet set = new UUIDSet( 1000 );
+        final long memory = set.getMemoryBytes();
+
+        for ( int i = 0; i < 1000; i++ ) {
+            set.add( UUID.randomUUID() );
+        }
+
+        assertEquals( "presized set should not grow", memory, set.getMemoryBytes() );
+    }
+}
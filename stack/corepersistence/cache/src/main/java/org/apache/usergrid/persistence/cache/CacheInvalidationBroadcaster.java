@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.cache;
+
+
+import java.util.UUID;
+
+
+/**
+ * Broadcasts cache invalidations to every node in the cluster so their local cache tiers drop stale values.
+ */
+public interface CacheInvalidationBroadcaster {
+
+    /**
+     * Broadcast that a key, or an entire scope when the key is null, has changed
+     *
+     * @param source The id of the local cache that originated the change, so it can ignore its own invalidations
+     * @param scope The scope that changed
+     * @param key The string form of the key that changed, or null if the whole scope was invalidated
+     */
+    void broadcast( UUID source, CacheScope scope, String key );
+
+    /**
+     * Register a listener to receive invalidations
+     */
+    void addListener( CacheInvalidationListener listener );
+
+    /**
+     * Start receiving invalidations from other nodes
+     */
+    void start();
+
+    /**
+     * Stop receiving invalidations from other nodes
+     */
+    void shutdown();
+
+
+    /**
+     * Receives invalidations from the broadcaster
+     */
+    interface CacheInvalidationListener {
+
+        /**
+         * Invoked with each invalidation.  A null key means the entire scope was invalidated.
+         */
+        void onInvalidation( UUID source, CacheScope scope, String key );
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.cache;
+
+
+import org.safehaus.guicyfig.Default;
+import org.safehaus.guicyfig.FigSingleton;
+import org.safehaus.guicyfig.GuicyFig;
+import org.safehaus.guicyfig.Key;
+
+
+/**
+ * Configuration for the node local tier of the scoped cache.
+ */
+@FigSingleton
+public interface ScopedCacheFig extends GuicyFig {
+
+    String LOCAL_CACHE_ENABLED = "usergrid.scoped_cache.local.enabled";
+
+    String LOCAL_CACHE_SIZE = "usergrid.scoped_cache.local.size";
+
+    String LOCAL_CACHE_TTL_MS = "usergrid.scoped_cache.local.ttl_ms";
+
+    String GENERATION_CACHE_TTL_MS = "usergrid.scoped_cache.generation.ttl_ms";
+
+    String LEGACY_ROW_GRACE_MS = "usergrid.scoped_cache.legacy.grace_ms";
+
+
+    /**
+     * When false every get and put goes directly to cassandra.  Invalidations reach other nodes through the
+     * CacheInvalidationBroadcaster, and a node that misses one serves the stale value for at most the local ttl.
+     */
+    @Key( LOCAL_CACHE_ENABLED )
+    @Default( "true" )
+    boolean getLocalCacheEnabled();
+
+    /**
+     * The maximum number of values held in the local tier of each cache factory
+     */
+    @Key( LOCAL_CACHE_SIZE )
+    @Default( "10000" )
+    int getLocalCacheSize();
+
+    /**
+     * The longest time a value may live in the local tier.  A shorter per put ttl always wins.  This bounds how long
+     * a node can serve a stale value if it misses an invalidation broadcast.
+     */
+    @Key( LOCAL_CACHE_TTL_MS )
+    @Default( "5000" )
+    long getLocalCacheTtl();
+
+    /**
+     * How long a node caches the generation of a scope.  A scope invalidated on another node may be read from its
+     * previous generation for up to this long.
+     */
+    @Key( GENERATION_CACHE_TTL_MS )
+    @Default( "1000" )
+    long getGenerationCacheTtl();
+
+    /**
+     * How long a node keeps writing and deleting the legacy row per application after it first sees the bucketed
+     * migration.  Other nodes may read the migration version from their cache for up to a minute and serve values from
+     * the legacy row meanwhile, so this must be longer than that cache's ttl.
+     */
+    @Key( LEGACY_ROW_GRACE_MS )
+    @Default( "120000" )
+    long getLegacyRowGrace();
+}
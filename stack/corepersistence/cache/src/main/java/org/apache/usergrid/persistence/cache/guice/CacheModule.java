@@ -22,10 +22,16 @@ import com.google.inject.Key;
 import com.google.inject.TypeLiteral;
 import com.google.inject.multibindings.Multibinder;
 import org.apache.usergrid.persistence.cache.CacheFactory;
+import org.apache.usergrid.persistence.cache.CacheInvalidationBroadcaster;
+import org.apache.usergrid.persistence.cache.ScopedCacheFig;
 import org.apache.usergrid.persistence.cache.impl.CacheFactoryImpl;
+import org.apache.usergrid.persistence.cache.impl.QueueCacheInvalidationBroadcaster;
 import org.apache.usergrid.persistence.cache.impl.ScopedCacheSerialization;
+import org.apache.usergrid.persistence.cache.impl.ScopedCacheMigrationPlugin;
 import org.apache.usergrid.persistence.cache.impl.ScopedCacheSerializationImpl;
+import org.apache.usergrid.persistence.core.migration.data.MigrationPlugin;
 import org.apache.usergrid.persistence.core.migration.schema.Migration;
+import org.safehaus.guicyfig.GuicyFigModule;
 
 import java.util.Map;
 
@@ -42,9 +48,16 @@ public class CacheModule extends AbstractModule {
 
         bind( ScopedCacheSerialization.class ).to( ScopedCacheSerializationImpl.class );
 
+        install( new GuicyFigModule( ScopedCacheFig.class ) );
+
+        // reaches every node through a topic each node's queue is subscribed to
+        bind( CacheInvalidationBroadcaster.class ).to( QueueCacheInvalidationBroadcaster.class );
+
         Multibinder<Migration> migrationBinding = Multibinder.newSetBinder( binder(), Migration.class );
         migrationBinding.addBinding().to(Key.get(ScopedCacheSerialization.class));
 
+        Multibinder.newSetBinder( binder(), MigrationPlugin.class ).addBinding().to( ScopedCacheMigrationPlugin.class );
+
     }
 }
 
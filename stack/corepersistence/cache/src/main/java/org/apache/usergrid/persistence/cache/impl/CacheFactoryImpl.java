@@ -24,8 +24,10 @@ import com.google.common.cache.LoadingCache;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.apache.usergrid.persistence.cache.CacheFactory;
+import org.apache.usergrid.persistence.cache.CacheInvalidationBroadcaster;
 import org.apache.usergrid.persistence.cache.CacheScope;
 import org.apache.usergrid.persistence.cache.ScopedCache;
+import org.apache.usergrid.persistence.cache.ScopedCacheFig;
 
 import java.util.concurrent.ExecutionException;
 
@@ -37,13 +39,19 @@ public class CacheFactoryImpl<K, V> implements CacheFactory<K, V> {
 
     private LoadingCache<CacheScope, ScopedCache> cacheCache;
 
+    private final LocalScopedCache<V> localCache;
+
     @Inject
-    public CacheFactoryImpl( final ScopedCacheSerialization serializer ) {
+    public CacheFactoryImpl( final ScopedCacheSerialization serializer, final ScopedCacheFig scopedCacheFig,
+                             final CacheInvalidationBroadcaster broadcaster ) {
+
+        // shared by every scope created by this factory
+        localCache = new LocalScopedCache<>( scopedCacheFig, broadcaster );
 
         cacheCache = CacheBuilder.newBuilder().maximumSize(1000).build(
             new CacheLoader<CacheScope, ScopedCache>() {
                 public ScopedCache load(CacheScope scope) {
-                    return new ScopedCacheImpl(scope, serializer);
+                    return new ScopedCacheImpl(scope, serializer, localCache);
                 }
             });
     }
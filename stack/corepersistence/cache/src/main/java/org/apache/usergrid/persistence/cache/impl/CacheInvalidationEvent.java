@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.cache.impl;
+
+
+import java.io.Serializable;
+import java.util.UUID;
+
+import org.apache.usergrid.persistence.cache.CacheScope;
+import org.apache.usergrid.persistence.model.entity.SimpleId;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+
+/**
+ * An invalidation sent to the other nodes of the cluster
+ */
+@JsonIgnoreProperties( ignoreUnknown = true )
+public class CacheInvalidationEvent implements Serializable {
+
+    @JsonProperty
+    private String node;
+
+    @JsonProperty
+    private UUID source;
+
+    @JsonProperty
+    private UUID applicationUuid;
+
+    @JsonProperty
+    private String applicationType;
+
+    @JsonProperty
+    private String key;
+
+
+    // Needed for jackson, do not remove
+    private CacheInvalidationEvent() {
+
+    }
+
+
+    public CacheInvalidationEvent( final String node, final UUID source, final CacheScope scope, final String key ) {
+        this.node = node;
+        this.source = source;
+        this.applicationUuid = scope.getApplication().getUuid();
+        this.applicationType = scope.getApplication().getType();
+        this.key = key;
+    }
+
+
+    /**
+     * Get the node that sent the invalidation
+     */
+    public String getNode() {
+        return node;
+    }
+
+
+    /**
+     * Get the id of the local cache that made the change
+     */
+    public UUID getSource() {
+        return source;
+    }
+
+
+    /**
+     * Get the scope that changed
+     */
+    @JsonIgnore
+    public CacheScope getScope() {
+        return new CacheScope( new SimpleId( applicationUuid, applicationType ) );
+    }
+
+
+    /**
+     * Get the key that changed, or null if the whole scope was invalidated
+     */
+    public String getKey() {
+        return key;
+    }
+}
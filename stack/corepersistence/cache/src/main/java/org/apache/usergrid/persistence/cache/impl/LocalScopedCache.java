@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.cache.impl;
+
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.persistence.cache.CacheInvalidationBroadcaster;
+import org.apache.usergrid.persistence.cache.CacheScope;
+import org.apache.usergrid.persistence.cache.ScopedCacheFig;
+import org.apache.usergrid.persistence.model.entity.Id;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+
+/**
+ * The node local tier in front of the cassandra backed scoped cache.  Values expire at the earlier of their put ttl
+ * and the configured local ttl.  Every change made through this cache is broadcast so that other nodes drop their
+ * copy, and invalidations received from other nodes are applied here.
+ *
+ * Values are held serialized, the same way they are written to cassandra, so every get returns a new copy that the
+ * caller is free to mutate.
+ */
+public class LocalScopedCache<V> implements CacheInvalidationBroadcaster.CacheInvalidationListener {
+
+    private static final Logger logger = LoggerFactory.getLogger( LocalScopedCache.class );
+
+    /**
+     * Identifies invalidations that originated from this cache
+     */
+    private final UUID cacheId = UUID.randomUUID();
+
+    private final ScopedCacheFig scopedCacheFig;
+    private final CacheInvalidationBroadcaster broadcaster;
+    private final Cache<LocalKey, LocalEntry> values;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+
+    public LocalScopedCache( final ScopedCacheFig scopedCacheFig, final CacheInvalidationBroadcaster broadcaster ) {
+        this.scopedCacheFig = scopedCacheFig;
+        this.broadcaster = broadcaster;
+
+        this.values = CacheBuilder.newBuilder().maximumSize( scopedCacheFig.getLocalCacheSize() )
+                                  .expireAfterWrite( scopedCacheFig.getLocalCacheTtl(), TimeUnit.MILLISECONDS )
+                                  .build();
+
+        //configured as in ScopedCacheSerializationImpl so values round trip the same way
+        mapper.enableDefaultTyping();
+        mapper.setVisibility( PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE );
+        mapper.setVisibility( PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY );
+
+        broadcaster.addListener( this );
+    }
+
+
+    /**
+     * Get a copy of the value, or null if it's not present locally or has expired
+     */
+    public V get( final CacheScope scope, final String key, final TypeReference typeRef ) {
+
+        if ( !scopedCacheFig.getLocalCacheEnabled() ) {
+            return null;
+        }
+
+        final LocalKey localKey = new LocalKey( scope.getApplication(), key );
+        final LocalEntry entry = values.getIfPresent( localKey );
+
+        if ( entry == null ) {
+            return null;
+        }
+
+        if ( entry.isExpired( System.currentTimeMillis() ) ) {
+            values.invalidate( localKey );
+            return null;
+        }
+
+        try {
+            return mapper.readValue( entry.value, typeRef );
+        }
+        catch ( IOException e ) {
+            logger.error( "Unable to read locally cached value of {}, reading it from cassandra", key, e );
+            values.invalidate( localKey );
+            return null;
+        }
+    }
+
+
+    /**
+     * Cache the value locally.  A null or non positive ttl in seconds means the value has no ttl of its own
+     */
+    public void put( final CacheScope scope, final String key, final V value, final Integer ttl ) {
+
+        if ( !scopedCacheFig.getLocalCacheEnabled() ) {
+            return;
+        }
+
+        long ttlMillis = scopedCacheFig.getLocalCacheTtl();
+
+        if ( ttl != null && ttl > 0 ) {
+            ttlMillis = Math.min( ttlMillis, TimeUnit.SECONDS.toMillis( ttl ) );
+        }
+
+        final byte[] serialized;
+
+        try {
+            serialized = mapper.writeValueAsBytes( value );
+        }
+        catch ( IOException e ) {
+            logger.error( "Unable to cache {} locally", key, e );
+            return;
+        }
+
+        values.put( new LocalKey( scope.getApplication(), key ),
+            new LocalEntry( serialized, System.currentTimeMillis() + ttlMillis ) );
+    }
+
+
+    /**
+     * A value has changed in this scope.  Drop it here and on every other node
+     */
+    public void changed( final CacheScope scope, final String key ) {
+        values.invalidate( new LocalKey( scope.getApplication(), key ) );
+        broadcaster.broadcast( cacheId, scope, key );
+    }
+
+
+    /**
+     * The entire scope has been invalidated.  Drop it here and on every other node
+     */
+    public void invalidated( final CacheScope scope ) {
+        invalidateScope( scope.getApplication() );
+        broadcaster.broadcast( cacheId, scope, null );
+    }
+
+
+    @Override
+    public void onInvalidation( final UUID source, final CacheScope scope, final String key ) {
+
+        //we've already applied our own changes
+        if ( cacheId.equals( source ) ) {
+            return;
+        }
+
+        if ( key == null ) {
+            invalidateScope( scope.getApplication() );
+            return;
+        }
+
+        values.invalidate( new LocalKey( scope.getApplication(), key ) );
+    }
+
+
+    private void invalidateScope( final Id application ) {
+        values.asMap().keySet().removeIf( localKey -> localKey.application.equals( application ) );
+    }
+
+
+    /**
+     * Key of a value within an application
+     */
+    private static final class LocalKey {
+        private final Id application;
+        private final String key;
+
+
+        private LocalKey( final Id application, final String key ) {
+            this.application = application;
+            this.key = key;
+        }
+
+
+        @Override
+        public boolean equals( final Object o ) {
+            if ( this == o ) {
+                return true;
+            }
+            if ( o == null || getClass() != o.getClass() ) {
+                return false;
+            }
+
+            final LocalKey localKey = ( LocalKey ) o;
+
+            return application.equals( localKey.application ) && key.equals( localKey.key );
+        }
+
+
+        @Override
+        public int hashCode() {
+            int result = application.hashCode();
+            result = 31 * result + key.hashCode();
+            return result;
+        }
+    }
+
+
+    /**
+     * A serialized value with its own expiration
+     */
+    private static final class LocalEntry {
+        private final byte[] value;
+        private final long expiresAt;
+
+
+        private LocalEntry( final byte[] value, final long expiresAt ) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+
+        private boolean isExpired( final long now ) {
+            return now >= expiresAt;
+        }
+    }
+}
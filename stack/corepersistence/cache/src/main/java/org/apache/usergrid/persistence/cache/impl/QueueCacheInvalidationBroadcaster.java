@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.cache.impl;
+
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.persistence.cache.CacheInvalidationBroadcaster;
+import org.apache.usergrid.persistence.cache.CacheScope;
+import org.apache.usergrid.persistence.queue.QueueFig;
+import org.apache.usergrid.persistence.queue.QueueManager;
+import org.apache.usergrid.persistence.queue.QueueManagerFactory;
+import org.apache.usergrid.persistence.queue.QueueMessage;
+import org.apache.usergrid.persistence.queue.QueueScope;
+import org.apache.usergrid.persistence.queue.impl.QueueScopeImpl;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+
+/**
+ * Delivers invalidations to the listeners of this node, and publishes them to a topic every node subscribes its own
+ * queue to.  Each node reads its queue and delivers what other nodes published to its listeners.
+ *
+ * Queues are created per node, in the primary region only.  Nodes of other regions still rely on the local tier ttl.
+ * When queues are in memory there is only this node, so nothing is published.
+ */
+@Singleton
+public class QueueCacheInvalidationBroadcaster implements CacheInvalidationBroadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger( QueueCacheInvalidationBroadcaster.class );
+
+    /**
+     * The topic every node's queue is subscribed to
+     */
+    private static final String TOPIC_NAME = "cache_inv";
+
+    /**
+     * The most invalidations read at once
+     */
+    private static final int MAX_MESSAGES = 10;
+
+    /**
+     * How long to wait after failing to read the queue
+     */
+    private static final long ERROR_SLEEP_MILLIS = 1000;
+
+    /**
+     * How long shutdown waits for the poller to stop
+     */
+    private static final long STOP_WAIT_MILLIS = 30000;
+
+
+    private final boolean localQueue;
+    private final QueueManager queueManager;
+
+    /**
+     * Identifies this node, so it skips its own invalidations when they come back from the topic
+     */
+    private final String node = Long.toHexString( ThreadLocalRandom.current().nextLong() );
+
+    private final List<CacheInvalidationListener> listeners = new CopyOnWriteArrayList<>();
+
+    private Thread poller;
+    private volatile boolean stopped;
+
+
+    @Inject
+    public QueueCacheInvalidationBroadcaster( final QueueManagerFactory queueManagerFactory,
+                                              final QueueFig queueFig ) {
+
+        this.localQueue = queueFig.overrideQueueForDefault();
+
+        final QueueScope queueScope =
+            new QueueScopeImpl( TOPIC_NAME + "_" + node, TOPIC_NAME, QueueScope.RegionImplementation.LOCAL );
+
+        this.queueManager = localQueue ? null : queueManagerFactory.getQueueManager( queueScope );
+    }
+
+
+    @Override
+    public void broadcast( final UUID source, final CacheScope scope, final String key ) {
+
+        deliver( source, scope, key );
+
+        if ( localQueue || stopped ) {
+            return;
+        }
+
+        try {
+            queueManager.sendMessageToTopic( new CacheInvalidationEvent( node, source, scope, key ) );
+        }
+        catch ( Exception e ) {
+            logger.error( "Unable to broadcast cache invalidation for scope {}, other nodes rely on the ttl",
+                scope.getApplication(), e );
+        }
+    }
+
+
+    @Override
+    public void addListener( final CacheInvalidationListener listener ) {
+        listeners.add( listener );
+    }
+
+
+    @Override
+    public synchronized void start() {
+        if ( localQueue || poller != null || stopped ) {
+            return;
+        }
+
+        poller = new Thread( this::poll, "CacheInvalidation-poller" );
+        poller.setDaemon( true );
+        poller.start();
+    }
+
+
+    @Override
+    public synchronized void shutdown() {
+        stopped = true;
+
+        if ( poller == null ) {
+            return;
+        }
+
+        try {
+            poller.join( STOP_WAIT_MILLIS );
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+
+        if ( poller.isAlive() ) {
+            logger.warn( "Cache invalidation poller did not stop within {} ms, interrupting it", STOP_WAIT_MILLIS );
+            poller.interrupt();
+        }
+
+        //nothing will read this node's queue again
+        try {
+            queueManager.deleteQueue();
+        }
+        catch ( Exception e ) {
+            logger.error( "Unable to delete the cache invalidation queue of node {}", node, e );
+        }
+    }
+
+
+    /**
+     * Read invalidations from other nodes until stopped
+     */
+    private void poll() {
+        while ( !stopped ) {
+            try {
+                final List<QueueMessage> messages =
+                    queueManager.getMessages( MAX_MESSAGES, CacheInvalidationEvent.class );
+
+                for ( final QueueMessage message : messages ) {
+                    final CacheInvalidationEvent event = ( CacheInvalidationEvent ) message.getBody();
+
+                    //we delivered our own when we broadcast them
+                    if ( !node.equals( event.getNode() ) ) {
+                        deliver( event.getSource(), event.getScope(), event.getKey() );
+                    }
+                }
+
+                if ( !messages.isEmpty() ) {
+                    queueManager.commitMessages( messages );
+                }
+            }
+            catch ( Exception e ) {
+                logger.error( "Unable to read cache invalidations, retrying in {} ms", ERROR_SLEEP_MILLIS, e );
+
+                try {
+                    Thread.sleep( ERROR_SLEEP_MILLIS );
+                }
+                catch ( InterruptedException ie ) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+
+    private void deliver( final UUID source, final CacheScope scope, final String key ) {
+        for ( final CacheInvalidationListener listener : listeners ) {
+            try {
+                listener.onInvalidation( source, scope, key );
+            }
+            catch ( Exception e ) {
+                logger.error( "Unable to deliver cache invalidation for scope {}", scope.getApplication(), e );
+            }
+        }
+    }
+}
@@ -17,7 +17,6 @@
 package org.apache.usergrid.persistence.cache.impl;
 
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.google.inject.Inject;
 import org.apache.usergrid.persistence.cache.CacheScope;
 import org.apache.usergrid.persistence.cache.ScopedCache;
 
@@ -31,27 +30,61 @@ public class ScopedCacheImpl<K,V> implements ScopedCache<K,V> {
 
     ScopedCacheSerialization<K,V> serializer;
 
-    public ScopedCacheImpl( CacheScope scope, ScopedCacheSerialization<K,V> serializer ) {
+    // serves reads when possible, falling through to cassandra otherwise
+    LocalScopedCache<V> localCache;
+
+    public ScopedCacheImpl( CacheScope scope, ScopedCacheSerialization<K,V> serializer,
+                            LocalScopedCache<V> localCache ) {
         this.scope = scope;
         this.serializer = serializer;
+        this.localCache = localCache;
     }
 
     @Override
     public V put(K key, V value, Integer ttl) {
-        return serializer.writeValue( scope, key, value, ttl );
+        final V written = serializer.writeValue( scope, key, value, ttl );
+
+        // other nodes may hold the previous value
+        localCache.changed( scope, key.toString() );
+        localCache.put( scope, key.toString(), value, ttl );
+
+        return written;
     }
 
     @Override
     public V get(K key, TypeReference typeRef ) {
-        return serializer.readValue( scope, key, typeRef );
+        final String localKey = key.toString();
+
+        V value = localCache.get( scope, localKey, typeRef );
+
+        if ( value != null ) {
+            return value;
+        }
+
+        final ScopedCacheSerialization.TtlValue<V> read = serializer.readTtlValue( scope, key, typeRef );
+
+        if ( read == null ) {
+            return null;
+        }
+
+        // keep it locally no longer than it lives in cassandra, a value about to expire isn't worth keeping
+        final Integer ttl = read.getTtl();
+
+        if ( ttl == null || ttl > 0 ) {
+            localCache.put( scope, localKey, read.getValue(), ttl );
+        }
+
+        return read.getValue();
     }
 
     public void remove( K key ) {
         serializer.removeValue( scope, key );
+        localCache.changed( scope, key.toString() );
     }
 
     @Override
     public void invalidate() {
         serializer.invalidate(scope);
+        localCache.invalidated( scope );
     }
 }
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.cache.impl;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.persistence.core.migration.data.MigrationInfoSerialization;
+import org.apache.usergrid.persistence.core.migration.data.MigrationPlugin;
+import org.apache.usergrid.persistence.core.migration.data.PluginPhase;
+import org.apache.usergrid.persistence.core.migration.data.ProgressObserver;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+
+/**
+ * Moves the scoped cache from one row per application to rows bucketed by key.  Until this runs, values are written
+ * to both layouts and read from the row per application.  Cached values are rebuilt on a miss and always carry a
+ * ttl, so there is nothing to copy: values only in the old row expire on their own once we switch reads over.
+ */
+@Singleton
+public class ScopedCacheMigrationPlugin implements MigrationPlugin {
+
+    private static final Logger logger = LoggerFactory.getLogger( ScopedCacheMigrationPlugin.class );
+
+    public static final String PLUGIN_NAME = "scoped-cache-buckets";
+
+    /**
+     * The version where values are bucketed by key and scopes are invalidated by generation
+     */
+    public static final int BUCKETED_VERSION = 1;
+
+    private final MigrationInfoSerialization migrationInfoSerialization;
+
+
+    @Inject
+    public ScopedCacheMigrationPlugin( final MigrationInfoSerialization migrationInfoSerialization ) {
+        this.migrationInfoSerialization = migrationInfoSerialization;
+    }
+
+
+    @Override
+    public String getName() {
+        return PLUGIN_NAME;
+    }
+
+
+    @Override
+    public void run( final ProgressObserver observer ) {
+
+        final int version = migrationInfoSerialization.getVersion( getName() );
+
+        if ( version >= getMaxVersion() ) {
+            logger.debug( "Skipping Migration Plugin: {}", getName() );
+            return;
+        }
+
+        observer.start();
+
+        observer.update( getMaxVersion(), "switching scoped cache reads to bucketed rows" );
+
+        migrationInfoSerialization.setVersion( getName(), getMaxVersion() );
+
+        observer.complete();
+    }
+
+
+    @Override
+    public int getMaxVersion() {
+        return BUCKETED_VERSION;
+    }
+
+
+    @Override
+    public PluginPhase getPhase() {
+        return PluginPhase.MIGRATE;
+    }
+}
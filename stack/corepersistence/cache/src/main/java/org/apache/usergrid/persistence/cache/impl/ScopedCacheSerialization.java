@@ -29,9 +29,42 @@ public interface ScopedCacheSerialization<K,V> extends Migration {
 
     V readValue( CacheScope scope, K key, TypeReference typeRef );
 
+    /**
+     * Read the value and the seconds it has left to live, or null if it's not cached
+     */
+    TtlValue<V> readTtlValue( CacheScope scope, K key, TypeReference typeRef );
+
     V writeValue( CacheScope scope, K key, V value, Integer ttl );
 
     void removeValue( CacheScope scope, K key );
 
     void invalidate( CacheScope scope );
+
+
+    /**
+     * A value read from cassandra, with the seconds it has left to live
+     */
+    final class TtlValue<V> {
+        private final V value;
+        private final Integer ttl;
+
+
+        public TtlValue( final V value, final Integer ttl ) {
+            this.value = value;
+            this.ttl = ttl;
+        }
+
+
+        public V getValue() {
+            return value;
+        }
+
+
+        /**
+         * The seconds the value has left to live, null if it has no ttl
+         */
+        public Integer getTtl() {
+            return ttl;
+        }
+    }
 }
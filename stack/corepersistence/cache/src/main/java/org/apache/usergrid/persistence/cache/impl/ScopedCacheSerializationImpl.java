@@ -22,8 +22,12 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.hash.Funnel;
 import com.google.common.hash.PrimitiveSink;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.inject.Inject;
 import com.netflix.astyanax.Keyspace;
 import com.netflix.astyanax.MutationBatch;
@@ -38,16 +42,20 @@ import com.netflix.astyanax.serializers.ObjectSerializer;
 import com.netflix.astyanax.serializers.StringSerializer;
 import org.apache.cassandra.db.marshal.BytesType;
 import org.apache.usergrid.persistence.cache.CacheScope;
+import org.apache.usergrid.persistence.cache.ScopedCacheFig;
 import org.apache.usergrid.persistence.core.astyanax.*;
+import org.apache.usergrid.persistence.core.migration.data.MigrationInfoCache;
 import org.apache.usergrid.persistence.core.shard.ExpandingShardLocator;
 import org.apache.usergrid.persistence.core.shard.StringHashUtils;
+import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.util.UUIDGenerator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -55,9 +63,12 @@ import java.util.concurrent.Callable;
  */
 public class ScopedCacheSerializationImpl<K,V> implements ScopedCacheSerialization<K,V> {
 
-    // row-keys are application ID + consistent hash key
+    // row-keys are application ID + scope generation + consistent hash of the key
     // column names are K key toString()
     // column values are serialization of V value
+    //
+    // invalidating a scope writes a new generation, values in the old generation's rows are never
+    // read again and fall out via their ttl, so we never tombstone an entire row
 
     public static final Logger logger = LoggerFactory.getLogger(ScopedCacheSerializationImpl.class);
 
@@ -93,16 +104,53 @@ public class ScopedCacheSerializationImpl<K,V> implements ScopedCacheSerializati
     private static final ExpandingShardLocator<String>
         BUCKET_LOCATOR = new ExpandingShardLocator<>(MAP_KEY_FUNNEL, NUM_BUCKETS);
 
+    /**
+     * The row and column holding the current generation of each scope
+     */
+    private static final String GENERATION_ROW = "generation";
+
+    private static final String GENERATION_COLUMN = "generation";
+
+    /**
+     * The generation of a scope that has never been invalidated
+     */
+    private static final String INITIAL_GENERATION = "initial";
+
     private final Keyspace keyspace;
 
+    private final MigrationInfoCache migrationInfoCache;
+
+    private final LoadingCache<Id, String> generations;
+
+    private final long legacyRowGrace;
+
+    /**
+     * When this node first saw the bucketed migration, 0 until it has
+     */
+    private volatile long migratedAt;
+
     private final ObjectMapper MAPPER = new ObjectMapper();
 
 
     //------------------------------------------------------------------------------------------
 
     @Inject
-    public ScopedCacheSerializationImpl( final Keyspace keyspace ) {
+    public ScopedCacheSerializationImpl( final Keyspace keyspace, final ScopedCacheFig scopedCacheFig,
+                                         final MigrationInfoCache migrationInfoCache ) {
         this.keyspace = keyspace;
+        this.migrationInfoCache = migrationInfoCache;
+        this.legacyRowGrace = scopedCacheFig.getLegacyRowGrace();
+
+        // every read needs the generation, don't go to cassandra for it each time
+        this.generations = CacheBuilder.newBuilder().maximumSize( 10000 )
+            .expireAfterWrite( scopedCacheFig.getGenerationCacheTtl(), TimeUnit.MILLISECONDS )
+            .build( new CacheLoader<Id, String>() {
+                @Override
+                public String load( final Id application ) throws Exception {
+                    return readGeneration( application );
+                }
+            } );
+
         //MAPPER.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         MAPPER.enableDefaultTyping();
         MAPPER.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE);
@@ -112,19 +160,25 @@ public class ScopedCacheSerializationImpl<K,V> implements ScopedCacheSerializati
 
     @Override
     public V readValue(CacheScope scope, K key, TypeReference typeRef ) {
+        final TtlValue<V> read = readTtlValue( scope, key, typeRef );
+
+        return read == null ? null : read.getValue();
+    }
+
+
+    @Override
+    public TtlValue<V> readTtlValue(CacheScope scope, K key, TypeReference typeRef ) {
 
         Preconditions.checkNotNull(scope, "scope is required");
         Preconditions.checkNotNull(key, "key is required");
 
-        // determine bucketed row-key based application UUID
-        String rowKeyString = scope.getApplication().getUuid().toString();
-        final int bucket = BUCKET_LOCATOR.getCurrentBucket(rowKeyString);
-        final BucketScopedRowKey<String> keyRowKey =
-            BucketScopedRowKey.fromKey(scope.getApplication(), rowKeyString, bucket);
-
         // determine column name based on K key to string
         String columnName = key.toString();
 
+        // until the migration has run, values are read from the row per application
+        final BucketScopedRowKey<String> keyRowKey =
+            isMigrated() ? getBucketedRowKey( scope, columnName ) : getLegacyRowKey( scope );
+
         try {
             try {
                 Column<String> result = keyspace.prepareQuery(SCOPED_CACHE)
@@ -141,7 +195,7 @@ public class ScopedCacheSerializationImpl<K,V> implements ScopedCacheSerializati
                         key,
                         value);
 
-                return value;
+                return new TtlValue<>( value, getRemainingTtl( result ) );
 
             } catch (NotFoundException nfe) {
                 if(logger.isDebugEnabled()) {
@@ -166,6 +220,24 @@ public class ScopedCacheSerializationImpl<K,V> implements ScopedCacheSerializati
     }
 
 
+    /**
+     * The seconds the column has left to live from the time it was written, null if it has no ttl
+     */
+    private static Integer getRemainingTtl( final Column<String> column ) {
+        final int ttl = column.getTtl();
+
+        if ( ttl <= 0 ) {
+            return null;
+        }
+
+        //column timestamps are in microseconds
+        final long elapsed = TimeUnit.MICROSECONDS.toSeconds(
+            TimeUnit.MILLISECONDS.toMicros( System.currentTimeMillis() ) - column.getTimestamp() );
+
+        return ( int ) Math.max( 0, ttl - elapsed );
+    }
+
+
     @Override
     public V writeValue(CacheScope scope, K key, V value, Integer ttl) {
 
@@ -174,14 +246,6 @@ public class ScopedCacheSerializationImpl<K,V> implements ScopedCacheSerializati
         Preconditions.checkNotNull( value, "value is required");
         Preconditions.checkNotNull( ttl, "ttl is required");
 
-        // determine bucketed row-key based application UUID
-
-        String rowKeyString = scope.getApplication().getUuid().toString();
-        final int bucket = BUCKET_LOCATOR.getCurrentBucket(rowKeyString);
-
-        final BucketScopedRowKey<String> keyRowKey =
-            BucketScopedRowKey.fromKey(scope.getApplication(), rowKeyString, bucket);
-
         // determine column name based on K key to string
         String columnName = key.toString();
 
@@ -195,7 +259,12 @@ public class ScopedCacheSerializationImpl<K,V> implements ScopedCacheSerializati
 
         // serialize to the entry
         final MutationBatch batch = keyspace.prepareMutationBatch();
-        batch.withRow(SCOPED_CACHE, keyRowKey).putColumn(columnName, cacheBytes, ttl);
+        batch.withRow(SCOPED_CACHE, getBucketedRowKey( scope, columnName )).putColumn(columnName, cacheBytes, ttl);
+
+        // nodes that haven't seen the migration still read the row per application
+        if ( isLegacyRowInUse() ) {
+            batch.withRow(SCOPED_CACHE, getLegacyRowKey( scope )).putColumn(columnName, cacheBytes, ttl);
+        }
 
         executeBatch(batch);
 
@@ -216,19 +285,15 @@ public class ScopedCacheSerializationImpl<K,V> implements ScopedCacheSerializati
         Preconditions.checkNotNull( scope, "scope is required");
         Preconditions.checkNotNull( key, "key is required" );
 
-        // determine bucketed row-key based application UUID
-
-        String rowKeyString = scope.getApplication().getUuid().toString();
-        final int bucket = BUCKET_LOCATOR.getCurrentBucket(rowKeyString);
-
-        final BucketScopedRowKey<String> keyRowKey =
-            BucketScopedRowKey.fromKey(scope.getApplication(), rowKeyString, bucket);
-
         // determine column name based on K key to string
         String columnName = key.toString();
 
         final MutationBatch batch = keyspace.prepareMutationBatch();
-        batch.withRow(SCOPED_CACHE, keyRowKey).deleteColumn(columnName);
+        batch.withRow(SCOPED_CACHE, getBucketedRowKey( scope, columnName )).deleteColumn(columnName);
+
+        if ( isLegacyRowInUse() ) {
+            batch.withRow(SCOPED_CACHE, getLegacyRowKey( scope )).deleteColumn(columnName);
+        }
 
         executeBatch(batch);
     }
@@ -239,31 +304,99 @@ public class ScopedCacheSerializationImpl<K,V> implements ScopedCacheSerializati
 
         Preconditions.checkNotNull(scope, "scope is required");
 
+        final Id application = scope.getApplication();
+
+        // a new generation orphans every value written under the previous one
+        final String generation = UUIDGenerator.newTimeUUID().toString();
+
+        final MutationBatch batch = keyspace.prepareMutationBatch();
+
+        batch.withRow(SCOPED_CACHE, getGenerationRowKey( application )).putColumn(GENERATION_COLUMN, generation);
+
+        if ( isLegacyRowInUse() ) {
+            batch.withRow(SCOPED_CACHE, getLegacyRowKey( scope )).delete();
+        }
+
+        executeBatch(batch);
+
+        generations.put( application, generation );
+
+        logger.debug("Invalidated scope {}, new generation {}", application.getUuid(), generation);
+    }
+
+
+    /**
+     * True once the bucketed layout is the only one in use
+     */
+    private boolean isMigrated() {
+        return migrationInfoCache.getVersion( ScopedCacheMigrationPlugin.PLUGIN_NAME )
+            >= ScopedCacheMigrationPlugin.BUCKETED_VERSION;
+    }
+
+
+    /**
+     * True while other nodes may still read values from the legacy row.  Each node caches the migration version, so
+     * after this node sees the migration the legacy row is kept in sync for a grace period longer than that cache
+     */
+    private boolean isLegacyRowInUse() {
+        if ( !isMigrated() ) {
+            return true;
+        }
+
+        final long now = System.currentTimeMillis();
+
+        if ( migratedAt == 0 ) {
+            migratedAt = now;
+        }
+
+        return now - migratedAt < legacyRowGrace;
+    }
+
+
+    /**
+     * Values are spread across buckets by their key, within the current generation of the scope
+     */
+    private BucketScopedRowKey<String> getBucketedRowKey( final CacheScope scope, final String columnName ) {
+        final int bucket = BUCKET_LOCATOR.getCurrentBucket( columnName );
+
+        return BucketScopedRowKey.fromKey( scope.getApplication(), getGeneration( scope.getApplication() ), bucket );
+    }
+
+
+    /**
+     * The row used before values were bucketed.  Every value for the application lives in this row
+     */
+    private BucketScopedRowKey<String> getLegacyRowKey( final CacheScope scope ) {
         // determine bucketed row-key based application UUID
         String rowKeyString = scope.getApplication().getUuid().toString();
         final int bucket = BUCKET_LOCATOR.getCurrentBucket(rowKeyString);
-        final BucketScopedRowKey<String> keyRowKey =
-            BucketScopedRowKey.fromKey(scope.getApplication(), rowKeyString, bucket);
 
-        final MutationBatch batch = keyspace.prepareMutationBatch();
+        return BucketScopedRowKey.fromKey(scope.getApplication(), rowKeyString, bucket);
+    }
+
 
-        batch.withRow(SCOPED_CACHE, keyRowKey).delete();
+    private BucketScopedRowKey<String> getGenerationRowKey( final Id application ) {
+        return BucketScopedRowKey.fromKey( application, GENERATION_ROW, 0 );
+    }
 
-        final OperationResult<Void> result = executeBatch(batch);
 
-        logger.debug("Invalidated scope {}", scope.getApplication().getUuid());
+    private String getGeneration( final Id application ) {
+        try {
+            return generations.getUnchecked( application );
+        }
+        catch ( UncheckedExecutionException e ) {
+            throw new RuntimeException( "Unable to load cache generation", e.getCause() );
+        }
     }
 
 
-    private class MutationBatchExec implements Callable<Void> {
-        private final MutationBatch myBatch;
-        private MutationBatchExec(MutationBatch batch) {
-            myBatch = batch;
+    private String readGeneration( final Id application ) throws ConnectionException {
+        try {
+            return keyspace.prepareQuery( SCOPED_CACHE ).getKey( getGenerationRowKey( application ) )
+                           .getColumn( GENERATION_COLUMN ).execute().getResult().getStringValue();
         }
-        @Override
-        public Void call() throws Exception {
-            myBatch.execute();
-            return null;
+        catch ( NotFoundException nfe ) {
+            return INITIAL_GENERATION;
         }
     }
 
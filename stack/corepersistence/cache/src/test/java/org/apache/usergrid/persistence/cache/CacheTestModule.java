@@ -20,9 +20,12 @@
 package org.apache.usergrid.persistence.cache;
 
 
+import com.google.inject.AbstractModule;
 import com.google.inject.TypeLiteral;
+import com.google.inject.util.Modules;
 import org.apache.usergrid.persistence.cache.guice.CacheModule;
 import org.apache.usergrid.persistence.cache.impl.CacheFactoryImpl;
+import org.apache.usergrid.persistence.cache.impl.LocalCacheInvalidationBroadcaster;
 import org.apache.usergrid.persistence.cache.impl.ScopedCacheSerialization;
 import org.apache.usergrid.persistence.cache.impl.ScopedCacheSerializationImpl;
 import org.apache.usergrid.persistence.core.guice.CommonModule;
@@ -36,7 +39,14 @@ public class CacheTestModule extends org.apache.usergrid.persistence.core.guice.
     protected void configure() {
 
         install( new CommonModule() );
-        install( new CacheModule() );
+
+        //there is only this node in tests, so skip the queues
+        install( Modules.override( new CacheModule() ).with( new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind( CacheInvalidationBroadcaster.class ).to( LocalCacheInvalidationBroadcaster.class );
+            }
+        } ) );
 
         bind( new TypeLiteral<CacheFactory<String, Map<String, Object>>>() {} )
             .to(new TypeLiteral<CacheFactoryImpl<String, Map<String, Object>>>() { });
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.cache.impl;
+
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.persistence.cache.CacheInvalidationBroadcaster;
+import org.apache.usergrid.persistence.cache.CacheScope;
+
+import com.google.inject.Singleton;
+
+
+/**
+ * Delivers invalidations to listeners within this JVM only, for tests of the local tier
+ */
+@Singleton
+public class LocalCacheInvalidationBroadcaster implements CacheInvalidationBroadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger( LocalCacheInvalidationBroadcaster.class );
+
+    private final List<CacheInvalidationListener> listeners = new CopyOnWriteArrayList<>();
+
+
+    @Override
+    public void broadcast( final UUID source, final CacheScope scope, final String key ) {
+
+        for ( final CacheInvalidationListener listener : listeners ) {
+            try {
+                listener.onInvalidation( source, scope, key );
+            }
+            catch ( Exception e ) {
+                logger.error( "Unable to deliver cache invalidation for scope {}", scope.getApplication(), e );
+            }
+        }
+    }
+
+
+    @Override
+    public void addListener( final CacheInvalidationListener listener ) {
+        listeners.add( listener );
+    }
+
+
+    @Override
+    public void start() {
+        //nothing to receive
+    }
+
+
+    @Override
+    public void shutdown() {
+        //nothing to stop
+    }
+}
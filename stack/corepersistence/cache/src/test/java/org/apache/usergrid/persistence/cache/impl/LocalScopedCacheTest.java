@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.cache.impl;
+
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.usergrid.persistence.cache.CacheScope;
+import org.apache.usergrid.persistence.cache.ScopedCache;
+import org.apache.usergrid.persistence.cache.ScopedCacheFig;
+import org.apache.usergrid.persistence.model.entity.SimpleId;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertNotSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Tests the local tier of the scoped cache with a mocked cassandra tier
+ */
+public class LocalScopedCacheTest {
+
+    private ScopedCacheFig scopedCacheFig;
+
+    private LocalCacheInvalidationBroadcaster broadcaster;
+
+    private TypeReference typeRef = new TypeReference<HashMap<String, Object>>() {};
+
+    private TypeReference stringRef = new TypeReference<String>() {};
+
+
+    @Before
+    public void setup() {
+        scopedCacheFig = mock( ScopedCacheFig.class );
+
+        when( scopedCacheFig.getLocalCacheEnabled() ).thenReturn( true );
+        when( scopedCacheFig.getLocalCacheSize() ).thenReturn( 100 );
+        when( scopedCacheFig.getLocalCacheTtl() ).thenReturn( 60000l );
+
+        broadcaster = new LocalCacheInvalidationBroadcaster();
+    }
+
+
+    @Test
+    public void readsServedLocally() {
+
+        final ScopedCacheSerialization<String, Map<String, Object>> serializer = mock( ScopedCacheSerialization.class );
+
+        final CacheScope scope = new CacheScope( new SimpleId( "application" ) );
+
+        final Map<String, Object> item = new HashMap<>();
+        item.put( "field1", "value1" );
+
+        when( serializer.readTtlValue( any( CacheScope.class ), eq( "item" ), any( TypeReference.class ) ) )
+            .thenAnswer( invocation -> new ScopedCacheSerialization.TtlValue<>( new HashMap<>( item ), null ) );
+
+        final ScopedCache<String, Map<String, Object>> cache =
+            new ScopedCacheImpl<>( scope, serializer, new LocalScopedCache<>( scopedCacheFig, broadcaster ) );
+
+        final Map<String, Object> first = cache.get( "item", typeRef );
+
+        assertEquals( item, first );
+
+        //callers get their own copy, mutating it leaves the cached value untouched
+        first.put( "field1", "changed" );
+
+        final Map<String, Object> second = cache.get( "item", typeRef );
+
+        assertEquals( item, second );
+        assertNotSame( first, second );
+
+        //only the first read should go to cassandra
+        verify( serializer, times( 1 ) )
+            .readTtlValue( any( CacheScope.class ), eq( "item" ), any( TypeReference.class ) );
+    }
+
+
+    @Test
+    public void readsKeepRemainingTtl() throws InterruptedException {
+
+        final ScopedCacheSerialization<String, String> serializer = mock( ScopedCacheSerialization.class );
+
+        final CacheScope scope = new CacheScope( new SimpleId( "application" ) );
+
+        //one second left in cassandra, and an expiring value with none
+        when( serializer.readTtlValue( any( CacheScope.class ), eq( "item" ), any( TypeReference.class ) ) )
+            .thenReturn( new ScopedCacheSerialization.TtlValue<>( "value", 1 ) );
+        when( serializer.readTtlValue( any( CacheScope.class ), eq( "expiring" ), any( TypeReference.class ) ) )
+            .thenReturn( new ScopedCacheSerialization.TtlValue<>( "value", 0 ) );
+
+        final ScopedCache<String, String> cache =
+            new ScopedCacheImpl<>( scope, serializer, new LocalScopedCache<>( scopedCacheFig, broadcaster ) );
+
+        assertEquals( "value", cache.get( "item", stringRef ) );
+        assertEquals( "value", cache.get( "item", stringRef ) );
+        assertEquals( "value", cache.get( "expiring", stringRef ) );
+        assertEquals( "value", cache.get( "expiring", stringRef ) );
+
+        verify( serializer, times( 1 ) ).readTtlValue( any( CacheScope.class ), eq( "item" ), any( TypeReference.class ) );
+        verify( serializer, times( 2 ) )
+            .readTtlValue( any( CacheScope.class ), eq( "expiring" ), any( TypeReference.class ) );
+
+        //the local copy expires with the value in cassandra, not after the local ttl
+        Thread.sleep( 1100 );
+
+        cache.get( "item", stringRef );
+
+        verify( serializer, times( 2 ) ).readTtlValue( any( CacheScope.class ), eq( "item" ), any( TypeReference.class ) );
+    }
+
+
+    @Test
+    public void perPutTtlRespected() throws InterruptedException {
+
+        final LocalScopedCache<String> localCache = new LocalScopedCache<>( scopedCacheFig, broadcaster );
+
+        final CacheScope scope = new CacheScope( new SimpleId( "application" ) );
+
+        localCache.put( scope, "item", "value", 1 );
+
+        assertEquals( "value", localCache.get( scope, "item", stringRef ) );
+
+        Thread.sleep( 1100 );
+
+        assertNull( localCache.get( scope, "item", stringRef ) );
+    }
+
+
+    @Test
+    public void invalidationsBroadcast() {
+
+        //simulate two nodes sharing a transport
+        final LocalScopedCache<String> node1 = new LocalScopedCache<>( scopedCacheFig, broadcaster );
+        final LocalScopedCache<String> node2 = new LocalScopedCache<>( scopedCacheFig, broadcaster );
+
+        final CacheScope scope = new CacheScope( new SimpleId( "application" ) );
+        final CacheScope otherScope = new CacheScope( new SimpleId( "application" ) );
+
+        node1.put( scope, "item1", "value1", null );
+        node1.put( scope, "item2", "value2", null );
+        node2.put( scope, "item1", "value1", null );
+        node2.put( scope, "item2", "value2", null );
+        node2.put( otherScope, "item1", "other", null );
+
+        node1.changed( scope, "item1" );
+
+        assertNull( node1.get( scope, "item1", stringRef ) );
+        assertNull( node2.get( scope, "item1", stringRef ) );
+        assertEquals( "value2", node2.get( scope, "item2", stringRef ) );
+
+        node1.invalidated( scope );
+
+        assertNull( node1.get( scope, "item2", stringRef ) );
+        assertNull( node2.get( scope, "item2", stringRef ) );
+
+        //other applications are untouched
+        assertEquals( "other", node2.get( otherScope, "item1", stringRef ) );
+    }
+
+
+    @Test
+    public void disabled() {
+
+        when( scopedCacheFig.getLocalCacheEnabled() ).thenReturn( false );
+
+        final LocalScopedCache<String> localCache = new LocalScopedCache<>( scopedCacheFig, broadcaster );
+
+        final CacheScope scope = new CacheScope( new SimpleId( "application" ) );
+
+        localCache.put( scope, "item", "value", null );
+
+        assertNull( localCache.get( scope, "item", stringRef ) );
+    }
+}
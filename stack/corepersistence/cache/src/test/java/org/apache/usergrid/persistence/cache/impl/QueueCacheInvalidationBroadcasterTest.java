@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.usergrid.persistence.cache.impl;
+
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.usergrid.persistence.cache.CacheInvalidationBroadcaster;
+import org.apache.usergrid.persistence.cache.CacheScope;
+import org.apache.usergrid.persistence.model.entity.SimpleId;
+import org.apache.usergrid.persistence.queue.LocalQueueManager;
+import org.apache.usergrid.persistence.queue.QueueFig;
+import org.apache.usergrid.persistence.queue.QueueManagerFactory;
+import org.apache.usergrid.persistence.queue.QueueScope;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Tests invalidations reach the listeners of other nodes through a topic with a queue per node
+ */
+public class QueueCacheInvalidationBroadcasterTest {
+
+    private QueueFig queueFig;
+
+    /**
+     * Every node's queue, each gets what is sent to the topic
+     */
+    private final List<LocalQueueManager> subscribed = new CopyOnWriteArrayList<>();
+
+    private QueueManagerFactory queueManagerFactory;
+
+
+    @Before
+    public void setup() {
+        queueFig = mock( QueueFig.class );
+        when( queueFig.overrideQueueForDefault() ).thenReturn( false );
+
+        queueManagerFactory = mock( QueueManagerFactory.class );
+        when( queueManagerFactory.getQueueManager( any( QueueScope.class ) ) ).thenAnswer( invocation -> {
+            final LocalQueueManager queueManager = new LocalQueueManager() {
+                @Override
+                public <T extends Serializable> void sendMessageToTopic( final T body ) throws IOException {
+                    for ( final LocalQueueManager node : subscribed ) {
+                        node.sendMessage( body );
+                    }
+                }
+            };
+
+            subscribed.add( queueManager );
+
+            return queueManager;
+        } );
+    }
+
+
+    @Test
+    public void otherNodesReceiveInvalidations() throws InterruptedException {
+        final QueueCacheInvalidationBroadcaster first =
+            new QueueCacheInvalidationBroadcaster( queueManagerFactory, queueFig );
+        final QueueCacheInvalidationBroadcaster second =
+            new QueueCacheInvalidationBroadcaster( queueManagerFactory, queueFig );
+
+        final RecordingListener firstListener = new RecordingListener();
+        final RecordingListener secondListener = new RecordingListener();
+
+        first.addListener( firstListener );
+        second.addListener( secondListener );
+
+        first.start();
+        second.start();
+
+        try {
+            final UUID source = UUID.randomUUID();
+            final CacheScope scope = new CacheScope( new SimpleId( "application" ) );
+
+            first.broadcast( source, scope, "key" );
+
+            //delivered here right away, and on the other node through its queue
+            assertEquals( "key", firstListener.invalidations.poll( 0, TimeUnit.MILLISECONDS ).getKey() );
+
+            final CacheInvalidationEvent received = secondListener.invalidations.poll( 5, TimeUnit.SECONDS );
+
+            assertEquals( source, received.getSource() );
+            assertEquals( scope.getApplication(), received.getScope().getApplication() );
+            assertEquals( "key", received.getKey() );
+
+            //our own invalidation comes back from the topic, but isn't delivered twice
+            Thread.sleep( 500 );
+            assertNull( firstListener.invalidations.poll() );
+        }
+        finally {
+            first.shutdown();
+            second.shutdown();
+        }
+    }
+
+
+    @Test
+    public void localQueuesArentUsed() {
+        when( queueFig.overrideQueueForDefault() ).thenReturn( true );
+
+        final QueueCacheInvalidationBroadcaster broadcaster =
+            new QueueCacheInvalidationBroadcaster( queueManagerFactory, queueFig );
+
+        final RecordingListener listener = new RecordingListener();
+        broadcaster.addListener( listener );
+
+        broadcaster.start();
+        broadcaster.broadcast( UUID.randomUUID(), new CacheScope( new SimpleId( "application" ) ), null );
+        broadcaster.shutdown();
+
+        assertEquals( 1, listener.invalidations.size() );
+        assertNull( listener.invalidations.poll().getKey() );
+
+        verify( queueManagerFactory, never() ).getQueueManager( any( QueueScope.class ) );
+    }
+
+
+    @Test
+    public void eventsRoundTripAsJson() throws IOException {
+        final ObjectMapper mapper = new ObjectMapper();
+
+        final UUID source = UUID.randomUUID();
+        final CacheScope scope = new CacheScope( new SimpleId( "application" ) );
+
+        final CacheInvalidationEvent event =
+            mapper.readValue( mapper.writeValueAsString( new CacheInvalidationEvent( "node", source, scope, null ) ),
+                CacheInvalidationEvent.class );
+
+        assertEquals( "node", event.getNode() );
+        assertEquals( source, event.getSource() );
+        assertEquals( scope.getApplication(), event.getScope().getApplication() );
+        assertNull( event.getKey() );
+        assertTrue( mapper.writeValueAsString( event ).indexOf( "scope" ) < 0 );
+    }
+
+
+    private static final class RecordingListener implements CacheInvalidationBroadcaster.CacheInvalidationListener {
+
+        private final BlockingQueue<CacheInvalidationEvent> invalidations = new LinkedBlockingQueue<>();
+
+
+        @Override
+        public void onInvalidation( final UUID source, final CacheScope scope, final String key ) {
+            invalidations.add( new CacheInvalidationEvent( null, source, scope, key ) );
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.usergrid.persistence.collection;
 
 import java.util.Collection;
 
+import org.apache.usergrid.persistence.collection.serialization.UniqueValueSet;
 import org.apache.usergrid.persistence.core.util.Health;
 import org.apache.usergrid.persistence.model.entity.Entity;
 import org.apache.usergrid.persistence.model.entity.Id;
@@ -44,6 +45,17 @@ public interface EntityCollectionManager {
      */
     Observable<Entity> write( Entity entity );
 
+    /**
+     * Write many entities in the entity collection.  Entities are written in batches, each batch sharing its
+     * mutations and unique value reads.  Every entity is verified as if it was written alone, so an entity that
+     * violates a unique value or conflicts with another write fails on its own without failing the others.
+     *
+     * @param entities The entities to write
+     *
+     * @return the Observable with the result of each entity, in the order the entities were written
+     */
+    Observable<EntityWriteResult> write( Observable<Entity> entities );
+
 
     /**
      * @param entityId MarkCommit the entity as deleted.  Will not actually remove it from cassandra.  This operation will
@@ -88,6 +100,17 @@ public interface EntityCollectionManager {
      */
     Observable<Id> getIdField( String entityType, Field field );
 
+    /**
+     * Gets the unique values for many fields in a single read.  Fields with no unique value are absent from the set.
+     * Fields recently found to be missing are remembered for a short time and not read again
+     *
+     * @param entityType the type field from the Id object
+     * @param fields The fields to search for, which may share a name
+     *
+     * @return A single set of every unique value found.  Look up values with {@link UniqueValueSet#getValue(Field)}
+     */
+    Observable<UniqueValueSet> getUniqueValues( String entityType, Collection<Field> fields );
+
 
     /**
      * @param entityIds The entityIds for loading a collection
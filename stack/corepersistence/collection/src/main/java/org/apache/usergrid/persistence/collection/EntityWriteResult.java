@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.usergrid.persistence.collection;
+
+
+import org.apache.usergrid.persistence.collection.exception.CollectionRuntimeException;
+import org.apache.usergrid.persistence.model.entity.Entity;
+
+import com.google.common.base.Optional;
+
+
+/**
+ * The result of writing a single entity within a batch of writes
+ */
+public class EntityWriteResult {
+
+    private final Entity entity;
+    private final Optional<CollectionRuntimeException> error;
+
+
+    private EntityWriteResult( final Entity entity, final Optional<CollectionRuntimeException> error ) {
+        this.entity = entity;
+        this.error = error;
+    }
+
+
+    /**
+     * Create the result of an entity that was written
+     */
+    public static EntityWriteResult success( final Entity entity ) {
+        return new EntityWriteResult( entity, Optional.absent() );
+    }
+
+
+    /**
+     * Create the result of an entity that could not be written
+     */
+    public static EntityWriteResult failure( final Entity entity, final CollectionRuntimeException error ) {
+        return new EntityWriteResult( entity, Optional.of( error ) );
+    }
+
+
+    /**
+     * Get the entity.  When the write succeeded the entity has its new version
+     */
+    public Entity getEntity() {
+        return entity;
+    }
+
+
+    /**
+     * Return true if the entity was written
+     */
+    public boolean isSuccess() {
+        return !error.isPresent();
+    }
+
+
+    /**
+     * Get the reason the entity could not be written, such as a WriteUniqueVerifyException
+     */
+    public Optional<CollectionRuntimeException> getError() {
+        return error;
+    }
+}
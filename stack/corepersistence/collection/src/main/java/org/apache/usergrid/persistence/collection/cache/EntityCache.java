@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.collection.cache;
+
+
+import org.apache.usergrid.persistence.collection.MvccEntity;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.model.entity.Id;
+
+
+/**
+ * A node local cache of the latest loaded version of an entity.  Entries are scoped to the application and expire
+ * after the configured timeout, so other nodes' writes are visible after at most that long.  Local writes and
+ * deletes invalidate the entry immediately.
+ */
+public interface EntityCache {
+
+    /**
+     * Get a copy of the cached entity, or null if it is not present
+     */
+    MvccEntity get( final ApplicationScope scope, final Id entityId );
+
+    /**
+     * Cache a copy of the entity that was loaded from cassandra
+     */
+    void put( final ApplicationScope scope, final MvccEntity entity );
+
+    /**
+     * Remove the entity from the cache
+     */
+    void invalidate( final ApplicationScope scope, final Id entityId );
+
+    /**
+     * Remove every entity from the cache
+     */
+    void invalidateAll();
+}
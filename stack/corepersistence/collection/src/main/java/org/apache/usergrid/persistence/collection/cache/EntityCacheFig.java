@@ -27,20 +27,56 @@ import org.safehaus.guicyfig.Key;
 
 
 /**
- * The config for the entity cache
+ * The config for the entity cache and the unique value miss cache
  */
 @FigSingleton
 public interface EntityCacheFig extends GuicyFig {
 
+    String ENTITY_CACHE_SIZE = "usergrid.entity_cache_size";
 
-    @Key( "usergrid.entity_cache_size" )
+    String ENTITY_CACHE_TIMEOUT_MS = "usergrid.entity_cache_timeout_ms";
+
+    String ENTITY_CACHE_ENTRY_WEIGHT_KB = "usergrid.entity_cache_entry_weight_kb";
+
+    String UNIQUE_VALUE_MISS_CACHE_SIZE = "usergrid.unique_value_miss_cache_size";
+
+    String UNIQUE_VALUE_MISS_CACHE_TIMEOUT_MS = "usergrid.unique_value_miss_cache_timeout_ms";
+
+
+    /**
+     * The number of average sized entities to cache per node.  Set to 0 to disable the cache
+     */
+    @Key( ENTITY_CACHE_SIZE )
     @Default( "10000" )
     int getCacheSize();
 
-    @Key( "usergrid.entity_cache_timeout_ms" )
+    /**
+     * The amount of time an entity may live in the cache after it was loaded
+     */
+    @Key( ENTITY_CACHE_TIMEOUT_MS )
     @Default( "500" )
     int getCacheTimeout();
 
+    /**
+     * The average entity size in kilobytes used to bound the cache.  The cache will hold at most
+     * cacheSize * entryWeight kilobytes of entity data, and at most cacheSize entities
+     */
+    @Key( ENTITY_CACHE_ENTRY_WEIGHT_KB )
+    @Default( "4" )
+    int getCacheEntryWeight();
 
+    /**
+     * The number of unique values known not to exist to cache per node.  Set to 0 to disable the cache
+     */
+    @Key( UNIQUE_VALUE_MISS_CACHE_SIZE )
+    @Default( "10000" )
+    int getUniqueValueMissCacheSize();
 
+    /**
+     * The amount of time a missing unique value is remembered.  Values written on other nodes may not be found for
+     * up to this long
+     */
+    @Key( UNIQUE_VALUE_MISS_CACHE_TIMEOUT_MS )
+    @Default( "1000" )
+    int getUniqueValueMissCacheTimeout();
 }
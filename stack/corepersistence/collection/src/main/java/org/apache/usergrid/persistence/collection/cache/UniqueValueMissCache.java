@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.collection.cache;
+
+
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.field.Field;
+
+
+/**
+ * A short lived node local cache of unique values that were looked up and not found, so repeated lookups of names
+ * that don't exist don't each read cassandra.  Local writes invalidate the entity's unique values immediately.
+ */
+public interface UniqueValueMissCache {
+
+    /**
+     * Return true if the field was recently looked up and not found
+     */
+    boolean isMissing( final ApplicationScope scope, final String type, final Field field );
+
+    /**
+     * Remember that the field was looked up and not found
+     */
+    void putMissing( final ApplicationScope scope, final String type, final Field field );
+
+    /**
+     * Forget any misses for the unique fields of the entity
+     */
+    void invalidate( final ApplicationScope scope, final Entity entity );
+
+    /**
+     * Forget every miss
+     */
+    void invalidateAll();
+}
@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.collection.cache.impl;
+
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.persistence.collection.MvccEntity;
+import org.apache.usergrid.persistence.collection.cache.EntityCache;
+import org.apache.usergrid.persistence.collection.cache.EntityCacheFig;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.model.entity.Id;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.Weigher;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+
+/**
+ * Guava backed implementation of the entity cache.  Entries are weighed by their serialized size in kilobytes, and
+ * never weigh less than the configured average entry weight, so the cache is bounded both by bytes and by count.
+ *
+ * Entities and their fields are mutable, so the cache holds its own copy of each entity, which is never handed out.
+ * It's copied when it's put, and every hit returns another copy made field by field, which is far cheaper than
+ * deserializing the entity the way a load from cassandra does.  Callers may modify what they receive, including nested
+ * values, without corrupting the cached value.
+ */
+@Singleton
+public class EntityCacheImpl implements EntityCache {
+
+    private static final Logger logger = LoggerFactory.getLogger( EntityCacheImpl.class );
+
+    private final EntityCacheFig entityCacheFig;
+
+    private final Meter hitMeter;
+    private final Meter missMeter;
+    private final Meter evictionMeter;
+    private final Timer hitTimer;
+
+    private volatile Cache<CacheKey, MvccEntity> entities;
+
+
+    @Inject
+    public EntityCacheImpl( final EntityCacheFig entityCacheFig, final MetricsFactory metricsFactory ) {
+
+        Preconditions.checkNotNull( entityCacheFig, "entityCacheFig is required" );
+        Preconditions.checkNotNull( metricsFactory, "metricsFactory is required" );
+
+        this.entityCacheFig = entityCacheFig;
+
+        this.hitMeter = metricsFactory.getMeter( EntityCacheImpl.class, "entity.cache.hit" );
+        this.missMeter = metricsFactory.getMeter( EntityCacheImpl.class, "entity.cache.miss" );
+        this.evictionMeter = metricsFactory.getMeter( EntityCacheImpl.class, "entity.cache.eviction" );
+
+        //time to serve a hit, to compare with the time to load a miss from cassandra
+        this.hitTimer = metricsFactory.getTimer( EntityCacheImpl.class, "entity.cache.hit.read" );
+
+
+        /**
+         * Rebuild the cache if our sizing changes
+         */
+        this.entityCacheFig.addPropertyChangeListener( new PropertyChangeListener() {
+            @Override
+            public void propertyChange( final PropertyChangeEvent evt ) {
+                final String propertyName = evt.getPropertyName();
+
+                if ( propertyName.equals( EntityCacheFig.ENTITY_CACHE_SIZE ) || propertyName
+                    .equals( EntityCacheFig.ENTITY_CACHE_TIMEOUT_MS ) || propertyName
+                    .equals( EntityCacheFig.ENTITY_CACHE_ENTRY_WEIGHT_KB ) ) {
+
+                    updateCache();
+                }
+            }
+        } );
+
+        updateCache();
+    }
+
+
+    @Override
+    public MvccEntity get( final ApplicationScope scope, final Id entityId ) {
+
+        final Cache<CacheKey, MvccEntity> cache = entities;
+
+        if ( cache == null ) {
+            return null;
+        }
+
+        final MvccEntity cached = cache.getIfPresent( new CacheKey( scope, entityId ) );
+
+        if ( cached == null ) {
+            missMeter.mark();
+            return null;
+        }
+
+        final Timer.Context timer = hitTimer.time();
+
+        final MvccEntity read;
+
+        try {
+            //we only cache entities we can copy
+            read = EntityCopier.copy( cached );
+        }
+        finally {
+            timer.stop();
+        }
+
+        hitMeter.mark();
+
+        return read;
+    }
+
+
+    @Override
+    public void put( final ApplicationScope scope, final MvccEntity entity ) {
+
+        final Cache<CacheKey, MvccEntity> cache = entities;
+
+        if ( cache == null ) {
+            return;
+        }
+
+        //copy it, so changes to the instance don't change what we cache
+        final MvccEntity cached = EntityCopier.copy( entity );
+
+        if ( cached == null ) {
+            logger.warn( "Entity {} has a field the cache can't copy, not caching it", entity.getId() );
+            return;
+        }
+
+        cache.put( new CacheKey( scope, entity.getId() ), cached );
+    }
+
+
+    @Override
+    public void invalidate( final ApplicationScope scope, final Id entityId ) {
+
+        final Cache<CacheKey, MvccEntity> cache = entities;
+
+        if ( cache == null ) {
+            return;
+        }
+
+        cache.invalidate( new CacheKey( scope, entityId ) );
+    }
+
+
+    @Override
+    public void invalidateAll() {
+
+        final Cache<CacheKey, MvccEntity> cache = entities;
+
+        if ( cache == null ) {
+            return;
+        }
+
+        cache.invalidateAll();
+    }
+
+
+    /**
+     * This is a race condition with in flight reads, which is fine.  At worst they miss and go to cassandra
+     */
+    private void updateCache() {
+
+        final int cacheSize = entityCacheFig.getCacheSize();
+
+        if ( cacheSize <= 0 ) {
+            this.entities = null;
+            return;
+        }
+
+        final int entryWeight = Math.max( 1, entityCacheFig.getCacheEntryWeight() );
+
+        this.entities = CacheBuilder.newBuilder()
+
+            //entities written on other nodes will become visible after this timeout
+            .expireAfterWrite( entityCacheFig.getCacheTimeout(), TimeUnit.MILLISECONDS )
+
+            //bound by entity size, not all entities are equal
+            .maximumWeight( ( long ) cacheSize * entryWeight ).weigher( new EntityWeigher( entryWeight ) )
+
+            //we only care about size based evictions, explicit invalidations and expiration are expected
+            .removalListener( notification -> {
+                if ( notification.getCause() == RemovalCause.SIZE ) {
+                    evictionMeter.mark();
+                }
+            } )
+
+            .build();
+    }
+
+
+    /**
+     * Cache key for looking up entities in an application
+     */
+    private static final class CacheKey {
+        private final ApplicationScope scope;
+        private final Id entityId;
+
+
+        private CacheKey( final ApplicationScope scope, final Id entityId ) {
+            this.scope = scope;
+            this.entityId = entityId;
+        }
+
+
+        @Override
+        public boolean equals( final Object o ) {
+            if ( this == o ) {
+                return true;
+            }
+            if ( o == null || getClass() != o.getClass() ) {
+                return false;
+            }
+
+            final CacheKey cacheKey = ( CacheKey ) o;
+
+            return scope.equals( cacheKey.scope ) && entityId.equals( cacheKey.entityId );
+        }
+
+
+        @Override
+        public int hashCode() {
+            int result = scope.hashCode();
+            result = 31 * result + entityId.hashCode();
+            return result;
+        }
+    }
+
+
+    /**
+     * Weigh entities by their size in kilobytes, with a floor of the average entry weight
+     */
+    private static final class EntityWeigher implements Weigher<CacheKey, MvccEntity> {
+
+        private final int entryWeight;
+
+
+        private EntityWeigher( final int entryWeight ) {this.entryWeight = entryWeight;}
+
+
+        @Override
+        public int weigh( final CacheKey key, final MvccEntity value ) {
+            final long kilobytes = ( value.getSize() + 1023 ) / 1024;
+
+            return ( int ) Math.min( Integer.MAX_VALUE, Math.max( entryWeight, kilobytes ) );
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.collection.cache.impl;
+
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.usergrid.persistence.collection.MvccEntity;
+import org.apache.usergrid.persistence.collection.mvcc.entity.impl.MvccEntityImpl;
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.field.ArrayField;
+import org.apache.usergrid.persistence.model.field.BooleanField;
+import org.apache.usergrid.persistence.model.field.ByteArrayField;
+import org.apache.usergrid.persistence.model.field.DistanceField;
+import org.apache.usergrid.persistence.model.field.DoubleField;
+import org.apache.usergrid.persistence.model.field.EntityObjectField;
+import org.apache.usergrid.persistence.model.field.Field;
+import org.apache.usergrid.persistence.model.field.FloatField;
+import org.apache.usergrid.persistence.model.field.IntegerField;
+import org.apache.usergrid.persistence.model.field.ListField;
+import org.apache.usergrid.persistence.model.field.LocationField;
+import org.apache.usergrid.persistence.model.field.LongField;
+import org.apache.usergrid.persistence.model.field.NullField;
+import org.apache.usergrid.persistence.model.field.SerializedObjectField;
+import org.apache.usergrid.persistence.model.field.SetField;
+import org.apache.usergrid.persistence.model.field.StringField;
+import org.apache.usergrid.persistence.model.field.UUIDField;
+import org.apache.usergrid.persistence.model.field.value.EntityObject;
+import org.apache.usergrid.persistence.model.field.value.Location;
+import org.apache.usergrid.persistence.model.util.EntityUtils;
+
+import com.google.common.base.Optional;
+
+
+/**
+ * Copies mvcc entities field by field.  Values that can't change, such as strings, numbers, uuids and locations, are
+ * shared, everything that can change is copied.  This is much cheaper than serializing the entity, and the copy is
+ * just as independent of the original.
+ */
+final class EntityCopier {
+
+    /**
+     * Returned for values we don't know how to copy
+     */
+    private static final Object UNSUPPORTED = new Object();
+
+
+    private EntityCopier() {}
+
+
+    /**
+     * Copy the mvcc entity and its entity
+     *
+     * @return The copy, or null if the entity has a field we don't know how to copy
+     */
+    static MvccEntity copy( final MvccEntity mvccEntity ) {
+
+        final Optional<Entity> entity = mvccEntity.getEntity();
+
+        Optional<Entity> copy = Optional.absent();
+
+        if ( entity.isPresent() ) {
+            final Entity copied = copyEntity( entity.get() );
+
+            if ( copied == null ) {
+                return null;
+            }
+
+            copy = Optional.of( copied );
+        }
+
+        return new MvccEntityImpl( mvccEntity.getId(), mvccEntity.getVersion(), mvccEntity.getStatus(), copy,
+            mvccEntity.getSize() );
+    }
+
+
+    private static Entity copyEntity( final Entity entity ) {
+
+        final Id id = entity.getId();
+
+        final Entity copy;
+
+        if ( id != null ) {
+            copy = new Entity( id, entity.getVersion() );
+        }
+        else {
+            copy = new Entity();
+            EntityUtils.setVersion( copy, entity.getVersion() );
+        }
+
+        return copyFields( entity, copy ) ? copy : null;
+    }
+
+
+    private static EntityObject copyObject( final EntityObject object ) {
+
+        if ( object instanceof Entity ) {
+            return copyEntity( ( Entity ) object );
+        }
+
+        if ( object.getClass() != EntityObject.class ) {
+            return null;
+        }
+
+        final EntityObject copy = new EntityObject();
+
+        return copyFields( object, copy ) ? copy : null;
+    }
+
+
+    private static boolean copyFields( final EntityObject source, final EntityObject target ) {
+
+        for ( final Field field : source.getFields() ) {
+            final Field copy = copyField( field );
+
+            if ( copy == null ) {
+                return false;
+            }
+
+            target.setField( copy );
+        }
+
+        target.setSize( source.getSize() );
+
+        return true;
+    }
+
+
+    /**
+     * Copy a field.  Types are matched exactly, since a subclass we don't know may hold more state
+     */
+    @SuppressWarnings( "unchecked" )
+    private static Field copyField( final Field field ) {
+
+        final Class<?> type = field.getClass();
+        final String name = field.getName();
+        final Object value = field.getValue();
+
+        if ( type == StringField.class ) {
+            return new StringField( name, ( String ) value, field.isUnique() );
+        }
+        if ( type == LongField.class ) {
+            return new LongField( name, ( Long ) value, field.isUnique() );
+        }
+        if ( type == IntegerField.class ) {
+            return new IntegerField( name, ( Integer ) value, field.isUnique() );
+        }
+        if ( type == BooleanField.class ) {
+            return new BooleanField( name, ( Boolean ) value, field.isUnique() );
+        }
+        if ( type == DoubleField.class ) {
+            return new DoubleField( name, ( Double ) value, field.isUnique() );
+        }
+        if ( type == DistanceField.class ) {
+            final DistanceField copy = new DistanceField( ( Double ) value, field.isUnique() );
+            copy.setName( name );
+            return copy;
+        }
+        if ( type == FloatField.class ) {
+            return new FloatField( name, ( Float ) value, field.isUnique() );
+        }
+        if ( type == UUIDField.class ) {
+            return new UUIDField( name, ( UUID ) value, field.isUnique() );
+        }
+        if ( type == NullField.class ) {
+            return new NullField( name, field.isUnique() );
+        }
+        if ( type == LocationField.class ) {
+            return new LocationField( name, ( Location ) value );
+        }
+        if ( type == SerializedObjectField.class ) {
+            return new SerializedObjectField( name, ( String ) value,
+                ( ( SerializedObjectField ) field ).getClassinfo() );
+        }
+        if ( type == ByteArrayField.class ) {
+            return new ByteArrayField( name, value == null ? null : ( ( byte[] ) value ).clone(),
+                ( ( ByteArrayField ) field ).getClassinfo() );
+        }
+
+        if ( type == EntityObjectField.class ) {
+            if ( value == null ) {
+                return new EntityObjectField( name, null );
+            }
+
+            final EntityObject copy = copyObject( ( EntityObject ) value );
+
+            return copy == null ? null : new EntityObjectField( name, copy );
+        }
+
+        if ( type == ArrayField.class || type == ListField.class || type == SetField.class ) {
+            final Object copy = copyValue( value );
+
+            if ( copy == UNSUPPORTED ) {
+                return null;
+            }
+
+            if ( type == ArrayField.class ) {
+                return new ArrayField( name, ( List ) copy );
+            }
+
+            return type == ListField.class ? new ListField( name, ( List ) copy ) : new SetField( name, ( Set ) copy );
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Copy a value held by a collection field
+     *
+     * @return The copy, or UNSUPPORTED if we don't know how to copy it
+     */
+    private static Object copyValue( final Object value ) {
+
+        if ( value == null || value instanceof String || value instanceof Boolean || value instanceof UUID
+            || value instanceof Location || isImmutableNumber( value ) ) {
+            return value;
+        }
+
+        if ( value instanceof EntityObject ) {
+            final EntityObject copy = copyObject( ( EntityObject ) value );
+
+            return copy == null ? UNSUPPORTED : copy;
+        }
+
+        if ( value instanceof List ) {
+            final List<Object> copy = new ArrayList<>( ( ( List<?> ) value ).size() );
+
+            return copyElements( ( List<?> ) value, copy ) ? copy : UNSUPPORTED;
+        }
+
+        if ( value instanceof Set ) {
+            final Set<Object> copy = new LinkedHashSet<>( ( ( Set<?> ) value ).size() );
+
+            return copyElements( ( Set<?> ) value, copy ) ? copy : UNSUPPORTED;
+        }
+
+        if ( value instanceof Map ) {
+            final Map<Object, Object> copy = new LinkedHashMap<>( ( ( Map<?, ?> ) value ).size() );
+
+            for ( final Map.Entry<?, ?> entry : ( ( Map<?, ?> ) value ).entrySet() ) {
+                final Object copied = copyValue( entry.getValue() );
+
+                if ( copied == UNSUPPORTED ) {
+                    return UNSUPPORTED;
+                }
+
+                copy.put( entry.getKey(), copied );
+            }
+
+            return copy;
+        }
+
+        return UNSUPPORTED;
+    }
+
+
+    private static boolean copyElements( final Collection<?> source, final Collection<Object> target ) {
+
+        for ( final Object element : source ) {
+            final Object copied = copyValue( element );
+
+            if ( copied == UNSUPPORTED ) {
+                return false;
+            }
+
+            target.add( copied );
+        }
+
+        return true;
+    }
+
+
+    private static boolean isImmutableNumber( final Object value ) {
+        return value instanceof Long || value instanceof Integer || value instanceof Double || value instanceof Float
+            || value instanceof Short || value instanceof Byte || value instanceof BigDecimal
+            || value instanceof BigInteger;
+    }
+}
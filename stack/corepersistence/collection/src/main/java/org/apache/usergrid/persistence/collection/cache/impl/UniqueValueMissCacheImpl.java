@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.collection.cache.impl;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.usergrid.persistence.collection.cache.EntityCacheFig;
+import org.apache.usergrid.persistence.collection.cache.UniqueValueMissCache;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.field.Field;
+
+import com.codahale.metrics.Meter;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+
+/**
+ * Guava backed implementation of the unique value miss cache.  Values are matched the way they're stored, by field
+ * name and lower cased value.
+ */
+@Singleton
+public class UniqueValueMissCacheImpl implements UniqueValueMissCache {
+
+    private final EntityCacheFig entityCacheFig;
+
+    private final Meter hitMeter;
+
+    private volatile Cache<CacheKey, Boolean> misses;
+
+
+    @Inject
+    public UniqueValueMissCacheImpl( final EntityCacheFig entityCacheFig, final MetricsFactory metricsFactory ) {
+
+        Preconditions.checkNotNull( entityCacheFig, "entityCacheFig is required" );
+        Preconditions.checkNotNull( metricsFactory, "metricsFactory is required" );
+
+        this.entityCacheFig = entityCacheFig;
+
+        this.hitMeter = metricsFactory.getMeter( UniqueValueMissCacheImpl.class, "unique.miss.cache.hit" );
+
+
+        /**
+         * Rebuild the cache if our sizing changes
+         */
+        this.entityCacheFig.addPropertyChangeListener( evt -> {
+            final String propertyName = evt.getPropertyName();
+
+            if ( propertyName.equals( EntityCacheFig.UNIQUE_VALUE_MISS_CACHE_SIZE ) || propertyName
+                .equals( EntityCacheFig.UNIQUE_VALUE_MISS_CACHE_TIMEOUT_MS ) ) {
+
+                updateCache();
+            }
+        } );
+
+        updateCache();
+    }
+
+
+    @Override
+    public boolean isMissing( final ApplicationScope scope, final String type, final Field field ) {
+
+        final Cache<CacheKey, Boolean> cache = misses;
+
+        if ( cache == null ) {
+            return false;
+        }
+
+        final boolean missing = cache.getIfPresent( new CacheKey( scope, type, field ) ) != null;
+
+        if ( missing ) {
+            hitMeter.mark();
+        }
+
+        return missing;
+    }
+
+
+    @Override
+    public void putMissing( final ApplicationScope scope, final String type, final Field field ) {
+
+        final Cache<CacheKey, Boolean> cache = misses;
+
+        if ( cache == null ) {
+            return;
+        }
+
+        cache.put( new CacheKey( scope, type, field ), Boolean.TRUE );
+    }
+
+
+    @Override
+    public void invalidate( final ApplicationScope scope, final Entity entity ) {
+
+        final Cache<CacheKey, Boolean> cache = misses;
+
+        if ( cache == null ) {
+            return;
+        }
+
+        final String type = entity.getId().getType();
+
+        for ( final Field field : entity.getFields() ) {
+            if ( field.isUnique() ) {
+                cache.invalidate( new CacheKey( scope, type, field ) );
+            }
+        }
+    }
+
+
+    @Override
+    public void invalidateAll() {
+
+        final Cache<CacheKey, Boolean> cache = misses;
+
+        if ( cache == null ) {
+            return;
+        }
+
+        cache.invalidateAll();
+    }
+
+
+    /**
+     * This is a race condition with in flight reads, which is fine.  At worst they miss and go to cassandra
+     */
+    private void updateCache() {
+
+        final int cacheSize = entityCacheFig.getUniqueValueMissCacheSize();
+
+        if ( cacheSize <= 0 ) {
+            this.misses = null;
+            return;
+        }
+
+        this.misses = CacheBuilder.newBuilder()
+
+            //values written on other nodes will be found after this timeout
+            .expireAfterWrite( entityCacheFig.getUniqueValueMissCacheTimeout(), TimeUnit.MILLISECONDS )
+
+            .maximumSize( cacheSize ).build();
+    }
+
+
+    /**
+     * Cache key for a unique value of a type in an application
+     */
+    private static final class CacheKey {
+        private final ApplicationScope scope;
+        private final String type;
+        private final String name;
+        private final String value;
+
+
+        private CacheKey( final ApplicationScope scope, final String type, final Field field ) {
+            this.scope = scope;
+            this.type = type;
+            this.name = field.getName();
+            this.value = field.getValue().toString().toLowerCase();
+        }
+
+
+        @Override
+        public boolean equals( final Object o ) {
+            if ( this == o ) {
+                return true;
+            }
+            if ( o == null || getClass() != o.getClass() ) {
+                return false;
+            }
+
+            final CacheKey cacheKey = ( CacheKey ) o;
+
+            return scope.equals( cacheKey.scope ) && type.equals( cacheKey.type ) && name.equals( cacheKey.name )
+                && value.equals( cacheKey.value );
+        }
+
+
+        @Override
+        public int hashCode() {
+            int result = scope.hashCode();
+            result = 31 * result + type.hashCode();
+            result = 31 * result + name.hashCode();
+            result = 31 * result + value.hashCode();
+            return result;
+        }
+    }
+}
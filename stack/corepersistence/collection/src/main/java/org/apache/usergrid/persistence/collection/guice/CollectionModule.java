@@ -23,7 +23,11 @@ import java.util.concurrent.ThreadPoolExecutor;
 import org.safehaus.guicyfig.GuicyFigModule;
 
 import org.apache.usergrid.persistence.collection.EntityCollectionManagerFactory;
+import org.apache.usergrid.persistence.collection.cache.EntityCache;
 import org.apache.usergrid.persistence.collection.cache.EntityCacheFig;
+import org.apache.usergrid.persistence.collection.cache.UniqueValueMissCache;
+import org.apache.usergrid.persistence.collection.cache.impl.EntityCacheImpl;
+import org.apache.usergrid.persistence.collection.cache.impl.UniqueValueMissCacheImpl;
 import org.apache.usergrid.persistence.collection.impl.EntityCollectionManagerFactoryImpl;
 import org.apache.usergrid.persistence.collection.mvcc.changelog.ChangeLogGenerator;
 import org.apache.usergrid.persistence.collection.mvcc.changelog.ChangeLogGeneratorImpl;
@@ -65,6 +69,8 @@ public abstract class CollectionModule extends AbstractModule {
 
         //bind this to our factory
         install( new GuicyFigModule( EntityCacheFig.class ) );
+        bind( EntityCache.class ).to( EntityCacheImpl.class );
+        bind( UniqueValueMissCache.class ).to( UniqueValueMissCacheImpl.class );
 
         bind( ChangeLogGenerator.class).to( ChangeLogGeneratorImpl.class);
 
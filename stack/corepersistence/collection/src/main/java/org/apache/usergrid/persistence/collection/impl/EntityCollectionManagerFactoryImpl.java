@@ -25,7 +25,8 @@ import java.util.concurrent.ExecutionException;
 
 import org.apache.usergrid.persistence.collection.EntityCollectionManager;
 import org.apache.usergrid.persistence.collection.EntityCollectionManagerFactory;
-import org.apache.usergrid.persistence.collection.cache.EntityCacheFig;
+import org.apache.usergrid.persistence.collection.cache.EntityCache;
+import org.apache.usergrid.persistence.collection.cache.UniqueValueMissCache;
 import org.apache.usergrid.persistence.collection.mvcc.stage.delete.MarkCommit;
 import org.apache.usergrid.persistence.collection.mvcc.stage.delete.MarkStart;
 import org.apache.usergrid.persistence.collection.mvcc.stage.delete.UniqueCleanup;
@@ -77,6 +78,8 @@ public class EntityCollectionManagerFactoryImpl implements EntityCollectionManag
     private final Keyspace keyspace;
     private final MetricsFactory metricsFactory;
     private final RxTaskScheduler rxTaskScheduler;
+    private final EntityCache entityCache;
+    private final UniqueValueMissCache uniqueValueMissCache;
 
     private LoadingCache<ApplicationScope, EntityCollectionManager> ecmCache =
         CacheBuilder.newBuilder().maximumSize( 1000 )
@@ -89,7 +92,7 @@ public class EntityCollectionManagerFactoryImpl implements EntityCollectionManag
                                 entitySerializationStrategy, uniqueValueSerializationStrategy,
                                 mvccLogEntrySerializationStrategy, keyspace,
                                 metricsFactory, serializationFig,
-                                rxTaskScheduler, scope );
+                                rxTaskScheduler, entityCache, uniqueValueMissCache, scope );
 
                             return target;
                         }
@@ -106,7 +109,8 @@ public class EntityCollectionManagerFactoryImpl implements EntityCollectionManag
                                                    MvccEntitySerializationStrategy entitySerializationStrategy,
                                                final UniqueValueSerializationStrategy uniqueValueSerializationStrategy,
                                                final MvccLogEntrySerializationStrategy mvccLogEntrySerializationStrategy,
-                                               final Keyspace keyspace, final EntityCacheFig entityCacheFig,
+                                               final Keyspace keyspace, final EntityCache entityCache,
+                                               final UniqueValueMissCache uniqueValueMissCache,
                                                final MetricsFactory metricsFactory, @CollectionExecutorScheduler  final RxTaskScheduler rxTaskScheduler ) {
 
         this.writeStart = writeStart;
@@ -125,6 +129,8 @@ public class EntityCollectionManagerFactoryImpl implements EntityCollectionManag
         this.keyspace = keyspace;
         this.metricsFactory = metricsFactory;
         this.rxTaskScheduler = rxTaskScheduler;
+        this.entityCache = entityCache;
+        this.uniqueValueMissCache = uniqueValueMissCache;
     }
     @Override
     public EntityCollectionManager createCollectionManager(ApplicationScope applicationScope) {
@@ -140,6 +146,8 @@ public class EntityCollectionManagerFactoryImpl implements EntityCollectionManag
     @Override
     public void invalidate() {
         ecmCache.invalidateAll();
+        entityCache.invalidateAll();
+        uniqueValueMissCache.invalidateAll();
     }
 
 }
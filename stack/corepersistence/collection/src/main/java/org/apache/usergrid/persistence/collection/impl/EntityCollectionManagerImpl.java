@@ -20,10 +20,12 @@ package org.apache.usergrid.persistence.collection.impl;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import com.netflix.astyanax.model.ConsistencyLevel;
@@ -32,10 +34,15 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.usergrid.persistence.collection.EntityCollectionManager;
 import org.apache.usergrid.persistence.collection.EntitySet;
+import org.apache.usergrid.persistence.collection.EntityWriteResult;
 import org.apache.usergrid.persistence.collection.FieldSet;
 import org.apache.usergrid.persistence.collection.MvccEntity;
 import org.apache.usergrid.persistence.collection.MvccLogEntry;
 import org.apache.usergrid.persistence.collection.VersionSet;
+import org.apache.usergrid.persistence.collection.cache.EntityCache;
+import org.apache.usergrid.persistence.collection.cache.UniqueValueMissCache;
+import org.apache.usergrid.persistence.collection.exception.WriteOptimisticVerifyException;
+import org.apache.usergrid.persistence.collection.exception.WriteUniqueVerifyException;
 import org.apache.usergrid.persistence.collection.mvcc.stage.CollectionIoEvent;
 import org.apache.usergrid.persistence.collection.mvcc.stage.delete.MarkCommit;
 import org.apache.usergrid.persistence.collection.mvcc.stage.delete.MarkStart;
@@ -52,8 +59,10 @@ import org.apache.usergrid.persistence.collection.serialization.SerializationFig
 import org.apache.usergrid.persistence.collection.serialization.UniqueValue;
 import org.apache.usergrid.persistence.collection.serialization.UniqueValueSerializationStrategy;
 import org.apache.usergrid.persistence.collection.serialization.UniqueValueSet;
+import org.apache.usergrid.persistence.collection.serialization.impl.EntitySetImpl;
 import org.apache.usergrid.persistence.collection.serialization.impl.MinMaxLogEntryIterator;
 import org.apache.usergrid.persistence.collection.serialization.impl.MutableFieldSet;
+import org.apache.usergrid.persistence.collection.serialization.impl.UniqueValueSetImpl;
 import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
 import org.apache.usergrid.persistence.core.metrics.ObservableTimer;
 import org.apache.usergrid.persistence.core.rx.ObservableIterator;
@@ -110,13 +119,18 @@ public class EntityCollectionManagerImpl implements EntityCollectionManager {
     private final MvccEntitySerializationStrategy entitySerializationStrategy;
     private final UniqueValueSerializationStrategy uniqueValueSerializationStrategy;
 
+    private final EntityCache entityCache;
+    private final UniqueValueMissCache uniqueValueMissCache;
+
     private final SerializationFig serializationFig;
 
 
     private final Keyspace keyspace;
     private final Timer writeTimer;
+    private final Timer writeBatchTimer;
     private final Timer deleteTimer;
     private final Timer fieldIdTimer;
+    private final Timer fieldIdsTimer;
     private final Timer fieldEntityTimer;
     private final Timer loadTimer;
     private final Timer getLatestTimer;
@@ -136,9 +150,13 @@ public class EntityCollectionManagerImpl implements EntityCollectionManager {
                                         final MvccLogEntrySerializationStrategy mvccLogEntrySerializationStrategy,
                                         final Keyspace keyspace, final MetricsFactory metricsFactory,
                                         final SerializationFig serializationFig, final RxTaskScheduler rxTaskScheduler,
+                                        final EntityCache entityCache,
+                                        final UniqueValueMissCache uniqueValueMissCache,
                                         @Assisted final ApplicationScope applicationScope ) {
         this.uniqueValueSerializationStrategy = uniqueValueSerializationStrategy;
         this.entitySerializationStrategy = entitySerializationStrategy;
+        this.entityCache = entityCache;
+        this.uniqueValueMissCache = uniqueValueMissCache;
         this.uniqueCleanup = uniqueCleanup;
         this.versionCompact = versionCompact;
         this.serializationFig = serializationFig;
@@ -162,8 +180,10 @@ public class EntityCollectionManagerImpl implements EntityCollectionManager {
         this.applicationScope = applicationScope;
         this.mvccLogEntrySerializationStrategy = mvccLogEntrySerializationStrategy;
         this.writeTimer = metricsFactory.getTimer(EntityCollectionManagerImpl.class, "base.write");
+        this.writeBatchTimer = metricsFactory.getTimer(EntityCollectionManagerImpl.class, "base.write_batch");
         this.deleteTimer = metricsFactory.getTimer(EntityCollectionManagerImpl.class, "base.delete");
         this.fieldIdTimer = metricsFactory.getTimer(EntityCollectionManagerImpl.class, "base.fieldId");
+        this.fieldIdsTimer = metricsFactory.getTimer(EntityCollectionManagerImpl.class, "base.fieldIds");
         this.fieldEntityTimer = metricsFactory.getTimer(EntityCollectionManagerImpl.class, "base.fieldEntity");
         this.loadTimer = metricsFactory.getTimer(EntityCollectionManagerImpl.class, "base.load");
         this.getLatestTimer = metricsFactory.getTimer(EntityCollectionManagerImpl.class, "base.latest");
@@ -188,6 +208,9 @@ public class EntityCollectionManagerImpl implements EntityCollectionManager {
 
 
         final Observable<Entity> write = observable.map( writeCommit )
+                                                   //our cached version is now stale
+                                                   .doOnNext( ioEvent -> entityCache.invalidate( applicationScope, entityId ) )
+                                                   .doOnNext( ioEvent -> uniqueValueMissCache.invalidate( applicationScope, entity ) )
                                                    .map(ioEvent -> {
                 //fire this in the background so we don't block writes
                 Observable.just( ioEvent ).compose( uniqueCleanup ).subscribeOn( rxTaskScheduler.getAsyncIOScheduler() ).subscribe();
@@ -201,6 +224,83 @@ public class EntityCollectionManagerImpl implements EntityCollectionManager {
     }
 
 
+    @Override
+    public Observable<EntityWriteResult> write( final Observable<Entity> entities ) {
+
+        Preconditions.checkNotNull( entities, "Entities are required in the new stage of the mvcc write" );
+
+        final Observable<EntityWriteResult> write = entities.buffer( serializationFig.getWriteBatchSize() )
+                                                            .concatMap( batch -> Observable.from( writeBatch( batch ) ) );
+
+        return ObservableTimer.time( write, writeBatchTimer );
+    }
+
+
+    /**
+     * Run each stage of the write over the whole batch, so every stage makes a single round trip.  Entities that fail
+     * verification are reported and left out of the remaining stages
+     */
+    private List<EntityWriteResult> writeBatch( final List<Entity> entities ) {
+
+        final List<CollectionIoEvent<Entity>> writeData = new ArrayList<>( entities.size() );
+
+        for ( final Entity entity : entities ) {
+            Preconditions.checkNotNull( entity, "Entity is required in the new stage of the mvcc write" );
+            ValidationUtils.verifyIdentity( entity.getId() );
+
+            writeData.add( new CollectionIoEvent<>( applicationScope, entity ) );
+        }
+
+        final List<CollectionIoEvent<MvccEntity>> started = writeStart.startBatch( writeData );
+
+        final List<Map<String, Field>> uniquenessViolations = writeVerifyUnique.verifyBatch( started );
+
+        final EntityWriteResult[] results = new EntityWriteResult[started.size()];
+        final List<CollectionIoEvent<MvccEntity>> verified = new ArrayList<>( started.size() );
+        final List<Integer> verifiedPositions = new ArrayList<>( started.size() );
+
+        for ( int i = 0; i < started.size(); i++ ) {
+            final CollectionIoEvent<MvccEntity> ioEvent = started.get( i );
+
+            if ( !uniquenessViolations.get( i ).isEmpty() ) {
+                results[i] = EntityWriteResult.failure( entities.get( i ),
+                    new WriteUniqueVerifyException( ioEvent.getEvent(), applicationScope,
+                        uniquenessViolations.get( i ) ) );
+                continue;
+            }
+
+            try {
+                writeOptimisticVerify.call( ioEvent );
+            }
+            catch ( WriteOptimisticVerifyException e ) {
+                results[i] = EntityWriteResult.failure( entities.get( i ), e );
+                continue;
+            }
+
+            verified.add( ioEvent );
+            verifiedPositions.add( i );
+        }
+
+        writeCommit.commitBatch( verified );
+
+        for ( int i = 0; i < verified.size(); i++ ) {
+            final CollectionIoEvent<MvccEntity> ioEvent = verified.get( i );
+
+            //our cached version is now stale
+            entityCache.invalidate( applicationScope, ioEvent.getEvent().getId() );
+            uniqueValueMissCache.invalidate( applicationScope, entities.get( verifiedPositions.get( i ) ) );
+
+            results[verifiedPositions.get( i )] = EntityWriteResult.success( ioEvent.getEvent().getEntity().get() );
+        }
+
+        //fire this in the background so we don't block writes
+        Observable.from( verified ).compose( uniqueCleanup ).subscribeOn( rxTaskScheduler.getAsyncIOScheduler() )
+                  .subscribe();
+
+        return Arrays.asList( results );
+    }
+
+
     @Override
     public Observable<Id> mark( final Id entityId ) {
 
@@ -209,8 +309,8 @@ public class EntityCollectionManagerImpl implements EntityCollectionManager {
         Preconditions.checkNotNull( entityId.getType(), "Entity type is required in this stage" );
 
         Observable<Id> o = Observable.just( new CollectionIoEvent<>( applicationScope, entityId ) ).map( markStart )
-            .doOnNext( markCommit ).compose( uniqueCleanup ).map(
-                entityEvent -> entityEvent.getEvent().getId() );
+            .doOnNext( markCommit ).doOnNext( markEvent -> entityCache.invalidate( applicationScope, entityId ) )
+            .compose( uniqueCleanup ).map( entityEvent -> entityEvent.getEvent().getId() );
 
 
         return ObservableTimer.time( o, deleteTimer );
@@ -249,8 +349,31 @@ public class EntityCollectionManagerImpl implements EntityCollectionManager {
             @Override
             public void call( final Subscriber<? super EntitySet> subscriber ) {
                 try {
-                    final EntitySet results =
-                        entitySerializationStrategy.load( applicationScope, entityIds, UUIDGenerator.newTimeUUID() );
+                    final EntitySetImpl results = new EntitySetImpl( entityIds.size() );
+
+                    //serve what we can from the cache, and only go to cassandra for the rest
+                    final List<Id> uncachedIds = new ArrayList<>( entityIds.size() );
+
+                    for ( final Id entityId : entityIds ) {
+                        final MvccEntity cached = entityCache.get( applicationScope, entityId );
+
+                        if ( cached == null ) {
+                            uncachedIds.add( entityId );
+                            continue;
+                        }
+
+                        results.addEntity( cached );
+                    }
+
+                    if ( !uncachedIds.isEmpty() ) {
+                        final EntitySet loaded =
+                            entitySerializationStrategy.load( applicationScope, uncachedIds, UUIDGenerator.newTimeUUID() );
+
+                        for ( final MvccEntity entity : loaded.getEntities() ) {
+                            entityCache.put( applicationScope, entity );
+                            results.addEntity( entity );
+                        }
+                    }
 
                     subscriber.onNext( results );
                     subscriber.onCompleted();
@@ -286,7 +409,8 @@ public class EntityCollectionManagerImpl implements EntityCollectionManager {
 
 
         return Observable.from( entries ).map( logEntry -> new CollectionIoEvent<>( applicationScope, logEntry ) )
-            .compose( versionCompact ).map( event -> event.getEvent() );
+            .compose( versionCompact ).map( event -> event.getEvent() )
+            .doOnNext( logEntry -> entityCache.invalidate( applicationScope, logEntry.getEntityId() ) );
     }
 
 
@@ -309,6 +433,44 @@ public class EntityCollectionManagerImpl implements EntityCollectionManager {
     }
 
 
+    @Override
+    public Observable<UniqueValueSet> getUniqueValues( final String type, final Collection<Field> fields ) {
+        final Observable<UniqueValueSet> valuesObservable = Observable.just( fields ).map( fields1 -> {
+
+            //values we recently didn't find won't be in the result either way
+            final List<Field> uncached = new ArrayList<>( fields1.size() );
+
+            for ( final Field field : fields1 ) {
+                if ( !uniqueValueMissCache.isMissing( applicationScope, type, field ) ) {
+                    uncached.add( field );
+                }
+            }
+
+            if ( uncached.isEmpty() ) {
+                return new UniqueValueSetImpl( 0 );
+            }
+
+            try {
+                final UniqueValueSet set = uniqueValueSerializationStrategy.load( applicationScope, type, uncached );
+
+                for ( final Field field : uncached ) {
+                    if ( set.getValue( field ) == null ) {
+                        uniqueValueMissCache.putMissing( applicationScope, type, field );
+                    }
+                }
+
+                return set;
+            }
+            catch ( ConnectionException e ) {
+                logger.error( "Failed to getUniqueValues", e );
+                throw new RuntimeException( e );
+            }
+        } );
+
+        return ObservableTimer.time( valuesObservable, fieldIdsTimer );
+    }
+
+
     /**
      * Retrieves all entities that correspond to each field given in the Collection.
      */
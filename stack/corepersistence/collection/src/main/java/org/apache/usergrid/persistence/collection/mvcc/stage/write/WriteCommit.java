@@ -18,6 +18,7 @@
 package org.apache.usergrid.persistence.collection.mvcc.stage.write;
 
 
+import java.util.List;
 import java.util.UUID;
 
 import org.slf4j.Logger;
@@ -86,6 +87,42 @@ public class WriteCommit implements Func1<CollectionIoEvent<MvccEntity>, Collect
     @Override
     public CollectionIoEvent<MvccEntity> call( final CollectionIoEvent<MvccEntity> ioEvent ) {
 
+        final MutationBatch logMutation = createCommit( ioEvent );
+
+        execute( logMutation, ioEvent );
+
+        return ioEvent;
+    }
+
+
+    /**
+     * Commit many entities in a single mutation
+     *
+     * @param ioEvents The entities to commit
+     */
+    public List<CollectionIoEvent<MvccEntity>> commitBatch( final List<CollectionIoEvent<MvccEntity>> ioEvents ) {
+
+        if ( ioEvents.isEmpty() ) {
+            return ioEvents;
+        }
+
+        final MutationBatch logMutation = createCommit( ioEvents.get( 0 ) );
+
+        for ( int i = 1; i < ioEvents.size(); i++ ) {
+            logMutation.mergeShallow( createCommit( ioEvents.get( i ) ) );
+        }
+
+        execute( logMutation, ioEvents.get( 0 ) );
+
+        return ioEvents;
+    }
+
+
+    /**
+     * Create the mutation that commits the log entry, the entity data and the unique values of the entity
+     */
+    private MutationBatch createCommit( final CollectionIoEvent<MvccEntity> ioEvent ) {
+
         final MvccEntity mvccEntity = ioEvent.getEvent();
         MvccValidationUtils.verifyMvccEntityWithEntity( mvccEntity );
 
@@ -125,16 +162,18 @@ public class WriteCommit implements Func1<CollectionIoEvent<MvccEntity>, Collect
                 logMutation.mergeShallow( mb );
         }
 
+        return logMutation;
+    }
+
+
+    private void execute( final MutationBatch logMutation, final CollectionIoEvent<MvccEntity> ioEvent ) {
         try {
             logMutation.execute();
         }
         catch ( ConnectionException e ) {
             logger.error( "Failed to execute write asynchronously ", e );
-            throw new WriteCommitException( mvccEntity, applicationScope,
+            throw new WriteCommitException( ioEvent.getEvent(), ioEvent.getEntityCollection(),
                 "Failed to execute write asynchronously ", e );
         }
-
-
-        return ioEvent;
     }
 }
@@ -1,6 +1,8 @@
 package org.apache.usergrid.persistence.collection.mvcc.stage.write;
 
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 import org.slf4j.Logger;
@@ -14,9 +16,7 @@ import org.apache.usergrid.persistence.collection.mvcc.entity.impl.MvccEntityImp
 import org.apache.usergrid.persistence.collection.mvcc.entity.impl.MvccLogEntryImpl;
 import org.apache.usergrid.persistence.collection.mvcc.stage.CollectionIoEvent;
 import org.apache.usergrid.persistence.collection.serialization.MvccLogEntrySerializationStrategy;
-import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.model.entity.Entity;
-import org.apache.usergrid.persistence.model.entity.Id;
 import org.apache.usergrid.persistence.model.util.UUIDGenerator;
 
 import com.google.inject.Inject;
@@ -56,37 +56,100 @@ public class WriteStart implements Func1<CollectionIoEvent<Entity>, CollectionIo
     @Override
     public CollectionIoEvent<MvccEntity> call( final CollectionIoEvent<Entity> ioEvent ) {
 
-            verifyEntityWrite( ioEvent.getEvent() );
+            final CollectionIoEvent<MvccEntity> nextStage = start( ioEvent );
 
-            final Entity entity = ioEvent.getEvent();
-            final ApplicationScope applicationScope = ioEvent.getEntityCollection();
+            MutationBatch write = logStrategy.write( nextStage.getEntityCollection(), createStartEntry( nextStage ) );
 
-            final Id entityId = entity.getId();
+            if(ioEvent.getEvent().hasVersion()) {
+                execute( write, nextStage );
+            }
+
+            return nextStage;
+    }
 
-            final UUID newVersion = UUIDGenerator.newTimeUUID();
 
-            final MvccLogEntry startEntry = new MvccLogEntryImpl( entityId, newVersion,
-                    Stage.ACTIVE, MvccLogEntry.State.COMPLETE);
+    /**
+     * Start the writes of many entities.  The starts of all versioned entities are written in a single mutation
+     *
+     * @param ioEvents The entities to write
+     *
+     * @return The next stage of each entity, in the order of the entities
+     */
+    public List<CollectionIoEvent<MvccEntity>> startBatch( final List<CollectionIoEvent<Entity>> ioEvents ) {
 
-            MutationBatch write = logStrategy.write( applicationScope, startEntry );
+        final List<CollectionIoEvent<MvccEntity>> nextStages = new ArrayList<>( ioEvents.size() );
 
-            final MvccEntityImpl nextStage = new MvccEntityImpl( entityId, newVersion, MvccEntity.Status.COMPLETE, entity );
-            if(ioEvent.getEvent().hasVersion()) {
-                try {
-                    write.execute();
-                } catch (ConnectionException e) {
-                    logger.error("Failed to execute write ", e);
-                    throw new WriteStartException(nextStage, applicationScope,
-                        "Failed to execute write ", e);
-                } catch (NullPointerException e) {
-                    logger.error("Failed to execute write ", e);
-                    throw new WriteStartException(nextStage, applicationScope,
-                        "Failed to execute write", e);
-                }
+        MutationBatch write = null;
+        CollectionIoEvent<MvccEntity> firstVersioned = null;
+
+        for ( final CollectionIoEvent<Entity> ioEvent : ioEvents ) {
+
+            final CollectionIoEvent<MvccEntity> nextStage = start( ioEvent );
+
+            nextStages.add( nextStage );
+
+            if ( !ioEvent.getEvent().hasVersion() ) {
+                continue;
+            }
+
+            final MutationBatch startWrite =
+                logStrategy.write( nextStage.getEntityCollection(), createStartEntry( nextStage ) );
+
+            if ( write == null ) {
+                write = startWrite;
+                firstVersioned = nextStage;
             }
+            else {
+                write.mergeShallow( startWrite );
+            }
+        }
+
+        if ( write != null ) {
+            execute( write, firstVersioned );
+        }
+
+        return nextStages;
+    }
+
+
+    /**
+     * Create the mvcc entity with a new version for the entity being written
+     */
+    private CollectionIoEvent<MvccEntity> start( final CollectionIoEvent<Entity> ioEvent ) {
+
+        verifyEntityWrite( ioEvent.getEvent() );
+
+        final Entity entity = ioEvent.getEvent();
+
+        final UUID newVersion = UUIDGenerator.newTimeUUID();
+
+        //create the mvcc entity for the next stage
+        final MvccEntityImpl nextStage =
+            new MvccEntityImpl( entity.getId(), newVersion, MvccEntity.Status.COMPLETE, entity );
+
+        return new CollectionIoEvent<>( ioEvent.getEntityCollection(), nextStage );
+    }
+
+
+    private MvccLogEntry createStartEntry( final CollectionIoEvent<MvccEntity> ioEvent ) {
+        final MvccEntity mvccEntity = ioEvent.getEvent();
+
+        return new MvccLogEntryImpl( mvccEntity.getId(), mvccEntity.getVersion(), Stage.ACTIVE,
+            MvccLogEntry.State.COMPLETE );
+    }
 
-            //create the mvcc entity for the next stage
 
-            return new CollectionIoEvent<>( applicationScope, nextStage );
+    private void execute( final MutationBatch write, final CollectionIoEvent<MvccEntity> ioEvent ) {
+        try {
+            write.execute();
+        } catch (ConnectionException e) {
+            logger.error("Failed to execute write ", e);
+            throw new WriteStartException(ioEvent.getEvent(), ioEvent.getEntityCollection(),
+                "Failed to execute write ", e);
+        } catch (NullPointerException e) {
+            logger.error("Failed to execute write ", e);
+            throw new WriteStartException(ioEvent.getEvent(), ioEvent.getEntityCollection(),
+                "Failed to execute write", e);
+        }
     }
 }
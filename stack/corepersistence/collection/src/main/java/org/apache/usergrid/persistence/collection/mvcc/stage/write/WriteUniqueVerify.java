@@ -19,9 +19,12 @@ package org.apache.usergrid.persistence.collection.mvcc.stage.write;
 
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +46,8 @@ import org.apache.usergrid.persistence.model.field.Field;
 import org.apache.usergrid.persistence.model.util.EntityUtils;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.netflix.astyanax.Keyspace;
@@ -151,6 +156,108 @@ public class WriteUniqueVerify implements Action1<CollectionIoEvent<MvccEntity>>
         }
     }
 
+    /**
+     * Verify the unique values of many entities.  The unique values of every entity are written in a single mutation,
+     * then read back with a single query for each entity type
+     *
+     * @param ioevents The entities to verify
+     *
+     * @return The fields of each entity that are not unique, in the order of the entities
+     */
+    public List<Map<String, Field>> verifyBatch( final List<CollectionIoEvent<MvccEntity>> ioevents ) {
+
+        final MutationBatch batch = keyspace.prepareMutationBatch();
+
+        final List<List<Field>> uniqueFields = new ArrayList<>( ioevents.size() );
+
+        //the fields to read back for each type
+        final Table<ApplicationScope, String, Set<Field>> typeFields = HashBasedTable.create();
+
+        for ( final CollectionIoEvent<MvccEntity> ioevent : ioevents ) {
+
+            MvccValidationUtils.verifyMvccEntityWithEntity( ioevent.getEvent() );
+
+            final MvccEntity mvccEntity = ioevent.getEvent();
+            final Entity entity = mvccEntity.getEntity().get();
+            final ApplicationScope scope = ioevent.getEntityCollection();
+            final String type = entity.getId().getType();
+
+            final List<Field> entityFields = EntityUtils.getUniqueFields( entity );
+
+            for ( final Field field : entityFields ) {
+
+                // use TTL in case something goes wrong before entity is finally committed
+                final UniqueValue written = new UniqueValueImpl( field, mvccEntity.getId(), mvccEntity.getVersion() );
+
+                batch.mergeShallow( uniqueValueStrat.write( scope, written, serializationFig.getTimeout() ) );
+
+                Set<Field> fields = typeFields.get( scope, type );
+
+                if ( fields == null ) {
+                    fields = new HashSet<>();
+                    typeFields.put( scope, type, fields );
+                }
+
+                fields.add( field );
+            }
+
+            uniqueFields.add( entityFields );
+        }
+
+        final List<Map<String, Field>> uniquenessViolations = new ArrayList<>( ioevents.size() );
+
+        //short circuit nothing to do
+        if ( typeFields.isEmpty() ) {
+            for ( int i = 0; i < ioevents.size(); i++ ) {
+                uniquenessViolations.add( Collections.<String, Field>emptyMap() );
+            }
+
+            return uniquenessViolations;
+        }
+
+        //perform the write
+        try {
+            batch.execute();
+        }
+        catch ( ConnectionException ex ) {
+            throw new RuntimeException( "Unable to write to cassandra", ex );
+        }
+
+        // read back in the same pool as single entity verification
+        final Table<ApplicationScope, String, UniqueValueSet> typeValues =
+            new ConsistentBatchReplayCommand( uniqueValueStrat, cassandraFig, typeFields ).execute();
+
+        for ( int i = 0; i < ioevents.size(); i++ ) {
+
+            final CollectionIoEvent<MvccEntity> ioevent = ioevents.get( i );
+            final Id entityId = ioevent.getEvent().getId();
+            final List<Field> entityFields = uniqueFields.get( i );
+
+            final Map<String, Field> violations = new HashMap<>( entityFields.size() );
+
+            for ( final Field field : entityFields ) {
+
+                final UniqueValue uniqueValue =
+                    typeValues.get( ioevent.getEntityCollection(), entityId.getType() ).getValue( field );
+
+                if ( uniqueValue == null ) {
+                    throw new RuntimeException(
+                        String.format( "Could not retrieve unique value for field %s, unable to verify",
+                            field.getName() ) );
+                }
+
+                if ( !entityId.equals( uniqueValue.getEntityId() ) ) {
+                    violations.put( field.getName(), field );
+                }
+            }
+
+            uniquenessViolations.add( violations );
+        }
+
+        return uniquenessViolations;
+    }
+
+
     private static class ConsistentReplayCommand extends HystrixCommand<Map<String,Field>>{
 
         private final UniqueValueSerializationStrategy uniqueValueSerializationStrategy;
@@ -218,6 +325,53 @@ public class WriteUniqueVerify implements Action1<CollectionIoEvent<MvccEntity>>
         }
     }
 
+    /**
+     * Reads back the unique values written for a batch, with a query for each entity type
+     */
+    private static class ConsistentBatchReplayCommand
+        extends HystrixCommand<Table<ApplicationScope, String, UniqueValueSet>> {
+
+        private final UniqueValueSerializationStrategy uniqueValueSerializationStrategy;
+        private final CassandraConfig fig;
+        private final Table<ApplicationScope, String, Set<Field>> typeFields;
+
+        public ConsistentBatchReplayCommand( UniqueValueSerializationStrategy uniqueValueSerializationStrategy,
+                                             CassandraConfig fig,
+                                             Table<ApplicationScope, String, Set<Field>> typeFields ) {
+            super( REPLAY_GROUP );
+            this.uniqueValueSerializationStrategy = uniqueValueSerializationStrategy;
+            this.fig = fig;
+            this.typeFields = typeFields;
+        }
+
+        @Override
+        protected Table<ApplicationScope, String, UniqueValueSet> run() throws Exception {
+            return executeStrategy( fig.getReadCL() );
+        }
+
+        @Override
+        protected Table<ApplicationScope, String, UniqueValueSet> getFallback() {
+            // fallback with same CL as there are many reasons the 1st execution failed, not just due to consistency problems
+            return executeStrategy( fig.getReadCL() );
+        }
+
+        public Table<ApplicationScope, String, UniqueValueSet> executeStrategy( ConsistencyLevel consistencyLevel ) {
+            final Table<ApplicationScope, String, UniqueValueSet> typeValues = HashBasedTable.create();
+
+            for ( final Table.Cell<ApplicationScope, String, Set<Field>> cell : typeFields.cellSet() ) {
+                try {
+                    typeValues.put( cell.getRowKey(), cell.getColumnKey(), uniqueValueSerializationStrategy
+                        .load( cell.getRowKey(), consistencyLevel, cell.getColumnKey(), cell.getValue() ) );
+                }
+                catch ( ConnectionException e ) {
+                    throw new RuntimeException( "Unable to read from cassandra", e );
+                }
+            }
+
+            return typeValues;
+        }
+    }
+
     /**
      * Command group used for realtime user commands
      */
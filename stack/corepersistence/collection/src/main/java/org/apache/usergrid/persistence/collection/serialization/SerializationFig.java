@@ -54,6 +54,13 @@ public interface SerializationFig extends GuicyFig {
     @Default( "5000000" )
     int getMaxEntitySize();
 
+    /**
+     * The number of entities written together when writing many entities
+     */
+    @Key( "collection.write.batch.size" )
+    @Default( "100" )
+    int getWriteBatchSize();
+
     @Key ( "usergrid.uniqueverify.poolsize" )
     @Default( "150" )
     int getUniqueVerifyPoolSize();
@@ -18,6 +18,9 @@ package org.apache.usergrid.persistence.collection.serialization;/*
  */
 
 
+import org.apache.usergrid.persistence.model.field.Field;
+
+
 /**
  * A read only view of unique values
  */
@@ -30,4 +33,12 @@ public interface UniqueValueSet extends Iterable<UniqueValue> {
      */
     public UniqueValue getValue(final String fieldName);
 
+    /**
+     * Get the unique value matching both the name and the value of the field.  Use this when the set was loaded
+     * for many entities, which may share field names
+     * @param field
+     * @return
+     */
+    public UniqueValue getValue(final Field field);
+
 }
@@ -25,19 +25,23 @@ import java.util.Set;
 
 import org.apache.usergrid.persistence.collection.serialization.UniqueValue;
 import org.apache.usergrid.persistence.collection.serialization.UniqueValueSet;
+import org.apache.usergrid.persistence.model.field.Field;
 
 
 public class UniqueValueSetImpl implements UniqueValueSet {
 
     private final Map<String, UniqueValue> values;
+    private final Map<String, UniqueValue> fieldValues;
 
     public UniqueValueSetImpl(final int expectedMaxSize) {
         values = new HashMap<>(expectedMaxSize);
+        fieldValues = new HashMap<>(expectedMaxSize);
     }
 
 
     public void addValue(UniqueValue value){
         values.put( value.getField().getName(), value );
+        fieldValues.put( getFieldKey( value.getField() ), value );
     }
 
     @Override
@@ -46,9 +50,24 @@ public class UniqueValueSetImpl implements UniqueValueSet {
     }
 
 
+    @Override
+    public UniqueValue getValue( final Field field ) {
+        return fieldValues.get( getFieldKey( field ) );
+    }
+
+
+    /**
+     * Unique values are stored lower case, so match the value the same way
+     */
+    private static String getFieldKey( final Field field ) {
+        return field.getName() + ":" + field.getValue().toString().toLowerCase();
+    }
+
+
     @Override
     public Iterator<UniqueValue> iterator() {
-        return new UniqueValueIterator(values.entrySet());
+        //iterate by field, so several values of the same field name are all returned
+        return new UniqueValueIterator(fieldValues.entrySet());
     }
 
 
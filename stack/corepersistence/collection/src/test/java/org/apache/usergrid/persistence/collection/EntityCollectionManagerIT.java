@@ -142,6 +142,55 @@ public class EntityCollectionManagerIT {
     }
 
 
+    @Test
+    public void writeBatchWithUniqueValues() {
+
+
+        ApplicationScope context = new ApplicationScopeImpl( new SimpleId( "organization" ) );
+
+        EntityCollectionManager manager = factory.createCollectionManager( context );
+
+        final Entity existing = new Entity( new SimpleId( "test" ) );
+        existing.setField( new IntegerField( "count", 5, true ) );
+
+        manager.write( existing ).toBlocking().last();
+
+        //one new value, one held by an earlier write, and two entities in the batch sharing a value
+        final List<Entity> entities = new ArrayList<>();
+
+        for ( final int count : new int[] { 4, 5, 6, 6 } ) {
+            final Entity newEntity = new Entity( new SimpleId( "test" ) );
+            newEntity.setField( new IntegerField( "count", count, true ) );
+            entities.add( newEntity );
+        }
+
+        final List<EntityWriteResult> results =
+            manager.write( Observable.from( entities ) ).toList().toBlocking().last();
+
+        assertEquals( entities.size(), results.size() );
+
+        assertTrue( results.get( 0 ).isSuccess() );
+        assertNotNull( "Version was assigned", results.get( 0 ).getEntity().getVersion() );
+
+        assertFalse( results.get( 1 ).isSuccess() );
+        assertEquals( 1, ( ( WriteUniqueVerifyException ) results.get( 1 ).getError().get() ).getVioliations().size() );
+
+        //only one of the entities sharing a value can hold it
+        assertTrue( results.get( 2 ).isSuccess() ^ results.get( 3 ).isSuccess() );
+
+        for ( final EntityWriteResult result : results ) {
+            final Entity loaded = manager.load( result.getEntity().getId() ).toBlocking().lastOrDefault( null );
+
+            if ( result.isSuccess() ) {
+                assertEquals( result.getEntity(), loaded );
+            }
+            else {
+                assertNull( "Failed entities are not written", loaded );
+            }
+        }
+    }
+
+
     @Test
     public void writeAndLoad() {
 
@@ -0,0 +1,351 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.collection.cache;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.usergrid.persistence.collection.MvccEntity;
+import org.apache.usergrid.persistence.collection.cache.impl.EntityCacheImpl;
+import org.apache.usergrid.persistence.collection.mvcc.entity.impl.MvccEntityImpl;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.core.scope.ApplicationScopeImpl;
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.entity.EntityMap;
+import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.field.DoubleField;
+import org.apache.usergrid.persistence.model.field.EntityObjectField;
+import org.apache.usergrid.persistence.model.field.ListField;
+import org.apache.usergrid.persistence.model.field.LongField;
+import org.apache.usergrid.persistence.model.field.StringField;
+import org.apache.usergrid.persistence.model.field.value.EntityObject;
+import org.apache.usergrid.persistence.model.util.UUIDGenerator;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+
+import static org.apache.usergrid.persistence.core.util.IdGenerator.createId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Tests the local entity cache without cassandra
+ */
+public class EntityCacheTest {
+
+
+    private EntityCacheFig entityCacheFig;
+    private MetricsFactory metricsFactory;
+    private Timer hitTimer;
+    private ApplicationScope scope;
+
+
+    @Before
+    public void setup() {
+        entityCacheFig = mock( EntityCacheFig.class );
+
+        when( entityCacheFig.getCacheSize() ).thenReturn( 10 );
+        when( entityCacheFig.getCacheTimeout() ).thenReturn( 60000 );
+        when( entityCacheFig.getCacheEntryWeight() ).thenReturn( 1 );
+
+        metricsFactory = mock( MetricsFactory.class );
+
+        when( metricsFactory.getMeter( any( Class.class ), anyString() ) ).thenReturn( new Meter() );
+
+        hitTimer = new Timer();
+        when( metricsFactory.getTimer( any( Class.class ), anyString() ) ).thenReturn( hitTimer );
+
+        scope = new ApplicationScopeImpl( createId( "application" ) );
+    }
+
+
+    @Test
+    public void putAndGet() {
+
+        final EntityCache cache = new EntityCacheImpl( entityCacheFig, metricsFactory );
+
+        final MvccEntity mvccEntity = createEntity();
+
+        assertNull( cache.get( scope, mvccEntity.getId() ) );
+
+        cache.put( scope, mvccEntity );
+
+        final MvccEntity cached = cache.get( scope, mvccEntity.getId() );
+
+        assertNotNull( cached );
+        assertEquals( mvccEntity.getId(), cached.getId() );
+        assertEquals( mvccEntity.getVersion(), cached.getVersion() );
+        assertEquals( "value", cached.getEntity().get().getField( "field" ).getValue() );
+
+        //a different application can't see the entity
+        assertNull( cache.get( new ApplicationScopeImpl( createId( "application" ) ), mvccEntity.getId() ) );
+    }
+
+
+    @Test
+    public void mutationsDontLeak() {
+
+        final EntityCache cache = new EntityCacheImpl( entityCacheFig, metricsFactory );
+
+        final MvccEntity mvccEntity = createEntity();
+
+        cache.put( scope, mvccEntity );
+
+        //mutate the entity we put, it should not change the cached version
+        mvccEntity.getEntity().get().setField( new StringField( "field", "changed" ) );
+
+        final MvccEntity first = cache.get( scope, mvccEntity.getId() );
+
+        assertEquals( "value", first.getEntity().get().getField( "field" ).getValue() );
+
+        //mutate what we read, it should not change the cached version
+        first.getEntity().get().removeField( "field" );
+
+        final MvccEntity second = cache.get( scope, mvccEntity.getId() );
+
+        assertNotSame( first, second );
+        assertEquals( "value", second.getEntity().get().getField( "field" ).getValue() );
+    }
+
+
+    @Test
+    public void nestedMutationsDontLeak() {
+
+        final EntityCache cache = new EntityCacheImpl( entityCacheFig, metricsFactory );
+
+        final MvccEntity mvccEntity = createEntity();
+
+        final EntityObject address = new EntityObject();
+        address.setField( new StringField( "city", "Boston" ) );
+
+        mvccEntity.getEntity().get().setField( new EntityObjectField( "address", address ) );
+        mvccEntity.getEntity().get().setField( new ListField<>( "tags", new ArrayList<>( Arrays.asList( "a", "b" ) ) ) );
+
+        cache.put( scope, mvccEntity );
+
+        //mutate a nested value we put
+        address.setField( new StringField( "city", "Chicago" ) );
+
+        final MvccEntity first = cache.get( scope, mvccEntity.getId() );
+        final Entity firstEntity = first.getEntity().get();
+
+        assertEquals( mvccEntity.getId(), firstEntity.getId() );
+        assertEquals( mvccEntity.getVersion(), firstEntity.getVersion() );
+        assertEquals( "Boston",
+            ( ( EntityObject ) firstEntity.getField( "address" ).getValue() ).getField( "city" ).getValue() );
+
+        //mutate nested values we read
+        ( ( List<String> ) firstEntity.getField( "tags" ).getValue() ).add( "c" );
+        ( ( EntityObject ) firstEntity.getField( "address" ).getValue() ).removeField( "city" );
+
+        final Entity second = cache.get( scope, mvccEntity.getId() ).getEntity().get();
+
+        assertEquals( Arrays.asList( "a", "b" ), second.getField( "tags" ).getValue() );
+        assertEquals( "Boston",
+            ( ( EntityObject ) second.getField( "address" ).getValue() ).getField( "city" ).getValue() );
+    }
+
+
+    @Test
+    public void hitsTimed() throws Exception {
+
+        final EntityCache cache = new EntityCacheImpl( entityCacheFig, metricsFactory );
+
+        final MvccEntity mvccEntity = createEntity();
+        final Entity entity = mvccEntity.getEntity().get();
+
+        for ( int i = 0; i < 30; i++ ) {
+            entity.setField( new StringField( "field" + i, "value" + i ) );
+        }
+
+        final EntityObject address = new EntityObject();
+        address.setField( new StringField( "city", "Boston" ) );
+        address.setField( new LongField( "zip", 2110L ) );
+        entity.setField( new EntityObjectField( "address", address ) );
+        entity.setField( new ListField<>( "tags", new ArrayList<>( Arrays.asList( "a", "b", "c" ) ) ) );
+
+        cache.put( scope, mvccEntity );
+
+        //misses aren't timed, they're timed by the load from cassandra
+        assertNull( cache.get( scope, createId( "test" ) ) );
+        assertEquals( 0, hitTimer.getCount() );
+
+        cache.get( scope, mvccEntity.getId() );
+        cache.get( scope, mvccEntity.getId() );
+
+        assertEquals( 2, hitTimer.getCount() );
+
+        //a miss deserializes the entity the way the entity serialization does, a hit should cost less than that alone
+        final ObjectMapper mapper = new ObjectMapper();
+        mapper.enableDefaultTypingAsProperty( ObjectMapper.DefaultTyping.JAVA_LANG_OBJECT, "@class" );
+
+        final byte[] serialized = mapper.writeValueAsBytes( EntityMap.fromEntity( entity ) );
+
+        final int iterations = 5000;
+
+        //warm up both paths before we time them
+        timeHits( cache, mvccEntity.getId(), iterations );
+        timeDeserializations( mapper, serialized, iterations );
+
+        final long hitNanos = timeHits( cache, mvccEntity.getId(), iterations );
+        final long deserializeNanos = timeDeserializations( mapper, serialized, iterations );
+
+        assertTrue( "Hits took " + hitNanos + "ns, deserializing took " + deserializeNanos + "ns",
+            hitNanos < deserializeNanos );
+    }
+
+
+    @Test
+    public void uncopyableNotCached() {
+
+        final EntityCache cache = new EntityCacheImpl( entityCacheFig, metricsFactory );
+
+        final MvccEntity mvccEntity = createEntity();
+
+        //a field type the cache doesn't know may hold state it can't copy
+        mvccEntity.getEntity().get().setField( new DoubleField( "unknown", 1d ) {} );
+
+        cache.put( scope, mvccEntity );
+
+        assertNull( cache.get( scope, mvccEntity.getId() ) );
+    }
+
+
+    @Test
+    public void deletedEntity() {
+
+        final EntityCache cache = new EntityCacheImpl( entityCacheFig, metricsFactory );
+
+        final Id id = createId( "test" );
+        final MvccEntity deleted =
+            new MvccEntityImpl( id, UUIDGenerator.newTimeUUID(), MvccEntity.Status.DELETED, Optional.<Entity>absent() );
+
+        cache.put( scope, deleted );
+
+        final MvccEntity cached = cache.get( scope, id );
+
+        assertEquals( MvccEntity.Status.DELETED, cached.getStatus() );
+        assertEquals( deleted.getVersion(), cached.getVersion() );
+        assertFalse( cached.getEntity().isPresent() );
+    }
+
+
+    @Test
+    public void invalidate() {
+
+        final EntityCache cache = new EntityCacheImpl( entityCacheFig, metricsFactory );
+
+        final MvccEntity first = createEntity();
+        final MvccEntity second = createEntity();
+
+        cache.put( scope, first );
+        cache.put( scope, second );
+
+        cache.invalidate( scope, first.getId() );
+
+        assertNull( cache.get( scope, first.getId() ) );
+        assertNotNull( cache.get( scope, second.getId() ) );
+
+        cache.invalidateAll();
+
+        assertNull( cache.get( scope, second.getId() ) );
+    }
+
+
+    @Test
+    public void disabled() {
+
+        when( entityCacheFig.getCacheSize() ).thenReturn( 0 );
+
+        final EntityCache cache = new EntityCacheImpl( entityCacheFig, metricsFactory );
+
+        final MvccEntity mvccEntity = createEntity();
+
+        cache.put( scope, mvccEntity );
+
+        assertNull( cache.get( scope, mvccEntity.getId() ) );
+    }
+
+
+    @Test
+    public void oversizedEntitiesNotRetained() {
+
+        final EntityCache cache = new EntityCacheImpl( entityCacheFig, metricsFactory );
+
+        final MvccEntity mvccEntity = createEntity();
+
+        //larger than the entire cache
+        mvccEntity.setSize( 1024 * 1024 );
+
+        cache.put( scope, mvccEntity );
+
+        assertNull( cache.get( scope, mvccEntity.getId() ) );
+    }
+
+
+    private long timeHits( final EntityCache cache, final Id id, final int iterations ) {
+        final long start = System.nanoTime();
+
+        for ( int i = 0; i < iterations; i++ ) {
+            assertNotNull( cache.get( scope, id ) );
+        }
+
+        return System.nanoTime() - start;
+    }
+
+
+    private long timeDeserializations( final ObjectMapper mapper, final byte[] serialized, final int iterations )
+        throws Exception {
+
+        final long start = System.nanoTime();
+
+        for ( int i = 0; i < iterations; i++ ) {
+            assertNotNull( Entity.fromMap( mapper.readValue( serialized, EntityMap.class ) ) );
+        }
+
+        return System.nanoTime() - start;
+    }
+
+
+    private MvccEntity createEntity() {
+        final Id id = createId( "test" );
+        final Entity entity = new Entity( id, UUIDGenerator.newTimeUUID() );
+        entity.setField( new StringField( "field", "value" ) );
+
+        return new MvccEntityImpl( id, entity.getVersion(), MvccEntity.Status.COMPLETE, entity );
+    }
+}
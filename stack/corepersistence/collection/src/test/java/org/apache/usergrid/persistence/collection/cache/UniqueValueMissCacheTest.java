@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.collection.cache;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.usergrid.persistence.collection.cache.impl.UniqueValueMissCacheImpl;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.core.scope.ApplicationScopeImpl;
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.field.StringField;
+
+import com.codahale.metrics.Meter;
+
+import static org.apache.usergrid.persistence.core.util.IdGenerator.createId;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Tests the unique value miss cache without cassandra
+ */
+public class UniqueValueMissCacheTest {
+
+
+    private EntityCacheFig entityCacheFig;
+    private MetricsFactory metricsFactory;
+    private ApplicationScope scope;
+
+
+    @Before
+    public void setup() {
+        entityCacheFig = mock( EntityCacheFig.class );
+
+        when( entityCacheFig.getUniqueValueMissCacheSize() ).thenReturn( 10 );
+        when( entityCacheFig.getUniqueValueMissCacheTimeout() ).thenReturn( 60000 );
+
+        metricsFactory = mock( MetricsFactory.class );
+
+        when( metricsFactory.getMeter( any( Class.class ), anyString() ) ).thenReturn( new Meter() );
+
+        scope = new ApplicationScopeImpl( createId( "application" ) );
+    }
+
+
+    @Test
+    public void putAndCheck() {
+
+        final UniqueValueMissCache cache = new UniqueValueMissCacheImpl( entityCacheFig, metricsFactory );
+
+        final StringField field = new StringField( "username", "Missing" );
+
+        assertFalse( cache.isMissing( scope, "user", field ) );
+
+        cache.putMissing( scope, "user", field );
+
+        assertTrue( cache.isMissing( scope, "user", field ) );
+
+        //values are matched the way they're stored
+        assertTrue( cache.isMissing( scope, "user", new StringField( "username", "missing" ) ) );
+
+        assertFalse( cache.isMissing( scope, "group", field ) );
+        assertFalse( cache.isMissing( new ApplicationScopeImpl( createId( "application" ) ), "user", field ) );
+    }
+
+
+    @Test
+    public void writeInvalidates() {
+
+        final UniqueValueMissCache cache = new UniqueValueMissCacheImpl( entityCacheFig, metricsFactory );
+
+        final StringField field = new StringField( "username", "created", true );
+        final StringField other = new StringField( "username", "other", true );
+
+        cache.putMissing( scope, "user", field );
+        cache.putMissing( scope, "user", other );
+
+        final Entity entity = new Entity( createId( "user" ) );
+        entity.setField( field );
+
+        cache.invalidate( scope, entity );
+
+        assertFalse( cache.isMissing( scope, "user", field ) );
+        assertTrue( cache.isMissing( scope, "user", other ) );
+    }
+
+
+    @Test
+    public void disabled() {
+
+        when( entityCacheFig.getUniqueValueMissCacheSize() ).thenReturn( 0 );
+
+        final UniqueValueMissCache cache = new UniqueValueMissCacheImpl( entityCacheFig, metricsFactory );
+
+        final StringField field = new StringField( "username", "missing" );
+
+        cache.putMissing( scope, "user", field );
+
+        assertFalse( cache.isMissing( scope, "user", field ) );
+    }
+}
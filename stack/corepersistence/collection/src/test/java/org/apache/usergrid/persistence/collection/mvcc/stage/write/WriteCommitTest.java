@@ -18,6 +18,9 @@
 package org.apache.usergrid.persistence.collection.mvcc.stage.write;
 
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
@@ -39,7 +42,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.same;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
@@ -111,6 +116,42 @@ public class WriteCommitTest extends AbstractMvccEntityStageTest {
     }
 
 
+    /** Every entity is committed in a single mutation */
+    @Test
+    public void testCommitBatch() throws Exception {
+
+        final ApplicationScope context = mock( ApplicationScope.class );
+
+        final MvccLogEntrySerializationStrategy logStrategy = mock( MvccLogEntrySerializationStrategy.class );
+
+        final MutationBatch firstLogMutation = mock( MutationBatch.class );
+        final MutationBatch secondLogMutation = mock( MutationBatch.class );
+
+        when( logStrategy.write( same( context ), any( MvccLogEntry.class ) ) ).thenReturn( firstLogMutation )
+                                                                                .thenReturn( secondLogMutation );
+
+        final MvccEntitySerializationStrategy mvccEntityStrategy = mock( MvccEntitySerializationStrategy.class );
+
+        final MutationBatch mvccEntityMutation = mock( MutationBatch.class );
+
+        when( mvccEntityStrategy.write( same( context ), any( MvccEntity.class ) ) ).thenReturn( mvccEntityMutation );
+
+        final UniqueValueSerializationStrategy uniqueValueStrategy = mock( UniqueValueSerializationStrategy.class );
+
+        final List<CollectionIoEvent<MvccEntity>> events = Arrays.asList(
+            new CollectionIoEvent<>( context, TestEntityGenerator.fromEntity( TestEntityGenerator.generateEntity() ) ),
+            new CollectionIoEvent<>( context, TestEntityGenerator.fromEntity( TestEntityGenerator.generateEntity() ) ) );
+
+
+        new WriteCommit( logStrategy, mvccEntityStrategy, uniqueValueStrategy ).commitBatch( events );
+
+
+        verify( firstLogMutation ).mergeShallow( secondLogMutation );
+        verify( firstLogMutation ).execute();
+        verify( secondLogMutation, never() ).execute();
+    }
+
+
     @Override
     protected void validateStage( final CollectionIoEvent<MvccEntity> event ) {
         /**
@@ -98,6 +98,37 @@ public interface GraphFig extends GuicyFig {
 
     String SMART_SHARD_SEEK_ENABLED = "usergrid.graph.smartshard.seek.enabled";
 
+    /**
+     * The number of batches of edges a shard compaction copies into its target shard at once
+     */
+    String SHARD_COMPACTION_WORKERS = "usergrid.graph.shard.compaction.worker.count";
+
+    /**
+     * The maximum number of edges per second all shard compactions on this node move
+     */
+    String SHARD_COMPACTION_RATE = "usergrid.graph.shard.compaction.rate";
+
+    /**
+     * The maximum number of edges written to cassandra in a single mutation when writing or marking many edges
+     */
+    String EDGE_WRITE_BATCH_SIZE = "usergrid.graph.edge.write.batch.size";
+
+    /**
+     * The maximum number of source nodes whose edges are read in a single request
+     */
+    String MULTI_SOURCE_BATCH_SIZE = "usergrid.graph.multi.source.batch.size";
+
+    /**
+     * The longest time in milliseconds to wait for more source nodes before reading the edges of a partial batch
+     */
+    String MULTI_SOURCE_BATCH_LINGER = "usergrid.graph.multi.source.batch.linger";
+
+    /**
+     * The number of edges read from each source node in a request for many source nodes.  Sources with more edges are
+     * read on their own once these have been consumed
+     */
+    String MULTI_SOURCE_PAGE_SIZE = "usergrid.graph.multi.source.page.size";
+
 
 
 
@@ -170,6 +201,30 @@ public interface GraphFig extends GuicyFig {
     @Key(SMART_SHARD_SEEK_ENABLED)
     boolean getSmartShardSeekEnabled();
 
+    @Default("4")
+    @Key(SHARD_COMPACTION_WORKERS)
+    int getShardCompactionWorkerCount();
+
+    @Default("10000")
+    @Key(SHARD_COMPACTION_RATE)
+    double getShardCompactionRate();
+
+    @Default("100")
+    @Key(EDGE_WRITE_BATCH_SIZE)
+    int getEdgeWriteBatchSize();
+
+    @Default("100")
+    @Key(MULTI_SOURCE_BATCH_SIZE)
+    int getMultiSourceBatchSize();
+
+    @Default("10")
+    @Key(MULTI_SOURCE_BATCH_LINGER)
+    long getMultiSourceBatchLinger();
+
+    @Default("10")
+    @Key(MULTI_SOURCE_PAGE_SIZE)
+    int getMultiSourcePageSize();
+
 
 }
 
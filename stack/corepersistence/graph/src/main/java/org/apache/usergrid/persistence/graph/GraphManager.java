@@ -20,6 +20,8 @@
 package org.apache.usergrid.persistence.graph;
 
 
+import java.util.List;
+
 import org.apache.usergrid.persistence.core.CPManager;
 import org.apache.usergrid.persistence.model.entity.Id;
 
@@ -70,6 +72,28 @@ public interface GraphManager extends CPManager {
      */
     Observable<MarkedEdge> markEdge( Edge edge );
 
+
+    /**
+     * Create or update many edges.  Edges are written in batches, so a failure may leave the edges of earlier batches
+     * written
+     *
+     * @param edges The edges to write
+     *
+     * @return Each edge once the batch it is in has been written
+     */
+    Observable<MarkedEdge> writeEdges( Observable<? extends Edge> edges );
+
+
+    /**
+     * Mark many edges as deleted in the graph.  Edges are marked in batches, so a failure may leave the edges of
+     * earlier batches marked
+     *
+     * @param edges The edges to mark
+     *
+     * @return Each edge once the batch it is in has been marked
+     */
+    Observable<MarkedEdge> markEdges( Observable<? extends Edge> edges );
+
     /**
      * @param edge Remove the edge in the graph
      *
@@ -110,6 +134,19 @@ public interface GraphManager extends CPManager {
      */
     Observable<MarkedEdge> loadEdgesFromSource( SearchByEdgeType search );
 
+    /**
+     * Returns an observable that emits all edges where any of the specified nodes is the source node.  Each search
+     * names one source node, and sources are read together in batches.  All searches must use the same value of
+     * filterMarked, and the same order when ordered.
+     *
+     * @param searches The search parameters of each source node
+     * @param ordered True to emit the edges of all sources merged in the order of the searches, false to emit the
+     * edges of each source in turn
+     *
+     * @return An observable that emits Edges. The observer will need to unsubscribe when it has completed consumption.
+     */
+    Observable<MarkedEdge> loadEdgesFromSources( List<SearchByEdgeType> searches, boolean ordered );
+
     /**
      * Returns an observable that emits all edges where the specified node is the target node. The edges will match the
      * search criteria of the edge type
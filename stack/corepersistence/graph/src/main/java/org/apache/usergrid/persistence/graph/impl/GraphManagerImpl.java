@@ -20,6 +20,7 @@
 package org.apache.usergrid.persistence.graph.impl;
 
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -47,6 +48,11 @@ import org.apache.usergrid.persistence.graph.impl.stage.NodeDeleteListener;
 import org.apache.usergrid.persistence.graph.serialization.EdgeMetadataSerialization;
 import org.apache.usergrid.persistence.graph.serialization.EdgeSerialization;
 import org.apache.usergrid.persistence.graph.serialization.NodeSerialization;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.NodeShardApproximation;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.ShardCounts;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.comparators.OrderedComparator;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.comparators
+    .TargetDirectedEdgeDescendingComparator;
 import org.apache.usergrid.persistence.graph.serialization.util.GraphValidation;
 import org.apache.usergrid.persistence.model.entity.Id;
 import org.apache.usergrid.persistence.model.util.UUIDGenerator;
@@ -54,6 +60,8 @@ import org.apache.usergrid.persistence.model.util.UUIDGenerator;
 import com.codahale.metrics.Timer;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.netflix.astyanax.MutationBatch;
 import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
@@ -79,10 +87,14 @@ public class GraphManagerImpl implements GraphManager {
 
     private final EdgeDeleteListener edgeDeleteListener;
     private final NodeDeleteListener nodeDeleteListener;
+    private final NodeShardApproximation nodeShardApproximation;
     private final Timer writeEdgeTimer;
     private final Timer markEdgeTimer;
+    private final Timer writeEdgesTimer;
+    private final Timer markEdgesTimer;
     private final Timer markNodeTimer;
     private final Timer loadEdgesFromSourceTimer;
+    private final Timer loadEdgesFromSourcesTimer;
     private final Timer loadEdgesToTargetTimer;
     private final Timer loadEdgesVersionsTimer;
     private final Timer loadEdgesFromSourceByTypeTimer;
@@ -103,7 +115,8 @@ public class GraphManagerImpl implements GraphManager {
                              final EdgeSerialization storageEdgeSerialization,
                              final NodeSerialization nodeSerialization, final GraphFig graphFig,
                              final EdgeDeleteListener edgeDeleteListener, final NodeDeleteListener nodeDeleteListener,
-                             final ApplicationScope scope, MetricsFactory metricsFactory ) {
+                             final ApplicationScope scope, MetricsFactory metricsFactory,
+                             final NodeShardApproximation nodeShardApproximation ) {
 
 
         ValidationUtils.validateApplicationScope( scope );
@@ -113,6 +126,7 @@ public class GraphManagerImpl implements GraphManager {
         Preconditions.checkNotNull( graphFig, "consistencyFig must not be null" );
         Preconditions.checkNotNull( scope, "scope must not be null" );
         Preconditions.checkNotNull( nodeDeleteListener, "nodeDeleteListener must not be null" );
+        Preconditions.checkNotNull( nodeShardApproximation, "nodeShardApproximation must not be null" );
 
         this.scope = scope;
         this.edgeMetadataSerialization = edgeMetadataSerialization;
@@ -121,14 +135,18 @@ public class GraphManagerImpl implements GraphManager {
         this.graphFig = graphFig;
         this.edgeDeleteListener = edgeDeleteListener;
         this.nodeDeleteListener = nodeDeleteListener;
+        this.nodeShardApproximation = nodeShardApproximation;
 
         this.markNodeTimer = metricsFactory.getTimer( GraphManagerImpl.class, "node.mark" );
         this.deleteNodeTimer = metricsFactory.getTimer( GraphManagerImpl.class, "node.delete" );
         this.writeEdgeTimer = metricsFactory.getTimer( GraphManagerImpl.class, "edge.write" );
 
         this.markEdgeTimer = metricsFactory.getTimer( GraphManagerImpl.class, "edge.mark" );
+        this.writeEdgesTimer = metricsFactory.getTimer( GraphManagerImpl.class, "edge.write_batch" );
+        this.markEdgesTimer = metricsFactory.getTimer( GraphManagerImpl.class, "edge.mark_batch" );
         this.deleteEdgeTimer = metricsFactory.getTimer( GraphManagerImpl.class, "edge.delete" );
         this.loadEdgesFromSourceTimer = metricsFactory.getTimer( GraphManagerImpl.class, "edge.load_from" );
+        this.loadEdgesFromSourcesTimer = metricsFactory.getTimer( GraphManagerImpl.class, "edge.load_from_batch" );
         this.loadEdgesToTargetTimer = metricsFactory.getTimer( GraphManagerImpl.class, "edge.load_to" );
         this.loadEdgesVersionsTimer = metricsFactory.getTimer( GraphManagerImpl.class, "edge.load_versions" );
         this.loadEdgesFromSourceByTypeTimer = metricsFactory.getTimer( GraphManagerImpl.class, "edge.load_from_type" );
@@ -156,7 +174,10 @@ public class GraphManagerImpl implements GraphManager {
 
             final MutationBatch mutation = edgeMetadataSerialization.writeEdge( scope, edge1 );
 
-            final MutationBatch edgeMutation = storageEdgeSerialization.writeEdge( scope, edge1, timestamp );
+            final ShardCounts shardCounts = new ShardCounts();
+
+            final MutationBatch edgeMutation =
+                storageEdgeSerialization.writeEdge( scope, edge1, timestamp, shardCounts );
 
             mutation.mergeShallow( edgeMutation );
 
@@ -167,6 +188,8 @@ public class GraphManagerImpl implements GraphManager {
                 throw new RuntimeException( "Unable to execute mutation", e );
             }
 
+            shardCounts.apply( nodeShardApproximation );
+
             return edge1;
         } );
 
@@ -206,6 +229,82 @@ public class GraphManagerImpl implements GraphManager {
     }
 
 
+    @Override
+    public Observable<MarkedEdge> writeEdges( final Observable<? extends Edge> edges ) {
+
+        final Observable<MarkedEdge> observable = edges.map( edge -> {
+            GraphValidation.validateEdge( edge );
+            return ( MarkedEdge ) new SimpleMarkedEdge( edge, false );
+        } ).buffer( graphFig.getEdgeWriteBatchSize() ).flatMap( batch -> executeBatch( batch, true ) );
+
+        return ObservableTimer.time( observable, writeEdgesTimer );
+    }
+
+
+    @Override
+    public Observable<MarkedEdge> markEdges( final Observable<? extends Edge> edges ) {
+
+        final Observable<MarkedEdge> observable = edges.map( edge -> {
+            GraphValidation.validateEdge( edge );
+            return ( MarkedEdge ) new SimpleMarkedEdge( edge, true );
+        } ).buffer( graphFig.getEdgeWriteBatchSize() ).flatMap( batch -> executeBatch( batch, false ) );
+
+        return ObservableTimer.time( observable, markEdgesTimer );
+    }
+
+
+    /**
+     * Write the edges in a single mutation, the same way a write or mark of each edge would
+     *
+     * @param edges The edges to write
+     * @param writeMeta True to write the edge meta data along with the edges
+     */
+    private Observable<MarkedEdge> executeBatch( final List<MarkedEdge> edges, final boolean writeMeta ) {
+
+        MutationBatch mutation = null;
+
+        final ShardCounts shardCounts = new ShardCounts();
+
+        for ( final MarkedEdge edge : edges ) {
+
+            final UUID timestamp = UUIDGenerator.newTimeUUID();
+
+            final MutationBatch edgeMutation;
+
+            if ( writeMeta ) {
+                edgeMutation = edgeMetadataSerialization.writeEdge( scope, edge );
+                edgeMutation
+                    .mergeShallow( storageEdgeSerialization.writeEdge( scope, edge, timestamp, shardCounts ) );
+            }
+            else {
+                edgeMutation = storageEdgeSerialization.writeEdge( scope, edge, timestamp, shardCounts );
+            }
+
+            if ( mutation == null ) {
+                mutation = edgeMutation;
+            }
+            else {
+                mutation.mergeShallow( edgeMutation );
+            }
+        }
+
+        if ( logger.isTraceEnabled() ) {
+            logger.trace( "Writing batch of {} edges", edges.size() );
+        }
+
+        try {
+            mutation.execute();
+        }
+        catch ( ConnectionException e ) {
+            throw new RuntimeException( "Unable to execute mutation", e );
+        }
+
+        shardCounts.apply( nodeShardApproximation );
+
+        return Observable.from( edges );
+    }
+
+
     @Override
     public Observable<Edge> deleteEdge( final Edge edge ) {
 
@@ -316,6 +415,57 @@ public class GraphManagerImpl implements GraphManager {
     }
 
 
+    @Override
+    public Observable<MarkedEdge> loadEdgesFromSources( final List<SearchByEdgeType> searches, final boolean ordered ) {
+        Preconditions.checkArgument( searches.size() > 0, "At least one search must be specified" );
+
+        final SearchByEdgeType first = searches.get( 0 );
+
+        for ( final SearchByEdgeType search : searches ) {
+            Preconditions.checkArgument( search.filterMarked() == first.filterMarked(),
+                "All searches must use the same filterMarked" );
+            Preconditions.checkArgument( !ordered || search.getOrder() == first.getOrder(),
+                "All searches must use the same order to be ordered" );
+        }
+
+        final List<List<SearchByEdgeType>> batches =
+            Lists.partition( searches, graphFig.getMultiSourceBatchSize() );
+
+        final Observable<MarkedEdge> sourceEdges;
+
+        if ( ordered ) {
+            //every source has to be read before the first edge can be emitted
+            sourceEdges = Observable.create( new ObservableIterator<MarkedEdge>( "loadEdgesFromSources" ) {
+                @Override
+                protected Iterator<MarkedEdge> getIterator() {
+                    final List<Iterator<MarkedEdge>> iterators = new ArrayList<>( searches.size() );
+
+                    for ( final List<SearchByEdgeType> batch : batches ) {
+                        iterators.addAll( storageEdgeSerialization.getEdgesFromSources( scope, batch ) );
+                    }
+
+                    return Iterators.mergeSorted( iterators,
+                        new OrderedComparator<>( TargetDirectedEdgeDescendingComparator.INSTANCE, first.getOrder() ) );
+                }
+            } );
+        }
+        else {
+            sourceEdges = Observable.from( batches ).concatMap(
+                batch -> Observable.create( new ObservableIterator<MarkedEdge>( "loadEdgesFromSources" ) {
+                    @Override
+                    protected Iterator<MarkedEdge> getIterator() {
+                        return Iterators.concat( storageEdgeSerialization.getEdgesFromSources( scope, batch ).iterator() );
+                    }
+                } ) );
+        }
+
+        final Observable<MarkedEdge> edges =
+            sourceEdges.buffer( graphFig.getScanPageSize() ).compose( new EdgeBufferFilter( first.filterMarked() ) );
+
+        return ObservableTimer.time( edges, loadEdgesFromSourcesTimer );
+    }
+
+
     @Override
     public Observable<MarkedEdge> loadEdgesToTarget( final SearchByEdgeType search ) {
         final Observable<MarkedEdge> edges =
@@ -29,6 +29,8 @@ import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.graph.GraphFig;
 import org.apache.usergrid.persistence.graph.MarkedEdge;
 import org.apache.usergrid.persistence.graph.serialization.EdgeSerialization;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.NodeShardApproximation;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.ShardCounts;
 
 import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
@@ -50,20 +52,24 @@ public class EdgeDeleteRepairImpl implements EdgeDeleteRepair {
     protected final EdgeSerialization storageSerialization;
     protected final GraphFig graphFig;
     protected final Keyspace keyspace;
+    protected final NodeShardApproximation nodeShardApproximation;
 
 
     @Inject
     public EdgeDeleteRepairImpl( final EdgeSerialization storageSerialization,
-                                 final GraphFig graphFig, final Keyspace keyspace ) {
+                                 final GraphFig graphFig, final Keyspace keyspace,
+                                 final NodeShardApproximation nodeShardApproximation ) {
 
         Preconditions.checkNotNull( "storageSerialization is required", storageSerialization );
         Preconditions.checkNotNull( "consistencyFig is required", graphFig );
         Preconditions.checkNotNull( "keyspace is required", keyspace );
+        Preconditions.checkNotNull( "nodeShardApproximation is required", nodeShardApproximation );
 
 
         this.storageSerialization = storageSerialization;
         this.graphFig = graphFig;
         this.keyspace = keyspace;
+        this.nodeShardApproximation = nodeShardApproximation;
     }
 
 
@@ -84,12 +90,16 @@ public class EdgeDeleteRepairImpl implements EdgeDeleteRepair {
 
 
                         //remove from storage
+                        final ShardCounts shardCounts = new ShardCounts();
+
                         try {
-                            storageSerialization.deleteEdge( scope, markedEdge, timestamp ).execute();
+                            storageSerialization.deleteEdge( scope, markedEdge, timestamp, shardCounts ).execute();
                         }
                         catch ( ConnectionException e ) {
                             throw new RuntimeException( "Unable to connect to casandra", e );
                         }
+
+                        shardCounts.apply( nodeShardApproximation );
                     }
               );
     }
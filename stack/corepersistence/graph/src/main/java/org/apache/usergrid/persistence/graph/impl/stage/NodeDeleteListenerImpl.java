@@ -39,6 +39,8 @@ import org.apache.usergrid.persistence.graph.impl.SimpleSearchEdgeType;
 import org.apache.usergrid.persistence.graph.serialization.EdgeMetadataSerialization;
 import org.apache.usergrid.persistence.graph.serialization.EdgeSerialization;
 import org.apache.usergrid.persistence.graph.serialization.NodeSerialization;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.NodeShardApproximation;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.ShardCounts;
 import org.apache.usergrid.persistence.model.entity.Id;
 
 import com.google.common.base.Optional;
@@ -65,6 +67,7 @@ public class NodeDeleteListenerImpl implements NodeDeleteListener {
     private final EdgeMetadataSerialization edgeMetadataSerialization;
     private final EdgeMetaRepair edgeMetaRepair;
     private final GraphFig graphFig;
+    private final NodeShardApproximation nodeShardApproximation;
     protected final Keyspace keyspace;
 
 
@@ -76,7 +79,8 @@ public class NodeDeleteListenerImpl implements NodeDeleteListener {
                                    final EdgeMetadataSerialization edgeMetadataSerialization,
                                    final EdgeMetaRepair edgeMetaRepair, final GraphFig graphFig,
                                    final EdgeSerialization storageSerialization,
-                                   final Keyspace keyspace ) {
+                                   final Keyspace keyspace,
+                                   final NodeShardApproximation nodeShardApproximation ) {
 
 
         this.nodeSerialization = nodeSerialization;
@@ -85,6 +89,7 @@ public class NodeDeleteListenerImpl implements NodeDeleteListener {
         this.edgeMetaRepair = edgeMetaRepair;
         this.graphFig = graphFig;
         this.keyspace = keyspace;
+        this.nodeShardApproximation = nodeShardApproximation;
     }
 
 
@@ -189,6 +194,7 @@ public class NodeDeleteListenerImpl implements NodeDeleteListener {
                     }
 
                     final MutationBatch batch = keyspace.prepareMutationBatch();
+                    final ShardCounts shardCounts = new ShardCounts();
 
                     Set<TargetPair> sourceNodes = new HashSet<>( markedEdges.size() );
                     Set<TargetPair> targetNodes = new HashSet<>( markedEdges.size() );
@@ -199,7 +205,8 @@ public class NodeDeleteListenerImpl implements NodeDeleteListener {
 
                         //we use the version specified on the delete purposefully.  If these edges are re-written
                         //at a greater time we want them to exit
-                        batch.mergeShallow( storageSerialization.deleteEdge( scope, edge, eventTimestamp ) );
+                        batch.mergeShallow(
+                            storageSerialization.deleteEdge( scope, edge, eventTimestamp, shardCounts ) );
 
                         sourceNodes.add( new TargetPair( edge.getSourceNode(), edge.getType() ) );
                         targetNodes.add( new TargetPair( edge.getTargetNode(), edge.getType() ) );
@@ -212,6 +219,8 @@ public class NodeDeleteListenerImpl implements NodeDeleteListener {
                         throw new RuntimeException( "Unable to connect to casandra", e );
                     }
 
+                    shardCounts.apply( nodeShardApproximation );
+
                     //now  delete meta data
 
 
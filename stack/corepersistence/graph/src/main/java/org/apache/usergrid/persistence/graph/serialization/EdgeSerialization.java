@@ -21,6 +21,7 @@ package org.apache.usergrid.persistence.graph.serialization;
 
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.UUID;
 
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
@@ -28,6 +29,7 @@ import org.apache.usergrid.persistence.graph.MarkedEdge;
 import org.apache.usergrid.persistence.graph.SearchByEdge;
 import org.apache.usergrid.persistence.graph.SearchByEdgeType;
 import org.apache.usergrid.persistence.graph.SearchByIdType;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.ShardCounts;
 
 import com.netflix.astyanax.MutationBatch;
 
@@ -39,7 +41,8 @@ public interface EdgeSerialization {
 
 
     /**
-     * EdgeWrite both the source--->Target edge and the target <----- source edge into the mutation
+     * EdgeWrite both the source--->Target edge and the target <----- source edge into the mutation.  The edge isn't
+     * counted in the shards it's written to
      *
      * @param scope The org scope of the graph
      * @param edge The edge to write
@@ -47,13 +50,34 @@ public interface EdgeSerialization {
     MutationBatch writeEdge( ApplicationScope scope, MarkedEdge edge, UUID timestamp );
 
     /**
-     * EdgeWrite both the source -->target edge and the target<--- source edge into the mutation
+     * EdgeWrite both the source -->target edge and the target<--- source edge into the mutation.  The edge isn't
+     * removed from the counts of the shards it's deleted from
      *
      * @param scope The org scope of the graph
      * @param edge The edge to write
      */
     MutationBatch deleteEdge( ApplicationScope scope, MarkedEdge edge, UUID timestamp );
 
+    /**
+     * EdgeWrite both the source--->Target edge and the target <----- source edge into the mutation, and count the edge
+     * in the shards it's written to.  Apply the counts once the mutation has executed
+     *
+     * @param scope The org scope of the graph
+     * @param edge The edge to write
+     * @param shardCounts The counts to add the edge to
+     */
+    MutationBatch writeEdge( ApplicationScope scope, MarkedEdge edge, UUID timestamp, ShardCounts shardCounts );
+
+    /**
+     * Delete both the source -->target edge and the target<--- source edge in the mutation, and remove the edge from
+     * the counts of the shards it's deleted from.  Apply the counts once the mutation has executed
+     *
+     * @param scope The org scope of the graph
+     * @param edge The edge to delete
+     * @param shardCounts The counts to remove the edge from
+     */
+    MutationBatch deleteEdge( ApplicationScope scope, MarkedEdge edge, UUID timestamp, ShardCounts shardCounts );
+
 
     /**
      * Search for all versions of this edge < the search version.  Returns all versions
@@ -72,6 +96,18 @@ public interface EdgeSerialization {
     Iterator<MarkedEdge> getEdgesFromSource( ApplicationScope scope, SearchByEdgeType edgeType );
 
 
+    /**
+     * Get an iterator of all edges by edge type originating from each of the source nodes.  Sources with a single
+     * shard have their first page of edges read together
+     *
+     * @param scope The org scope of the graph
+     * @param edgeTypes The search edge of each source node
+     *
+     * @return An iterator for each search, in the order of the searches
+     */
+    List<Iterator<MarkedEdge>> getEdgesFromSources( ApplicationScope scope, List<SearchByEdgeType> edgeTypes );
+
+
     /**
      * Get an iterator of all edges by edge type originating from source node.  Also filters by target node id type
      *
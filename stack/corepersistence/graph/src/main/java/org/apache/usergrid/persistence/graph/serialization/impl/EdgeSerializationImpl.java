@@ -20,13 +20,19 @@
 package org.apache.usergrid.persistence.graph.serialization.impl;
 
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.inject.Inject;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Iterators;
 import org.apache.usergrid.persistence.core.astyanax.CassandraConfig;
 import org.apache.usergrid.persistence.core.consistency.TimeService;
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
@@ -40,6 +46,7 @@ import org.apache.usergrid.persistence.graph.serialization.impl.shard.DirectedEd
 import org.apache.usergrid.persistence.graph.serialization.impl.shard.EdgeColumnFamilies;
 import org.apache.usergrid.persistence.graph.serialization.impl.shard.EdgeShardStrategy;
 import org.apache.usergrid.persistence.graph.serialization.impl.shard.Shard;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.ShardCounts;
 import org.apache.usergrid.persistence.graph.serialization.impl.shard.ShardEntryGroup;
 import org.apache.usergrid.persistence.graph.serialization.impl.shard.ShardGroupDeletion;
 import org.apache.usergrid.persistence.graph.serialization.impl.shard.ShardedEdgeSerialization;
@@ -102,6 +109,13 @@ public class EdgeSerializationImpl implements EdgeSerialization {
 
     @Override
     public MutationBatch writeEdge( final ApplicationScope scope, final MarkedEdge markedEdge, final UUID timestamp ) {
+        return writeEdge( scope, markedEdge, timestamp, new ShardCounts() );
+    }
+
+
+    @Override
+    public MutationBatch writeEdge( final ApplicationScope scope, final MarkedEdge markedEdge, final UUID timestamp,
+                                    final ShardCounts shardCounts ) {
 
         ValidationUtils.validateApplicationScope( scope );
         GraphValidation.validateEdge( markedEdge );
@@ -186,12 +200,31 @@ public class EdgeSerializationImpl implements EdgeSerialization {
                         edgeVersionsMeta, timestamp ) );
 
 
+        /**
+         * Count the edge in every shard it's written to.  Marking an edge re-writes one we've already counted
+         */
+        if ( !markedEdge.isDeleted() ) {
+            shardCounts.add( scope, sourceWriteShards, 1, sourceEdgeMeta );
+            shardCounts.add( scope, sourceTargetTypeWriteShards, 1, sourceTargetTypeEdgeMeta );
+            shardCounts.add( scope, targetWriteShards, 1, targetEdgeMeta );
+            shardCounts.add( scope, targetSourceTypeWriteShards, 1, targetSourceTypeEdgeMeta );
+            shardCounts.add( scope, edgeVersionsShards, 1, edgeVersionsMeta );
+        }
+
+
         return batch;
     }
 
 
     @Override
     public MutationBatch deleteEdge( final ApplicationScope scope, final MarkedEdge markedEdge, final UUID timestamp ) {
+        return deleteEdge( scope, markedEdge, timestamp, new ShardCounts() );
+    }
+
+
+    @Override
+    public MutationBatch deleteEdge( final ApplicationScope scope, final MarkedEdge markedEdge, final UUID timestamp,
+                                     final ShardCounts shardCounts ) {
         ValidationUtils.validateApplicationScope( scope );
         GraphValidation.validateEdge( markedEdge );
         ValidationUtils.verifyTimeUuid( timestamp, "timestamp" );
@@ -275,6 +308,13 @@ public class EdgeSerializationImpl implements EdgeSerialization {
                         edgeVersionsMeta, timestamp ) );
 
 
+        shardCounts.add( scope, sourceWriteShards, -1, sourceEdgeMeta );
+        shardCounts.add( scope, sourceTargetTypeWriteShards, -1, sourceTargetTypeEdgeMeta );
+        shardCounts.add( scope, targetWriteShards, -1, targetEdgeMeta );
+        shardCounts.add( scope, targetSourceTypeWriteShards, -1, targetSourceTypeEdgeMeta );
+        shardCounts.add( scope, edgeVersionsShards, -1, edgeVersionsMeta );
+
+
         return batch;
     }
 
@@ -351,6 +391,50 @@ public class EdgeSerializationImpl implements EdgeSerialization {
     }
 
 
+    @Override
+    public List<Iterator<MarkedEdge>> getEdgesFromSources( final ApplicationScope scope,
+                                                           final List<SearchByEdgeType> edgeTypes ) {
+
+        ValidationUtils.validateApplicationScope( scope );
+
+        final List<Iterator<MarkedEdge>> results = new ArrayList<>( Collections.nCopies( edgeTypes.size(), null ) );
+
+        final Map<SliceKey, SourceSlice> slices = new LinkedHashMap<>();
+
+        for ( int i = 0; i < edgeTypes.size(); i++ ) {
+            final SearchByEdgeType edgeType = edgeTypes.get( i );
+
+            GraphValidation.validateSearchByEdgeType( edgeType );
+
+            final Optional<Shard> shard = getSingleShard( scope, edgeType );
+
+            if ( !shard.isPresent() ) {
+                results.set( i, getEdgesFromSource( scope, edgeType ) );
+                continue;
+            }
+
+            slices.computeIfAbsent( new SliceKey( edgeType ), key -> new SourceSlice() )
+                  .add( i, edgeType, shard.get() );
+        }
+
+
+        final int pageSize = graphFig.getMultiSourcePageSize();
+
+        for ( final SourceSlice slice : slices.values() ) {
+
+            final List<List<MarkedEdge>> pages = shardedEdgeSerialization
+                .getEdgesFromSources( edgeColumnFamilies, scope, slice.edgeTypes, slice.shards, pageSize );
+
+            for ( int i = 0; i < pages.size(); i++ ) {
+                results.set( slice.positions.get( i ),
+                    continueFromPage( scope, slice.edgeTypes.get( i ), pages.get( i ), pageSize ) );
+            }
+        }
+
+        return results;
+    }
+
+
     @Override
     public Iterator<MarkedEdge> getEdgesFromSourceByTargetType( final ApplicationScope scope,
                                                                 final SearchByIdType edgeType ) {
@@ -464,4 +548,116 @@ public class EdgeSerializationImpl implements EdgeSerialization {
             }
         };
     }
+
+
+    /**
+     * Get the shard of the source when it is the only one to read.  Only the min shard qualifies, since it is never
+     * removed and so never needs the shard group audit an empty read would otherwise trigger
+     */
+    private Optional<Shard> getSingleShard( final ApplicationScope scope, final SearchByEdgeType edgeType ) {
+
+        //continuing from a previous page can't share the range with other sources
+        if ( edgeType.last().isPresent() ) {
+            return Optional.absent();
+        }
+
+        final DirectedEdgeMeta directedEdgeMeta =
+            DirectedEdgeMeta.fromSourceNode( edgeType.getNode(), edgeType.getType() );
+
+        final Iterator<ShardEntryGroup> groups =
+            edgeShardStrategy.getReadShards( scope, edgeType.getMaxTimestamp(), directedEdgeMeta );
+
+        if ( !groups.hasNext() ) {
+            return Optional.absent();
+        }
+
+        final Collection<Shard> readShards = groups.next().getReadShards();
+
+        if ( groups.hasNext() || readShards.size() != 1 ) {
+            return Optional.absent();
+        }
+
+        final Shard shard = readShards.iterator().next();
+
+        return shard.isMinShard() ? Optional.of( shard ) : Optional.absent();
+    }
+
+
+    /**
+     * Return the page of edges, followed by the rest of the source if the page was full.  The rest is only read once
+     * the page has been consumed
+     */
+    private Iterator<MarkedEdge> continueFromPage( final ApplicationScope scope, final SearchByEdgeType edgeType,
+                                                   final List<MarkedEdge> page, final int pageSize ) {
+
+        if ( page.size() < pageSize ) {
+            return page.iterator();
+        }
+
+        final SearchByEdgeType nextPage =
+            new SimpleSearchByEdgeType( edgeType.getNode(), edgeType.getType(), edgeType.getMaxTimestamp(),
+                edgeType.getOrder(), Optional.<Edge>of( page.get( page.size() - 1 ) ), edgeType.filterMarked() );
+
+        return Iterators.concat( page.iterator(), Iterators.concat(
+            Iterators.transform( Iterators.singletonIterator( nextPage ),
+                search -> getEdgesFromSource( scope, search ) ) ) );
+    }
+
+
+    /**
+     * The range read by a search, sources that read the same range are read together
+     */
+    private static final class SliceKey {
+        private final String type;
+        private final long maxTimestamp;
+        private final SearchByEdgeType.Order order;
+
+
+        private SliceKey( final SearchByEdgeType edgeType ) {
+            this.type = edgeType.getType();
+            this.maxTimestamp = edgeType.getMaxTimestamp();
+            this.order = edgeType.getOrder();
+        }
+
+
+        @Override
+        public boolean equals( final Object o ) {
+            if ( this == o ) {
+                return true;
+            }
+            if ( o == null || getClass() != o.getClass() ) {
+                return false;
+            }
+
+            final SliceKey sliceKey = ( SliceKey ) o;
+
+            return maxTimestamp == sliceKey.maxTimestamp && type.equals( sliceKey.type ) && order == sliceKey.order;
+        }
+
+
+        @Override
+        public int hashCode() {
+            int result = type.hashCode();
+            result = 31 * result + ( int ) ( maxTimestamp ^ ( maxTimestamp >>> 32 ) );
+            result = 31 * result + order.hashCode();
+            return result;
+        }
+    }
+
+
+    /**
+     * The searches read together, with the shard each reads and its position in the original searches
+     */
+    private static final class SourceSlice {
+        private final List<Integer> positions = new ArrayList<>();
+        private final List<SearchByEdgeType> edgeTypes = new ArrayList<>();
+        private final List<Shard> shards = new ArrayList<>();
+
+
+        private void add( final int position, final SearchByEdgeType edgeType, final Shard shard ) {
+            positions.add( position );
+            edgeTypes.add( edgeType );
+            shards.add( shard );
+        }
+    }
 }
@@ -38,6 +38,7 @@ import org.apache.usergrid.persistence.graph.impl.stage.NodeDeleteListener;
 import org.apache.usergrid.persistence.graph.serialization.EdgeMetadataSerialization;
 import org.apache.usergrid.persistence.graph.serialization.EdgeSerialization;
 import org.apache.usergrid.persistence.graph.serialization.NodeSerialization;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.NodeShardApproximation;
 
 import java.util.concurrent.ExecutionException;
 
@@ -54,12 +55,13 @@ public class GraphManagerFactoryImpl implements GraphManagerFactory {
     private final EdgeDeleteListener edgeDeleteListener;
     private final NodeDeleteListener nodeDeleteListener;
     private final MetricsFactory metricsFactory;
+    private final NodeShardApproximation nodeShardApproximation;
 
     private LoadingCache<ApplicationScope, GraphManager> gmCache =
         CacheBuilder.newBuilder().maximumSize( 1000 ).build( new CacheLoader<ApplicationScope, GraphManager>() {
             public GraphManager load(
                 ApplicationScope scope ) {
-                return new GraphManagerImpl(edgeMetadataSerialization,edgeSerialization,nodeSerialization,graphFig,edgeDeleteListener,nodeDeleteListener,scope, metricsFactory);
+                return new GraphManagerImpl(edgeMetadataSerialization,edgeSerialization,nodeSerialization,graphFig,edgeDeleteListener,nodeDeleteListener,scope, metricsFactory, nodeShardApproximation);
             }
         } );
 
@@ -67,7 +69,8 @@ public class GraphManagerFactoryImpl implements GraphManagerFactory {
     public GraphManagerFactoryImpl( final EdgeMetadataSerialization edgeMetadataSerialization, final
     EdgeSerialization edgeSerialization,
                                     final NodeSerialization nodeSerialization, final GraphFig graphFig, final EdgeDeleteListener edgeDeleteListener,
-                                    final NodeDeleteListener nodeDeleteListener, final MetricsFactory metricsFactory ){
+                                    final NodeDeleteListener nodeDeleteListener, final MetricsFactory metricsFactory,
+                                    final NodeShardApproximation nodeShardApproximation ){
         this.edgeMetadataSerialization = edgeMetadataSerialization;
         this.edgeSerialization = edgeSerialization;
         this.nodeSerialization = nodeSerialization;
@@ -75,6 +78,7 @@ public class GraphManagerFactoryImpl implements GraphManagerFactory {
         this.edgeDeleteListener = edgeDeleteListener;
         this.nodeDeleteListener = nodeDeleteListener;
         this.metricsFactory = metricsFactory;
+        this.nodeShardApproximation = nodeShardApproximation;
     }
 
     @Override
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.graph.serialization.impl.shard;
+
+
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+
+import com.google.common.base.Optional;
+
+
+/**
+ * Keeps an approximate count of the edges in each shard, so shards can be audited without reading every edge.  Writes
+ * are buffered in memory and flushed to cassandra in the background, so counts may lag behind the edges, and edges
+ * written twice are counted twice.  The count is corrected whenever the shard is scanned.
+ */
+public interface NodeShardApproximation {
+
+
+    /**
+     * Add the count to the edges in the shard
+     *
+     * @param scope The application scope
+     * @param shard The shard the edges were written to, or removed from
+     * @param count The number of edges.  Negative when edges were removed
+     * @param directedEdgeMeta The edge meta of the shard
+     */
+    void increment( final ApplicationScope scope, final Shard shard, final long count,
+                    final DirectedEdgeMeta directedEdgeMeta );
+
+
+    /**
+     * Get the approximate number of edges in the shard
+     *
+     * @return The count, never below zero, or absent if the shard has never been scanned, and the count can't be
+     *         trusted
+     */
+    Optional<Long> getCount( final ApplicationScope scope, final Shard shard,
+                             final DirectedEdgeMeta directedEdgeMeta );
+
+
+    /**
+     * Set the count of the shard after scanning it.  Written immediately
+     *
+     * @param scope The application scope
+     * @param shard The shard that was scanned
+     * @param actualCount The number of edges found in the shard
+     * @param directedEdgeMeta The edge meta of the shard
+     */
+    void correct( final ApplicationScope scope, final Shard shard, final long actualCount,
+                  final DirectedEdgeMeta directedEdgeMeta );
+
+
+    /**
+     * Flush all buffered counts to cassandra
+     */
+    void flush();
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.graph.serialization.impl.shard;
+
+
+import java.util.Map;
+
+import org.apache.usergrid.persistence.core.astyanax.ScopedRowKey;
+import org.apache.usergrid.persistence.core.migration.schema.Migration;
+
+import com.google.common.base.Optional;
+import com.netflix.astyanax.MutationBatch;
+
+
+/**
+ * Stores the edge counts of shards
+ */
+public interface NodeShardCounterSerialization extends Migration {
+
+
+    /**
+     * Add the counts to the edge counts of their shards
+     *
+     * @param counts The change in count of each shard
+     */
+    MutationBatch flush( final Map<ScopedRowKey<ShardKey>, Long> counts );
+
+
+    /**
+     * Add the correction to the edge count of the shard, and record that the shard has been scanned
+     *
+     * @param key The shard
+     * @param correction The difference between the edges found in the shard and its count
+     */
+    MutationBatch correct( final ScopedRowKey<ShardKey> key, final long correction );
+
+
+    /**
+     * Get the edge count of the shard
+     *
+     * @return The count, or absent if the shard has never been scanned
+     */
+    Optional<Long> getCount( final ScopedRowKey<ShardKey> key );
+}
@@ -44,6 +44,37 @@ public class RowKey {
     }
 
 
+    @Override
+    public boolean equals( final Object o ) {
+        if ( this == o ) {
+            return true;
+        }
+        if ( o == null || getClass() != o.getClass() ) {
+            return false;
+        }
+
+        final RowKey rowKey = ( RowKey ) o;
+
+        if ( shardId != rowKey.shardId ) {
+            return false;
+        }
+        if ( !nodeId.equals( rowKey.nodeId ) ) {
+            return false;
+        }
+
+        return edgeType.equals( rowKey.edgeType );
+    }
+
+
+    @Override
+    public int hashCode() {
+        int result = nodeId.hashCode();
+        result = 31 * result + edgeType.hashCode();
+        result = 31 * result + ( int ) ( shardId ^ ( shardId >>> 32 ) );
+        return result;
+    }
+
+
     @Override
     public String toString() {
         return "RowKey{" +
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.graph.serialization.impl.shard;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+
+
+/**
+ * The changes a mutation makes to the edge counts of shards.  They're only applied to the approximation once the
+ * mutation has executed, so edges that failed to write aren't counted.  Not thread safe
+ */
+public class ShardCounts {
+
+    private final List<Increment> increments = new ArrayList<>();
+
+
+    /**
+     * Add the count to each of the shards
+     *
+     * @param count The number of edges.  Negative when edges were removed
+     */
+    public void add( final ApplicationScope scope, final Collection<Shard> shards, final long count,
+                     final DirectedEdgeMeta directedEdgeMeta ) {
+        for ( Shard shard : shards ) {
+            increments.add( new Increment( scope, shard, count, directedEdgeMeta ) );
+        }
+    }
+
+
+    /**
+     * Add the counts to the approximation, once the mutation that wrote them has executed.  The counts are cleared,
+     * so they can't be applied twice
+     */
+    public void apply( final NodeShardApproximation nodeShardApproximation ) {
+        for ( Increment increment : increments ) {
+            nodeShardApproximation
+                .increment( increment.scope, increment.shard, increment.count, increment.directedEdgeMeta );
+        }
+
+        increments.clear();
+    }
+
+
+    private static final class Increment {
+        private final ApplicationScope scope;
+        private final Shard shard;
+        private final long count;
+        private final DirectedEdgeMeta directedEdgeMeta;
+
+
+        private Increment( final ApplicationScope scope, final Shard shard, final long count,
+                           final DirectedEdgeMeta directedEdgeMeta ) {
+            this.scope = scope;
+            this.shard = shard;
+            this.count = count;
+            this.directedEdgeMeta = directedEdgeMeta;
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.usergrid.persistence.graph.serialization.impl.shard;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
@@ -149,6 +150,22 @@ public interface ShardedEdgeSerialization {
                                              SearchByEdgeType search, Collection<Shard> shards );
 
 
+    /**
+     * Get the first page of edges by edge type originating from many source nodes, reading one shard of each source
+     * in a single request.  The searches must share their type, order and max timestamp, and must not have a last edge
+     *
+     * @param columnFamilies The column families to use
+     * @param scope The application scope
+     * @param searches The search criteria of each source
+     * @param shards The shard to read for each search
+     * @param limit The maximum number of edges to read from each source
+     *
+     * @return The edges found for each search, in the order of the searches
+     */
+    List<List<MarkedEdge>> getEdgesFromSources( EdgeColumnFamilies columnFamilies, ApplicationScope scope,
+                                                List<SearchByEdgeType> searches, List<Shard> shards, int limit );
+
+
     /**
      * Get an iterator of all edges by edge type originating from source node.  Also filters by target node id type
      *
@@ -59,6 +59,7 @@ public class NodeShardAllocationImpl implements NodeShardAllocation {
     private final GraphFig graphFig;
     private final ShardGroupCompaction shardGroupCompaction;
     private final NodeShardCache nodeShardCache;
+    private final NodeShardApproximation nodeShardApproximation;
 
 
     @Inject
@@ -66,7 +67,8 @@ public class NodeShardAllocationImpl implements NodeShardAllocation {
                                     final EdgeColumnFamilies edgeColumnFamilies,
                                     final ShardedEdgeSerialization shardedEdgeSerialization, final TimeService timeService,
                                     final GraphFig graphFig, final ShardGroupCompaction shardGroupCompaction,
-                                    final NodeShardCache nodeShardCache) {
+                                    final NodeShardCache nodeShardCache,
+                                    final NodeShardApproximation nodeShardApproximation ) {
         this.edgeShardSerialization = edgeShardSerialization;
         this.edgeColumnFamilies = edgeColumnFamilies;
         this.shardedEdgeSerialization = shardedEdgeSerialization;
@@ -74,6 +76,7 @@ public class NodeShardAllocationImpl implements NodeShardAllocation {
         this.graphFig = graphFig;
         this.shardGroupCompaction = shardGroupCompaction;
         this.nodeShardCache = nodeShardCache;
+        this.nodeShardApproximation = nodeShardApproximation;
     }
 
 
@@ -168,6 +171,14 @@ public class NodeShardAllocationImpl implements NodeShardAllocation {
 
         final long shardSize = graphFig.getShardSize();
 
+        final Optional<Long> count = nodeShardApproximation.getCount( scope, shard, directedEdgeMeta );
+
+        //only scan for a pivot once the shard is full.  Shards we've never scanned have no count we can trust
+        if ( count.isPresent() && count.get() < shardSize ) {
+            if (logger.isTraceEnabled()) logger.trace( "Shard {} in shard group {} has an approximate count of {}, not splitting", shard, shardEntryGroup, count.get() );
+            return false;
+        }
+
 
 
         /**
@@ -196,6 +207,8 @@ public class NodeShardAllocationImpl implements NodeShardAllocation {
 
 
         if ( !edges.hasNext() ) {
+            nodeShardApproximation.correct( scope, shard, 0, directedEdgeMeta );
+
             if (logger.isTraceEnabled()) logger.trace(
                 "Tried to allocate a new shard for edge meta data {}, but no max value could be found in that row",
                 directedEdgeMeta );
@@ -224,6 +237,9 @@ public class NodeShardAllocationImpl implements NodeShardAllocation {
             edgeCount++;
         }
 
+        //we've counted every edge, so fix up the approximation for the next audit
+        nodeShardApproximation.correct( scope, shard, edgeCount, directedEdgeMeta );
+
 
         /**
          * Sanity check in case we audit before we have a full shard
@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.graph.serialization.impl.shard.impl;
+
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.persistence.core.astyanax.ScopedRowKey;
+import org.apache.usergrid.persistence.core.executor.TaskExecutorFactory;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.graph.GraphFig;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.DirectedEdgeMeta;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.NodeShardApproximation;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.NodeShardCounterSerialization;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.Shard;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.ShardKey;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+
+
+/**
+ * Buffers shard counts in memory, and flushes them to cassandra once enough increments have been buffered, or the
+ * flush interval has passed.  Flushes run on their own thread.  When more flushes are queued than we allow, the writer
+ * flushes, which slows writes down until cassandra catches up.
+ *
+ * Stored counts are cached for the shard cache timeout, and kept up to date with our own flushes and corrections, so
+ * audits don't read cassandra every time.  Flushes from other nodes show up once the cached count expires.
+ */
+@Singleton
+public class NodeShardApproximationImpl implements NodeShardApproximation {
+
+    private static final Logger logger = LoggerFactory.getLogger( NodeShardApproximationImpl.class );
+
+
+    private final GraphFig graphFig;
+    private final NodeShardCounterSerialization nodeShardCounterSerialization;
+
+    /**
+     * Counts that have not been flushed to cassandra
+     */
+    private final ConcurrentHashMap<ScopedRowKey<ShardKey>, Long> pendingCounts = new ConcurrentHashMap<>();
+
+    /**
+     * The number of increments since the last flush was started
+     */
+    private final AtomicLong pendingIncrements = new AtomicLong();
+
+    /**
+     * Counts read from cassandra, with our flushes since the read added
+     */
+    private final Cache<ScopedRowKey<ShardKey>, Optional<Long>> storedCounts;
+
+    private final ExecutorService flushExecutor;
+
+
+    @Inject
+    public NodeShardApproximationImpl( final GraphFig graphFig,
+                                       final NodeShardCounterSerialization nodeShardCounterSerialization ) {
+        this.graphFig = graphFig;
+        this.nodeShardCounterSerialization = nodeShardCounterSerialization;
+
+        this.storedCounts = CacheBuilder.newBuilder().maximumSize( graphFig.getShardCacheSize() )
+                                        .expireAfterWrite( graphFig.getShardCacheTimeout(), TimeUnit.MILLISECONDS )
+                                        .build();
+
+        this.flushExecutor = TaskExecutorFactory
+            .createTaskExecutor( "GraphShardCounterFlush", 1, graphFig.getCounterFlushQueueSize(),
+                TaskExecutorFactory.RejectionAction.CALLERRUNS );
+
+        final ScheduledExecutorService flushTimer = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat( "GraphShardCounterTimer-%d" ).setDaemon( true ).build() );
+
+        final long interval = graphFig.getCounterFlushInterval();
+
+        flushTimer.scheduleWithFixedDelay( this::beginFlush, interval, interval, TimeUnit.MILLISECONDS );
+    }
+
+
+    @Override
+    public void increment( final ApplicationScope scope, final Shard shard, final long count,
+                           final DirectedEdgeMeta directedEdgeMeta ) {
+
+        pendingCounts.merge( createKey( scope, shard, directedEdgeMeta ), count, Long::sum );
+
+        final long increments = pendingIncrements.incrementAndGet();
+
+        //only the writer that resets the increments starts the flush
+        if ( increments >= graphFig.getCounterFlushCount() && pendingIncrements.compareAndSet( increments, 0 ) ) {
+            flushExecutor.execute( this::flush );
+        }
+    }
+
+
+    @Override
+    public Optional<Long> getCount( final ApplicationScope scope, final Shard shard,
+                                    final DirectedEdgeMeta directedEdgeMeta ) {
+
+        final ScopedRowKey<ShardKey> key = createKey( scope, shard, directedEdgeMeta );
+
+        final Optional<Long> count = getStoredCount( key );
+
+        if ( !count.isPresent() ) {
+            return count;
+        }
+
+        //deleting an edge more than once removes it from the count more than once, but a shard is never below empty
+        return Optional.of( Math.max( 0, count.get() + getPendingCount( key ) ) );
+    }
+
+
+    @Override
+    public void correct( final ApplicationScope scope, final Shard shard, final long actualCount,
+                         final DirectedEdgeMeta directedEdgeMeta ) {
+
+        final ScopedRowKey<ShardKey> key = createKey( scope, shard, directedEdgeMeta );
+
+        //counts we haven't flushed are included in the actual count, so leave room for them
+        final long stored = getStoredCount( key ).or( 0L );
+        final long correction = actualCount - getPendingCount( key ) - stored;
+
+        try {
+            nodeShardCounterSerialization.correct( key, correction ).execute();
+        }
+        catch ( ConnectionException e ) {
+            throw new RuntimeException( "Unable to connect to cassandra", e );
+        }
+
+        storedCounts.put( key, Optional.of( stored + correction ) );
+    }
+
+
+    @Override
+    public void flush() {
+
+        final Map<ScopedRowKey<ShardKey>, Long> counts = new HashMap<>();
+
+        //remove each count as we read it, so increments made during the flush are left for the next one
+        for ( ScopedRowKey<ShardKey> key : pendingCounts.keySet() ) {
+            final Long count = pendingCounts.remove( key );
+
+            if ( count != null && count != 0 ) {
+                counts.put( key, count );
+            }
+        }
+
+        if ( counts.isEmpty() ) {
+            return;
+        }
+
+        try {
+            nodeShardCounterSerialization.flush( counts ).execute();
+        }
+        catch ( ConnectionException e ) {
+            //put the counts back so they go out with the next flush
+            counts.forEach( ( key, count ) -> pendingCounts.merge( key, count, Long::sum ) );
+
+            logger.error( "Unable to flush {} shard counts, retrying with the next flush", counts.size(), e );
+
+            return;
+        }
+
+        //keep the counts we've cached in step with what we've written
+        counts.forEach( ( key, count ) -> storedCounts.asMap().computeIfPresent( key,
+            ( cachedKey, stored ) -> stored.isPresent() ? Optional.of( stored.get() + count ) : stored ) );
+    }
+
+
+    /**
+     * Get the count stored in cassandra, from the cache when we've read it recently
+     */
+    private Optional<Long> getStoredCount( final ScopedRowKey<ShardKey> key ) {
+        try {
+            return storedCounts.get( key, () -> nodeShardCounterSerialization.getCount( key ) );
+        }
+        catch ( ExecutionException e ) {
+            throw new RuntimeException( "Unable to load the count of shard " + key, e.getCause() );
+        }
+    }
+
+
+    private long getPendingCount( final ScopedRowKey<ShardKey> key ) {
+        final Long pending = pendingCounts.get( key );
+
+        return pending == null ? 0 : pending;
+    }
+
+
+    /**
+     * Flush the pending counts on the flush thread when the interval passes
+     */
+    private void beginFlush() {
+        pendingIncrements.set( 0 );
+
+        flushExecutor.execute( this::flush );
+    }
+
+
+    private static ScopedRowKey<ShardKey> createKey( final ApplicationScope scope, final Shard shard,
+                                                     final DirectedEdgeMeta directedEdgeMeta ) {
+        return ScopedRowKey.fromKey( scope.getApplication(), new ShardKey( shard.getShardIndex(), directedEdgeMeta ) );
+    }
+}
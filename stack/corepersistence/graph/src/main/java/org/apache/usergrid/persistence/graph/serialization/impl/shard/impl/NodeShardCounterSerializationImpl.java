@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.graph.serialization.impl.shard.impl;
+
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.db.marshal.CounterColumnType;
+import org.apache.cassandra.db.marshal.UTF8Type;
+
+import org.apache.usergrid.persistence.core.astyanax.CassandraConfig;
+import org.apache.usergrid.persistence.core.astyanax.MultiTenantColumnFamily;
+import org.apache.usergrid.persistence.core.astyanax.MultiTenantColumnFamilyDefinition;
+import org.apache.usergrid.persistence.core.astyanax.ScopedRowKey;
+import org.apache.usergrid.persistence.core.astyanax.ScopedRowKeySerializer;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.NodeShardCounterSerialization;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.ShardKey;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.serialize.ShardKeySerializer;
+
+import com.google.common.base.Optional;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.model.Column;
+import com.netflix.astyanax.model.ColumnList;
+import com.netflix.astyanax.serializers.StringSerializer;
+
+
+@Singleton
+public class NodeShardCounterSerializationImpl implements NodeShardCounterSerialization {
+
+
+    /**
+     * The number of edges in the shard
+     */
+    private static final String EDGES_COLUMN = "edges";
+
+    /**
+     * The number of times the shard has been scanned
+     */
+    private static final String SCANS_COLUMN = "scans";
+
+
+    /**
+     * Edge shard counts
+     */
+    private static final MultiTenantColumnFamily<ScopedRowKey<ShardKey>, String> EDGE_SHARD_COUNTS =
+        new MultiTenantColumnFamily<>( "Edge_Shard_Counts", new ScopedRowKeySerializer<>( ShardKeySerializer.INSTANCE ),
+            StringSerializer.get() );
+
+
+    protected final Keyspace keyspace;
+    protected final CassandraConfig cassandraConfig;
+
+
+    @Inject
+    public NodeShardCounterSerializationImpl( final Keyspace keyspace, final CassandraConfig cassandraConfig ) {
+        this.keyspace = keyspace;
+        this.cassandraConfig = cassandraConfig;
+    }
+
+
+    @Override
+    public MutationBatch flush( final Map<ScopedRowKey<ShardKey>, Long> counts ) {
+
+        final MutationBatch batch = keyspace.prepareMutationBatch();
+
+        for ( Map.Entry<ScopedRowKey<ShardKey>, Long> entry : counts.entrySet() ) {
+            batch.withRow( EDGE_SHARD_COUNTS, entry.getKey() ).incrementCounterColumn( EDGES_COLUMN, entry.getValue() );
+        }
+
+        return batch;
+    }
+
+
+    @Override
+    public MutationBatch correct( final ScopedRowKey<ShardKey> key, final long correction ) {
+
+        final MutationBatch batch = keyspace.prepareMutationBatch();
+
+        batch.withRow( EDGE_SHARD_COUNTS, key ).incrementCounterColumn( EDGES_COLUMN, correction )
+             .incrementCounterColumn( SCANS_COLUMN, 1 );
+
+        return batch;
+    }
+
+
+    @Override
+    public Optional<Long> getCount( final ScopedRowKey<ShardKey> key ) {
+
+        final ColumnList<String> columns;
+
+        try {
+            columns = keyspace.prepareQuery( EDGE_SHARD_COUNTS ).setConsistencyLevel( cassandraConfig.getReadCL() )
+                              .getKey( key ).execute().getResult();
+        }
+        catch ( ConnectionException e ) {
+            throw new RuntimeException( "Unable to connect to cassandra", e );
+        }
+
+        //edges written before we started counting them aren't in the count until the shard is scanned
+        if ( columns.getColumnByName( SCANS_COLUMN ) == null ) {
+            return Optional.absent();
+        }
+
+        final Column<String> edges = columns.getColumnByName( EDGES_COLUMN );
+
+        return Optional.of( edges == null ? 0L : edges.getLongValue() );
+    }
+
+
+    @Override
+    public Collection<MultiTenantColumnFamilyDefinition> getColumnFamilies() {
+        return Collections.singleton(
+            new MultiTenantColumnFamilyDefinition( EDGE_SHARD_COUNTS, BytesType.class.getSimpleName(),
+                UTF8Type.class.getSimpleName(), CounterColumnType.class.getSimpleName(),
+                MultiTenantColumnFamilyDefinition.CacheOption.KEYS ) );
+    }
+}
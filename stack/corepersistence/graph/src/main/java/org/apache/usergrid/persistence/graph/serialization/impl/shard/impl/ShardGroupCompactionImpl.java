@@ -37,6 +37,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.usergrid.persistence.core.consistency.TimeService;
+import org.apache.usergrid.persistence.core.executor.TaskExecutorFactory;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.graph.GraphFig;
 import org.apache.usergrid.persistence.graph.MarkedEdge;
@@ -44,6 +46,9 @@ import org.apache.usergrid.persistence.graph.SearchByEdgeType;
 import org.apache.usergrid.persistence.model.entity.Id;
 import org.apache.usergrid.persistence.model.util.UUIDGenerator;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
 import com.google.common.base.Preconditions;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hasher;
@@ -53,6 +58,8 @@ import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.RateLimiter;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.netflix.astyanax.Keyspace;
@@ -89,6 +96,14 @@ public class ShardGroupCompactionImpl implements ShardGroupCompaction {
     private final ShardCompactionTaskTracker shardCompactionTaskTracker;
     private final ShardAuditTaskTracker shardAuditTaskTracker;
     private final NodeShardCache nodeShardCache;
+    private final NodeShardApproximation nodeShardApproximation;
+
+    private final ListeningExecutorService compactionExecutor;
+    private final RateLimiter compactionRateLimiter;
+    private final Timer shardMoveTimer;
+    private final Counter activeShardMoves;
+    private final Meter movedEdgeMeter;
+    private final Meter failedBatchMeter;
 
 
     @Inject
@@ -98,7 +113,9 @@ public class ShardGroupCompactionImpl implements ShardGroupCompaction {
                                      final EdgeColumnFamilies edgeColumnFamilies, final Keyspace keyspace,
                                      final EdgeShardSerialization edgeShardSerialization,
                                      final AsyncTaskExecutor asyncTaskExecutor,
-                                     final NodeShardCache nodeShardCache ) {
+                                     final NodeShardCache nodeShardCache,
+                                     final NodeShardApproximation nodeShardApproximation,
+                                     final MetricsFactory metricsFactory ) {
 
         this.timeService = timeService;
         this.countAudits = new AtomicLong();
@@ -116,6 +133,19 @@ public class ShardGroupCompactionImpl implements ShardGroupCompaction {
 
         this.taskExecutor = asyncTaskExecutor.getExecutorService();
         this.nodeShardCache = nodeShardCache;
+        this.nodeShardApproximation = nodeShardApproximation;
+
+        //copies are bounded by each compaction, so only many concurrent compactions fill the queue
+        this.compactionExecutor = MoreExecutors.listeningDecorator( TaskExecutorFactory
+            .createTaskExecutor( "GraphCompactionExecutor", graphFig.getShardCompactionWorkerCount(),
+                graphFig.getShardCompactionWorkerCount(), TaskExecutorFactory.RejectionAction.CALLERRUNS ) );
+
+        this.compactionRateLimiter = RateLimiter.create( graphFig.getShardCompactionRate() );
+
+        this.shardMoveTimer = metricsFactory.getTimer( ShardGroupCompactionImpl.class, "compaction.shard.move" );
+        this.activeShardMoves = metricsFactory.getCounter( ShardGroupCompactionImpl.class, "compaction.shard.active" );
+        this.movedEdgeMeter = metricsFactory.getMeter( ShardGroupCompactionImpl.class, "compaction.edges.moved" );
+        this.failedBatchMeter = metricsFactory.getMeter( ShardGroupCompactionImpl.class, "compaction.batch.failed" );
     }
 
 
@@ -153,12 +183,6 @@ public class ShardGroupCompactionImpl implements ShardGroupCompaction {
 
         final UUID timestamp = UUIDGenerator.newTimeUUID();
 
-        final long newShardPivot = targetShard.getShardIndex();
-
-        final int maxWorkSize = graphFig.getScanPageSize();
-
-
-
 
         /**
          * As we move edges, we want to keep track of it
@@ -168,132 +192,16 @@ public class ShardGroupCompactionImpl implements ShardGroupCompaction {
 
         for ( Shard sourceShard : sourceShards ) {
 
-            final MutationBatch newRowBatch = keyspace.prepareMutationBatch();
-            final MutationBatch deleteRowBatch = keyspace.prepareMutationBatch();
-            final MutationBatch updateShardMetaBatch = keyspace.prepareMutationBatch();
-
-            long edgeCount = 0;
-
-            Iterator<MarkedEdge> edges = edgeMeta
-                .loadEdges( shardedEdgeSerialization, edgeColumnFamilies, scope, Collections.singleton( sourceShard ),
-                    Long.MAX_VALUE, SearchByEdgeType.Order.DESCENDING );
-
-            MarkedEdge shardEnd = null;
-
-            while ( edges.hasNext() ) {
-                final MarkedEdge edge = edges.next();
-
-                final long edgeTimestamp = edge.getTimestamp();
-
-                shardEnd = edge;
-
-                /**
-                 * The edge is within a different shard, break
-                 */
-                if ( edgeTimestamp < newShardPivot ) {
-                    break;
-                }
-
-                newRowBatch.mergeShallow( edgeMeta
-                        .writeEdge( shardedEdgeSerialization, edgeColumnFamilies, scope, targetShard, edge,
-                            timestamp ) );
-
-                deleteRowBatch.mergeShallow( edgeMeta
-                        .deleteEdge( shardedEdgeSerialization, edgeColumnFamilies, scope, sourceShard, edge,
-                            timestamp ) );
-
-
-                edgeCount++;
-
-
-
-                // if we're at our count, execute the mutation of writing the edges to the new row, then remove them
-                // from the old rows
-                if ( edgeCount % maxWorkSize == 0 ) {
-
-
-
-                    try {
-
-                        // write the edges into the new shard atomically so we know they all succeed
-                        newRowBatch.withAtomicBatch(true).execute();
-
-
-                        // Update the shard end after each batch so any reads during transition stay as close to current
-                        sourceShard.setShardEnd(
-                            Optional.of(new DirectedEdge(shardEnd.getTargetNode(), shardEnd.getTimestamp()))
-                        );
-
-                        if(logger.isTraceEnabled()) {
-                            logger.trace("Updating shard {} during batch removal with shardEnd {}", sourceShard, shardEnd);
-                        }
-                        updateShardMetaBatch.mergeShallow(
-                            edgeShardSerialization.writeShardMeta(scope, sourceShard, edgeMeta));
-
-
-
-                        // on purpose block this thread before deleting the old edges to be sure there are no gaps
-                        // duplicates are filtered on graph seeking so this is OK
-                        Thread.sleep(1000);
-
-                        if(logger.isTraceEnabled()) {
-                            logger.trace("Deleting batch of {} from old shard", maxWorkSize);
-                        }
-                        deleteRowBatch.withAtomicBatch(true).execute();
-
-                        updateShardMetaBatch.execute();
-
-
-                    }
-                    catch ( Throwable t ) {
-                        logger.error( "Unable to move edges from shard {} to shard {}", sourceShard, targetShard );
-                    }
-
-                    totalEdgeCount += edgeCount;
-                    edgeCount = 0;
-                }
-
-
-
-            }
-
-            totalEdgeCount += edgeCount;
+            final Timer.Context timer = shardMoveTimer.time();
+            activeShardMoves.inc();
 
             try {
-
-                // write the edges into the new shard atomically so we know they all succeed
-                newRowBatch.withAtomicBatch(true).execute();
-
-                // on purpose block this thread before deleting the old edges to be sure there are no gaps
-                // duplicates are filtered on graph seeking so this is OK
-                Thread.sleep(1000);
-
-                if(logger.isTraceEnabled()) {
-                    logger.trace("Deleting remaining {} edges from old shard", edgeCount);
-                }
-                deleteRowBatch.withAtomicBatch(true).execute();
-
-                if (shardEnd != null){
-
-                    sourceShard.setShardEnd(
-                        Optional.of(new DirectedEdge(shardEnd.getTargetNode(), shardEnd.getTimestamp()))
-                    );
-
-                    if(logger.isTraceEnabled()) {
-                        logger.trace("Updating for last time shard {} with shardEnd {}", sourceShard, shardEnd);
-                    }
-                    updateShardMetaBatch.mergeShallow( edgeShardSerialization.writeShardMeta(scope, sourceShard, edgeMeta));
-                    updateShardMetaBatch.execute();
-                }
-
-
+                totalEdgeCount += moveEdges( scope, edgeMeta, sourceShard, targetShard, timestamp );
             }
-            catch ( Throwable t ) {
-                logger.error( "Unable to move edges to target shard {}", targetShard );
+            finally {
+                activeShardMoves.dec();
+                timer.stop();
             }
-
-
-
         }
 
 
@@ -372,6 +280,176 @@ public class ShardGroupCompactionImpl implements ShardGroupCompaction {
     }
 
 
+    /**
+     * Move every edge at or above the pivot of the target out of the source shard.  Batches of edges are copied into
+     * the target in parallel, but handed off in order.  The end of the source shard is only advanced past a batch, and
+     * the batch only deleted from the source, once it and every newer batch are in the target.  Reads seek the source
+     * from its shard end, so there is no point at which they can miss an edge, and the shard end doubles as our
+     * checkpoint should this node restart mid compaction.
+     *
+     * @return The number of edges that needed moving
+     */
+    private long moveEdges( final ApplicationScope scope, final DirectedEdgeMeta edgeMeta, final Shard sourceShard,
+                            final Shard targetShard, final UUID timestamp ) {
+
+        final long newShardPivot = targetShard.getShardIndex();
+
+        final int maxWorkSize = graphFig.getScanPageSize();
+
+        final int maxInFlight = graphFig.getShardCompactionWorkerCount();
+
+        final Deque<MoveBatch> inFlight = new ArrayDeque<>( maxInFlight );
+
+        Iterator<MarkedEdge> edges = edgeMeta
+            .loadEdges( shardedEdgeSerialization, edgeColumnFamilies, scope, Collections.singleton( sourceShard ),
+                Long.MAX_VALUE, SearchByEdgeType.Order.DESCENDING );
+
+        long edgeCount = 0;
+
+        boolean moving = true;
+
+        MoveBatch batch = new MoveBatch();
+
+        while ( moving && edges.hasNext() ) {
+            final MarkedEdge edge = edges.next();
+
+            batch.shardEnd = edge;
+
+            /**
+             * The edge is within a different shard, break
+             */
+            if ( edge.getTimestamp() < newShardPivot ) {
+                break;
+            }
+
+            batch.newRowBatch.mergeShallow( edgeMeta
+                .writeEdge( shardedEdgeSerialization, edgeColumnFamilies, scope, targetShard, edge, timestamp ) );
+
+            batch.deleteRowBatch.mergeShallow( edgeMeta
+                .deleteEdge( shardedEdgeSerialization, edgeColumnFamilies, scope, sourceShard, edge, timestamp ) );
+
+            batch.size++;
+            edgeCount++;
+
+            if ( batch.size == maxWorkSize ) {
+                moving = startCopy( batch, inFlight, maxInFlight, scope, edgeMeta, sourceShard, targetShard );
+                batch = new MoveBatch();
+            }
+        }
+
+        if ( moving && batch.shardEnd != null ) {
+            moving = startCopy( batch, inFlight, maxInFlight, scope, edgeMeta, sourceShard, targetShard );
+        }
+
+        //hand off everything still copying
+        while ( moving && !inFlight.isEmpty() ) {
+            moving = handOff( inFlight.removeFirst(), scope, edgeMeta, sourceShard, targetShard );
+        }
+
+        if ( !moving ) {
+            logger.error( "Stopped moving edges from shard {} to shard {}, the remainder will be moved on the next pass",
+                sourceShard, targetShard );
+        }
+
+        return edgeCount;
+    }
+
+
+    /**
+     * Throttle, then start copying the batch into the target shard.  Hands off the oldest batches while we have too
+     * many copies running
+     *
+     * @return false if a hand off failed, and no more batches should be moved
+     */
+    private boolean startCopy( final MoveBatch batch, final Deque<MoveBatch> inFlight, final int maxInFlight,
+                               final ApplicationScope scope, final DirectedEdgeMeta edgeMeta,
+                               final Shard sourceShard, final Shard targetShard ) {
+
+        if ( batch.size > 0 ) {
+            compactionRateLimiter.acquire( batch.size );
+
+            // write the edges into the new shard atomically so we know they all succeed
+            batch.copy = compactionExecutor.submit( () -> batch.newRowBatch.withAtomicBatch( true ).execute() );
+        }
+        else {
+            batch.copy = Futures.immediateFuture( null );
+        }
+
+        inFlight.addLast( batch );
+
+        while ( inFlight.size() >= maxInFlight || ( !inFlight.isEmpty() && inFlight.peekFirst().copy.isDone() ) ) {
+            if ( !handOff( inFlight.removeFirst(), scope, edgeMeta, sourceShard, targetShard ) ) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Wait for the batch to be in the target shard, then advance the end of the source shard past it, delete it from
+     * the source and move its count to the target
+     *
+     * @return false if the batch could not be moved
+     */
+    private boolean handOff( final MoveBatch batch, final ApplicationScope scope, final DirectedEdgeMeta edgeMeta,
+                             final Shard sourceShard, final Shard targetShard ) {
+
+        try {
+            batch.copy.get();
+
+            // Update the shard end after each batch so any reads during transition stay as close to current
+            sourceShard.setShardEnd(
+                Optional.of( new DirectedEdge( batch.shardEnd.getTargetNode(), batch.shardEnd.getTimestamp() ) ) );
+
+            if ( logger.isTraceEnabled() ) {
+                logger.trace( "Updating shard {} during batch removal with shardEnd {}", sourceShard,
+                    batch.shardEnd );
+            }
+
+            edgeShardSerialization.writeShardMeta( scope, sourceShard, edgeMeta ).execute();
+
+            if ( batch.size > 0 ) {
+                if ( logger.isTraceEnabled() ) {
+                    logger.trace( "Deleting batch of {} from old shard", batch.size );
+                }
+
+                batch.deleteRowBatch.withAtomicBatch( true ).execute();
+
+                nodeShardApproximation.increment( scope, targetShard, batch.size, edgeMeta );
+                nodeShardApproximation.increment( scope, sourceShard, -batch.size, edgeMeta );
+
+                movedEdgeMeter.mark( batch.size );
+            }
+
+            return true;
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            logger.error( "Interrupted moving edges from shard {}", sourceShard );
+            return false;
+        }
+        catch ( Throwable t ) {
+            logger.error( "Unable to move edges from shard {}", sourceShard, t );
+            failedBatchMeter.mark();
+            return false;
+        }
+    }
+
+
+    /**
+     * Edges to move between shards, and the edge the source shard will end at once they have been moved
+     */
+    private final class MoveBatch {
+        private final MutationBatch newRowBatch = keyspace.prepareMutationBatch();
+        private final MutationBatch deleteRowBatch = keyspace.prepareMutationBatch();
+        private int size;
+        private MarkedEdge shardEnd;
+        private ListenableFuture<?> copy;
+    }
+
+
     @Override
     public ListenableFuture<AuditResult> evaluateShardGroup( final ApplicationScope scope,
                                                              final DirectedEdgeMeta edgeMeta,
@@ -23,7 +23,12 @@ package org.apache.usergrid.persistence.graph.serialization.impl.shard.impl;
 
 import java.nio.ByteBuffer;
 import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
@@ -63,10 +68,16 @@ import org.apache.usergrid.persistence.graph.serialization.util.GraphValidation;
 import org.apache.usergrid.persistence.model.entity.Id;
 
 import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
 import com.google.inject.Singleton;
 import com.netflix.astyanax.Keyspace;
 import com.netflix.astyanax.MutationBatch;
 import com.netflix.astyanax.Serializer;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.model.Column;
+import com.netflix.astyanax.model.ColumnList;
+import com.netflix.astyanax.model.Row;
+import com.netflix.astyanax.model.Rows;
 import com.netflix.astyanax.util.RangeBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -415,62 +426,87 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
             logger.trace("getEdgesFromSource shards: {}", shards);
         }
 
-        final Id sourceId = search.getNode();
-        final String type = search.getType();
-        final long maxTimestamp = search.getMaxTimestamp();
+        final MultiTenantColumnFamily<ScopedRowKey<RowKey>, DirectedEdge> columnFamily =
+                columnFamilies.getSourceNodeCfName();
+
+        final EdgeSearcher<RowKey, DirectedEdge, MarkedEdge> searcher =
+                createSourceSearcher( scope, search, shards, columnFamily.getColumnSerializer() );
+
+
+        return new ShardsColumnIterator<>( searcher, columnFamily, keyspace, cassandraConfig.getReadCL(),
+                graphFig.getScanPageSize(), graphFig.getSmartShardSeekEnabled() );
+    }
+
+
+    @Override
+    public List<List<MarkedEdge>> getEdgesFromSources( final EdgeColumnFamilies columnFamilies,
+                                                       final ApplicationScope scope,
+                                                       final List<SearchByEdgeType> searches,
+                                                       final List<Shard> shards, final int limit ) {
+
+        ValidationUtils.validateApplicationScope( scope );
+        Preconditions.checkArgument( searches.size() > 0, "At least one search must be specified" );
+        Preconditions.checkArgument( searches.size() == shards.size(), "A shard must be specified for every search" );
+
         final MultiTenantColumnFamily<ScopedRowKey<RowKey>, DirectedEdge> columnFamily =
                 columnFamilies.getSourceNodeCfName();
         final Serializer<DirectedEdge> serializer = columnFamily.getColumnSerializer();
 
+        final List<EdgeSearcher<RowKey, DirectedEdge, MarkedEdge>> searchers = new ArrayList<>( searches.size() );
+        final Set<ScopedRowKey<RowKey>> rowKeys = new LinkedHashSet<>( searches.size() );
 
-        final OrderedComparator<MarkedEdge> comparator = new OrderedComparator<>( TargetDirectedEdgeDescendingComparator.INSTANCE, search.getOrder());
+        for ( int i = 0; i < searches.size(); i++ ) {
+            final SearchByEdgeType search = searches.get( i );
 
-        Optional<Long> lastTimestamp = Optional.absent();
-        if(search.last().isPresent()){
-            lastTimestamp = Optional.of(search.last().get().getTimestamp());
-        }
+            GraphValidation.validateSearchByEdgeType( search );
+            Preconditions.checkArgument( !search.last().isPresent(), "Searches with a last edge cannot be batched" );
 
+            final EdgeSearcher<RowKey, DirectedEdge, MarkedEdge> searcher =
+                    createSourceSearcher( scope, search, Collections.singleton( shards.get( i ) ), serializer );
 
-        final EdgeSearcher<RowKey, DirectedEdge, MarkedEdge> searcher =
-                new EdgeSearcher<RowKey, DirectedEdge, MarkedEdge>( scope, shards, search.getOrder(), comparator, maxTimestamp,
-                        search.last().transform( TRANSFORM ), lastTimestamp ) {
+            searchers.add( searcher );
+            rowKeys.addAll( searcher.getRowKeys() );
+        }
 
 
-                    @Override
-                    protected Serializer<DirectedEdge> getSerializer() {
-                        return serializer;
-                    }
+        //every search shares the same range, so the first one builds it
+        final RangeBuilder rangeBuilder = new RangeBuilder().setLimit( limit );
 
+        searchers.get( 0 ).buildRange( rangeBuilder );
 
-                    @Override
-                    protected RowKey generateRowKey( long shard ) {
-                        return new RowKey( sourceId, type, shard );
-                    }
+        final Rows<ScopedRowKey<RowKey>, DirectedEdge> rows;
 
+        try {
+            rows = keyspace.prepareQuery( columnFamily ).setConsistencyLevel( cassandraConfig.getReadCL() )
+                           .getKeySlice( rowKeys ).withColumnRange( rangeBuilder.build() ).execute().getResult();
+        }
+        catch ( ConnectionException e ) {
+            throw new RuntimeException( "Unable to connect to cassandra", e );
+        }
 
-                    @Override
-                    protected DirectedEdge createColumn( final MarkedEdge last ) {
-                        return new DirectedEdge( last.getTargetNode(), last.getTimestamp() );
-                    }
 
+        final List<List<MarkedEdge>> results = new ArrayList<>( searches.size() );
 
-                    @Override
-                    protected void setTimeScan( final RangeBuilder rangeBuilder ) {
-                        final ByteBuffer buffer = EdgeSerializer.INSTANCE.fromTimeRange( maxTimestamp );
+        for ( final EdgeSearcher<RowKey, DirectedEdge, MarkedEdge> searcher : searchers ) {
 
-                        rangeBuilder.setStart( buffer );
-                    }
+            final Row<ScopedRowKey<RowKey>, DirectedEdge> row = rows.getRow( searcher.getRowKeys().get( 0 ) );
 
+            if ( row == null ) {
+                results.add( Collections.<MarkedEdge>emptyList() );
+                continue;
+            }
 
-                    @Override
-                    protected MarkedEdge createEdge( final DirectedEdge edge, final boolean marked ) {
-                        return new SimpleMarkedEdge( sourceId, type, edge.id, edge.timestamp, marked );
-                    }
-                };
+            final ColumnList<DirectedEdge> columns = row.getColumns();
+            final List<MarkedEdge> edges = new ArrayList<>( columns.size() );
 
+            for ( final Column<DirectedEdge> column : columns ) {
+                edges.add( searcher.parseColumn( column ) );
+            }
 
-        return new ShardsColumnIterator<>( searcher, columnFamily, keyspace, cassandraConfig.getReadCL(),
-                graphFig.getScanPageSize(), graphFig.getSmartShardSeekEnabled() );
+            results.add( edges );
+        }
+
+        return results;
     }
 
 
@@ -1030,4 +1066,63 @@ public class ShardedEdgeSerializationImpl implements ShardedEdgeSerialization {
                     input.getTimestamp(), false );
         }
     };
+
+
+    /**
+     * Create the searcher for the edges of the type originating from the source node
+     */
+    private EdgeSearcher<RowKey, DirectedEdge, MarkedEdge> createSourceSearcher( final ApplicationScope scope,
+                                                                                final SearchByEdgeType search,
+                                                                                final Collection<Shard> shards,
+                                                                                final Serializer<DirectedEdge> serializer ) {
+
+        final Id sourceId = search.getNode();
+        final String type = search.getType();
+        final long maxTimestamp = search.getMaxTimestamp();
+
+
+        final OrderedComparator<MarkedEdge> comparator = new OrderedComparator<>( TargetDirectedEdgeDescendingComparator.INSTANCE, search.getOrder());
+
+        Optional<Long> lastTimestamp = Optional.absent();
+        if(search.last().isPresent()){
+            lastTimestamp = Optional.of(search.last().get().getTimestamp());
+        }
+
+
+        return new EdgeSearcher<RowKey, DirectedEdge, MarkedEdge>( scope, shards, search.getOrder(), comparator, maxTimestamp,
+                        search.last().transform( TRANSFORM ), lastTimestamp ) {
+
+
+                    @Override
+                    protected Serializer<DirectedEdge> getSerializer() {
+                        return serializer;
+                    }
+
+
+                    @Override
+                    protected RowKey generateRowKey( long shard ) {
+                        return new RowKey( sourceId, type, shard );
+                    }
+
+
+                    @Override
+                    protected DirectedEdge createColumn( final MarkedEdge last ) {
+                        return new DirectedEdge( last.getTargetNode(), last.getTimestamp() );
+                    }
+
+
+                    @Override
+                    protected void setTimeScan( final RangeBuilder rangeBuilder ) {
+                        final ByteBuffer buffer = EdgeSerializer.INSTANCE.fromTimeRange( maxTimestamp );
+
+                        rangeBuilder.setStart( buffer );
+                    }
+
+
+                    @Override
+                    protected MarkedEdge createEdge( final DirectedEdge edge, final boolean marked ) {
+                        return new SimpleMarkedEdge( sourceId, type, edge.id, edge.timestamp, marked );
+                    }
+                };
+    }
 }
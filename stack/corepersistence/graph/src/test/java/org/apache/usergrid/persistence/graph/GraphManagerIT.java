@@ -19,6 +19,8 @@
 package org.apache.usergrid.persistence.graph;
 
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.TimeoutException;
@@ -114,6 +116,101 @@ public class GraphManagerIT {
     }
 
 
+    @Test
+    public void testWriteMarkEdgesBatch() throws TimeoutException, InterruptedException {
+
+        GraphManager gm = emf.createEdgeManager( scope );
+
+        final Id sourceId = createId( "source" );
+
+        //more than fits in a single batch
+        final List<Edge> edges = new ArrayList<>();
+
+        for ( int i = 0; i < 250; i++ ) {
+            edges.add( createEdge( sourceId, "test", createId( "target" ) ) );
+        }
+
+        final int written = gm.writeEdges( Observable.from( edges ) ).count().toBlocking().last();
+
+        assertEquals( "All edges written", edges.size(), written );
+
+        SearchByEdgeType search = createSearchByEdge( sourceId, "test", Long.MAX_VALUE, null );
+
+        final int loaded = gm.loadEdgesFromSource( search ).count().toBlocking().last();
+
+        assertEquals( "All edges returned", edges.size(), loaded );
+
+        //the targets have the meta data of the edge
+        assertEquals( "test", gm.getEdgeTypesToTarget( new SimpleSearchEdgeType( edges.get( 0 ).getTargetNode(),
+            null, null ) ).toBlocking().single() );
+
+
+        final int marked = gm.markEdges( Observable.from( edges ) ).count().toBlocking().last();
+
+        assertEquals( "All edges marked", edges.size(), marked );
+
+        final Edge returned = gm.loadEdgesFromSource( search ).toBlocking().singleOrDefault( null );
+
+        assertNull( "Marked edges should not be returned", returned );
+    }
+
+
+    @Test
+    public void testLoadEdgesFromSources() throws TimeoutException, InterruptedException {
+
+        GraphManager gm = emf.createEdgeManager( scope );
+
+        //more edges than the first page, fewer than the first page, and none at all
+        final Id largeSource = createId( "source" );
+        final Id smallSource = createId( "source" );
+        final Id emptySource = createId( "source" );
+
+        final List<Edge> edges = new ArrayList<>();
+
+        for ( int i = 0; i < 25; i++ ) {
+            edges.add( createEdge( largeSource, "test", createId( "target" ) ) );
+        }
+
+        for ( int i = 0; i < 3; i++ ) {
+            edges.add( createEdge( smallSource, "test", createId( "target" ) ) );
+        }
+
+        gm.writeEdges( Observable.from( edges ) ).toBlocking().last();
+
+        final Edge marked = createEdge( smallSource, "test", createId( "target" ) );
+
+        gm.writeEdge( marked ).toBlocking().last();
+        gm.markEdge( marked ).toBlocking().last();
+
+        final List<SearchByEdgeType> searches = Arrays.asList(
+            createSearchByEdge( largeSource, "test", Long.MAX_VALUE, null ),
+            createSearchByEdge( smallSource, "test", Long.MAX_VALUE, null ),
+            createSearchByEdge( emptySource, "test", Long.MAX_VALUE, null ) );
+
+
+        final List<MarkedEdge> unordered = gm.loadEdgesFromSources( searches, false ).toList().toBlocking().last();
+
+        assertEquals( "All edges returned", edges.size(), unordered.size() );
+        assertTrue( "All edges returned", unordered.containsAll( edges ) );
+
+        //each source is returned in turn
+        for ( int i = 0; i < unordered.size(); i++ ) {
+            assertEquals( i < 25 ? largeSource : smallSource, unordered.get( i ).getSourceNode() );
+        }
+
+
+        final List<MarkedEdge> ordered = gm.loadEdgesFromSources( searches, true ).toList().toBlocking().last();
+
+        assertEquals( "All edges returned", edges.size(), ordered.size() );
+        assertTrue( "All edges returned", ordered.containsAll( edges ) );
+
+        for ( int i = 1; i < ordered.size(); i++ ) {
+            assertTrue( "Edges are in descending order",
+                ordered.get( i - 1 ).getTimestamp() >= ordered.get( i ).getTimestamp() );
+        }
+    }
+
+
     @Test
     public void testWriteReadEdgeTypeTarget() throws TimeoutException, InterruptedException {
 
@@ -54,6 +54,8 @@ import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
@@ -62,6 +64,8 @@ public class NodeShardAllocationTest {
 
     private GraphFig graphFig;
 
+    private NodeShardApproximation nodeShardApproximation;
+
 
     protected ApplicationScope scope;
 
@@ -85,6 +89,12 @@ public class NodeShardAllocationTest {
         final long timeout = 30000;
         when( graphFig.getShardCacheTimeout() ).thenReturn( timeout );
         when( graphFig.getShardMinDelta() ).thenReturn( ( long ) (timeout * 2.5) );
+
+        //no counts, so every audit scans the shard
+        nodeShardApproximation = mock( NodeShardApproximation.class );
+
+        when( nodeShardApproximation.getCount( any( ApplicationScope.class ), any( Shard.class ),
+            any( DirectedEdgeMeta.class ) ) ).thenReturn( Optional.<Long>absent() );
     }
 
 
@@ -106,7 +116,8 @@ public class NodeShardAllocationTest {
 
         NodeShardAllocation approximation =
                 new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
-                         timeService, graphFig, shardGroupCompaction, nodeShardCache );
+                         timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        nodeShardApproximation );
 
 
         final long timeservicetime = System.currentTimeMillis();
@@ -139,7 +150,8 @@ public class NodeShardAllocationTest {
 
         NodeShardAllocation approximation =
                 new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
-                      timeService, graphFig, shardGroupCompaction, nodeShardCache);
+                      timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        nodeShardApproximation );
 
         final Id nodeId = IdGenerator.createId( "test" );
         final String type = "type";
@@ -182,7 +194,8 @@ public class NodeShardAllocationTest {
 
         NodeShardAllocation approximation =
                 new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
-                        timeService, graphFig, shardGroupCompaction, nodeShardCache );
+                        timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        nodeShardApproximation );
 
         final Id nodeId = IdGenerator.createId( "test" );
         final String type = "type";
@@ -229,7 +242,8 @@ public class NodeShardAllocationTest {
 
         NodeShardAllocation approximation =
                 new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
-                        timeService, graphFig, shardGroupCompaction, nodeShardCache );
+                        timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        nodeShardApproximation );
 
         final Id nodeId = IdGenerator.createId( "test" );
         final String type = "type";
@@ -320,6 +334,59 @@ public class NodeShardAllocationTest {
         final long savedShardPivot = shardValue.getValue().getShardIndex();
 
         assertEquals( "Expected max value to be the same", keep.getTimestamp(), savedShardPivot );
+
+        verify( nodeShardApproximation ).correct( scope, futureShard, shardCount, targetEdgeMeta );
+    }
+
+
+    @Test
+    public void approximateCountNotFull() {
+        final ShardGroupCompaction shardGroupCompaction = mock( ShardGroupCompaction.class );
+
+        final EdgeShardSerialization edgeShardSerialization = mock( EdgeShardSerialization.class );
+
+        final EdgeColumnFamilies edgeColumnFamilies = mock( EdgeColumnFamilies.class );
+
+        final ShardedEdgeSerialization shardedEdgeSerialization = mock( ShardedEdgeSerialization.class );
+
+
+        final TimeService timeService = mock( TimeService.class );
+
+        final NodeShardCache nodeShardCache = mock( NodeShardCache.class );
+
+
+        NodeShardAllocation approximation =
+                new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
+                        timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        nodeShardApproximation );
+
+        final Id nodeId = IdGenerator.createId( "test" );
+        final String type = "type";
+        final String subType = "subType";
+
+        when( timeService.getCurrentTime() ).thenReturn( System.currentTimeMillis() );
+
+        final Shard futureShard = new Shard( 0l, 0l, true );
+
+        final ShardEntryGroup shardEntryGroup = new ShardEntryGroup( 1000l );
+        shardEntryGroup.addShard( futureShard );
+
+        final DirectedEdgeMeta targetEdgeMeta = DirectedEdgeMeta.fromSourceNodeTargetType( nodeId, type, subType );
+
+
+        //the shard has been scanned before, and hasn't had enough edges written since to fill it
+        final long count = graphFig.getShardSize() - 1;
+
+        when( nodeShardApproximation.getCount( scope, futureShard, targetEdgeMeta ) ).thenReturn( Optional.of( count ) );
+
+
+        final boolean result = approximation.auditShard( scope, shardEntryGroup, targetEdgeMeta );
+
+        assertFalse( "Shard not allocated", result );
+
+        verify( shardedEdgeSerialization, never() )
+                .getEdgesFromSourceByTargetType( any( EdgeColumnFamilies.class ), any( ApplicationScope.class ),
+                        any( SearchByIdType.class ), any( Collection.class ) );
     }
 
 
@@ -342,7 +409,8 @@ public class NodeShardAllocationTest {
 
         NodeShardAllocation approximation =
                 new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
-                         timeService, graphFig, shardGroupCompaction, nodeShardCache );
+                         timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        nodeShardApproximation );
 
         final Id nodeId = IdGenerator.createId( "test" );
         final String type = "type";
@@ -431,7 +499,8 @@ public class NodeShardAllocationTest {
 
         NodeShardAllocation approximation =
                 new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
-                       timeService, graphFig, shardGroupCompaction, nodeShardCache );
+                       timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        nodeShardApproximation );
 
         final Id nodeId = IdGenerator.createId( "test" );
         final String type = "type";
@@ -498,7 +567,8 @@ public class NodeShardAllocationTest {
 
         NodeShardAllocation approximation =
                 new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
-                         timeService, graphFig, shardGroupCompaction, nodeShardCache );
+                         timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        nodeShardApproximation );
 
         final Id nodeId = IdGenerator.createId( "test" );
         final String type = "type";
@@ -638,7 +708,8 @@ public class NodeShardAllocationTest {
 
         NodeShardAllocation approximation =
                 new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
-                       timeService, graphFig, shardGroupCompaction, nodeShardCache );
+                       timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        nodeShardApproximation );
 
         final Id nodeId = IdGenerator.createId( "test" );
         final String type = "type";
@@ -732,7 +803,8 @@ public class NodeShardAllocationTest {
 
         NodeShardAllocation approximation =
                 new NodeShardAllocationImpl( edgeShardSerialization, edgeColumnFamilies, shardedEdgeSerialization,
-                      timeService, graphFig, shardGroupCompaction, nodeShardCache );
+                      timeService, graphFig, shardGroupCompaction, nodeShardCache,
+                        nodeShardApproximation );
 
 
         /**
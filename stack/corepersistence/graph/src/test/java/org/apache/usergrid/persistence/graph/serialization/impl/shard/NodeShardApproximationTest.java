@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.graph.serialization.impl.shard;
+
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.apache.usergrid.persistence.core.astyanax.ScopedRowKey;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.core.scope.ApplicationScopeImpl;
+import org.apache.usergrid.persistence.graph.GraphFig;
+import org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.NodeShardApproximationImpl;
+
+import com.google.common.base.Optional;
+import com.netflix.astyanax.MutationBatch;
+
+import static org.apache.usergrid.persistence.core.util.IdGenerator.createId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+public class NodeShardApproximationTest {
+
+
+    private GraphFig graphFig;
+
+    private NodeShardCounterSerialization nodeShardCounterSerialization;
+
+    private ApplicationScope scope;
+
+
+    @Before
+    public void setup() {
+        graphFig = mock( GraphFig.class );
+
+        //never flush on our own, the test flushes
+        when( graphFig.getCounterFlushCount() ).thenReturn( Long.MAX_VALUE );
+        when( graphFig.getCounterFlushInterval() ).thenReturn( 1000000l );
+        when( graphFig.getCounterFlushQueueSize() ).thenReturn( 10 );
+
+        nodeShardCounterSerialization = mock( NodeShardCounterSerialization.class );
+
+        scope = new ApplicationScopeImpl( createId( "application" ) );
+    }
+
+
+    @Test
+    public void buffersUntilFlush() throws Exception {
+        final NodeShardApproximation approximation =
+            new NodeShardApproximationImpl( graphFig, nodeShardCounterSerialization );
+
+        final Shard shard = new Shard( 1000l, 1000l, false );
+        final Shard otherShard = new Shard( 2000l, 1000l, false );
+        final DirectedEdgeMeta meta = DirectedEdgeMeta.fromSourceNode( createId( "source" ), "test" );
+
+        final ScopedRowKey<ShardKey> key =
+            ScopedRowKey.fromKey( scope.getApplication(), new ShardKey( shard.getShardIndex(), meta ) );
+
+        approximation.increment( scope, shard, 1, meta );
+        approximation.increment( scope, shard, 1, meta );
+        approximation.increment( scope, otherShard, 5, meta );
+        approximation.increment( scope, otherShard, -5, meta );
+
+        verify( nodeShardCounterSerialization, never() ).flush( anyMap() );
+
+
+        //the unflushed counts are added to the stored count
+        when( nodeShardCounterSerialization.getCount( key ) ).thenReturn( Optional.of( 10l ) );
+
+        assertEquals( 12l, approximation.getCount( scope, shard, meta ).get().longValue() );
+
+
+        //an unscanned shard has no count, whatever we've buffered
+        when( nodeShardCounterSerialization.getCount( key ) ).thenReturn( Optional.<Long>absent() );
+
+        assertFalse( approximation.getCount( scope, shard, meta ).isPresent() );
+
+
+        final ArgumentCaptor<Map> counts = ArgumentCaptor.forClass( Map.class );
+
+        when( nodeShardCounterSerialization.flush( counts.capture() ) ).thenReturn( mock( MutationBatch.class ) );
+
+        approximation.flush();
+
+        //changes that cancel out aren't written
+        assertEquals( 1, counts.getValue().size() );
+        assertEquals( 2l, counts.getValue().get( key ) );
+
+
+        //nothing left to flush
+        approximation.flush();
+
+        verify( nodeShardCounterSerialization ).flush( anyMap() );
+    }
+
+
+    @Test
+    public void neverBelowZero() throws Exception {
+        final NodeShardApproximation approximation =
+            new NodeShardApproximationImpl( graphFig, nodeShardCounterSerialization );
+
+        final Shard shard = new Shard( 1000l, 1000l, false );
+        final DirectedEdgeMeta meta = DirectedEdgeMeta.fromSourceNode( createId( "source" ), "test" );
+
+        final ScopedRowKey<ShardKey> key =
+            ScopedRowKey.fromKey( scope.getApplication(), new ShardKey( shard.getShardIndex(), meta ) );
+
+        when( nodeShardCounterSerialization.getCount( key ) ).thenReturn( Optional.of( 1l ) );
+
+        //the same edge deleted 3 times
+        approximation.increment( scope, shard, -3, meta );
+
+        assertEquals( 0l, approximation.getCount( scope, shard, meta ).get().longValue() );
+    }
+
+
+    @Test
+    public void cachesStoredCount() throws Exception {
+        when( graphFig.getShardCacheSize() ).thenReturn( 100l );
+        when( graphFig.getShardCacheTimeout() ).thenReturn( 1000000l );
+
+        final NodeShardApproximation approximation =
+            new NodeShardApproximationImpl( graphFig, nodeShardCounterSerialization );
+
+        final Shard shard = new Shard( 1000l, 1000l, false );
+        final DirectedEdgeMeta meta = DirectedEdgeMeta.fromSourceNode( createId( "source" ), "test" );
+
+        final ScopedRowKey<ShardKey> key =
+            ScopedRowKey.fromKey( scope.getApplication(), new ShardKey( shard.getShardIndex(), meta ) );
+
+        when( nodeShardCounterSerialization.getCount( key ) ).thenReturn( Optional.of( 10l ) );
+        when( nodeShardCounterSerialization.flush( anyMap() ) ).thenReturn( mock( MutationBatch.class ) );
+        when( nodeShardCounterSerialization.correct( any( ScopedRowKey.class ), any( Long.class ) ) )
+            .thenReturn( mock( MutationBatch.class ) );
+
+        assertEquals( 10l, approximation.getCount( scope, shard, meta ).get().longValue() );
+
+        //our own flush is added to the cached count
+        approximation.increment( scope, shard, 5, meta );
+        approximation.flush();
+
+        assertEquals( 15l, approximation.getCount( scope, shard, meta ).get().longValue() );
+
+        //and a scan replaces it
+        approximation.correct( scope, shard, 40, meta );
+
+        assertEquals( 40l, approximation.getCount( scope, shard, meta ).get().longValue() );
+
+        verify( nodeShardCounterSerialization, times( 1 ) ).getCount( key );
+    }
+
+
+    @Test
+    public void correctsToScannedCount() throws Exception {
+        final NodeShardApproximation approximation =
+            new NodeShardApproximationImpl( graphFig, nodeShardCounterSerialization );
+
+        final Shard shard = new Shard( 1000l, 1000l, false );
+        final DirectedEdgeMeta meta = DirectedEdgeMeta.fromSourceNode( createId( "source" ), "test" );
+
+        final ScopedRowKey<ShardKey> key =
+            ScopedRowKey.fromKey( scope.getApplication(), new ShardKey( shard.getShardIndex(), meta ) );
+
+        when( nodeShardCounterSerialization.getCount( key ) ).thenReturn( Optional.of( 100l ) );
+        when( nodeShardCounterSerialization.correct( any( ScopedRowKey.class ), any( Long.class ) ) )
+            .thenReturn( mock( MutationBatch.class ) );
+
+        approximation.increment( scope, shard, 3, meta );
+
+        //the scan found the 3 buffered edges, and 17 we missed
+        approximation.correct( scope, shard, 120, meta );
+
+        verify( nodeShardCounterSerialization ).correct( key, 17 );
+    }
+}
@@ -22,7 +22,11 @@
 package org.apache.usergrid.persistence.graph.serialization.impl.shard;
 
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
@@ -32,19 +36,34 @@ import org.junit.Test;
 
 import org.apache.usergrid.persistence.core.consistency.TimeService;
 import org.apache.usergrid.persistence.core.executor.TaskExecutorFactory;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.core.scope.ApplicationScopeImpl;
 import org.apache.usergrid.persistence.core.util.IdGenerator;
 import org.apache.usergrid.persistence.graph.GraphFig;
+import org.apache.usergrid.persistence.graph.MarkedEdge;
+import org.apache.usergrid.persistence.graph.SearchByEdgeType;
+import org.apache.usergrid.persistence.graph.impl.SimpleMarkedEdge;
 import org.apache.usergrid.persistence.graph.serialization.impl.shard.impl.ShardGroupCompactionImpl;
+import org.apache.usergrid.persistence.model.entity.Id;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
 
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.MutationBatch;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
@@ -64,6 +83,10 @@ public class ShardGroupCompactionTest {
 
         when( graphFig.getShardAuditWorkerQueueSize() ).thenReturn( 1000 );
 
+        when( graphFig.getShardCompactionWorkerCount() ).thenReturn( 2 );
+
+        when( graphFig.getShardCompactionRate() ).thenReturn( 1000000d );
+
 
 
         listeningExecutorService = MoreExecutors.listeningDecorator( TaskExecutorFactory
@@ -118,7 +141,8 @@ public class ShardGroupCompactionTest {
 
         ShardGroupCompactionImpl compaction =
             new ShardGroupCompactionImpl( timeService, graphFig, nodeShardAllocation, shardedEdgeSerialization,
-                edgeColumnFamilies, keyspace, edgeShardSerialization, asyncTaskExecutor, nodeShardCache );
+                edgeColumnFamilies, keyspace, edgeShardSerialization, asyncTaskExecutor, nodeShardCache,
+                mock( NodeShardApproximation.class ), mock( MetricsFactory.class ) );
 
         DirectedEdgeMeta directedEdgeMeta = DirectedEdgeMeta.fromSourceNode( IdGenerator.createId( "source" ), "test" );
 
@@ -133,6 +157,128 @@ public class ShardGroupCompactionTest {
     }
 
 
+    /**
+     * Tests that batches are copied to the target, then the source shard end is advanced past them, and only then are
+     * they deleted from the source
+     */
+    @Test
+    public void shouldHandOffBatchesInOrder() throws Exception {
+
+        final TimeService timeService = mock( TimeService.class );
+
+        final ShardedEdgeSerialization shardedEdgeSerialization = mock( ShardedEdgeSerialization.class );
+
+        final EdgeColumnFamilies edgeColumnFamilies = mock( EdgeColumnFamilies.class );
+
+        final Keyspace keyspace = mock( Keyspace.class );
+
+        final EdgeShardSerialization edgeShardSerialization = mock( EdgeShardSerialization.class );
+
+        final long delta = 10000;
+
+        final long createTime = 20000;
+
+        when( timeService.getCurrentTime() ).thenReturn( createTime + delta + 1 );
+
+        when( graphFig.getScanPageSize() ).thenReturn( 10 );
+
+        final Shard targetShard = new Shard( 2000, createTime, false );
+        final Shard sourceShard = new Shard( 1000, 5000, true );
+
+        final ShardEntryGroup group = new ShardEntryGroup( delta );
+        group.addShard( targetShard );
+        group.addShard( sourceShard );
+
+
+        //25 edges to move, then 1 edge that stays in the source
+        final Id sourceId = IdGenerator.createId( "source" );
+        final List<MarkedEdge> edges = new ArrayList<>();
+
+        for ( int i = 0; i < 25; i++ ) {
+            edges.add( new SimpleMarkedEdge( sourceId, "test", IdGenerator.createId( "target" ), 3000 - i, false ) );
+        }
+
+        edges.add( new SimpleMarkedEdge( sourceId, "test", IdGenerator.createId( "target" ), 1500, false ) );
+
+        when( shardedEdgeSerialization
+            .getEdgesFromSource( same( edgeColumnFamilies ), same( scope ), any( SearchByEdgeType.class ),
+                any( Collection.class ) ) ).thenReturn( edges.iterator() );
+
+
+        //every batch records when it is executed.  Batches are prepared in pairs of copy then delete
+        final List<String> events = Collections.synchronizedList( new ArrayList<>() );
+        final AtomicInteger prepared = new AtomicInteger();
+
+        when( keyspace.prepareMutationBatch() ).thenAnswer( invocation -> {
+            final int index = prepared.getAndIncrement();
+            return recordingBatch( events, ( index % 2 == 0 ? "copy-" : "delete-" ) + index / 2 );
+        } );
+
+        when( edgeShardSerialization.writeShardMeta( same( scope ), same( sourceShard ), any( DirectedEdgeMeta.class ) ) )
+            .thenAnswer( invocation -> recordingBatch( events,
+                "end-" + sourceShard.getShardEnd().get().timestamp ) );
+
+
+        final NodeShardApproximation nodeShardApproximation = mock( NodeShardApproximation.class );
+
+        ShardGroupCompactionImpl compaction =
+            new ShardGroupCompactionImpl( timeService, graphFig, mock( NodeShardAllocation.class ),
+                shardedEdgeSerialization, edgeColumnFamilies, keyspace, edgeShardSerialization, asyncTaskExecutor,
+                mock( NodeShardCache.class ), nodeShardApproximation, mockMetrics() );
+
+        final DirectedEdgeMeta edgeMeta = DirectedEdgeMeta.fromSourceNode( sourceId, "test" );
+
+        final ShardGroupCompactionImpl.CompactionResult result = compaction.compact( this.scope, edgeMeta, group );
+
+        assertEquals( 25, result.copiedEdges );
+
+        final String[] shardEnds = { "end-2991", "end-2981", "end-1500" };
+
+        for ( int batch = 0; batch < shardEnds.length; batch++ ) {
+            final int copied = events.indexOf( "copy-" + batch );
+            final int ended = events.indexOf( shardEnds[batch] );
+            final int deleted = events.indexOf( "delete-" + batch );
+
+            assertTrue( "batch " + batch + " copied before the shard end moves", copied > -1 && copied < ended );
+            assertTrue( "batch " + batch + " deleted after the shard end moves", ended < deleted );
+
+            if ( batch > 0 ) {
+                assertTrue( "shard end only moves forward", events.indexOf( shardEnds[batch - 1] ) < ended );
+            }
+        }
+
+        //the counts of the moved edges follow them into the target
+        verify( nodeShardApproximation, times( 2 ) ).increment( scope, targetShard, 10, edgeMeta );
+        verify( nodeShardApproximation ).increment( scope, targetShard, 5, edgeMeta );
+        verify( nodeShardApproximation, times( 2 ) ).increment( scope, sourceShard, -10, edgeMeta );
+        verify( nodeShardApproximation ).increment( scope, sourceShard, -5, edgeMeta );
+    }
+
+
+    private static MutationBatch recordingBatch( final List<String> events, final String name ) throws Exception {
+        final MutationBatch batch = mock( MutationBatch.class );
+
+        when( batch.withAtomicBatch( true ) ).thenReturn( batch );
+        when( batch.execute() ).thenAnswer( invocation -> {
+            events.add( name );
+            return null;
+        } );
+
+        return batch;
+    }
+
+
+    private static MetricsFactory mockMetrics() {
+        final MetricsFactory metricsFactory = mock( MetricsFactory.class );
+
+        when( metricsFactory.getTimer( any( Class.class ), any( String.class ) ) ).thenReturn( new Timer() );
+        when( metricsFactory.getCounter( any( Class.class ), any( String.class ) ) ).thenReturn( new Counter() );
+        when( metricsFactory.getMeter( any( Class.class ), any( String.class ) ) ).thenReturn( new Meter() );
+
+        return metricsFactory;
+    }
+
+
     //    /**
     //     * Tests that when we copy edges, we do not actually run the compaction,
     // we can only run it after we get nothing
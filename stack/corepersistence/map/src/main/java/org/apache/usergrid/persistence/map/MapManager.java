@@ -30,6 +30,12 @@ import java.util.UUID;
 public interface MapManager {
 
 
+    /**
+     * Get the scope of the map
+     */
+    MapScope getScope();
+
+
     /**
      * Return the string, null if not found
      */
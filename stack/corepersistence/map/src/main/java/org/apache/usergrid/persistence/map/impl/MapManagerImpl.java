@@ -52,6 +52,12 @@ public class MapManagerImpl implements MapManager {
     }
 
 
+    @Override
+    public MapScope getScope() {
+        return scope;
+    }
+
+
     @Override
     public String getString( final String key ) {
         return mapSerialization.getString( scope, key );
@@ -42,7 +42,7 @@ public class EntityMap extends HashMap<String,Object> {
      * @param fieldValue
      * @return
      */
-    public static boolean isLocationField(Map<String, ?> fieldValue) {
+    public static boolean isLocationField(Map<?, ?> fieldValue) {
 
         //short circuit since valid location objects contain only 2 properties (latitude and longitude)
         if (fieldValue.size() != 2) {
@@ -52,7 +52,7 @@ public class EntityMap extends HashMap<String,Object> {
         // we need to make sure that latitude and longitude are numbers or strings that can be parsed as a number
         if (fieldValue.containsKey(EntityToMapConverter.LAT) && fieldValue.containsKey(EntityToMapConverter.LON)){
 
-            for(Map.Entry<String,?> value : fieldValue.entrySet()){
+            for(Map.Entry<?,?> value : fieldValue.entrySet()){
 
                 if(!(value.getValue() instanceof Number) && !isDouble(String.valueOf(value.getValue()))){
 
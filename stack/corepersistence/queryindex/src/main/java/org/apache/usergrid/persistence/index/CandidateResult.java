@@ -20,10 +20,14 @@
 package org.apache.usergrid.persistence.index;
 
 
+import java.util.Map;
 import java.util.UUID;
 
 import org.apache.usergrid.persistence.core.entity.EntityVersion;
 import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.field.Field;
+
+import com.google.common.base.Optional;
 
 
 /**
@@ -33,6 +37,7 @@ public class CandidateResult implements EntityVersion {
     private final Id entityId;
     private final UUID entityVersion;
     private final String docId;
+    private Optional<Map<String, Field>> projection = Optional.absent();
 
     public CandidateResult( Id entityId, UUID entityVersion, String docId ) {
         this.entityId = entityId;
@@ -55,6 +60,23 @@ public class CandidateResult implements EntityVersion {
     }
 
 
+    /**
+     * Set the selected fields read from the index for this version of the entity
+     */
+    public void initializeProjection( final Map<String, Field> fields ) {
+        this.projection = Optional.of( fields );
+    }
+
+
+    /**
+     * Get every selected field of this version of the entity, keyed by field name.  Absent when the index could not
+     * answer all of the selects, and the entity must be loaded
+     */
+    public Optional<Map<String, Field>> getProjection() {
+        return projection;
+    }
+
+
     @Override
     public boolean equals( final Object o ) {
         if ( this == o ) {
@@ -21,6 +21,7 @@ package org.apache.usergrid.persistence.index;
 
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import com.google.common.base.Optional;
@@ -39,6 +40,8 @@ public class CandidateResults implements Iterable<CandidateResult> {
     private final List<CandidateResult> candidates;
     private final Collection<SelectFieldMapping> getFieldMappings;
 
+    private List<SearchSeek> seeks = Collections.emptyList();
+
     public CandidateResults( List<CandidateResult> candidates, final Collection<SelectFieldMapping> getFieldMappings) {
         this.candidates = candidates;
         this.getFieldMappings = getFieldMappings;
@@ -68,6 +71,34 @@ public class CandidateResults implements Iterable<CandidateResult> {
 
 
 
+    /**
+     * Set the seek of every candidate, in candidate order
+     */
+    public void initializeSeeks( final List<SearchSeek> seeks ) {
+        this.seeks = seeks;
+    }
+
+
+    /**
+     * Return true if searching can resume behind any candidate with its seek instead of an offset
+     */
+    public boolean hasSeeks() {
+        return !seeks.isEmpty();
+    }
+
+
+    /**
+     * Get the seek of the candidate at the index.  Absent when the query is not in the default sort order
+     */
+    public Optional<SearchSeek> getSeek( final int index ) {
+        if ( seeks.isEmpty() ) {
+            return Optional.absent();
+        }
+
+        return Optional.of( seeks.get( index ) );
+    }
+
+
     public int size() {
         return candidates.size();
     }
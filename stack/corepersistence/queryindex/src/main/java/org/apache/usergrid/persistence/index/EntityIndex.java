@@ -52,6 +52,53 @@ public interface EntityIndex extends CPManager {
         final String writeConsistency
     );
 
+    /**
+     * Create an index and add it to the write alias beside the current index, so new documents are written to both
+     * while the index is rebuilt.  Reads are still served by the current index until {@link #swapIndex(String)}
+     *
+     * @param indexName        index name
+     * @param shards
+     * @param replicas
+     * @param writeConsistency
+     */
+    void addRebuildIndex(
+        final String indexName,
+        final int shards,
+        final int replicas,
+        final String writeConsistency
+    );
+
+    /**
+     * Abandon a rebuild before {@link #swapIndex(String)}, removing the index from the write alias so new documents
+     * are only written to the current index again.  The index itself is left in place.
+     *
+     * @param indexName The index given to {@link #addRebuildIndex(String, int, int, String)}
+     */
+    void removeRebuildIndex( final String indexName );
+
+    /**
+     * Move the read and write aliases to the index in a single alias update, removing them from every other index
+     *
+     * @param indexName The rebuilt index
+     * @return The indexes the aliases were removed from
+     */
+    String[] swapIndex( final String indexName );
+
+    /**
+     * Delete an index no alias points to anymore
+     *
+     * @param indexName The index to delete
+     * @return true if the index was deleted, false if it is still used by an alias
+     */
+    boolean retireIndex( final String indexName );
+
+    /**
+     * Count the documents of this application in an index
+     *
+     * @param indexName The index to count in, which doesn't need to be behind an alias
+     */
+    long getDocumentCount( final String indexName );
+
     /**
      * Refresh the index.
      */
@@ -103,6 +150,21 @@ public interface EntityIndex extends CPManager {
                             final int limit, final int offset);
 
 
+    /**
+     * Same as search, but resumes directly behind the candidate the seek was taken from instead of skipping an
+     * offset.  Only queries in the default sort order return seeks, see {@link CandidateResults#getSeek(int)}
+     *
+     * @param searchEdge  The edge to search on
+     * @param searchTypes The search types to search
+     * @param query       The query to execute
+     * @param limit       The limit of values to return
+     * @param seek        The seek of the last candidate already returned
+     * @return
+     */
+    CandidateResults search(final SearchEdge searchEdge, final SearchTypes searchTypes, final String query,
+                            final int limit, final SearchSeek seek);
+
+
     /**
      * Same as search, just iterates all documents that match the index edge exactly.
      *
@@ -19,7 +19,6 @@ package org.apache.usergrid.persistence.index;/*
 
 
 
-import java.util.Set;
 import java.util.UUID;
 
 import org.apache.usergrid.persistence.index.impl.IndexOperationMessage;
@@ -56,7 +55,14 @@ public interface EntityIndexBatch {
     EntityIndexBatch deindex( final SearchEdge searchEdge, final CandidateResult result );
 
 
-    EntityIndexBatch index(final IndexEdge indexEdge, final Entity entity, final Optional<Set<String>> fieldsToIndex );
+    /**
+     * Create index for Entity, indexing only some of its fields
+     *
+     * @param indexEdge  The edge to index the document into
+     * @param entity     Entity to be indexed.
+     * @param fieldsToIndex The fields to index, or absent to index every field
+     */
+    EntityIndexBatch index(final IndexEdge indexEdge, final Entity entity, final Optional<IndexFieldFilter> fieldsToIndex );
 
     /**
      * Remove index of entity.
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.index;
+
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+
+/**
+ * The fields of a collection schema that should be indexed, compiled into a trie of field name segments.  A field is
+ * indexed if its flattened name is one of the schema fields, or is nested below one of them.  So a schema field of
+ * "one.two" keeps "one.two" and "one.two.three", but not "one" or "one.twoexample".
+ *
+ * Compile a filter once per schema and share it, it is immutable.
+ */
+public final class IndexFieldFilter {
+
+    private final Node root;
+
+
+    private IndexFieldFilter( final Node root ) {
+        this.root = root;
+    }
+
+
+    /**
+     * Compile the fields to index into a filter
+     *
+     * @param fieldsToIndex The flattened names of the fields to index
+     */
+    public static IndexFieldFilter compile( final Collection<String> fieldsToIndex ) {
+        Preconditions.checkNotNull( fieldsToIndex, "fieldsToIndex is required" );
+
+        final Node root = new Node();
+
+        for ( final String field : fieldsToIndex ) {
+            Node node = root;
+
+            for ( final String segment : field.split( "\\.", -1 ) ) {
+                node = node.children.computeIfAbsent( segment, key -> new Node() );
+            }
+
+            node.indexed = true;
+        }
+
+        return new IndexFieldFilter( root );
+    }
+
+
+    /**
+     * Get the root of the filter, which matches the top level fields of the entity
+     */
+    public Node root() {
+        return root;
+    }
+
+
+    /**
+     * Return true if the field with the flattened name should be indexed
+     */
+    public boolean accepts( final String fieldName ) {
+        final Node node = root.child( fieldName );
+        return node != null && node.indexed;
+    }
+
+
+    /**
+     * A position in the filter.  Walk the filter along with the entity so each field name is only looked up once,
+     * and whole objects that can't contain an indexed field are skipped.
+     */
+    public static final class Node {
+
+        /**
+         * Everything below a field that is indexed is indexed too
+         */
+        private static final Node ALL = new Node();
+
+        static {
+            ALL.indexed = true;
+        }
+
+        private final Map<String, Node> children = new HashMap<>();
+
+        private boolean indexed;
+
+
+        private Node() {
+        }
+
+
+        /**
+         * Get the node for a field nested in this one.  The field name may itself contain separators.
+         *
+         * @return The node, or null if neither the field nor anything nested in it is indexed
+         */
+        public Node child( final String fieldName ) {
+            Node node = this;
+            int start = 0;
+
+            while ( node != null && node != ALL ) {
+                if ( node.indexed ) {
+                    return ALL;
+                }
+
+                final int end = fieldName.indexOf( '.', start );
+
+                if ( end < 0 ) {
+                    return node.children.get( start == 0 ? fieldName : fieldName.substring( start ) );
+                }
+
+                node = node.children.get( fieldName.substring( start, end ) );
+                start = end + 1;
+            }
+
+            return node;
+        }
+
+
+        /**
+         * Return true if a value at this node should be indexed
+         */
+        public boolean isIndexed() {
+            return indexed;
+        }
+    }
+}
@@ -64,6 +64,22 @@ public interface IndexFig extends GuicyFig {
 
     String ELASTICSEARCH_VERSION_QUERY_LIMIT = "elasticsearch.version_query_limit";
 
+    String INDEX_BATCH_MAX_BYTES = "elasticsearch.batch.max_bytes";
+
+    String INDEX_BUFFER_SIZE = "elasticsearch.buffer_size";
+
+    String INDEX_BUFFER_TIMEOUT = "elasticsearch.buffer_timeout";
+
+    String INDEX_BUFFER_OFFER_TIMEOUT = "elasticsearch.buffer_offer_timeout";
+
+    String QUERY_PROJECTION = "elasticsearch.query.projection";
+
+    String QUERY_PLAN_CACHE_SIZE = "elasticsearch.query.plan_cache_size";
+
+    String INDEX_SKIP_UNCHANGED = "elasticsearch.index.skip_unchanged";
+
+    String INDEX_FINGERPRINT_TTL = "elasticsearch.index.fingerprint_ttl";
+
 
     /**
      * Comma-separated list of Elasticsearch hosts.
@@ -208,4 +224,64 @@ public interface IndexFig extends GuicyFig {
     @Default("1000")
     @Key( ELASTICSEARCH_VERSION_QUERY_LIMIT )
     int getVersionQueryLimit();
+
+    /**
+     * The maximum estimated size in bytes of a single bulk request sent to Elasticsearch.
+     */
+    @Default( "5242880" )
+    @Key( INDEX_BATCH_MAX_BYTES )
+    long getIndexBatchMaxBytes();
+
+    /**
+     * The longest time an index operation waits for others to share its bulk request. (in milliseconds)
+     */
+    @Default( "250" )
+    @Key( INDEX_BUFFER_TIMEOUT )
+    long getIndexBatchLinger();
+
+    /**
+     * The maximum number of index operations waiting to be sent to Elasticsearch across all messages.
+     */
+    @Default( "10000" )
+    @Key( INDEX_BUFFER_SIZE )
+    int getIndexBufferSize();
+
+    /**
+     * How long to wait for room in a full index buffer before failing the message. (in milliseconds)
+     */
+    @Default( "10000" )
+    @Key( INDEX_BUFFER_OFFER_TIMEOUT )
+    long getIndexBufferTimeout();
+
+    /**
+     * When true, select queries read long, double, boolean and null fields from the index instead of loading the
+     * entity.  Arrays holding a single such value are returned as the value itself.
+     */
+    @Default( "false" )
+    @Key( QUERY_PROJECTION )
+    boolean isQueryProjectionEnabled();
+
+    /**
+     * The number of parsed query shapes to keep, keyed by the query with its literals removed, and of the search
+     * templates built from them.  Set to 0 to parse and visit every query
+     */
+    @Default( "1000" )
+    @Key( QUERY_PLAN_CACHE_SIZE )
+    int getQueryPlanCacheSize();
+
+    /**
+     * When true, the fingerprint of each document written is recorded with its entity version, and a document whose
+     * recorded fingerprint is unchanged is not written again.
+     */
+    @Default( "false" )
+    @Key( INDEX_SKIP_UNCHANGED )
+    boolean isSkipUnchangedEnabled();
+
+    /**
+     * How long, in seconds, the fingerprint of a written document is kept.  Until it expires the document is only
+     * written again if it changes.
+     */
+    @Default( "86400" )
+    @Key( INDEX_FINGERPRINT_TTL )
+    int getIndexFingerprintTtl();
 }
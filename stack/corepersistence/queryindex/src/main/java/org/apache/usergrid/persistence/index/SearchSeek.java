@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.index;
+
+
+import java.util.UUID;
+
+import org.apache.usergrid.persistence.model.entity.Id;
+
+import com.google.common.base.Preconditions;
+
+
+/**
+ * The sort values of a candidate in the default sort order, edge timestamp descending then entity id and entity
+ * version ascending.
+ * Searching after a seek resumes directly behind that candidate, so deep pages cost the same as the first page.
+ */
+public class SearchSeek {
+
+    private final long edgeTimestamp;
+    private final Id entityId;
+    private final UUID entityVersion;
+
+
+    public SearchSeek( final long edgeTimestamp, final Id entityId, final UUID entityVersion ) {
+        Preconditions.checkNotNull( entityId, "entityId is required" );
+        Preconditions.checkNotNull( entityVersion, "entityVersion is required" );
+
+        this.edgeTimestamp = edgeTimestamp;
+        this.entityId = entityId;
+        this.entityVersion = entityVersion;
+    }
+
+
+    /**
+     * The edge timestamp of the candidate
+     */
+    public long getEdgeTimestamp() {
+        return edgeTimestamp;
+    }
+
+
+    /**
+     * The id of the candidate, used to break ties between equal edge timestamps
+     */
+    public Id getEntityId() {
+        return entityId;
+    }
+
+
+    /**
+     * The version of the candidate, used to break ties between documents of the same entity
+     */
+    public UUID getEntityVersion() {
+        return entityVersion;
+    }
+
+
+    @Override
+    public boolean equals( final Object o ) {
+        if ( this == o ) {
+            return true;
+        }
+        if ( !( o instanceof SearchSeek ) ) {
+            return false;
+        }
+
+        final SearchSeek that = ( SearchSeek ) o;
+
+        return edgeTimestamp == that.edgeTimestamp && entityId.equals( that.entityId ) && entityVersion
+            .equals( that.entityVersion );
+    }
+
+
+    @Override
+    public int hashCode() {
+        int result = ( int ) ( edgeTimestamp ^ ( edgeTimestamp >>> 32 ) );
+        result = 31 * result + entityId.hashCode();
+        result = 31 * result + entityVersion.hashCode();
+        return result;
+    }
+
+
+    @Override
+    public String toString() {
+        return "SearchSeek{" +
+            "edgeTimestamp=" + edgeTimestamp +
+            ", entityId=" + entityId +
+            ", entityVersion=" + entityVersion +
+            '}';
+    }
+}
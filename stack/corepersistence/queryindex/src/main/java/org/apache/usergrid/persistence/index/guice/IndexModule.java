@@ -19,10 +19,12 @@
 
 package org.apache.usergrid.persistence.index.guice;
 
+import com.google.inject.Key;
 import com.google.inject.TypeLiteral;
 import com.google.inject.multibindings.Multibinder;
 import org.apache.usergrid.persistence.core.migration.data.DataMigration;
 import org.apache.usergrid.persistence.core.migration.data.MigrationPlugin;
+import org.apache.usergrid.persistence.core.migration.schema.Migration;
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.index.*;
 import com.google.inject.AbstractModule;
@@ -53,6 +55,12 @@ public abstract class IndexModule extends AbstractModule {
 
         bind(IndexProducer.class).to(EsIndexProducerImpl.class).asEagerSingleton();
 
+        //fingerprints of the documents we've written, so unchanged ones aren't written again
+        bind( IndexFingerprintSerialization.class ).to( IndexFingerprintSerializationImpl.class );
+
+        Multibinder<Migration> migrationBinding = Multibinder.newSetBinder( binder(), Migration.class );
+        migrationBinding.addBinding().to( Key.get( IndexFingerprintSerialization.class ) );
+
 
         //wire up the edg migration. A no-op ATM, but retained for future development
         Multibinder<DataMigration> dataMigrationMultibinder =
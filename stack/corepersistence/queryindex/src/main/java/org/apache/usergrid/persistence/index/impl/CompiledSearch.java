@@ -0,0 +1,240 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ *
+ */
+package org.apache.usergrid.persistence.index.impl;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.TermFilterBuilder;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.GeoDistanceSortBuilder;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+
+import org.apache.usergrid.persistence.index.exceptions.IndexException;
+import org.apache.usergrid.persistence.index.query.ParsedQuery;
+import org.apache.usergrid.persistence.index.query.SortPredicate;
+import org.apache.usergrid.persistence.index.query.tree.QueryVisitor;
+
+import com.google.common.base.Optional;
+
+import static org.apache.usergrid.persistence.index.impl.SortBuilder.sortPropertyTermFilter;
+
+
+/**
+ * The parts of a search request that come from the parsed query: the query and filter from the grammar, and the sorts
+ */
+final class CompiledSearch {
+
+    private final Optional<QueryBuilder> queryBuilder;
+    private final Optional<FilterBuilder> filterBuilder;
+    private final List<SortBuilder> sorts;
+    private final boolean defaultSort;
+    private final boolean geoSorted;
+
+
+    CompiledSearch( final Optional<QueryBuilder> queryBuilder, final Optional<FilterBuilder> filterBuilder,
+                    final List<SortBuilder> sorts, final boolean defaultSort, final boolean geoSorted ) {
+        this.queryBuilder = queryBuilder;
+        this.filterBuilder = filterBuilder;
+        this.sorts = sorts;
+        this.defaultSort = defaultSort;
+        this.geoSorted = geoSorted;
+    }
+
+
+    /**
+     * Visit the query, and create its sorts
+     */
+    static CompiledSearch visit( final ParsedQuery query ) {
+        final QueryVisitor visitor = visitParsedQuery( query );
+
+        //if we have a geo field, sort by closest to farthest by default
+        final GeoSortFields geoFields = visitor.getGeoSorts();
+
+        final List<SortBuilder> sorts = new ArrayList<>();
+
+        //no sort predicates, sort by edge time descending, entity id second
+        if ( query.getSortPredicates().size() == 0 ) {
+            applyDefaultSortPredicates( sorts, geoFields );
+        }
+        else {
+            applySortPredicates( sorts, query, geoFields );
+        }
+
+        return new CompiledSearch( visitor.getQueryBuilder(), visitor.getFilterBuilder(),
+            Collections.unmodifiableList( sorts ), query.getSortPredicates().size() == 0 && geoFields.isEmpty(),
+            !geoFields.isEmpty() );
+    }
+
+
+    /**
+     * Get the query from the grammar
+     */
+    Optional<QueryBuilder> getQueryBuilder() {
+        return queryBuilder;
+    }
+
+
+    /**
+     * Get the filter from the grammar
+     */
+    Optional<FilterBuilder> getFilterBuilder() {
+        return filterBuilder;
+    }
+
+
+    /**
+     * Get the sorts to apply in order
+     */
+    List<SortBuilder> getSorts() {
+        return sorts;
+    }
+
+
+    /**
+     * Return true if results are in the default sort order, which is the only order we can seek in
+     */
+    boolean isDefaultSort() {
+        return defaultSort;
+    }
+
+
+    /**
+     * Return true if the query sorts by distance from a point
+     */
+    boolean isGeoSorted() {
+        return geoSorted;
+    }
+
+
+    /**
+     * Perform our visit of the query once for efficiency
+     */
+    private static QueryVisitor visitParsedQuery( final ParsedQuery parsedQuery ) {
+        QueryVisitor v = new EsQueryVistor();
+
+        if ( parsedQuery.getRootOperand() != null ) {
+
+            try {
+                parsedQuery.getRootOperand().visit( v );
+            }
+            catch ( IndexException ex ) {
+                throw new RuntimeException( "Error building ElasticSearch query", ex );
+            }
+        }
+
+        return v;
+    }
+
+
+    /**
+     * Apply our default sort predicate logic
+     */
+    private static void applyDefaultSortPredicates( final List<SortBuilder> sorts, final GeoSortFields geoFields ) {
+        //we have geo fields, sort through them in visit order
+        for ( String geoField : geoFields.fields() ) {
+
+            final GeoDistanceSortBuilder geoSort = geoFields.applyOrder( geoField, SortOrder.ASC );
+
+            sorts.add( geoSort );
+        }
+
+        //now sort by edge timestamp, then entity id
+        //sort by the edge timestamp
+        sorts.add( SortBuilders.fieldSort( IndexingUtils.EDGE_TIMESTAMP_FIELDNAME ).order( SortOrder.DESC ) );
+
+        //sort by the entity id if our times are equal
+        sorts.add( SortBuilders.fieldSort( IndexingUtils.ENTITY_ID_FIELDNAME ).order( SortOrder.ASC ) );
+
+        //sort by the version last, so every document has a unique position we can seek past
+        sorts.add( SortBuilders.fieldSort( IndexingUtils.ENTITY_VERSION_FIELDNAME ).order( SortOrder.ASC ) );
+    }
+
+
+    /**
+     * Invoked when there are sort predicates
+     */
+    private static void applySortPredicates( final List<SortBuilder> sorts, final ParsedQuery query,
+                                             final GeoSortFields geoFields ) {
+
+
+        //we have sort predicates, sort them
+        for ( SortPredicate sp : query.getSortPredicates() ) {
+
+
+            // we do not know the type of the "order by" property and so we do not know what
+            // type prefix to use. So, here we add an order by clause for every possible type
+            // that you can order by: string, number and boolean and we ask ElasticSearch
+            // to ignore any fields that are not present.
+            final SortOrder order = sp.getDirection().toEsSort();
+            final String propertyName = sp.getPropertyName();
+
+
+            //if the user specified a geo field in their sort, then honor their sort order and use the point they
+            // specified
+            if ( geoFields.contains( propertyName ) ) {
+                final GeoDistanceSortBuilder geoSort = geoFields.applyOrder( propertyName, SortOrder.ASC );
+                sorts.add( geoSort );
+            }
+
+            //apply regular sort logic, since this is not a geo point
+            else {
+
+
+                //sort order is arbitrary if the user changes data types.  Double, long, string, boolean are supported
+                //default sort types
+
+                sorts.add( createSort( order, IndexingUtils.FIELD_DOUBLE_NESTED, propertyName ) );
+
+                sorts.add( createSort( order, IndexingUtils.FIELD_LONG_NESTED, propertyName ) );
+
+                /**
+                 * We always want to sort by the unanalyzed string field to ensure correct ordering
+                 */
+                sorts.add( createSort( order, IndexingUtils.FIELD_STRING_NESTED_UNANALYZED, propertyName ) );
+
+                sorts.add( createSort( order, IndexingUtils.FIELD_BOOLEAN_NESTED, propertyName ) );
+            }
+        }
+    }
+
+
+    /**
+     * Create a sort for the property name and field name specified
+     *
+     * @param sortOrder The sort order
+     * @param fieldName The name of the field for the type
+     * @param propertyName The property name the user specified for the sort
+     */
+    private static FieldSortBuilder createSort( final SortOrder sortOrder, final String fieldName,
+                                                final String propertyName ) {
+
+        final TermFilterBuilder propertyFilter = sortPropertyTermFilter( propertyName );
+
+
+        return SortBuilders.fieldSort( fieldName ).order( sortOrder ).setNestedFilter( propertyFilter );
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.index.impl;
+
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.index.IndexEdge;
+import org.apache.usergrid.persistence.index.IndexFieldFilter;
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.entity.EntityMap;
+import org.apache.usergrid.persistence.model.entity.Id;
+
+import com.google.common.base.Optional;
+import com.google.common.hash.Hashing;
+
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.APPLICATION_ID_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.EDGE_NAME_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.EDGE_NODE_ID_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.EDGE_NODE_TYPE_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.EDGE_SEARCH_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.EDGE_TIMESTAMP_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.ENTITY_FIELDS;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.ENTITY_ID_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.ENTITY_SIZE_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.ENTITY_TYPE_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.ENTITY_VERSION_FIELDNAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.FIELD_BOOLEAN;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.FIELD_DOUBLE;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.FIELD_LOCATION;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.FIELD_LONG;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.FIELD_NAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.FIELD_NULL;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.FIELD_STRING;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.applicationId;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.entityId;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.getType;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.nodeId;
+
+
+/**
+ * Writes an entity straight into the source of its elasticsearch document.  Produces the same document as {@link
+ * EntityToMapConverter}, without building a map per field or a map for the document that elasticsearch then has to
+ * serialize again.  Fields the schema doesn't index are skipped as the entity is walked.
+ */
+public final class EntityDocumentWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger( EntityDocumentWriter.class );
+
+    /**
+     * Where the fingerprint records the index, which isn't a field of the document
+     */
+    private static final String FINGERPRINT_INDEX_FIELDNAME = "index";
+
+    private final XContentBuilder builder;
+
+
+    private EntityDocumentWriter( final XContentBuilder builder ) {
+        this.builder = builder;
+    }
+
+
+    /**
+     * Write the document for the entity on the edge
+     *
+     * @param applicationScope The application of the entity
+     * @param indexEdge The edge this entity is indexed on
+     * @param entity The entity
+     * @param fieldFilter The fields to index, or absent to index every field
+     */
+    public static BytesReference write( final ApplicationScope applicationScope, final IndexEdge indexEdge,
+                                        final Entity entity, final Optional<IndexFieldFilter> fieldFilter ) {
+
+        try {
+            final XContentBuilder builder = XContentFactory.contentBuilder( Requests.INDEX_CONTENT_TYPE );
+
+            new EntityDocumentWriter( builder ).writeDocument( applicationScope, indexEdge, entity, fieldFilter );
+
+            return builder.bytes();
+        }
+        catch ( IOException e ) {
+            throw new RuntimeException( "Unable to write index document for entity " + entity.getId(), e );
+        }
+    }
+
+
+    /**
+     * Get the fingerprint of the document for the entity on the edge, without writing the document.  Entity versions
+     * never change and the document id holds the version and the edge, so the fingerprint only covers the rest of the
+     * document: the index it's written to, the edge timestamp and the fields the schema indexes.
+     *
+     * @param writeAlias The alias the document is written to
+     * @param indexEdge The edge this entity is indexed on
+     * @param entity The entity
+     * @param fieldFilter The fields to index, or absent to index every field
+     */
+    public static String fingerprint( final String writeAlias, final IndexEdge indexEdge, final Entity entity,
+                                      final Optional<IndexFieldFilter> fieldFilter ) {
+
+        try {
+            final XContentBuilder builder = XContentFactory.contentBuilder( Requests.INDEX_CONTENT_TYPE );
+
+            builder.startObject();
+            builder.field( FINGERPRINT_INDEX_FIELDNAME, writeAlias );
+            builder.field( EDGE_TIMESTAMP_FIELDNAME, indexEdge.getTimestamp() );
+            builder.field( ENTITY_SIZE_FIELDNAME, entity.getSize() );
+
+            new EntityDocumentWriter( builder ).writeFields( entity, fieldFilter );
+
+            builder.endObject();
+
+            final BytesArray bytes = builder.bytes().toBytesArray();
+
+            return Hashing.murmur3_128().hashBytes( bytes.array(), bytes.arrayOffset(), bytes.length() ).toString();
+        }
+        catch ( IOException e ) {
+            throw new RuntimeException( "Unable to fingerprint index document for entity " + entity.getId(), e );
+        }
+    }
+
+
+    private void writeDocument( final ApplicationScope applicationScope, final IndexEdge indexEdge,
+                                final Entity entity, final Optional<IndexFieldFilter> fieldFilter )
+        throws IOException {
+
+        final Id entityId = entity.getId();
+
+        builder.startObject();
+
+        /***
+         * Add our static fields for easier admin/debugging/reporting
+         ****/
+
+        builder.field( ENTITY_ID_FIELDNAME, entityId( entityId ) );
+        builder.field( ENTITY_VERSION_FIELDNAME, entity.getVersion().toString() );
+        builder.field( ENTITY_TYPE_FIELDNAME, getType( applicationScope, entityId ) );
+        builder.field( APPLICATION_ID_FIELDNAME, applicationId( applicationScope.getApplication() ) );
+        builder.field( EDGE_NODE_ID_FIELDNAME, nodeId( indexEdge.getNodeId() ) );
+        builder.field( EDGE_NODE_TYPE_FIELDNAME, indexEdge.getNodeType().toString() );
+        builder.field( EDGE_NAME_FIELDNAME, indexEdge.getEdgeName() );
+        builder.field( EDGE_TIMESTAMP_FIELDNAME, indexEdge.getTimestamp() );
+        builder.field( ENTITY_SIZE_FIELDNAME, entity.getSize() );
+
+        //add the context for filtering later
+        builder.field( EDGE_SEARCH_FIELDNAME, IndexingUtils.createContextName( applicationScope, indexEdge ) );
+
+        writeFields( entity, fieldFilter );
+
+        builder.endObject();
+    }
+
+
+    /**
+     * Write the array of indexed fields
+     */
+    private void writeFields( final Entity entity, final Optional<IndexFieldFilter> fieldFilter ) throws IOException {
+
+        //the entity map still resolves serialized objects for us, but we no longer copy it into field maps
+        final EntityMap entityMap = EntityMap.fromEntity( entity );
+
+        builder.startArray( ENTITY_FIELDS );
+
+        final IndexFieldFilter.Node root = fieldFilter.isPresent() ? fieldFilter.get().root() : null;
+
+        writeObject( null, entityMap, root );
+
+        builder.endArray();
+    }
+
+
+    /**
+     * Write the fields of an object
+     *
+     * @param parentName The flattened name of the object, null for the entity itself
+     * @param object The object to write
+     * @param parentNode The filter node of the object, null if every field is indexed
+     */
+    private void writeObject( final String parentName, final Map<?, ?> object,
+                              final IndexFieldFilter.Node parentNode ) throws IOException {
+
+        for ( final Map.Entry<?, ?> field : object.entrySet() ) {
+
+            final String fieldName = String.valueOf( field.getKey() ).toLowerCase();
+
+            IndexFieldFilter.Node node = null;
+
+            if ( parentNode != null ) {
+                node = parentNode.child( fieldName );
+
+                //nothing in here is indexed, don't bother walking it
+                if ( node == null ) {
+                    continue;
+                }
+            }
+
+            final String name = parentName == null ? fieldName : parentName + IndexingUtils.FIELD_SEPERATOR + fieldName;
+
+            writeValue( name, field.getValue(), node, false );
+        }
+    }
+
+
+    /**
+     * Write a value of any type
+     *
+     * @param inCollection True if the value is an element of a collection
+     */
+    private void writeValue( final String name, final Object value, final IndexFieldFilter.Node node,
+                             final boolean inCollection ) throws IOException {
+
+        if ( value instanceof Map ) {
+            final Map<?, ?> map = ( Map<?, ?> ) value;
+
+            if ( EntityMap.isLocationField( map ) ) {
+                if ( isIndexed( node ) ) {
+                    writeLocation( name, map );
+                }
+                return;
+            }
+
+            writeObject( name, map, node );
+            return;
+        }
+
+        if ( value instanceof Collection ) {
+            //we don't support indexing 2 dimensional arrays.  Short circuit with a warning so we can track operationally
+            if ( inCollection ) {
+                logger.warn( "Encountered 2 collections consecutively.  N+1 dimensional arrays are unsupported, "
+                    + "only arrays of depth 1 are supported" );
+                return;
+            }
+
+            for ( final Object element : ( Collection<?> ) value ) {
+                writeValue( name, element, node, true );
+            }
+            return;
+        }
+
+        if ( isIndexed( node ) ) {
+            writePrimitive( name, value );
+        }
+    }
+
+
+    /**
+     * Write a single value.  Types we can't index are dropped.
+     */
+    private void writePrimitive( final String name, final Object value ) throws IOException {
+
+        if ( value instanceof String ) {
+            startField( name ).field( FIELD_STRING, ( ( String ) value ).toLowerCase() ).endObject();
+        }
+        else if ( value instanceof UUID ) {
+            startField( name ).field( FIELD_STRING, value.toString().toLowerCase() ).endObject();
+        }
+        else if ( value instanceof Boolean ) {
+            startField( name ).field( FIELD_BOOLEAN, ( ( Boolean ) value ).booleanValue() ).endObject();
+        }
+        else if ( value instanceof Integer || value instanceof Long ) {
+            startField( name ).field( FIELD_LONG, ( ( Number ) value ).longValue() ).endObject();
+        }
+        else if ( value instanceof Float ) {
+            startField( name ).field( FIELD_DOUBLE, ( ( Float ) value ).floatValue() ).endObject();
+        }
+        else if ( value instanceof Double ) {
+            startField( name ).field( FIELD_DOUBLE, ( ( Double ) value ).doubleValue() ).endObject();
+        }
+        else if ( value == null ) {
+            startField( name ).nullField( FIELD_NULL ).endObject();
+        }
+    }
+
+
+    /**
+     * Write a location, normalized to use lat/lon for es
+     */
+    private void writeLocation( final String name, final Map<?, ?> location ) throws IOException {
+        startField( name ).startObject( FIELD_LOCATION )
+                          .field( "lat", location.get( "latitude" ) )
+                          .field( "lon", location.get( "longitude" ) )
+                          .endObject()
+                          .endObject();
+    }
+
+
+    private XContentBuilder startField( final String name ) throws IOException {
+        return builder.startObject().field( FIELD_NAME, name );
+    }
+
+
+    private static boolean isIndexed( final IndexFieldFilter.Node node ) {
+        return node == null || node.isIndexed();
+    }
+}
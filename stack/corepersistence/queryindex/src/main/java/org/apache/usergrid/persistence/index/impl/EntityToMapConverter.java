@@ -18,13 +18,12 @@ package org.apache.usergrid.persistence.index.impl;
 
 
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.index.IndexEdge;
+import org.apache.usergrid.persistence.index.IndexFieldFilter;
 import org.apache.usergrid.persistence.model.entity.Entity;
 import org.apache.usergrid.persistence.model.entity.EntityMap;
 import org.apache.usergrid.persistence.model.entity.Id;
@@ -66,10 +65,10 @@ public class EntityToMapConverter {
      * @param applicationScope
      * @param entity The entity
      * @param indexEdge The edge this entity is indexed on
-     * @param fieldsToIndex A set of fields that will be indexed should they exist on the entity. Other fields will be filtered out.
+     * @param fieldsToIndex The fields that will be indexed should they exist on the entity. Other fields will be filtered out.
      */
     public static Map<String, Object> convert(ApplicationScope applicationScope, final IndexEdge indexEdge,
-                                              final Entity entity, Optional<Set<String>> fieldsToIndex) {
+                                              final Entity entity, Optional<IndexFieldFilter> fieldsToIndex) {
 
 
 
@@ -114,79 +113,14 @@ public class EntityToMapConverter {
         //add our fields to output entity
         outputEntity.put( ENTITY_FIELDS, fieldsToBeFiltered );
 
-        if(fieldsToIndex.isPresent()){
-            Set<String> defaultProperties = fieldsToIndex.get();
-            HashSet mapFields = ( HashSet ) outputEntity.get( "fields" );
-            Iterator collectionIterator = mapFields.iterator();
-
-            //Loop through all of the fields of the flatted entity and check to see if they should be filtered out.
-            collectionIterator.forEachRemaining(outputEntityField -> {
-                EntityField testedField = ( EntityField ) outputEntityField;
-                String fieldName = ( String ) ( testedField ).get( "name" );
-
-                //could move this down into the method below
-                if ( !defaultProperties.contains( fieldName ) ) {
-                    iterateThroughMapForFieldsToBeIndexed( defaultProperties, collectionIterator, fieldName );
-                }
-            });
+        if ( fieldsToIndex.isPresent() ) {
+            final IndexFieldFilter fieldFilter = fieldsToIndex.get();
 
+            //remove the fields the schema doesn't index
+            fieldsToBeFiltered.removeIf(
+                field -> !fieldFilter.accepts( ( String ) field.get( IndexingUtils.FIELD_NAME ) ) );
         }
 
-
-
         return outputEntity;
     }
-
-    /**
-     * Handles checking to see if a field is a top level exclusion or just a field that shouldn't be indexed.
-     * This is handled by looping through all the fields we want to be able to query on, and checking to see if a
-     * specific field name is included. If the field name is included then do nothing. If the field name is not included
-     * then we do not want to be able to query on it. Instead we remove it from the collectionIterator which
-     * removes it from the outputEntity above, thus filtering it out.
-     *
-     * @param fieldsToKeep - contains a list of fields that the user defined in their schema.
-     * @param collectionIterator - contains the iterator with the reference to the map where we want to remove the field. Once removed here it is removed from the entity so it won't be indexed.
-     * @param fieldName - contains the name of the field that we want to keep.
-     */
-    private static void iterateThroughMapForFieldsToBeIndexed( final Set<String> fieldsToKeep,
-                                                               final Iterator collectionIterator,
-                                                               final String fieldName ) {
-        boolean toRemoveFlag = true;
-        Iterator fieldIterator = fieldsToKeep.iterator();
-
-
-
-        //goes through a loop of all the fields that we want to keep.
-        //if the toRemoveFlag is set to false then we want to keep the property and do nothing to it, otherwise we set it to true and remove
-        //the property.
-        while ( fieldIterator.hasNext() ) {
-            //this is the field that we're
-            String fieldToKeep = ( String ) fieldIterator.next();
-
-
-            //Since we know that the fieldName cannot be equal to the requiredInclusion criteria due to the if condition before we enter this method
-            //and we are certain that the indexing criteria is shorter we want to be sure that the inclusion criteria
-            //is contained within the field we're evaluating. i.e that one.two.three contains one.two
-
-            //The second part of the if loop also requires that the fieldName is followed by a period after we check to ensure that the
-            //indexing criteria is included in the string. This is done to weed out values such as one.twoexample.three
-            // when we should only keep one.two.three when comparing the indexing criteria of one.two.
-            if(fieldName.length() > fieldToKeep.length()
-                && fieldName.contains( fieldToKeep )
-                && fieldName.charAt( fieldToKeep.length() )=='.' ) {
-                toRemoveFlag = false;
-                break;
-            }
-            else {
-                //the of the field we're evaluating is shorter than the indexing criteria so it can't match.
-                //Move onto the next field and see if they match.
-                toRemoveFlag = true;
-            }
-        }
-
-        if ( toRemoveFlag ) {
-            collectionIterator.remove();
-        }
-    }
 }
-
@@ -19,7 +19,6 @@
 package org.apache.usergrid.persistence.index.impl;
 
 
-import java.util.Set;
 import java.util.UUID;
 
 import org.slf4j.Logger;
@@ -32,6 +31,7 @@ import org.apache.usergrid.persistence.index.EntityIndex;
 import org.apache.usergrid.persistence.index.EntityIndexBatch;
 import org.apache.usergrid.persistence.index.IndexAlias;
 import org.apache.usergrid.persistence.index.IndexEdge;
+import org.apache.usergrid.persistence.index.IndexFieldFilter;
 import org.apache.usergrid.persistence.index.IndexLocationStrategy;
 import org.apache.usergrid.persistence.index.SearchEdge;
 import org.apache.usergrid.persistence.index.utils.IndexValidationUtils;
@@ -52,11 +52,13 @@ public class EsEntityIndexBatchImpl implements EntityIndexBatch {
 
     private final EntityIndex entityIndex;
     private final ApplicationScope applicationScope;
+    private final boolean fingerprint;
     private IndexOperationMessage container;
 
 
     public EsEntityIndexBatchImpl( final IndexLocationStrategy locationStrategy,
-                                   final EntityIndex entityIndex
+                                   final EntityIndex entityIndex,
+                                   final boolean fingerprint
     ) {
         this.indexLocationStrategy = locationStrategy;
 
@@ -64,6 +66,7 @@ public class EsEntityIndexBatchImpl implements EntityIndexBatch {
         this.applicationScope = indexLocationStrategy.getApplicationScope();
 
         this.alias = indexLocationStrategy.getAlias();
+        this.fingerprint = fingerprint;
         //constrained
         this.container = new IndexOperationMessage();
     }
@@ -75,7 +78,7 @@ public class EsEntityIndexBatchImpl implements EntityIndexBatch {
     }
 
     @Override
-    public EntityIndexBatch index( final IndexEdge indexEdge, final Entity entity, final Optional<Set<String>> fieldsToIndex ) {
+    public EntityIndexBatch index( final IndexEdge indexEdge, final Entity entity, final Optional<IndexFieldFilter> fieldsToIndex ) {
         IndexValidationUtils.validateIndexEdge(indexEdge);
         ValidationUtils.verifyEntityWrite(entity);
         ValidationUtils.verifyVersion( entity.getVersion() );
@@ -87,8 +90,19 @@ public class EsEntityIndexBatchImpl implements EntityIndexBatch {
                     writeAlias, applicationScope, indexEdge, entity.getFieldMap().keySet() );
         }
 
+        //while an index is rebuilt the write alias has two indexes, which ES can't write through, so write to each
+        final String[] writeIndexes = entityIndex.getIndexes( EntityIndex.AliasType.Write );
+
+        if ( writeIndexes != null && writeIndexes.length > 1 ) {
+            for ( final String writeIndex : writeIndexes ) {
+                container.addIndexRequest(
+                    new IndexOperation( writeIndex, applicationScope, indexEdge, entity, fieldsToIndex, fingerprint ) );
+            }
+            return this;
+        }
+
         //add app id for indexing
-        container.addIndexRequest(new IndexOperation(writeAlias, applicationScope, indexEdge, entity,fieldsToIndex));
+        container.addIndexRequest(new IndexOperation(writeAlias, applicationScope, indexEdge, entity,fieldsToIndex, fingerprint));
         return this;
     }
 
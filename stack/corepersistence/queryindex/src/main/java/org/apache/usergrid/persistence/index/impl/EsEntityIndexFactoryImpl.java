@@ -23,6 +23,7 @@ import java.util.concurrent.ExecutionException;
 
 import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
 import org.apache.usergrid.persistence.index.*;
+import org.apache.usergrid.persistence.index.query.ParsedQueryCache;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -38,6 +39,8 @@ public class EsEntityIndexFactoryImpl implements EntityIndexFactory{
     private final IndexCache indexCache;
     private final EsProvider provider;
     private final MetricsFactory metricsFactory;
+    private final ParsedQueryCache parsedQueryCache;
+    private final SearchTemplateCache searchTemplateCache;
 
     private LoadingCache<IndexLocationStrategy, EntityIndex> eiCache =
         CacheBuilder.newBuilder().maximumSize( 1000 ).build( new CacheLoader<IndexLocationStrategy, EntityIndex>() {
@@ -47,7 +50,9 @@ public class EsEntityIndexFactoryImpl implements EntityIndexFactory{
                     indexCache,
                     config,
                     metricsFactory,
-                    locationStrategy
+                    locationStrategy,
+                    parsedQueryCache,
+                    searchTemplateCache
                 );
                 index.initialize();
                 return index;
@@ -58,13 +63,17 @@ public class EsEntityIndexFactoryImpl implements EntityIndexFactory{
     public EsEntityIndexFactoryImpl( final IndexFig indexFig,
                                      final IndexCache indexCache,
                                      final EsProvider provider,
-                                     final MetricsFactory metricsFactory
+                                     final MetricsFactory metricsFactory,
+                                     final ParsedQueryCache parsedQueryCache,
+                                     final SearchTemplateCache searchTemplateCache
 
     ){
         this.config = indexFig;
         this.indexCache = indexCache;
         this.provider = provider;
         this.metricsFactory = metricsFactory;
+        this.parsedQueryCache = parsedQueryCache;
+        this.searchTemplateCache = searchTemplateCache;
     }
 
 
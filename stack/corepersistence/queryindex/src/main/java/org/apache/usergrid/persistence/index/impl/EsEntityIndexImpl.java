@@ -21,6 +21,7 @@ package org.apache.usergrid.persistence.index.impl;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
 import com.google.common.base.*;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Resources;
 import com.google.inject.Inject;
@@ -38,9 +39,10 @@ import org.apache.usergrid.persistence.index.ElasticSearchQueryBuilder.SearchReq
 import org.apache.usergrid.persistence.index.exceptions.IndexException;
 import org.apache.usergrid.persistence.index.migration.IndexDataVersions;
 import org.apache.usergrid.persistence.index.query.ParsedQuery;
-import org.apache.usergrid.persistence.index.query.ParsedQueryBuilder;
+import org.apache.usergrid.persistence.index.query.ParsedQueryCache;
 import org.apache.usergrid.persistence.index.utils.IndexValidationUtils;
 import org.apache.usergrid.persistence.model.entity.Id;
+import org.apache.usergrid.persistence.model.field.Field;
 import org.apache.usergrid.persistence.model.util.UUIDGenerator;
 import org.elasticsearch.action.ActionFuture;
 import org.elasticsearch.action.ActionListener;
@@ -58,6 +60,7 @@ import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchScrollRequestBuilder;
 import org.elasticsearch.client.AdminClient;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
@@ -93,6 +96,7 @@ public class EsEntityIndexImpl implements EntityIndex,VersionedData {
     private final IndexAlias alias;
     private final IndexFig indexFig;
     private final IndexLocationStrategy indexLocationStrategy;
+    private final ParsedQueryCache parsedQueryCache;
     private final Timer addTimer;
     private final Timer updateAliasTimer;
     private final Timer searchTimer;
@@ -132,9 +136,13 @@ public class EsEntityIndexImpl implements EntityIndex,VersionedData {
                               final IndexCache indexCache,
                               final IndexFig indexFig,
                               final MetricsFactory metricsFactory,
-                              final IndexLocationStrategy indexLocationStrategy
+                              final IndexLocationStrategy indexLocationStrategy,
+                              final ParsedQueryCache parsedQueryCache,
+                              final SearchTemplateCache searchTemplateCache
     ) {
 
+        this.parsedQueryCache = parsedQueryCache;
+
         this.indexFig = indexFig;
         this.indexLocationStrategy = indexLocationStrategy;
         this.failureMonitor = new FailureMonitorImpl( indexFig, provider );
@@ -145,7 +153,8 @@ public class EsEntityIndexImpl implements EntityIndex,VersionedData {
         this.cursorTimeout = indexFig.getQueryCursorTimeout();
         this.queryTimeout = indexFig.getWriteTimeout();
         this.searchRequest
-            = new SearchRequestBuilderStrategy(esProvider, applicationScope, alias, cursorTimeout );
+            = new SearchRequestBuilderStrategy( esProvider, applicationScope, alias, cursorTimeout,
+                indexFig.isQueryProjectionEnabled(), searchTemplateCache );
         this.searchRequestBuilderStrategyV2 = new SearchRequestBuilderStrategyV2( esProvider, applicationScope, alias, cursorTimeout  );
 
         this.addTimer = metricsFactory.getTimer(EsEntityIndexImpl.class, "index.add");
@@ -191,35 +200,8 @@ public class EsEntityIndexImpl implements EntityIndex,VersionedData {
             Preconditions.checkArgument(!indexName.contains("alias"),indexName + " name cannot contain alias " );
 
             //Create index
-            try {
-                final AdminClient admin = esProvider.getClient().admin();
-                Settings settings = ImmutableSettings.settingsBuilder()
-                    .put("index.number_of_shards", numberOfShards)
-                    .put("index.number_of_replicas", numberOfReplicas)
-                        //dont' allow unmapped queries, and don't allow dynamic mapping
-                    .put("index.query.parse.allow_unmapped_fields", false)
-                    .put("index.mapper.dynamic", false)
-                    .put("action.write_consistency", writeConsistency)
-                    .build();
-
-                //Added For Graphite Metrics
-                Timer.Context timeNewIndexCreation = addTimer.time();
-                final CreateIndexResponse cir = admin.indices().prepareCreate(indexName)
-                        .setSettings(settings)
-                    .execute()
-                        .actionGet();
-                timeNewIndexCreation.stop();
-
-                //create the mappings
-                createMappings( indexName );
+            createIndex( indexName, numberOfShards, numberOfReplicas, writeConsistency );
 
-                //ONLY add the alias if we create the index, otherwise we're going to overwrite production settings
-
-
-                logger.info("Created new Index Name [{}] ACK=[{}]", indexName, cir.isAcknowledged());
-            } catch (IndexAlreadyExistsException e) {
-                logger.info("Index Name [{}] already exists", indexName);
-            }
             /**
              * DO NOT MOVE THIS LINE OF CODE UNLESS YOU REALLY KNOW WHAT YOU'RE DOING!!!!
              */
@@ -229,7 +211,7 @@ public class EsEntityIndexImpl implements EntityIndex,VersionedData {
 
             addAlias(indexName);
 
-            testNewIndex();
+            testNewIndex( alias.getWriteAlias() );
 
         } catch (IndexAlreadyExistsException expected) {
             // this is expected to happen if index already exists, it's a no-op and swallow
@@ -238,6 +220,189 @@ public class EsEntityIndexImpl implements EntityIndex,VersionedData {
         }
     }
 
+
+    /**
+     * Create the index with our settings and mappings, if it doesn't exist
+     */
+    private void createIndex( final String indexName, final int numberOfShards, final int numberOfReplicas,
+                              final String writeConsistency ) throws IOException {
+        try {
+            final AdminClient admin = esProvider.getClient().admin();
+            Settings settings = ImmutableSettings.settingsBuilder()
+                .put("index.number_of_shards", numberOfShards)
+                .put("index.number_of_replicas", numberOfReplicas)
+                    //dont' allow unmapped queries, and don't allow dynamic mapping
+                .put("index.query.parse.allow_unmapped_fields", false)
+                .put("index.mapper.dynamic", false)
+                .put("action.write_consistency", writeConsistency)
+                .build();
+
+            //Added For Graphite Metrics
+            Timer.Context timeNewIndexCreation = addTimer.time();
+            final CreateIndexResponse cir = admin.indices().prepareCreate(indexName)
+                    .setSettings(settings)
+                .execute()
+                    .actionGet();
+            timeNewIndexCreation.stop();
+
+            //create the mappings
+            createMappings( indexName );
+
+            //ONLY add the alias if we create the index, otherwise we're going to overwrite production settings
+
+
+            logger.info("Created new Index Name [{}] ACK=[{}]", indexName, cir.isAcknowledged());
+        } catch (IndexAlreadyExistsException e) {
+            logger.info("Index Name [{}] already exists", indexName);
+        }
+    }
+
+
+    @Override
+    public void addRebuildIndex( final String indexName, final int numberOfShards, final int numberOfReplicas,
+                                 final String writeConsistency ) {
+        Preconditions.checkNotNull( indexName, "must have an indexname" );
+        Preconditions.checkArgument( !indexName.contains( "alias" ), indexName + " name cannot contain alias " );
+
+        try {
+            createIndex( indexName, numberOfShards, numberOfReplicas, writeConsistency );
+        }
+        catch ( IOException e ) {
+            throw new RuntimeException( "Unable to create rebuild index", e );
+        }
+
+        //the write alias can't be written through with two indexes, so test the index itself
+        testNewIndex( indexName );
+
+        final Timer.Context timer = updateAliasTimer.time();
+        try {
+            //keep the current index in the write alias, batches write to every index in it
+            final boolean isAck = esProvider.getClient().admin().indices().prepareAliases()
+                .addAlias( indexName, alias.getWriteAlias() ).execute().actionGet().isAcknowledged();
+
+            logger.info( "Added rebuild index [{}] to write alias [{}] ACK=[{}]", indexName, alias.getWriteAlias(),
+                isAck );
+
+            aliasCache.invalidate( alias );
+        }
+        finally {
+            timer.stop();
+        }
+    }
+
+
+    @Override
+    public void removeRebuildIndex( final String indexName ) {
+        final Timer.Context timer = updateAliasTimer.time();
+        try {
+            aliasCache.invalidate( alias );
+
+            final List<String> reads = Arrays.asList( getIndexes( AliasType.Read ) );
+            final List<String> writes = Arrays.asList( getIndexes( AliasType.Write ) );
+
+            //never leave the write alias without an index, or take writes from an index that serves reads
+            if ( !writes.contains( indexName ) || reads.contains( indexName ) || writes.size() < 2 ) {
+                logger.info( "Not removing index [{}] from write alias [{}] with write indexes {} and read indexes {}",
+                    indexName, alias.getWriteAlias(), writes, reads );
+                return;
+            }
+
+            final boolean isAck = esProvider.getClient().admin().indices().prepareAliases()
+                .removeAlias( indexName, alias.getWriteAlias() ).execute().actionGet().isAcknowledged();
+
+            logger.info( "Removed rebuild index [{}] from write alias [{}] ACK=[{}]", indexName, alias.getWriteAlias(),
+                isAck );
+
+            aliasCache.invalidate( alias );
+        }
+        finally {
+            timer.stop();
+        }
+    }
+
+
+    @Override
+    public String[] swapIndex( final String indexName ) {
+        final Timer.Context timer = updateAliasTimer.time();
+        try {
+            aliasCache.invalidate( alias );
+
+            final List<String> reads = Arrays.asList( getIndexes( AliasType.Read ) );
+            final List<String> writes = Arrays.asList( getIndexes( AliasType.Write ) );
+
+            final IndicesAliasesRequestBuilder aliasesRequestBuilder =
+                esProvider.getClient().admin().indices().prepareAliases();
+
+            final Set<String> previous = new HashSet<>();
+
+            for ( final String index : reads ) {
+                if ( !index.equals( indexName ) ) {
+                    aliasesRequestBuilder.removeAlias( index, alias.getReadAlias() );
+                    previous.add( index );
+                }
+            }
+
+            for ( final String index : writes ) {
+                if ( !index.equals( indexName ) ) {
+                    aliasesRequestBuilder.removeAlias( index, alias.getWriteAlias() );
+                    previous.add( index );
+                }
+            }
+
+            if ( !reads.contains( indexName ) ) {
+                aliasesRequestBuilder.addAlias( indexName, alias.getReadAlias() );
+            }
+
+            if ( !writes.contains( indexName ) ) {
+                aliasesRequestBuilder.addAlias( indexName, alias.getWriteAlias() );
+            }
+
+            //all the actions are applied atomically, searches see the previous indexes or the rebuilt one, never both
+            final boolean isAck = aliasesRequestBuilder.execute().actionGet().isAcknowledged();
+
+            logger.info( "Swapped read alias [{}] and write alias [{}] from {} to [{}] ACK=[{}]", alias.getReadAlias(),
+                alias.getWriteAlias(), previous, indexName, isAck );
+
+            aliasCache.invalidate( alias );
+
+            return previous.toArray( new String[previous.size()] );
+        }
+        finally {
+            timer.stop();
+        }
+    }
+
+
+    @Override
+    public boolean retireIndex( final String indexName ) {
+        final AdminClient adminClient = esProvider.getClient().admin();
+
+        final List<AliasMetaData> aliases =
+            adminClient.indices().prepareGetAliases().setIndices( indexName ).get().getAliases().get( indexName );
+
+        //indexes are shared by the applications in a bucket, only delete it once none of them use it
+        if ( aliases != null && !aliases.isEmpty() ) {
+            logger.info( "Not retiring index [{}], it is still used by {} aliases", indexName, aliases.size() );
+            return false;
+        }
+
+        final boolean isAck = adminClient.indices().prepareDelete( indexName ).get().isAcknowledged();
+
+        logger.info( "Retired index [{}] ACK=[{}]", indexName, isAck );
+
+        return true;
+    }
+
+
+    @Override
+    public long getDocumentCount( final String indexName ) {
+        final String idString = applicationId( applicationScope.getApplication() );
+
+        return esProvider.getClient().prepareCount( indexName ).setTypes( IndexingUtils.ES_ENTITY_TYPE )
+                         .setQuery( QueryBuilders.termQuery( APPLICATION_ID_FIELDNAME, idString ) ).get().getCount();
+    }
+
+
     private void addAlias(String indexName) {
         Timer.Context timer = updateAliasTimer.time();
         try {
@@ -286,7 +451,7 @@ public class EsEntityIndexImpl implements EntityIndex,VersionedData {
      * Tests writing a document to a new index to ensure it's working correctly. See this post:
      * http://s.apache.org/index-missing-exception
      */
-    private void testNewIndex() {
+    private void testNewIndex( final String indexName ) {
 
         // create the document, this ensures the index is ready
         // Immediately create a document and remove it to ensure the entire cluster is ready
@@ -300,7 +465,7 @@ public class EsEntityIndexImpl implements EntityIndex,VersionedData {
         final RetryOperation retryOperation = () -> {
             final String tempId = UUIDGenerator.newTimeUUID().toString();
 
-            esProvider.getClient().prepareIndex( alias.getWriteAlias(), VERIFY_TYPE, tempId )
+            esProvider.getClient().prepareIndex( indexName, VERIFY_TYPE, tempId )
                  .setSource(DEFAULT_PAYLOAD).get();
 
             if (logger.isTraceEnabled()) {
@@ -309,7 +474,7 @@ public class EsEntityIndexImpl implements EntityIndex,VersionedData {
             }
 
             // delete all types, this way if we miss one it will get cleaned up
-            esProvider.getClient().prepareDelete( alias.getWriteAlias(), VERIFY_TYPE, tempId).get();
+            esProvider.getClient().prepareDelete( indexName, VERIFY_TYPE, tempId).get();
 
             if (logger.isTraceEnabled()) {
                 logger.trace("Successfully deleted  documents in read {} write {} and type {} with id {}",
@@ -405,12 +570,27 @@ public class EsEntityIndexImpl implements EntityIndex,VersionedData {
     @Override
     public EntityIndexBatch createBatch() {
         EntityIndexBatch batch =
-            new EsEntityIndexBatchImpl(indexLocationStrategy, this );
+            new EsEntityIndexBatchImpl(indexLocationStrategy, this, indexFig.isSkipUnchangedEnabled() );
         return batch;
     }
 
     public CandidateResults search( final SearchEdge searchEdge, final SearchTypes searchTypes, final String query,
                                     final int limit, final int offset ) {
+        return search( searchEdge, searchTypes, query, limit, offset, Optional.<SearchSeek>absent() );
+    }
+
+
+    @Override
+    public CandidateResults search( final SearchEdge searchEdge, final SearchTypes searchTypes, final String query,
+                                    final int limit, final SearchSeek seek ) {
+        Preconditions.checkNotNull( seek, "seek cannot be null" );
+
+        return search( searchEdge, searchTypes, query, limit, 0, Optional.of( seek ) );
+    }
+
+
+    private CandidateResults search( final SearchEdge searchEdge, final SearchTypes searchTypes, final String query,
+                                     final int limit, final int offset, final Optional<SearchSeek> seek ) {
 
         IndexValidationUtils.validateSearchEdge(searchEdge);
         Preconditions.checkNotNull(searchTypes, "searchTypes cannot be null");
@@ -420,9 +600,9 @@ public class EsEntityIndexImpl implements EntityIndex,VersionedData {
 
         SearchResponse searchResponse;
 
-        final ParsedQuery parsedQuery = ParsedQueryBuilder.build(query);
+        final ParsedQuery parsedQuery = parsedQueryCache.build(query);
 
-        final SearchRequestBuilder srb = searchRequest.getBuilder( searchEdge, searchTypes, parsedQuery, limit, offset )
+        final SearchRequestBuilder srb = searchRequest.getBuilder( searchEdge, searchTypes, parsedQuery, limit, offset, seek )
             .setTimeout(TimeValue.timeValueMillis(queryTimeout));
 
         if ( logger.isDebugEnabled() ) {
@@ -681,6 +861,12 @@ public class EsEntityIndexImpl implements EntityIndex,VersionedData {
 
         List<CandidateResult> candidates = new ArrayList<>( hits.length );
 
+        //we can only seek in the default sort order of edge timestamp, entity id then entity version
+        final boolean defaultSort = query.getSortPredicates().isEmpty();
+
+        List<SearchSeek> seeks = defaultSort ? new ArrayList<>( hits.length ) : null;
+
+        final boolean projected = searchRequest.isProjected( query );
 
 
         for ( SearchHit hit : hits ) {
@@ -688,10 +874,36 @@ public class EsEntityIndexImpl implements EntityIndex,VersionedData {
 
             candidateResult =  parseIndexDocId( hit, query.isGeoQuery() );
             candidates.add( candidateResult );
+
+            if ( projected ) {
+                final Optional<Map<String, Field>> projection =
+                    ProjectionParser.parse( hit.getSource(), query.getSelectFieldMappings() );
+
+                if ( projection.isPresent() ) {
+                    candidateResult.initializeProjection( projection.get() );
+                }
+            }
+
+            if ( seeks != null ) {
+                final Object[] sortValues = hit.sortValues();
+
+                //geo sorts come before the default sort, we can't seek past them
+                if ( sortValues.length == 3 && sortValues[0] instanceof Number ) {
+                    seeks.add( new SearchSeek( ( ( Number ) sortValues[0] ).longValue(), candidateResult.getId(),
+                        candidateResult.getVersion() ) );
+                }
+                else {
+                    seeks = null;
+                }
+            }
         }
 
         final CandidateResults candidateResults = new CandidateResults( candidates, query.getSelectFieldMappings());
 
+        if ( seeks != null ) {
+            candidateResults.initializeSeeks( seeks );
+        }
+
         // >= seems odd.  However if we get an overflow, we need to account for it.
         if (  hits.length >= limit ) {
 
@@ -18,8 +18,21 @@
 package org.apache.usergrid.persistence.index.impl;
 
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.codahale.metrics.Histogram;
@@ -39,21 +52,36 @@ import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
 import org.apache.usergrid.persistence.index.IndexFig;
 
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 
 import rx.Observable;
+import rx.Subscriber;
 
 
 /**
- * Consumer for IndexOperationMessages
+ * Consumer for IndexOperationMessages.  Operations from every message are placed into a single bounded buffer, and
+ * flush workers coalesce them into bulk requests bounded by operation count, byte size and linger time.  The
+ * observable for each message completes once every one of its operations has been acknowledged by Elasticsearch.
+ * <p>
+ * When unchanged documents are skipped, the fingerprint of each document is recorded before it's sent, and removed
+ * again before its message fails, so a retried message writes it.  Fingerprints of removed documents are removed once
+ * the removal is sent.  A fingerprint recorded by a node that dies before sending its document is only dropped when it
+ * expires.
  */
 @Singleton
 public class EsIndexProducerImpl implements IndexProducer {
     private static final Logger logger = LoggerFactory.getLogger( EsIndexProducerImpl.class );
 
+    /**
+     * How many times an operation Elasticsearch was too busy to take is buffered again before its message fails
+     */
+    private static final int MAX_TOO_MANY_REQUESTS_RETRIES = 3;
+
     private final IndexFig config;
     private final FailureMonitorImpl failureMonitor;
     private final Client client;
@@ -62,6 +90,24 @@ public class EsIndexProducerImpl implements IndexProducer {
     private final Counter indexSizeCounter;
     private final Histogram roundtripTimer;
     private final Timer indexTimer;
+    private final Histogram bulkSizeHistogram;
+    private final Meter backPressureMeter;
+    private final Timer fingerprintTimer;
+    private final IndexFingerprintSerialization fingerprintSerialization;
+
+    private final BlockingQueue<BufferedOperation> buffer;
+
+    private final ExecutorService flushWorkers;
+
+    /**
+     * False once we've been shut down, workers exit when the buffer is empty
+     */
+    private volatile boolean running = true;
+
+    /**
+     * When Elasticsearch tells us it's overloaded, no worker sends until this time
+     */
+    private final AtomicLong pausedUntil = new AtomicLong();
 
 
     private AtomicLong inFlight = new AtomicLong();
@@ -69,10 +115,14 @@ public class EsIndexProducerImpl implements IndexProducer {
 
     @Inject
     public EsIndexProducerImpl(final IndexFig config, final EsProvider provider,
-                               final MetricsFactory metricsFactory, final IndexFig indexFig) {
+                               final MetricsFactory metricsFactory, final IndexFig indexFig,
+                               final IndexFingerprintSerialization fingerprintSerialization) {
         this.flushTimer = metricsFactory.getTimer(EsIndexProducerImpl.class, "index_buffer.flush");
         this.indexSizeCounter = metricsFactory.getCounter(EsIndexProducerImpl.class, "index_buffer.size");
         this.roundtripTimer = metricsFactory.getHistogram(EsIndexProducerImpl.class, "index_buffer.message_cycle");
+        this.bulkSizeHistogram = metricsFactory.getHistogram(EsIndexProducerImpl.class, "index_buffer.bulk_size");
+        this.backPressureMeter = metricsFactory.getMeter(EsIndexProducerImpl.class, "index_buffer.back_pressure");
+        this.fingerprintTimer = metricsFactory.getTimer(EsIndexProducerImpl.class, "index_buffer.fingerprint_write");
 
         //wire up the gauge of inflight messages
         metricsFactory.addGauge(EsIndexProducerImpl.class, "index_buffer.inflight", () -> inFlight.longValue());
@@ -84,10 +134,47 @@ public class EsIndexProducerImpl implements IndexProducer {
         this.failureMonitor = new FailureMonitorImpl(config, provider);
         this.client = provider.getClient();
         this.indexFig = indexFig;
+        this.fingerprintSerialization = fingerprintSerialization;
+
+        this.buffer = new LinkedBlockingQueue<>( indexFig.getIndexBufferSize() );
 
 
         //batch up sets of some size and send them in batch
+        final int workers = indexFig.getIndexFlushWorkerCount();
 
+        this.flushWorkers = Executors.newFixedThreadPool( workers,
+            new ThreadFactoryBuilder().setDaemon( true ).setNameFormat( "IndexProducer-flush-%d" ).build() );
+
+        for ( int i = 0; i < workers; i++ ) {
+            flushWorkers.execute( new FlushWorker() );
+        }
+    }
+
+
+    /**
+     * Stop accepting messages and let the workers send what is buffered.  Operations still buffered when the timeout
+     * passes fail their messages.
+     */
+    @Override
+    public void shutdown() {
+        running = false;
+        flushWorkers.shutdown();
+
+        try {
+            if ( !flushWorkers.awaitTermination( indexFig.getIndexBufferTimeout(), TimeUnit.MILLISECONDS ) ) {
+                logger.warn( "Index flush workers did not drain the buffer in time, stopping them" );
+                flushWorkers.shutdownNow();
+            }
+        }
+        catch ( InterruptedException e ) {
+            flushWorkers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        final List<BufferedOperation> abandoned = new ArrayList<>();
+        buffer.drainTo( abandoned );
+
+        fail( abandoned, new IllegalStateException( "Index producer shut down before the operation was sent" ) );
     }
 
     @Override
@@ -97,75 +184,75 @@ public class EsIndexProducerImpl implements IndexProducer {
 
     public Observable<IndexOperationMessage>  put( IndexOperationMessage message ) {
         Preconditions.checkNotNull(message, "Message cannot be null");
-        indexSizeCounter.inc(message.getDeIndexRequests().size());
-        indexSizeCounter.inc(message.getIndexRequests().size());
         return  processBatch(message);
     }
 
 
     /**
-     * Process the buffer of batches
-     * @param batch
-     * @return
+     * Place every operation of the message into the shared buffer.  The returned observable emits the message when
+     * all of its operations have been sent, or an error if any of them failed.
      */
     private Observable<IndexOperationMessage> processBatch( final IndexOperationMessage batch ) {
 
-        //take our stream of batches, then stream then into individual ops for consumption on ES
-        final Set<IndexOperation> indexOperationSet = batch.getIndexRequests();
-        final Set<DeIndexOperation> deIndexOperationSet = batch.getDeIndexRequests();
+        return Observable.create( ( Subscriber<? super IndexOperationMessage> subscriber ) -> {
 
-        final int indexOperationSetSize = indexOperationSet.size();
-        final int deIndexOperationSetSize = deIndexOperationSet.size();
+            final List<BatchOperation> operations =
+                new ArrayList<>( batch.getIndexRequests().size() + batch.getDeIndexRequests().size() );
 
-        if (logger.isTraceEnabled()) {
-            logger.trace("Emitting {} add and {} remove operations", indexOperationSetSize, deIndexOperationSetSize);
-        }
+            //TODO: look at indexing ordering
+            operations.addAll( batch.getIndexRequests() );
+            operations.addAll( batch.getDeIndexRequests() );
 
-        indexSizeCounter.dec(indexOperationSetSize);
-        indexSizeCounter.dec(deIndexOperationSetSize);
+            if (logger.isTraceEnabled()) {
+                logger.trace("Buffering {} add and {} remove operations", batch.getIndexRequests().size(),
+                    batch.getDeIndexRequests().size());
+            }
 
-        final Observable<IndexOperation> index = Observable.from(batch.getIndexRequests());
-        final Observable<DeIndexOperation> deIndex = Observable.from(batch.getDeIndexRequests());
+            if ( !running ) {
+                subscriber.onError( new IllegalStateException( "Index producer has been shut down" ) );
+                return;
+            }
 
-        //TODO: look at indexing ordering
-        final Observable<BatchOperation> batchOps = Observable.merge(index, deIndex);
+            //nothing to send, we're done
+            if ( operations.isEmpty() ) {
+                subscriber.onNext( batch );
+                subscriber.onCompleted();
+                return;
+            }
 
-        //buffer into the max size we can send ES and fire them all off until we're completed
-        final Observable<BulkRequestBuilder> requests = batchOps
-            .buffer(250, TimeUnit.MILLISECONDS, indexFig.getIndexBatchSize())
+            final PendingMessage pendingMessage = new PendingMessage( batch, subscriber, operations.size() );
 
-            //flatten the buffer into a single batch execution
-            .flatMap(individualOps -> Observable.from(individualOps)
-                //collect them
-                .collect(() -> initRequest(), (bulkRequestBuilder, batchOperation) -> {
-                    if (logger.isTraceEnabled()) {
-                        logger.trace("adding operation {} to bulkRequestBuilder {}", batchOperation, bulkRequestBuilder);
-                    }
-                    batchOperation.doOperation(client, bulkRequestBuilder);
-                }))
-                //write them
-            .doOnNext(bulkRequestBuilder -> sendRequest(bulkRequestBuilder));
-
-
-        //now that we've processed them all, ack the futures after our last batch comes through
-        final Observable<IndexOperationMessage> processedIndexOperations =
-            requests.flatMap(lastRequest -> {
-                if (lastRequest != null) {
-                    return Observable.just(batch);
-                } else {
-                    return Observable.empty();
+            inFlight.incrementAndGet();
+
+            for ( int i = 0; i < operations.size(); i++ ) {
+
+                final BatchOperation operation = operations.get( i );
+                final int unbuffered = operations.size() - i;
+                final boolean buffered;
+
+                try {
+                    //block while the buffer is full, this is our back pressure to the callers
+                    buffered = buffer.offer( new BufferedOperation( operation, pendingMessage ),
+                        indexFig.getIndexBufferTimeout(), TimeUnit.MILLISECONDS );
+                }
+                catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    pendingMessage.failUnbuffered( e, unbuffered );
+                    return;
                 }
-            });
 
-        //subscribe to the operations that generate requests on a new thread so that we can execute them quickly
-        //mark this as done
-        return processedIndexOperations.doOnNext(processedIndexOp -> {
-            roundtripTimer.update(System.currentTimeMillis() - processedIndexOp.getCreationTime());
-        });
-    }
+                if ( !buffered ) {
+                    backPressureMeter.mark();
+                    pendingMessage.failUnbuffered(
+                        new RuntimeException( "Timed out waiting for room in the index buffer" ), unbuffered );
+                    return;
+                }
 
+                indexSizeCounter.inc();
+            }
+        } );
+    }
 
-    /*
 
     /**
      * initialize request
@@ -179,16 +266,246 @@ public class EsIndexProducerImpl implements IndexProducer {
 
 
     /**
-     * send bulk request
+     * Wait if Elasticsearch has asked us to slow down
+     */
+    private void awaitBackOff() throws InterruptedException {
+        final long pauseMillis = pausedUntil.get() - System.currentTimeMillis();
+
+        if ( pauseMillis > 0 ) {
+            Thread.sleep( pauseMillis );
+        }
+    }
+
+
+    /**
+     * Take the next set of operations from the buffer.  We wait for at most the linger time after the first
+     * operation was buffered for more operations to arrive, and stop early when the request is full.
      */
-    private void sendRequest( BulkRequestBuilder bulkRequest ) {
-        //nothing to do, we haven't added anything to the index
-        if ( bulkRequest.numberOfActions() == 0 ) {
+    private void drain( final BufferedOperation first, final BulkRequestBuilder bulkRequest,
+                        final List<BufferedOperation> actionOwners, final List<BufferedOperation> operations )
+        throws InterruptedException {
+
+        final int maxOperations = indexFig.getIndexBatchSize();
+        final long maxBytes = indexFig.getIndexBatchMaxBytes();
+        final long flushAt = first.bufferedAt + indexFig.getIndexBatchLinger();
+
+        BufferedOperation next = first;
+
+        while ( next != null ) {
+            //taken from the buffer, the caller fails it if we don't get to send it
+            operations.add( next );
+            indexSizeCounter.dec();
+
+            add( next, bulkRequest, actionOwners );
+
+            if ( operations.size() >= maxOperations || bulkRequest.request().estimatedSizeInBytes() >= maxBytes ) {
+                break;
+            }
+
+            final long wait = flushAt - System.currentTimeMillis();
+
+            next = wait > 0 ? buffer.poll( wait, TimeUnit.MILLISECONDS ) : buffer.poll();
+        }
+    }
+
+
+    /**
+     * Add the operation to the request and record which operation each action it adds came from
+     */
+    private void add( final BufferedOperation operation, final BulkRequestBuilder bulkRequest,
+                      final List<BufferedOperation> actionOwners ) {
+
+        if (logger.isTraceEnabled()) {
+            logger.trace("adding operation {} to bulkRequestBuilder {}", operation.operation, bulkRequest);
+        }
+
+        try {
+            operation.operation.doOperation( client, bulkRequest );
+        }
+        catch ( Exception e ) {
+            logger.error( "Unable to add operation {} to bulk request", operation.operation, e );
+            operation.owner.fail( e );
+            return;
+        }
+
+        while ( actionOwners.size() < bulkRequest.numberOfActions() ) {
+            actionOwners.add( operation );
+        }
+    }
+
+
+    /**
+     * Record the fingerprints of the documents we're about to write.  They're recorded before the documents are sent,
+     * so a removal sent after the write always removes them as well
+     */
+    private void recordFingerprints( final List<BufferedOperation> operations ) {
+
+        final Map<String, String> fingerprints = new HashMap<>();
+
+        for ( final BufferedOperation operation : operations ) {
+            if ( operation.operation instanceof IndexOperation ) {
+                final IndexOperation indexOperation = ( IndexOperation ) operation.operation;
+
+                if ( indexOperation.fingerprint != null ) {
+                    fingerprints.put( indexOperation.documentId, indexOperation.fingerprint );
+                }
+            }
+        }
+
+        if ( fingerprints.isEmpty() ) {
+            return;
+        }
+
+        final Timer.Context timer = fingerprintTimer.time();
+
+        try {
+            fingerprintSerialization.putFingerprints( fingerprints, indexFig.getIndexFingerprintTtl() );
+        }
+        catch ( RuntimeException e ) {
+            //some may have been written, and we won't send their documents
+            removeFingerprints( fingerprints.keySet() );
+            throw e;
+        }
+        finally {
+            timer.stop();
+        }
+    }
+
+
+    /**
+     * Remove the fingerprints of the documents we failed to write, and of the documents we removed
+     */
+    private void forgetFingerprints( final List<BufferedOperation> operations, final Set<BufferedOperation> failed ) {
+
+        final List<String> documentIds = new ArrayList<>();
+
+        for ( final BufferedOperation operation : operations ) {
+            if ( operation.operation instanceof DeIndexOperation ) {
+                documentIds.add( ( ( DeIndexOperation ) operation.operation ).documentId );
+            }
+            else if ( failed.contains( operation ) && operation.operation instanceof IndexOperation
+                && ( ( IndexOperation ) operation.operation ).fingerprint != null ) {
+                documentIds.add( ( ( IndexOperation ) operation.operation ).documentId );
+            }
+        }
+
+        removeFingerprints( documentIds );
+    }
+
+
+    private void removeFingerprints( final Collection<String> documentIds ) {
+        if ( documentIds.isEmpty() ) {
             return;
         }
 
+        try {
+            fingerprintSerialization.removeFingerprints( documentIds );
+        }
+        catch ( RuntimeException e ) {
+            logger.error( "Unable to remove the fingerprints of {} documents, they won't be written again until their "
+                + "fingerprints expire", documentIds.size(), e );
+        }
+    }
+
+
+    /**
+     * send bulk request and acknowledge every operation in it, except the ones Elasticsearch was too busy to take.
+     * Those are buffered again once the pause ends.
+     */
+    private void sendRequest( final BulkRequestBuilder bulkRequest, final List<BufferedOperation> operations,
+                              final List<BufferedOperation> actionOwners ) {
+
+        Set<BufferedOperation> throttled = Collections.emptySet();
+        Set<BufferedOperation> failed = Collections.newSetFromMap( new IdentityHashMap<>() );
+
+        try {
+            //nothing to do, we haven't added anything to the index
+            if ( bulkRequest.numberOfActions() > 0 ) {
+                throttled = execute( bulkRequest, actionOwners, failed );
+            }
+        }
+        catch ( Throwable t ) {
+            for ( final BufferedOperation operation : operations ) {
+                operation.owner.fail( t );
+            }
+
+            failed = new HashSet<>( operations );
+        }
+
+        //before the messages complete, so a failed message that's retried writes its documents
+        if ( indexFig.isSkipUnchangedEnabled() ) {
+            forgetFingerprints( operations, failed );
+        }
+
+        for ( final BufferedOperation operation : operations ) {
+            if ( !throttled.contains( operation ) ) {
+                operation.owner.ack();
+            }
+        }
+
+        rebuffer( throttled );
+    }
+
+
+    /**
+     * Wait for the pause to end, then place the operations back into the buffer so any worker can send them again.
+     * Operations that don't fit in the buffer in time fail their messages.
+     */
+    private void rebuffer( final Set<BufferedOperation> throttled ) {
+        if ( throttled.isEmpty() ) {
+            return;
+        }
+
+        final List<BufferedOperation> remaining = new ArrayList<>( throttled );
+
+        try {
+            awaitBackOff();
+
+            while ( !remaining.isEmpty() ) {
+                final BufferedOperation retry = remaining.get( 0 ).retry();
+
+                if ( !buffer.offer( retry, indexFig.getIndexBufferTimeout(), TimeUnit.MILLISECONDS ) ) {
+                    backPressureMeter.mark();
+                    fail( remaining, new RuntimeException( "Timed out waiting for room to retry in the index buffer" ) );
+                    return;
+                }
+
+                indexSizeCounter.inc();
+                remaining.remove( 0 );
+            }
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            fail( remaining, e );
+        }
+    }
+
+
+    /**
+     * Fail and acknowledge operations that will never be sent, so their messages complete
+     */
+    private static void fail( final List<BufferedOperation> operations, final Throwable t ) {
+        for ( final BufferedOperation operation : operations ) {
+            operation.owner.fail( t );
+            operation.owner.ack();
+        }
+    }
+
+
+    /**
+     * Send the request, failing the messages whose operations failed
+     *
+     * @param failed Receives the operations that failed
+     *
+     * @return The operations Elasticsearch was too busy to take, which should be sent again
+     */
+    private Set<BufferedOperation> execute( final BulkRequestBuilder bulkRequest,
+                                            final List<BufferedOperation> actionOwners,
+                                            final Set<BufferedOperation> failed ) {
+
         final BulkResponse responses;
 
+        bulkSizeHistogram.update( bulkRequest.numberOfActions() );
 
         final Timer.Context timer = indexTimer.time();
 
@@ -204,39 +521,212 @@ public class EsIndexProducerImpl implements IndexProducer {
 
         failureMonitor.success();
 
-        boolean error = false;
-
-        final StringBuilder errorString = new StringBuilder(  );
+        final Set<BufferedOperation> throttled = Collections.newSetFromMap( new IdentityHashMap<>() );
 
         boolean hasTooManyRequests= false;
         for ( BulkItemResponse response : responses ) {
 
             if ( response.isFailed() ) {
-                // log error and continue processing
-                logger.error( "Unable to index id={}, type={}, index={}, failureMessage={} ", response.getId(),
-                    response.getType(), response.getIndex(),  response.getFailureMessage() );
-                //if index is overloaded on the queue fail.
+                final BufferedOperation operation = actionOwners.get( response.getItemId() );
+
+                //if index is overloaded on the queue, send it again once we've paused
                 if(response.getFailure()!=null && response.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS){
                     hasTooManyRequests =true;
+
+                    if ( operation.retries < MAX_TOO_MANY_REQUESTS_RETRIES ) {
+                        throttled.add( operation );
+                        continue;
+                    }
                 }
-                error = true;
 
-                errorString.append( response.getFailureMessage() ).append( "\n" );
+                // log error and continue processing
+                logger.error( "Unable to index id={}, type={}, index={}, failureMessage={} ", response.getId(),
+                    response.getType(), response.getIndex(),  response.getFailureMessage() );
+
+                //only the message that owns this operation fails
+                failed.add( operation );
+                operation.owner.fail( new RuntimeException(
+                    "Error during processing of bulk index operations one of the responses failed. \n" + response
+                        .getFailureMessage() ) );
             }
         }
 
-        if ( error ) {
-            if(hasTooManyRequests){
-                try{
-                    logger.warn("Encountered Queue Capacity Exception from ElasticSearch slowing by {}",
-                        indexFig.getSleepTimeForQueueError() );
-                    Thread.sleep(indexFig.getSleepTimeForQueueError());
-                }catch (Exception e){
-                    //move on
+        if(hasTooManyRequests){
+            //stop every worker so the cluster can recover, callers block on the full buffer meanwhile
+            logger.warn("Encountered Queue Capacity Exception from ElasticSearch slowing by {}",
+                indexFig.getSleepTimeForQueueError() );
+            backPressureMeter.mark();
+            pausedUntil.set( System.currentTimeMillis() + indexFig.getSleepTimeForQueueError() );
+        }
+
+        return throttled;
+    }
+
+
+    /**
+     * Continually drains the buffer into bulk requests, until we're shut down and the buffer is empty
+     */
+    private final class FlushWorker implements Runnable {
+
+        @Override
+        public void run() {
+            while ( running || !buffer.isEmpty() ) {
+                final BufferedOperation first;
+
+                try {
+                    first = buffer.poll( indexFig.getIndexBatchLinger(), TimeUnit.MILLISECONDS );
+                }
+                catch ( InterruptedException e ) {
+                    logger.warn( "Index flush worker interrupted, exiting" );
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                if ( first == null ) {
+                    continue;
                 }
+
+                final List<BufferedOperation> operations = new ArrayList<>( indexFig.getIndexBatchSize() );
+
+                //once sending starts, the operations are acknowledged by the request
+                boolean sending = false;
+
+                Timer.Context timer = null;
+
+                try {
+                    awaitBackOff();
+
+                    timer = flushTimer.time();
+
+                    final List<BufferedOperation> actionOwners = new ArrayList<>();
+                    final BulkRequestBuilder bulkRequest = initRequest();
+
+                    drain( first, bulkRequest, actionOwners, operations );
+
+                    if ( indexFig.isSkipUnchangedEnabled() ) {
+                        recordFingerprints( operations );
+                    }
+
+                    sending = true;
+                    sendRequest( bulkRequest, operations, actionOwners );
+                }
+                catch ( Throwable t ) {
+                    if ( t instanceof InterruptedException ) {
+                        logger.warn( "Index flush worker interrupted, exiting" );
+                        Thread.currentThread().interrupt();
+                    }
+                    else {
+                        logger.error( "Unexpected error flushing index buffer", t );
+                    }
+
+                    //the first operation may not have made it into the list
+                    if ( operations.isEmpty() ) {
+                        operations.add( first );
+                        indexSizeCounter.dec();
+                    }
+
+                    if ( !sending ) {
+                        fail( operations, t );
+                    }
+
+                    if ( Thread.currentThread().isInterrupted() ) {
+                        return;
+                    }
+                }
+                finally {
+                    if ( timer != null ) {
+                        timer.stop();
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * An operation waiting in the buffer
+     */
+    private static final class BufferedOperation {
+        private final BatchOperation operation;
+        private final PendingMessage owner;
+        private final int retries;
+        private final long bufferedAt = System.currentTimeMillis();
+
+
+        private BufferedOperation( final BatchOperation operation, final PendingMessage owner ) {
+            this( operation, owner, 0 );
+        }
+
+
+        private BufferedOperation( final BatchOperation operation, final PendingMessage owner, final int retries ) {
+            this.operation = operation;
+            this.owner = owner;
+            this.retries = retries;
+        }
+
+
+        /**
+         * The same operation, buffered again
+         */
+        private BufferedOperation retry() {
+            return new BufferedOperation( operation, owner, retries + 1 );
+        }
+    }
+
+
+    /**
+     * Tracks the outstanding operations of a message, and notifies the subscriber once they are all acknowledged
+     */
+    private final class PendingMessage {
+        private final IndexOperationMessage message;
+        private final Subscriber<? super IndexOperationMessage> subscriber;
+        private final AtomicInteger remaining;
+        private volatile Throwable failure;
+
+
+        private PendingMessage( final IndexOperationMessage message,
+                                final Subscriber<? super IndexOperationMessage> subscriber, final int operations ) {
+            this.message = message;
+            this.subscriber = subscriber;
+            this.remaining = new AtomicInteger( operations );
+        }
+
+
+        private void fail( final Throwable t ) {
+            if ( failure == null ) {
+                failure = t;
+            }
+        }
+
+
+        /**
+         * Fail the operations we could not buffer, operations already buffered will ack on their own
+         */
+        private void failUnbuffered( final Throwable t, final int unbuffered ) {
+            fail( t );
+
+            for ( int i = 0; i < unbuffered; i++ ) {
+                ack();
             }
-            throw new RuntimeException(
-                "Error during processing of bulk index operations one of the responses failed. \n" + errorString);
+        }
+
+
+        private void ack() {
+            if ( remaining.decrementAndGet() != 0 ) {
+                return;
+            }
+
+            inFlight.decrementAndGet();
+
+            if ( failure != null ) {
+                subscriber.onError( failure );
+                return;
+            }
+
+            roundtripTimer.update( System.currentTimeMillis() - message.getCreationTime() );
+
+            subscriber.onNext( message );
+            subscriber.onCompleted();
         }
     }
 }
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.index.impl;
+
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.usergrid.persistence.core.migration.schema.Migration;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.model.entity.Id;
+
+
+/**
+ * Stores the fingerprints of the index documents of each entity version, keyed by document id.  Since the document id
+ * holds the entity version, a document whose fingerprint is recorded doesn't need to be written again.
+ */
+public interface IndexFingerprintSerialization extends Migration {
+
+    /**
+     * Get the fingerprints recorded for documents of the entity
+     *
+     * @param applicationScope The application of the entity
+     * @param entityId The entity the documents belong to
+     * @param documentIds The documents to look up
+     *
+     * @return The fingerprints keyed by document id.  Documents without a fingerprint are left out
+     */
+    Map<String, String> getFingerprints( final ApplicationScope applicationScope, final Id entityId,
+                                         final Collection<String> documentIds );
+
+    /**
+     * Record fingerprints, keyed by document id
+     *
+     * @param ttl The seconds until they expire
+     */
+    void putFingerprints( final Map<String, String> fingerprints, final int ttl );
+
+    /**
+     * Remove the fingerprints of the documents, so they are written again the next time they're indexed
+     */
+    void removeFingerprints( final Collection<String> documentIds );
+}
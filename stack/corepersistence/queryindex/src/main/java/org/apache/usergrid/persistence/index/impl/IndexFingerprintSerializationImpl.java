@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.index.impl;
+
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.db.marshal.UTF8Type;
+
+import org.apache.usergrid.persistence.core.astyanax.CassandraConfig;
+import org.apache.usergrid.persistence.core.astyanax.IdRowCompositeSerializer;
+import org.apache.usergrid.persistence.core.astyanax.MultiTenantColumnFamily;
+import org.apache.usergrid.persistence.core.astyanax.MultiTenantColumnFamilyDefinition;
+import org.apache.usergrid.persistence.core.astyanax.ScopedRowKey;
+import org.apache.usergrid.persistence.core.astyanax.ScopedRowKeySerializer;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.model.entity.Id;
+
+import com.google.common.base.Preconditions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.astyanax.Keyspace;
+import com.netflix.astyanax.MutationBatch;
+import com.netflix.astyanax.connectionpool.exceptions.ConnectionException;
+import com.netflix.astyanax.connectionpool.exceptions.NotFoundException;
+import com.netflix.astyanax.model.Column;
+import com.netflix.astyanax.model.ColumnList;
+import com.netflix.astyanax.serializers.StringSerializer;
+
+
+/**
+ * Fingerprints live in a row per entity next to its log, with a column per document id.  Every document id holds the
+ * entity version, so the columns of old versions are removed with their documents, or expire.
+ */
+@Singleton
+public class IndexFingerprintSerializationImpl implements IndexFingerprintSerialization {
+
+    private static final IdRowCompositeSerializer ID_SER = IdRowCompositeSerializer.get();
+
+    private static final ScopedRowKeySerializer<Id> ROW_KEY_SER = new ScopedRowKeySerializer<>( ID_SER );
+
+    private static final StringSerializer STRING_SERIALIZER = StringSerializer.get();
+
+
+    private static final MultiTenantColumnFamily<ScopedRowKey<Id>, String> CF_INDEX_FINGERPRINTS =
+        new MultiTenantColumnFamily<>( "Entity_Index_Fingerprints", ROW_KEY_SER, STRING_SERIALIZER );
+
+
+    private final Keyspace keyspace;
+    private final CassandraConfig cassandraConfig;
+
+
+    @Inject
+    public IndexFingerprintSerializationImpl( final Keyspace keyspace, final CassandraConfig cassandraConfig ) {
+        this.keyspace = keyspace;
+        this.cassandraConfig = cassandraConfig;
+    }
+
+
+    @Override
+    public Map<String, String> getFingerprints( final ApplicationScope applicationScope, final Id entityId,
+                                                final Collection<String> documentIds ) {
+
+        Preconditions.checkNotNull( applicationScope, "applicationScope is required" );
+        Preconditions.checkNotNull( entityId, "entityId is required" );
+
+        if ( documentIds.isEmpty() ) {
+            return Collections.emptyMap();
+        }
+
+        final ScopedRowKey<Id> rowKey = ScopedRowKey.fromKey( applicationScope.getApplication(), entityId );
+
+        final ColumnList<String> columns;
+
+        try {
+            columns = keyspace.prepareQuery( CF_INDEX_FINGERPRINTS ).setConsistencyLevel( cassandraConfig.getReadCL() )
+                              .getKey( rowKey ).withColumnSlice( documentIds ).execute().getResult();
+        }
+        catch ( NotFoundException nfe ) {
+            //nothing recorded
+            return Collections.emptyMap();
+        }
+        catch ( ConnectionException e ) {
+            throw new RuntimeException( "Unable to connect to cassandra", e );
+        }
+
+        final Map<String, String> fingerprints = new HashMap<>( columns.size() );
+
+        for ( final Column<String> column : columns ) {
+            fingerprints.put( column.getName(), column.getStringValue() );
+        }
+
+        return fingerprints;
+    }
+
+
+    @Override
+    public void putFingerprints( final Map<String, String> fingerprints, final int ttl ) {
+
+        Preconditions.checkArgument( ttl > 0, "ttl must be > than 0" );
+
+        if ( fingerprints.isEmpty() ) {
+            return;
+        }
+
+        final MutationBatch batch = keyspace.prepareMutationBatch();
+
+        for ( final Map.Entry<String, String> fingerprint : fingerprints.entrySet() ) {
+            batch.withRow( CF_INDEX_FINGERPRINTS, createKey( fingerprint.getKey() ) )
+                 .putColumn( fingerprint.getKey(), fingerprint.getValue(), ttl );
+        }
+
+        executeBatch( batch );
+    }
+
+
+    @Override
+    public void removeFingerprints( final Collection<String> documentIds ) {
+
+        if ( documentIds.isEmpty() ) {
+            return;
+        }
+
+        final MutationBatch batch = keyspace.prepareMutationBatch();
+
+        for ( final String documentId : documentIds ) {
+            batch.withRow( CF_INDEX_FINGERPRINTS, createKey( documentId ) ).deleteColumn( documentId );
+        }
+
+        executeBatch( batch );
+    }
+
+
+    @Override
+    public Collection<MultiTenantColumnFamilyDefinition> getColumnFamilies() {
+
+        final MultiTenantColumnFamilyDefinition fingerprints =
+            new MultiTenantColumnFamilyDefinition( CF_INDEX_FINGERPRINTS, BytesType.class.getSimpleName(),
+                UTF8Type.class.getSimpleName(), UTF8Type.class.getSimpleName(),
+                MultiTenantColumnFamilyDefinition.CacheOption.KEYS );
+
+        return Collections.singleton( fingerprints );
+    }
+
+
+    /**
+     * Get the row of the entity the document belongs to
+     */
+    private static ScopedRowKey<Id> createKey( final String documentId ) {
+        return ScopedRowKey.fromKey( IndexingUtils.parseApplicationIdFromIndexDocId( documentId ),
+            IndexingUtils.parseIndexDocId( documentId ).getId() );
+    }
+
+
+    private void executeBatch( final MutationBatch batch ) {
+        try {
+            batch.execute();
+        }
+        catch ( ConnectionException e ) {
+            throw new RuntimeException( "Unable to connect to cassandra", e );
+        }
+    }
+}
@@ -20,23 +20,39 @@
 package org.apache.usergrid.persistence.index.impl;
 
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Set;
 
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.index.IndexEdge;
+import org.apache.usergrid.persistence.index.IndexFieldFilter;
 import org.apache.usergrid.persistence.model.entity.Entity;
 
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentFactory;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.google.common.base.Optional;
 
 
 /**
- * Represent the properties required to build an index request
+ * Represent the properties required to build an index request.  The document source is written when the operation is
+ * created, and handed to the bulk request as is.
  */
 public class IndexOperation implements BatchOperation {
 
@@ -45,22 +61,36 @@ public class IndexOperation implements BatchOperation {
     @JsonProperty
     public String documentId;
 
+    /**
+     * The fingerprint of the document, recorded once it's written.  Null if it isn't recorded
+     */
     @JsonProperty
-    public Map<String, Object> data;
+    public String fingerprint;
+
+    @JsonIgnore
+    private byte[] source;
 
     public IndexOperation( final String writeAlias, final ApplicationScope applicationScope, IndexEdge indexEdge,
-                           Entity entity, Optional<Set<String>> fieldsToIndex ) {
+                           Entity entity, Optional<IndexFieldFilter> fieldsToIndex ) {
+        this( writeAlias, applicationScope, indexEdge, entity, fieldsToIndex, false );
+    }
+
 
-        this( writeAlias, IndexingUtils.createIndexDocId( applicationScope, entity, indexEdge ),
-            EntityToMapConverter.convert( applicationScope, indexEdge, entity, fieldsToIndex ) );
+    public IndexOperation( final String writeAlias, final ApplicationScope applicationScope, IndexEdge indexEdge,
+                           Entity entity, Optional<IndexFieldFilter> fieldsToIndex, boolean fingerprint ) {
 
+        this.writeAlias = writeAlias;
+        this.documentId = IndexingUtils.createIndexDocId( applicationScope, entity, indexEdge );
+        this.fingerprint =
+            fingerprint ? EntityDocumentWriter.fingerprint( writeAlias, indexEdge, entity, fieldsToIndex ) : null;
+        this.source = EntityDocumentWriter.write( applicationScope, indexEdge, entity, fieldsToIndex ).toBytes();
     }
 
 
     public IndexOperation( final String writeAlias, String documentId, Map<String, Object> data ) {
         this.writeAlias = writeAlias;
-        this.data = data;
         this.documentId = documentId;
+        setData( data );
     }
 
     /**
@@ -70,8 +100,48 @@ public class IndexOperation implements BatchOperation {
     }
 
 
+    /**
+     * Get the document source as JSON.  The bytes are written into the serialized message as they are, so the
+     * document is never parsed on the way to the index
+     */
+    @JsonProperty( "data" )
+    @JsonRawValue
+    public String getSource() {
+        return new String( source, StandardCharsets.UTF_8 );
+    }
+
+
+    /**
+     * Set the document source.  Messages queued before the source was written raw hold the same JSON object, so both
+     * are read by copying the tokens of the object without building a map
+     */
+    @JsonProperty( "data" )
+    @JsonDeserialize( using = SourceDeserializer.class )
+    public void setSource( final byte[] source ) {
+        this.source = source;
+    }
+
+
+    /**
+     * Get the bytes handed to the bulk request
+     */
+    BytesReference getSourceBytes() {
+        return new BytesArray( source );
+    }
+
+
+    private void setData( final Map<String, Object> data ) {
+        try {
+            this.source = XContentFactory.contentBuilder( Requests.INDEX_CONTENT_TYPE ).map( data ).bytes().toBytes();
+        }
+        catch ( IOException e ) {
+            throw new RuntimeException( "Unable to write index document " + documentId, e );
+        }
+    }
+
+
     public void doOperation( final Client client, final BulkRequestBuilder bulkRequest ) {
-        IndexRequestBuilder builder = client.prepareIndex( writeAlias, IndexingUtils.ES_ENTITY_TYPE, documentId ).setSource( data );
+        IndexRequestBuilder builder = client.prepareIndex( writeAlias, IndexingUtils.ES_ENTITY_TYPE, documentId ).setSource( source );
 
 
         bulkRequest.add( builder );
@@ -90,7 +160,7 @@ public class IndexOperation implements BatchOperation {
 
         final IndexOperation that = ( IndexOperation ) o;
 
-        if ( !data.equals( that.data ) ) {
+        if ( !Arrays.equals( source, that.source ) ) {
             return false;
         }
         if ( !documentId.equals( that.documentId ) ) {
@@ -109,7 +179,27 @@ public class IndexOperation implements BatchOperation {
     public int hashCode() {
         int result = writeAlias.hashCode();
         result = 31 * result + documentId.hashCode();
-        result = 31 * result + data.hashCode();
+        result = 31 * result + Arrays.hashCode( source );
         return result;
     }
+
+
+    /**
+     * Copies the JSON object of the document source into bytes
+     */
+    public static final class SourceDeserializer extends JsonDeserializer<byte[]> {
+
+        @Override
+        public byte[] deserialize( final JsonParser parser, final DeserializationContext context )
+            throws IOException {
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream( 512 );
+
+            try ( JsonGenerator generator = parser.getCodec().getFactory().createGenerator( out ) ) {
+                generator.copyCurrentStructure( parser );
+            }
+
+            return out.toByteArray();
+        }
+    }
 }
@@ -36,4 +36,9 @@ public interface IndexProducer {
     Observable<IndexOperationMessage>  put(EntityIndexBatch message);
     Observable<IndexOperationMessage>  put(IndexOperationMessage message);
 
+    /**
+     * Send what is buffered and stop.  Messages put after this fail
+     */
+    void shutdown();
+
 }
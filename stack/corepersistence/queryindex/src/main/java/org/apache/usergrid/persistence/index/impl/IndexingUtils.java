@@ -280,6 +280,19 @@ public class IndexingUtils {
     }
 
 
+    /**
+     * Parse the id of the application the document belongs to
+     */
+    public static Id parseApplicationIdFromIndexDocId( final String documentId ) {
+
+        final Matcher matcher = DOCUMENT_PATTERN.matcher( documentId );
+
+        Preconditions.checkArgument( matcher.matches(), "Pattern for document id did not match expected format" );
+
+        return new SimpleId( UUID.fromString( matcher.group( 1 ) ), matcher.group( 2 ) );
+    }
+
+
     /**
      * Get the entity type
      */
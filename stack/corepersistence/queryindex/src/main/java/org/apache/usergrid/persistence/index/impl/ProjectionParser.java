@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.index.impl;
+
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.usergrid.persistence.index.SelectFieldMapping;
+import org.apache.usergrid.persistence.model.field.BooleanField;
+import org.apache.usergrid.persistence.model.field.DoubleField;
+import org.apache.usergrid.persistence.model.field.Field;
+import org.apache.usergrid.persistence.model.field.LongField;
+import org.apache.usergrid.persistence.model.field.NullField;
+
+import com.google.common.base.Optional;
+
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.ENTITY_FIELDS;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.FIELD_BOOLEAN;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.FIELD_DOUBLE;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.FIELD_LONG;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.FIELD_NAME;
+import static org.apache.usergrid.persistence.index.impl.IndexingUtils.FIELD_NULL;
+
+
+/**
+ * Reads the selected fields of an entity back out of the nested fields of its index document.  The document is a
+ * lossy copy of the entity: strings and names are lower cased, and objects and arrays are flattened.  So only top
+ * level fields with a single long, double, boolean or null value are read, and any other select means the entity
+ * has to be loaded.
+ */
+final class ProjectionParser {
+
+
+    private ProjectionParser() {
+    }
+
+
+    /**
+     * Parse the selected fields from the source of an index document
+     *
+     * @param source The document source, containing at least the nested fields
+     * @param selects The fields to select
+     *
+     * @return The field for every select keyed by name, or absent if any of them can't be read from the document
+     */
+    static Optional<Map<String, Field>> parse( final Map<String, Object> source,
+                                               final Collection<SelectFieldMapping> selects ) {
+
+        if ( source == null || selects.isEmpty() ) {
+            return Optional.absent();
+        }
+
+        final Set<String> names = new HashSet<>( selects.size() );
+
+        for ( final SelectFieldMapping select : selects ) {
+            final String name = select.getSourceFieldName();
+
+            //only top level fields are selected, and we can't tell which case the indexed name was in
+            if ( name.contains( IndexingUtils.FIELD_SEPERATOR ) || !name.equals( name.toLowerCase() ) ) {
+                return Optional.absent();
+            }
+
+            names.add( name );
+        }
+
+        final Object indexedFields = source.get( ENTITY_FIELDS );
+
+        if ( !( indexedFields instanceof List ) ) {
+            return Optional.absent();
+        }
+
+        final Map<String, Field> fields = new HashMap<>( names.size() );
+
+        for ( final Object indexedField : ( List<?> ) indexedFields ) {
+            if ( !( indexedField instanceof Map ) ) {
+                continue;
+            }
+
+            final Map<?, ?> fieldMap = ( Map<?, ?> ) indexedField;
+            final Object name = fieldMap.get( FIELD_NAME );
+
+            if ( !names.contains( name ) ) {
+                continue;
+            }
+
+            final Field field = toField( ( String ) name, fieldMap );
+
+            //a second value means the field is an array
+            if ( field == null || fields.containsKey( name ) ) {
+                return Optional.absent();
+            }
+
+            fields.put( ( String ) name, field );
+        }
+
+        //fields we didn't find may just not be indexed
+        if ( fields.size() != names.size() ) {
+            return Optional.absent();
+        }
+
+        return Optional.of( fields );
+    }
+
+
+    /**
+     * Create the field from an indexed field.  Null if the indexed value is not an exact copy of the entity value
+     */
+    private static Field toField( final String name, final Map<?, ?> fieldMap ) {
+
+        final Object longValue = fieldMap.get( FIELD_LONG );
+
+        if ( longValue instanceof Number ) {
+            return new LongField( name, ( ( Number ) longValue ).longValue() );
+        }
+
+        final Object doubleValue = fieldMap.get( FIELD_DOUBLE );
+
+        if ( doubleValue instanceof Number ) {
+            return new DoubleField( name, ( ( Number ) doubleValue ).doubleValue() );
+        }
+
+        final Object booleanValue = fieldMap.get( FIELD_BOOLEAN );
+
+        if ( booleanValue instanceof Boolean ) {
+            return new BooleanField( name, ( Boolean ) booleanValue );
+        }
+
+        if ( fieldMap.size() == 2 && fieldMap.containsKey( FIELD_NULL ) ) {
+            return new NullField( name );
+        }
+
+        return null;
+    }
+}
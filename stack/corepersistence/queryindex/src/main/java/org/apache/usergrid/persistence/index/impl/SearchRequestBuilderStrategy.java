@@ -27,28 +27,21 @@ import org.elasticsearch.index.query.BoolFilterBuilder;
 import org.elasticsearch.index.query.FilterBuilder;
 import org.elasticsearch.index.query.FilterBuilders;
 import org.elasticsearch.index.query.QueryBuilder;
-import org.elasticsearch.index.query.TermFilterBuilder;
-import org.elasticsearch.search.sort.FieldSortBuilder;
-import org.elasticsearch.search.sort.GeoDistanceSortBuilder;
-import org.elasticsearch.search.sort.SortBuilders;
-import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.search.sort.SortBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.usergrid.persistence.core.scope.ApplicationScope;
 import org.apache.usergrid.persistence.index.EntityIndex;
 import org.apache.usergrid.persistence.index.SearchEdge;
+import org.apache.usergrid.persistence.index.SearchSeek;
 import org.apache.usergrid.persistence.index.SearchTypes;
-import org.apache.usergrid.persistence.index.exceptions.IndexException;
 import org.apache.usergrid.persistence.index.query.ParsedQuery;
-import org.apache.usergrid.persistence.index.query.SortPredicate;
-import org.apache.usergrid.persistence.index.query.tree.QueryVisitor;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 
 import static org.apache.usergrid.persistence.index.impl.IndexingUtils.createContextName;
-import static org.apache.usergrid.persistence.index.impl.SortBuilder.sortPropertyTermFilter;
 
 
 /**
@@ -63,131 +56,86 @@ public class SearchRequestBuilderStrategy {
     private final ApplicationScope applicationScope;
     private final IndexAlias alias;
     private final int cursorTimeout;
+    private final boolean projectSelects;
+    private final SearchTemplateCache searchTemplateCache;
 
 
     public SearchRequestBuilderStrategy( final EsProvider esProvider, final ApplicationScope applicationScope,
-                                         final IndexAlias alias, int cursorTimeout ) {
+                                         final IndexAlias alias, int cursorTimeout, final boolean projectSelects,
+                                         final SearchTemplateCache searchTemplateCache ) {
 
         this.esProvider = esProvider;
         this.applicationScope = applicationScope;
         this.alias = alias;
         this.cursorTimeout = cursorTimeout;
+        this.projectSelects = projectSelects;
+        this.searchTemplateCache = searchTemplateCache;
     }
 
 
     /**
-     * Get the search request builder
+     * Get the search request builder.  When a seek is present results start directly behind it, and from must be 0
      */
     public SearchRequestBuilder getBuilder( final SearchEdge searchEdge, final SearchTypes searchTypes,
-                                            final ParsedQuery query, final int limit, final int from ) {
+                                            final ParsedQuery query, final int limit, final int from,
+                                            final Optional<SearchSeek> seek ) {
 
         Preconditions
             .checkArgument( limit <= EntityIndex.MAX_LIMIT, "limit is greater than max " + EntityIndex.MAX_LIMIT );
+        Preconditions.checkArgument( !seek.isPresent() || from == 0, "from must be 0 when seeking" );
 
         SearchRequestBuilder srb =
             esProvider.getClient().prepareSearch( alias.getReadAlias() ).setTypes( IndexingUtils.ES_ENTITY_TYPE )
                       .setSearchType( SearchType.QUERY_THEN_FETCH );
 
 
-        final QueryVisitor visitor = visitParsedQuery( query );
+        //the query, filter and sorts from the grammar, cached by the shape of the query
+        final CompiledSearch search = searchTemplateCache.compile( query );
 
-        final Optional<QueryBuilder> queryBuilder = visitor.getQueryBuilder();
+        final Optional<QueryBuilder> queryBuilder = search.getQueryBuilder();
 
         if ( queryBuilder.isPresent() ) {
             srb.setQuery( queryBuilder.get() );
         }
 
-        srb.setPostFilter( createFilterBuilder( searchEdge, visitor, searchTypes ) );
 
+        final BoolFilterBuilder filterBuilder =
+            createFilterBuilder( searchEdge, search.getFilterBuilder(), searchTypes );
 
-        srb = srb.setFrom( from ).setSize( limit );
+        if ( seek.isPresent() ) {
+            Preconditions.checkArgument( search.isDefaultSort(), "Seeking is only supported in the default sort order" );
 
+            filterBuilder.must( createSeekFilter( seek.get() ) );
+        }
 
-        //if we have a geo field, sort by closest to farthest by default
-        final GeoSortFields geoFields = visitor.getGeoSorts();
+        srb.setPostFilter( filterBuilder );
 
 
-        //no sort predicates, sort by edge time descending, entity id second
-        if ( query.getSortPredicates().size() == 0 ) {
-            applyDefaultSortPredicates( srb, geoFields );
+        srb = srb.setFrom( from ).setSize( limit );
+
+        //candidates only need the document id, unless we can answer the selects from the indexed fields
+        if ( isProjected( query ) ) {
+            srb.setFetchSource( IndexingUtils.ENTITY_FIELDS, null );
         }
         else {
-            applySortPredicates( srb, query, geoFields );
+            srb.setFetchSource( false );
         }
 
 
-        return srb;
-    }
-
-
-    /**
-     * Apply our default sort predicate logic
-     */
-    private void applyDefaultSortPredicates( final SearchRequestBuilder srb, final GeoSortFields geoFields ) {
-        //we have geo fields, sort through them in visit order
-        for ( String geoField : geoFields.fields() ) {
-
-            final GeoDistanceSortBuilder geoSort = geoFields.applyOrder( geoField, SortOrder.ASC );
-
-            srb.addSort( geoSort );
+        for ( final SortBuilder sort : search.getSorts() ) {
+            srb.addSort( sort );
         }
 
-        //now sort by edge timestamp, then entity id
-        //sort by the edge timestamp
-        srb.addSort( SortBuilders.fieldSort( IndexingUtils.EDGE_TIMESTAMP_FIELDNAME ).order( SortOrder.DESC ) );
-
-        //sort by the entity id if our times are equal
-        srb.addSort( SortBuilders.fieldSort( IndexingUtils.ENTITY_ID_FIELDNAME ).order( SortOrder.ASC ) );
 
-        return;
+        return srb;
     }
 
 
     /**
-     * Invoked when there are sort predicates
+     * Return true if the selects of the query should be read from the index
      */
-    private void applySortPredicates( final SearchRequestBuilder srb, final ParsedQuery query,
-                                      final GeoSortFields geoFields ) {
-
-
-        //we have sort predicates, sort them
-        for ( SortPredicate sp : query.getSortPredicates() ) {
-
-
-            // we do not know the type of the "order by" property and so we do not know what
-            // type prefix to use. So, here we add an order by clause for every possible type
-            // that you can order by: string, number and boolean and we ask ElasticSearch
-            // to ignore any fields that are not present.
-            final SortOrder order = sp.getDirection().toEsSort();
-            final String propertyName = sp.getPropertyName();
-
-
-            //if the user specified a geo field in their sort, then honor their sort order and use the point they
-            // specified
-            if ( geoFields.contains( propertyName ) ) {
-                final GeoDistanceSortBuilder geoSort = geoFields.applyOrder( propertyName, SortOrder.ASC );
-                srb.addSort( geoSort );
-            }
-
-            //apply regular sort logic, since this is not a geo point
-            else {
-
-
-                //sort order is arbitrary if the user changes data types.  Double, long, string, boolean are supported
-                //default sort types
-
-                srb.addSort( createSort( order, IndexingUtils.FIELD_DOUBLE_NESTED, propertyName ) );
-
-                srb.addSort( createSort( order, IndexingUtils.FIELD_LONG_NESTED, propertyName ) );
-
-                /**
-                 * We always want to sort by the unanalyzed string field to ensure correct ordering
-                 */
-                srb.addSort( createSort( order, IndexingUtils.FIELD_STRING_NESTED_UNANALYZED, propertyName ) );
-
-                srb.addSort( createSort( order, IndexingUtils.FIELD_BOOLEAN_NESTED, propertyName ) );
-            }
-        }
+    public boolean isProjected( final ParsedQuery query ) {
+        return projectSelects && !query.getSelectFieldMappings().isEmpty();
     }
 
 
@@ -195,8 +143,9 @@ public class SearchRequestBuilderStrategy {
      * Create our filter builder.  We need to restrict our results on edge search, as well as on types, and any filters
      * that came from the grammar.
      */
-    private FilterBuilder createFilterBuilder( final SearchEdge searchEdge, final QueryVisitor visitor,
-                                               final SearchTypes searchTypes ) {
+    private BoolFilterBuilder createFilterBuilder( final SearchEdge searchEdge,
+                                                   final Optional<FilterBuilder> queryBuilder,
+                                                   final SearchTypes searchTypes ) {
         String context = createContextName( applicationScope, searchEdge );
 
 
@@ -233,8 +182,6 @@ public class SearchRequestBuilderStrategy {
 
         //if we have a filter from our visitor, add it
 
-        Optional<FilterBuilder> queryBuilder = visitor.getFilterBuilder();
-
         if ( queryBuilder.isPresent() ) {
             boolQueryFilter.must( queryBuilder.get() );
         }
@@ -244,38 +191,27 @@ public class SearchRequestBuilderStrategy {
 
 
     /**
-     * Perform our visit of the query once for efficiency
+     * Create a filter for every document after the seek in the default sort order.  That's an older edge timestamp,
+     * the same edge timestamp and a greater entity id, or the same entity with a greater version
      */
-    private QueryVisitor visitParsedQuery( final ParsedQuery parsedQuery ) {
-        QueryVisitor v = new EsQueryVistor();
+    private FilterBuilder createSeekFilter( final SearchSeek seek ) {
 
-        if ( parsedQuery.getRootOperand() != null ) {
+        final String entityId = IndexingUtils.entityId( seek.getEntityId() );
 
-            try {
-                parsedQuery.getRootOperand().visit( v );
-            }
-            catch ( IndexException ex ) {
-                throw new RuntimeException( "Error building ElasticSearch query", ex );
-            }
-        }
+        final FilterBuilder olderEdge =
+            FilterBuilders.rangeFilter( IndexingUtils.EDGE_TIMESTAMP_FIELDNAME ).lt( seek.getEdgeTimestamp() );
 
-        return v;
-    }
-
-
-    /**
-     * Create a sort for the property name and field name specified
-     *
-     * @param sortOrder The sort order
-     * @param fieldName The name of the field for the type
-     * @param propertyName The property name the user specified for the sort
-     */
-    private FieldSortBuilder createSort( final SortOrder sortOrder, final String fieldName,
-                                         final String propertyName ) {
+        final FilterBuilder greaterId = FilterBuilders.rangeFilter( IndexingUtils.ENTITY_ID_FIELDNAME ).gt( entityId );
 
-        final TermFilterBuilder propertyFilter = sortPropertyTermFilter( propertyName );
+        final FilterBuilder sameIdGreaterVersion = FilterBuilders.boolFilter()
+            .must( FilterBuilders.termFilter( IndexingUtils.ENTITY_ID_FIELDNAME, entityId ) )
+            .must( FilterBuilders.rangeFilter( IndexingUtils.ENTITY_VERSION_FIELDNAME )
+                .gt( seek.getEntityVersion().toString() ) );
 
+        final FilterBuilder sameEdge = FilterBuilders.boolFilter()
+            .must( FilterBuilders.termFilter( IndexingUtils.EDGE_TIMESTAMP_FIELDNAME, seek.getEdgeTimestamp() ) )
+            .must( FilterBuilders.orFilter( greaterId, sameIdGreaterVersion ) );
 
-        return SortBuilders.fieldSort( fieldName ).order( sortOrder ).setNestedFilter( propertyFilter );
+        return FilterBuilders.orFilter( olderEdge, sameEdge );
     }
 }
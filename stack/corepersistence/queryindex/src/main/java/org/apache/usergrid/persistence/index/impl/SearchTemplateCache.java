@@ -0,0 +1,385 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  The ASF licenses this file to You
+ * under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.  For additional information regarding
+ * copyright in this work, please see the NOTICE file in the top level
+ * directory of this distribution.
+ *
+ */
+package org.apache.usergrid.persistence.index.impl;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.elasticsearch.common.jackson.core.io.JsonStringEncoder;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.index.IndexFig;
+import org.apache.usergrid.persistence.index.query.ParsedQuery;
+import org.apache.usergrid.persistence.index.query.QueryShape;
+
+import com.codahale.metrics.Meter;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+
+/**
+ * Keeps the query, filter and sorts the visitor built for each query shape, with a slot for each literal.  A query
+ * whose shape is cached skips the visitor, and is sent as the cached json with its own literals written into the
+ * slots.
+ *
+ * Templates are built by visiting the shape bound with sentinel literals, and finding the sentinels in the json.  A
+ * template is only kept if it reproduces exactly what the visitor built for the query that created it.  Shapes with
+ * float literals or geo sorts are never compiled, since their literals aren't written verbatim.
+ */
+@Singleton
+public class SearchTemplateCache {
+
+    private static final Logger logger = LoggerFactory.getLogger( SearchTemplateCache.class );
+
+    /**
+     * Cached for shapes that can't be compiled, so we don't try again
+     */
+    private static final SearchTemplate NOT_COMPILED = new SearchTemplate( null, null, null, false );
+
+    private static final long SENTINEL_MIN = 100000000000000000L;
+    private static final long SENTINEL_MAX = 999999999999999999L;
+
+
+    private final Cache<String, SearchTemplate> templates;
+
+    private final Meter hitMeter;
+    private final Meter missMeter;
+
+
+    @Inject
+    public SearchTemplateCache( final IndexFig indexFig, final MetricsFactory metricsFactory ) {
+
+        final int cacheSize = indexFig.getQueryPlanCacheSize();
+
+        this.templates = cacheSize > 0 ? CacheBuilder.newBuilder().maximumSize( cacheSize ).build() : null;
+
+        this.hitMeter = metricsFactory.getMeter( SearchTemplateCache.class, "query.template.cache.hit" );
+        this.missMeter = metricsFactory.getMeter( SearchTemplateCache.class, "query.template.cache.miss" );
+    }
+
+
+    /**
+     * Get the query, filter and sorts for the parsed query
+     */
+    CompiledSearch compile( final ParsedQuery query ) {
+
+        final Optional<QueryShape> shape = query.getShape();
+
+        if ( templates == null || !shape.isPresent() ) {
+            return CompiledSearch.visit( query );
+        }
+
+        final String key = templateKey( shape.get() );
+
+        if ( key == null ) {
+            return CompiledSearch.visit( query );
+        }
+
+        final SearchTemplate template = templates.getIfPresent( key );
+
+        if ( template != null ) {
+            hitMeter.mark();
+
+            return template == NOT_COMPILED ? CompiledSearch.visit( query ) : template.bind( shape.get() );
+        }
+
+        missMeter.mark();
+
+        final CompiledSearch search = CompiledSearch.visit( query );
+
+        templates.put( key, compileTemplate( shape.get(), search ) );
+
+        return search;
+    }
+
+
+    /**
+     * Booleans are part of the shape's tree, but they decide the json, so they're part of the template's key
+     *
+     * @return The key, or null if the shape can't be compiled
+     */
+    private static String templateKey( final QueryShape shape ) {
+        StringBuilder key = null;
+
+        for ( int i = 0; i < shape.getLiteralCount(); i++ ) {
+            final QueryShape.LiteralType type = shape.getType( i );
+
+            if ( type == QueryShape.LiteralType.FLOAT ) {
+                return null;
+            }
+
+            if ( type == QueryShape.LiteralType.BOOLEAN ) {
+                if ( key == null ) {
+                    key = new StringBuilder( shape.getKey() );
+                }
+
+                key.append( '\u0000' ).append( shape.getText( i ) );
+            }
+        }
+
+        return key == null ? shape.getKey() : key.toString();
+    }
+
+
+    /**
+     * Compile the template of the shape, and check it against what the visitor built for it
+     */
+    private static SearchTemplate compileTemplate( final QueryShape shape, final CompiledSearch search ) {
+
+        if ( search.isGeoSorted() ) {
+            return NOT_COMPILED;
+        }
+
+        final int count = shape.getLiteralCount();
+
+        final List<String> literals = new ArrayList<>( count );
+        final String[] sentinels = new String[count];
+
+        for ( int i = 0; i < count; i++ ) {
+            switch ( shape.getType( i ) ) {
+                case BOOLEAN:
+                    literals.add( shape.getText( i ) );
+                    break;
+
+                case LONG:
+                    sentinels[i] = Long.toString( ThreadLocalRandom.current().nextLong( SENTINEL_MIN, SENTINEL_MAX ) );
+                    literals.add( sentinels[i] );
+                    break;
+
+                case UUID:
+                    //keep the first char a digit or a letter, like the shape's
+                    final char first = shape.getText( i ).charAt( 0 );
+                    final String uuid = UUID.randomUUID().toString().substring( 1 );
+
+                    sentinels[i] = ( Character.isDigit( first ) ? '0' : 'a' ) + uuid;
+                    literals.add( sentinels[i] );
+                    break;
+
+                case STRING:
+                    final Object value = shape.getValue( i );
+
+                    if ( value == null ) {
+                        return NOT_COMPILED;
+                    }
+
+                    sentinels[i] = "q" + UUID.randomUUID().toString().replace( "-", "" ) + (
+                        ( ( String ) value ).indexOf( '*' ) >= 0 ? "*" : "" );
+                    literals.add( "'" + sentinels[i] + "'" );
+                    break;
+
+                default:
+                    return NOT_COMPILED;
+            }
+        }
+
+        final CompiledSearch sentinelSearch;
+
+        try {
+            sentinelSearch = CompiledSearch.visit( shape.bind( literals ) );
+        }
+        catch ( RuntimeException e ) {
+            logger.debug( "Unable to bind sentinels to query shape {}", shape.getKey(), e );
+            return NOT_COMPILED;
+        }
+
+        final SearchTemplate template = new SearchTemplate( split( queryJson( sentinelSearch ), sentinels ),
+            split( filterJson( sentinelSearch ), sentinels ), search.getSorts(), search.isDefaultSort() );
+
+        //a literal that isn't written verbatim would leave its sentinel out, so make sure we build the same search
+        final String[] values = new String[count];
+
+        if ( !Objects.equals( queryJson( search ), render( template.queryParts, shape, values ) ) || !Objects
+            .equals( filterJson( search ), render( template.filterParts, shape, values ) ) ) {
+
+            logger.debug( "The search template of query shape {} doesn't match its query", shape.getKey() );
+            return NOT_COMPILED;
+        }
+
+        return template;
+    }
+
+
+    private static String queryJson( final CompiledSearch search ) {
+        final Optional<QueryBuilder> builder = search.getQueryBuilder();
+
+        return builder.isPresent() ? builder.get().buildAsBytes().toUtf8() : null;
+    }
+
+
+    private static String filterJson( final CompiledSearch search ) {
+        final Optional<FilterBuilder> builder = search.getFilterBuilder();
+
+        return builder.isPresent() ? builder.get().buildAsBytes().toUtf8() : null;
+    }
+
+
+    /**
+     * Split the json into text and the positions of the literals whose sentinels appear in it
+     *
+     * @return The parts, or null if there is no json
+     */
+    private static List<Object> split( final String json, final String[] sentinels ) {
+        if ( json == null ) {
+            return null;
+        }
+
+        final List<Object> parts = new ArrayList<>();
+
+        int last = 0;
+
+        while ( true ) {
+            int found = -1;
+            int position = -1;
+
+            for ( int i = 0; i < sentinels.length; i++ ) {
+                if ( sentinels[i] == null ) {
+                    continue;
+                }
+
+                final int index = json.indexOf( sentinels[i], last );
+
+                if ( index >= 0 && ( found < 0 || index < found ) ) {
+                    found = index;
+                    position = i;
+                }
+            }
+
+            if ( found < 0 ) {
+                break;
+            }
+
+            parts.add( json.substring( last, found ) );
+            parts.add( position );
+
+            last = found + sentinels[position].length();
+        }
+
+        parts.add( json.substring( last ) );
+
+        return parts;
+    }
+
+
+    /**
+     * Write the shape's literals into the slots of the parts
+     *
+     * @param values The rendered literals, filled in as they're used
+     *
+     * @return The json, or null if there are no parts
+     */
+    private static String render( final List<Object> parts, final QueryShape shape, final String[] values ) {
+        if ( parts == null ) {
+            return null;
+        }
+
+        final StringBuilder json = new StringBuilder();
+
+        for ( final Object part : parts ) {
+            if ( part instanceof String ) {
+                json.append( ( String ) part );
+                continue;
+            }
+
+            final int position = ( Integer ) part;
+
+            if ( values[position] == null ) {
+                values[position] = renderLiteral( shape, position );
+            }
+
+            json.append( values[position] );
+        }
+
+        return json.toString();
+    }
+
+
+    /**
+     * Write the literal the way the visitor does.  Strings are the contents of a json string.  The query is lower
+     * cased, so a uuid's text is already what the visitor writes
+     */
+    private static String renderLiteral( final QueryShape shape, final int position ) {
+        switch ( shape.getType( position ) ) {
+            case UUID:
+                return shape.getText( position );
+
+            case LONG:
+                return Long.toString( Long.parseLong( shape.getText( position ) ) );
+
+            case STRING:
+                return new String(
+                    JsonStringEncoder.getInstance().quoteAsString( ( String ) shape.getValue( position ) ) );
+
+            default:
+                return shape.getValue( position ).toString();
+        }
+    }
+
+
+    /**
+     * The json of a query shape's query and filter, and its sorts
+     */
+    private static final class SearchTemplate {
+        private final List<Object> queryParts;
+        private final List<Object> filterParts;
+        private final List<SortBuilder> sorts;
+        private final boolean defaultSort;
+
+
+        private SearchTemplate( final List<Object> queryParts, final List<Object> filterParts,
+                                final List<SortBuilder> sorts, final boolean defaultSort ) {
+            this.queryParts = queryParts;
+            this.filterParts = filterParts;
+            this.sorts = sorts;
+            this.defaultSort = defaultSort;
+        }
+
+
+        /**
+         * Write the shape's literals into the template
+         */
+        private CompiledSearch bind( final QueryShape shape ) {
+            final String[] values = new String[shape.getLiteralCount()];
+
+            final Optional<QueryBuilder> query = queryParts == null ? Optional.<QueryBuilder>absent() :
+                                                 Optional.<QueryBuilder>of(
+                                                     QueryBuilders.wrapperQuery( render( queryParts, shape, values ) ) );
+
+            final Optional<FilterBuilder> filter = filterParts == null ? Optional.<FilterBuilder>absent() :
+                                                   Optional.<FilterBuilder>of( FilterBuilders
+                                                       .wrapperFilter( render( filterParts, shape, values ) ) );
+
+            return new CompiledSearch( query, filter, sorts, defaultSort, false );
+        }
+    }
+}
@@ -31,11 +31,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import org.apache.usergrid.persistence.index.SelectFieldMapping;
 import org.apache.usergrid.persistence.index.exceptions.QueryParseException;
 import org.apache.usergrid.persistence.index.query.tree.Operand;
 
+import com.google.common.base.Optional;
+
 
 /**
  * Our object that represents our parsed query
@@ -58,8 +61,47 @@ public class ParsedQuery {
      */
     private Operand rootOperand;
 
+    /**
+     * Builds the root operand the first time it's read, for queries bound from a cached shape
+     */
+    private Supplier<Operand> rootOperandSupplier;
+
     private String originalQuery;
 
+    /**
+     * The shape of the query, when it came from the {@link ParsedQueryCache}
+     */
+    private QueryShape shape;
+
+
+    /**
+     * Copy the selects and sorts of this query onto a new query, with a root operand built when it's first read
+     */
+    ParsedQuery copy( final Supplier<Operand> rootOperand ) {
+        final ParsedQuery copy = new ParsedQuery();
+
+        copy.sortPropertyNames.addAll( sortPropertyNames );
+        copy.sortPredicateList.addAll( sortPredicateList );
+        copy.fieldMappings.putAll( fieldMappings );
+        copy.rootOperandSupplier = rootOperand;
+        copy.originalQuery = originalQuery;
+
+        return copy;
+    }
+
+
+    /**
+     * Get the shape of this query.  Only queries built by the {@link ParsedQueryCache} have one
+     */
+    public Optional<QueryShape> getShape() {
+        return Optional.fromNullable( shape );
+    }
+
+
+    void setShape( final QueryShape shape ) {
+        this.shape = shape;
+    }
+
 
     /**
      * Get the original query
@@ -86,6 +128,7 @@ public class ParsedQuery {
      */
     public ParsedQuery setRootOperand(final Operand rootOperand){
         this.rootOperand = rootOperand;
+        this.rootOperandSupplier = null;
 
         return this;
     }
@@ -200,6 +243,11 @@ public class ParsedQuery {
      * @return
      */
     public Operand getRootOperand() {
+        if ( rootOperandSupplier != null ) {
+            rootOperand = rootOperandSupplier.get();
+            rootOperandSupplier = null;
+        }
+
         return rootOperand;
     }
 
@@ -57,11 +57,16 @@ public class ParsedQueryBuilder {
             logger.trace("Processing raw query: {}", ql);
         }
 
-        final String trimmedLowercaseQuery = ql.trim().toLowerCase();
+        return parse( ql, tokenize( rewrite( ql ) ) );
+    }
 
 
-        //the output query after post processing
-        final String outputQuery;
+    /**
+     * Lower case the query and rewrite it to be a correct query grammar
+     */
+    static String rewrite( final String ql ) {
+
+        final String trimmedLowercaseQuery = ql.trim().toLowerCase();
 
         //it doesn't start with select, rewrite it to be a correct query grammar
         if ( !trimmedLowercaseQuery.startsWith( "select" ) ) {
@@ -69,22 +74,37 @@ public class ParsedQueryBuilder {
             //just an order by, add the select
             //just starts with a where, add the select
             if ( trimmedLowercaseQuery.startsWith( "order by" ) || trimmedLowercaseQuery.startsWith( "where" )) {
-                outputQuery = "select * " + trimmedLowercaseQuery;
+                return "select * " + trimmedLowercaseQuery;
             }
 
 
             //junk, bail
             else {
-               outputQuery = "select * where " + trimmedLowercaseQuery;
+               return "select * where " + trimmedLowercaseQuery;
             }
         }
-        else {
-            outputQuery = trimmedLowercaseQuery;
-        }
 
+        return trimmedLowercaseQuery;
+    }
+
+
+    /**
+     * Read every token of the rewritten query
+     */
+    static CommonTokenStream tokenize( final String outputQuery ) {
         ANTLRStringStream in = new ANTLRStringStream( outputQuery );
         CpQueryFilterLexer lexer = new CpQueryFilterLexer( in );
         CommonTokenStream tokens = new CommonTokenStream( lexer );
+        tokens.fill();
+
+        return tokens;
+    }
+
+
+    /**
+     * Parse the tokens of the query
+     */
+    static ParsedQuery parse( final String ql, final CommonTokenStream tokens ) throws QueryParseException {
         CpQueryFilterParser parser = new CpQueryFilterParser( tokens );
 
 
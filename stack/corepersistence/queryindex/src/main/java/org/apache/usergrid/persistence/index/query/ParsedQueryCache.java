@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.index.query;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.tree.CommonTree;
+import org.antlr.runtime.tree.Tree;
+
+import org.apache.commons.lang.StringUtils;
+
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.index.IndexFig;
+import org.apache.usergrid.persistence.index.exceptions.QueryParseException;
+import org.apache.usergrid.persistence.index.query.tree.AndOperand;
+import org.apache.usergrid.persistence.index.query.tree.BooleanLiteral;
+import org.apache.usergrid.persistence.index.query.tree.ContainsOperand;
+import org.apache.usergrid.persistence.index.query.tree.ContainsProperty;
+import org.apache.usergrid.persistence.index.query.tree.Equal;
+import org.apache.usergrid.persistence.index.query.tree.FloatLiteral;
+import org.apache.usergrid.persistence.index.query.tree.GreaterThan;
+import org.apache.usergrid.persistence.index.query.tree.GreaterThanEqual;
+import org.apache.usergrid.persistence.index.query.tree.LessThan;
+import org.apache.usergrid.persistence.index.query.tree.LessThanEqual;
+import org.apache.usergrid.persistence.index.query.tree.LongLiteral;
+import org.apache.usergrid.persistence.index.query.tree.NotOperand;
+import org.apache.usergrid.persistence.index.query.tree.Operand;
+import org.apache.usergrid.persistence.index.query.tree.OrOperand;
+import org.apache.usergrid.persistence.index.query.tree.Property;
+import org.apache.usergrid.persistence.index.query.tree.StringLiteral;
+import org.apache.usergrid.persistence.index.query.tree.UUIDLiteral;
+import org.apache.usergrid.persistence.index.query.tree.WithinOperand;
+import org.apache.usergrid.persistence.index.query.tree.WithinProperty;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+
+/**
+ * Parses queries like {@link ParsedQueryBuilder}, but keeps the parsed tree of each {@link QueryShape}, so queries
+ * that only differ in their values share a tree.  On a hit the query is only scanned for its literals, never lexed,
+ * and the cached tree is copied with the query's own literals.
+ */
+@Singleton
+public class ParsedQueryCache {
+
+    /**
+     * Create a copy of each node of the grammar from its token
+     */
+    private static final Map<Class<?>, Function<Token, CommonTree>> NODE_FACTORIES = new HashMap<>();
+
+    static {
+        NODE_FACTORIES.put( AndOperand.class, t -> new AndOperand( t ) );
+        NODE_FACTORIES.put( OrOperand.class, t -> new OrOperand( t ) );
+        NODE_FACTORIES.put( NotOperand.class, t -> new NotOperand( t ) );
+        NODE_FACTORIES.put( Equal.class, t -> new Equal( t ) );
+        NODE_FACTORIES.put( LessThan.class, t -> new LessThan( t ) );
+        NODE_FACTORIES.put( LessThanEqual.class, t -> new LessThanEqual( t ) );
+        NODE_FACTORIES.put( GreaterThan.class, t -> new GreaterThan( t ) );
+        NODE_FACTORIES.put( GreaterThanEqual.class, t -> new GreaterThanEqual( t ) );
+        NODE_FACTORIES.put( ContainsOperand.class, t -> new ContainsOperand( t ) );
+        NODE_FACTORIES.put( WithinOperand.class, t -> new WithinOperand( t ) );
+        NODE_FACTORIES.put( Property.class, t -> new Property( t ) );
+        NODE_FACTORIES.put( ContainsProperty.class, t -> new ContainsProperty( t ) );
+        NODE_FACTORIES.put( WithinProperty.class, t -> new WithinProperty( t ) );
+        NODE_FACTORIES.put( BooleanLiteral.class, t -> new BooleanLiteral( t ) );
+        NODE_FACTORIES.put( LongLiteral.class, t -> new LongLiteral( t ) );
+        NODE_FACTORIES.put( FloatLiteral.class, t -> new FloatLiteral( t ) );
+        NODE_FACTORIES.put( StringLiteral.class, t -> new StringLiteral( t ) );
+        NODE_FACTORIES.put( UUIDLiteral.class, t -> new UUIDLiteral( t ) );
+    }
+
+
+    private final Cache<String, QueryTemplate> templates;
+
+    private final Meter hitMeter;
+    private final Meter missMeter;
+
+
+    @Inject
+    public ParsedQueryCache( final IndexFig indexFig, final MetricsFactory metricsFactory ) {
+
+        final int cacheSize = indexFig.getQueryPlanCacheSize();
+
+        this.templates = cacheSize > 0 ? CacheBuilder.newBuilder().maximumSize( cacheSize ).recordStats().build() : null;
+
+        this.hitMeter = metricsFactory.getMeter( ParsedQueryCache.class, "query.plan.cache.hit" );
+        this.missMeter = metricsFactory.getMeter( ParsedQueryCache.class, "query.plan.cache.miss" );
+
+        if ( templates != null ) {
+            metricsFactory.addGauge( ParsedQueryCache.class, "query.plan.cache.hit_rate",
+                ( Gauge<Double> ) () -> templates.stats().hitRate() );
+        }
+    }
+
+
+    /**
+     * Generate a parsedQuery from the ql.  The result is the same as {@link ParsedQueryBuilder#build(String)}, with
+     * the shape of the query when it has one
+     */
+    public ParsedQuery build( final String ql ) throws QueryParseException {
+        if ( templates == null || StringUtils.isEmpty( ql ) ) {
+            return ParsedQueryBuilder.build( ql );
+        }
+
+        final String rewritten = ParsedQueryBuilder.rewrite( ql );
+
+        final QueryShape shape = QueryShape.scan( rewritten );
+
+        if ( shape == null ) {
+            missMeter.mark();
+            return ParsedQueryBuilder.parse( ql, ParsedQueryBuilder.tokenize( rewritten ) );
+        }
+
+        final QueryTemplate template = templates.getIfPresent( shape.getKey() );
+
+        if ( template != null ) {
+            hitMeter.mark();
+            return template.bind( shape.withTemplate( template ), ql );
+        }
+
+        missMeter.mark();
+
+        final CommonTokenStream tokens = ParsedQueryBuilder.tokenize( rewritten );
+
+        final List<Token> literals = new ArrayList<>();
+        final Map<Integer, Integer> literalPositions = new HashMap<>();
+
+        for ( final Object element : tokens.getTokens() ) {
+            final Token token = ( Token ) element;
+
+            if ( token.getChannel() == Token.DEFAULT_CHANNEL && isLiteral( token ) ) {
+                literalPositions.put( token.getTokenIndex(), literals.size() );
+                literals.add( token );
+            }
+        }
+
+        final ParsedQuery parsedQuery = ParsedQueryBuilder.parse( ql, tokens );
+
+        //only keep the tree if the scanner found the same literals as the lexer, since hits are never lexed
+        if ( shape.matches( literals ) && isBindable( parsedQuery.getRootOperand(), literalPositions ) ) {
+            final QueryTemplate created = new QueryTemplate( parsedQuery, literalPositions );
+
+            templates.put( shape.getKey(), created );
+            parsedQuery.setShape( shape.withTemplate( created ) );
+        }
+
+        return parsedQuery;
+    }
+
+
+    private static boolean isLiteral( final Token token ) {
+        return QueryShape.getType( token ) != null;
+    }
+
+
+    /**
+     * Return true if every node of the tree can be copied, and every literal node came from a literal token
+     */
+    private static boolean isBindable( final Tree node, final Map<Integer, Integer> literalPositions ) {
+        if ( node == null ) {
+            return true;
+        }
+
+        if ( !NODE_FACTORIES.containsKey( node.getClass() ) ) {
+            return false;
+        }
+
+        final Token token = ( ( CommonTree ) node ).getToken();
+
+        if ( isLiteral( token ) && !literalPositions.containsKey( token.getTokenIndex() ) ) {
+            return false;
+        }
+
+        for ( int i = 0; i < node.getChildCount(); i++ ) {
+            if ( !isBindable( node.getChild( i ), literalPositions ) ) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * A parsed query, and the position of each of its literal tokens among the literals of the query
+     */
+    static final class QueryTemplate {
+        private final ParsedQuery parsedQuery;
+        private final Map<Integer, Integer> literalPositions;
+
+
+        private QueryTemplate( final ParsedQuery parsedQuery, final Map<Integer, Integer> literalPositions ) {
+            this.parsedQuery = parsedQuery;
+            this.literalPositions = literalPositions;
+        }
+
+
+        /**
+         * Copy the parsed query, replacing each literal with the literal in the same position of the shape
+         */
+        ParsedQuery bind( final QueryShape shape, final String ql ) {
+            final Operand root = parsedQuery.getRootOperand();
+
+            //searches bound from a cached template never read the tree, so only copy it when it's read
+            final ParsedQuery bound =
+                parsedQuery.copy( () -> root == null ? null : ( Operand ) copy( root, shape.tokens() ) );
+            bound.setOriginalQuery( ql );
+            bound.setShape( shape );
+
+            return bound;
+        }
+
+
+        private CommonTree copy( final Tree node, final Token[] literals ) {
+            Token token = ( ( CommonTree ) node ).getToken();
+
+            if ( isLiteral( token ) ) {
+                token = literals[literalPositions.get( token.getTokenIndex() )];
+            }
+
+            final CommonTree copy = NODE_FACTORIES.get( node.getClass() ).apply( token );
+
+            for ( int i = 0; i < node.getChildCount(); i++ ) {
+                copy.addChild( copy( node.getChild( i ), literals ) );
+            }
+
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,524 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.index.query;
+
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+
+import org.apache.usergrid.persistence.index.query.tree.BooleanLiteral;
+import org.apache.usergrid.persistence.index.query.tree.CpQueryFilterLexer;
+import org.apache.usergrid.persistence.index.query.tree.FloatLiteral;
+import org.apache.usergrid.persistence.index.query.tree.Literal;
+import org.apache.usergrid.persistence.index.query.tree.LongLiteral;
+import org.apache.usergrid.persistence.index.query.tree.StringLiteral;
+import org.apache.usergrid.persistence.index.query.tree.UUIDLiteral;
+
+import com.google.common.base.Preconditions;
+
+
+/**
+ * The shape of a query and the literals it was built with.  Queries with the same key only differ in the values of
+ * their literals, so anything built from one query's shape can be reused for another by swapping the literals.
+ *
+ * The literals are found by scanning the query with the lexer's rules for them, which is far cheaper than running the
+ * lexer.  The rest of the query is kept verbatim in the key.
+ */
+public final class QueryShape {
+
+    /**
+     * The types of literal a query can hold
+     */
+    public enum LiteralType {
+        BOOLEAN( CpQueryFilterLexer.BOOLEAN ),
+        LONG( CpQueryFilterLexer.LONG ),
+        FLOAT( CpQueryFilterLexer.FLOAT ),
+        STRING( CpQueryFilterLexer.STRING ),
+        UUID( CpQueryFilterLexer.UUID );
+
+        private final int tokenType;
+
+
+        LiteralType( final int tokenType ) {
+            this.tokenType = tokenType;
+        }
+
+
+        int getTokenType() {
+            return tokenType;
+        }
+    }
+
+
+    private static final LiteralType[] TYPES = LiteralType.values();
+
+    private static final int DEFAULT_LITERALS = 8;
+
+
+    private final String key;
+    private final String text;
+    private final LiteralType[] types;
+    private final int[] starts;
+    private final int[] ends;
+    private final int size;
+    private final ParsedQueryCache.QueryTemplate template;
+
+
+    private QueryShape( final String key, final String text, final LiteralType[] types, final int[] starts,
+                        final int[] ends, final int size, final ParsedQueryCache.QueryTemplate template ) {
+        this.key = key;
+        this.text = text;
+        this.types = types;
+        this.starts = starts;
+        this.ends = ends;
+        this.size = size;
+        this.template = template;
+    }
+
+
+    /**
+     * Scan the literals of the rewritten query.  Every literal must start and end where the lexer's token would, so
+     * text the scanner can't split the way the lexer does is rejected rather than guessed at
+     *
+     * @return The shape, or null if the query can't be scanned
+     */
+    static QueryShape scan( final String text ) {
+
+        final int length = text.length();
+        final StringBuilder key = new StringBuilder( length + 16 );
+
+        LiteralType[] types = new LiteralType[DEFAULT_LITERALS];
+        int[] starts = new int[DEFAULT_LITERALS];
+        int[] ends = new int[DEFAULT_LITERALS];
+        int size = 0;
+
+        //the start of the text we haven't copied into the key
+        int verbatim = 0;
+        int i = 0;
+
+        while ( i < length ) {
+            final char c = text.charAt( i );
+
+            LiteralType type = null;
+            int end;
+
+            if ( c == '\u0000' ) {
+                //we use it to mark literals in the key
+                return null;
+            }
+            else if ( c == '\'' ) {
+                end = scanString( text, i );
+
+                if ( end < 0 ) {
+                    return null;
+                }
+
+                type = LiteralType.STRING;
+            }
+            else if ( isHex( c ) && isUuid( text, i ) ) {
+                end = i + 36;
+
+                if ( end < length && isIdPart( text.charAt( end ) ) ) {
+                    return null;
+                }
+
+                type = LiteralType.UUID;
+            }
+            else if ( isIdStart( c ) ) {
+                end = i + 1;
+
+                while ( end < length && isIdPart( text.charAt( end ) ) ) {
+                    end++;
+                }
+
+                if ( isBoolean( text, i, end ) ) {
+                    type = LiteralType.BOOLEAN;
+                }
+            }
+            else if ( isDigit( c ) || ( ( c == '-' || c == '.' ) && startsNumber( text, i + 1 ) ) ) {
+                end = scanNumber( text, i );
+
+                if ( end < length && isIdPart( text.charAt( end ) ) ) {
+                    return null;
+                }
+
+                type = isFloat( text, i, end ) ? LiteralType.FLOAT : LiteralType.LONG;
+            }
+            else {
+                end = i + 1;
+            }
+
+            if ( type != null ) {
+                if ( size == types.length ) {
+                    types = Arrays.copyOf( types, size * 2 );
+                    starts = Arrays.copyOf( starts, size * 2 );
+                    ends = Arrays.copyOf( ends, size * 2 );
+                }
+
+                types[size] = type;
+                starts[size] = i;
+                ends[size] = end;
+                size++;
+
+                key.append( text, verbatim, i );
+                appendLiteral( key, type, text, i, end );
+
+                verbatim = end;
+            }
+
+            i = end;
+        }
+
+        key.append( text, verbatim, length );
+
+        return new QueryShape( key.toString(), text, types, starts, ends, size, null );
+    }
+
+
+    /**
+     * The literal's type decides which node the parser creates, and a few of its values decide how the node is
+     * searched, so both are part of the key.  Every literal is marked with the same number of chars, so the marks
+     * can't run into the text that follows them
+     */
+    private static void appendLiteral( final StringBuilder key, final LiteralType type, final String text,
+                                       final int start, final int end ) {
+
+        key.append( '\u0000' ).append( ( char ) ( 'A' + type.ordinal() ) );
+
+        if ( type == LiteralType.STRING ) {
+            final String inner = text.substring( start + 1, end - 1 );
+
+            //a lone * has no value, and any other * makes it a wildcard search
+            if ( "*".equals( inner ) ) {
+                key.append( '!' );
+            }
+            else if ( inner.indexOf( '*' ) >= 0 ) {
+                key.append( '*' );
+            }
+            else {
+                key.append( '.' );
+            }
+        }
+        else if ( type == LiteralType.UUID ) {
+            key.append( isDigit( text.charAt( start ) ) ? '0' : 'a' );
+        }
+        else {
+            key.append( '.' );
+        }
+    }
+
+
+    /**
+     * @return The end of the string literal starting at the quote, or -1 if it isn't a valid string
+     */
+    private static int scanString( final String text, final int start ) {
+        final int length = text.length();
+
+        int i = start + 1;
+
+        while ( i < length ) {
+            final char c = text.charAt( i );
+
+            if ( c == '\'' ) {
+                return i + 1;
+            }
+
+            if ( c == '\\' ) {
+                if ( i + 1 >= length || "btnfr\"'\\u01234567".indexOf( text.charAt( i + 1 ) ) < 0 ) {
+                    return -1;
+                }
+
+                i += 2;
+                continue;
+            }
+
+            i++;
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * @return The end of the number starting at start
+     */
+    private static int scanNumber( final String text, final int start ) {
+        final int length = text.length();
+
+        int i = start;
+
+        if ( text.charAt( i ) == '-' ) {
+            i++;
+        }
+
+        i = skipDigits( text, i );
+
+        if ( i < length && text.charAt( i ) == '.' ) {
+            i = skipDigits( text, i + 1 );
+        }
+
+        if ( i < length && ( text.charAt( i ) == 'e' || text.charAt( i ) == 'E' ) ) {
+            int exponent = i + 1;
+
+            if ( exponent < length && ( text.charAt( exponent ) == '+' || text.charAt( exponent ) == '-' ) ) {
+                exponent++;
+            }
+
+            if ( exponent < length && isDigit( text.charAt( exponent ) ) ) {
+                i = skipDigits( text, exponent );
+            }
+        }
+
+        return i;
+    }
+
+
+    private static int skipDigits( final String text, int i ) {
+        while ( i < text.length() && isDigit( text.charAt( i ) ) ) {
+            i++;
+        }
+
+        return i;
+    }
+
+
+    private static boolean startsNumber( final String text, final int i ) {
+        if ( i >= text.length() ) {
+            return false;
+        }
+
+        final char c = text.charAt( i );
+
+        return isDigit( c ) || ( c == '.' && i + 1 < text.length() && isDigit( text.charAt( i + 1 ) ) );
+    }
+
+
+    private static boolean isFloat( final String text, final int start, final int end ) {
+        for ( int i = start; i < end; i++ ) {
+            final char c = text.charAt( i );
+
+            if ( c == '.' || c == 'e' || c == 'E' ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    private static boolean isUuid( final String text, final int start ) {
+        if ( start + 36 > text.length() ) {
+            return false;
+        }
+
+        for ( int i = 0; i < 36; i++ ) {
+            final char c = text.charAt( start + i );
+
+            if ( i == 8 || i == 13 || i == 18 || i == 23 ) {
+                if ( c != '-' ) {
+                    return false;
+                }
+            }
+            else if ( !isHex( c ) ) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    private static boolean isBoolean( final String text, final int start, final int end ) {
+        final int length = end - start;
+
+        return ( length == 4 && text.startsWith( "true", start ) ) || ( length == 5 && text
+            .startsWith( "false", start ) );
+    }
+
+
+    private static boolean isDigit( final char c ) {
+        return c >= '0' && c <= '9';
+    }
+
+
+    private static boolean isHex( final char c ) {
+        return isDigit( c ) || ( c >= 'a' && c <= 'f' ) || ( c >= 'A' && c <= 'F' );
+    }
+
+
+    private static boolean isIdStart( final char c ) {
+        return ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' ) || c == '_';
+    }
+
+
+    private static boolean isIdPart( final char c ) {
+        return isIdStart( c ) || isDigit( c ) || c == '.' || c == '-';
+    }
+
+
+    /**
+     * Return this shape with the template that binds its literals
+     */
+    QueryShape withTemplate( final ParsedQueryCache.QueryTemplate template ) {
+        return new QueryShape( key, text, types, starts, ends, size, template );
+    }
+
+
+    /**
+     * Return true if the literal tokens the lexer read are the literals we scanned
+     */
+    boolean matches( final List<Token> literals ) {
+        if ( literals.size() != size ) {
+            return false;
+        }
+
+        for ( int i = 0; i < size; i++ ) {
+            final Token token = literals.get( i );
+
+            if ( token.getType() != types[i].getTokenType() || !token.getText().equals( getText( i ) ) ) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Create a token for each literal, the way the lexer would have
+     */
+    Token[] tokens() {
+        final Token[] tokens = new Token[size];
+
+        for ( int i = 0; i < size; i++ ) {
+            tokens[i] = new CommonToken( types[i].getTokenType(), getText( i ) );
+        }
+
+        return tokens;
+    }
+
+
+    /**
+     * Get the key shared by every query of this shape
+     */
+    public String getKey() {
+        return key;
+    }
+
+
+    /**
+     * Get the number of literals in the query
+     */
+    public int getLiteralCount() {
+        return size;
+    }
+
+
+    /**
+     * Get the type of the literal in the position
+     */
+    public LiteralType getType( final int position ) {
+        Preconditions.checkElementIndex( position, size );
+        return types[position];
+    }
+
+
+    /**
+     * Get the text of the literal in the position as it appears in the query
+     */
+    public String getText( final int position ) {
+        Preconditions.checkElementIndex( position, size );
+        return text.substring( starts[position], ends[position] );
+    }
+
+
+    /**
+     * Get the value of the literal in the position, as the literal node of the parsed tree holds it
+     */
+    public Object getValue( final int position ) {
+        return createLiteral( types[position], new CommonToken( types[position].getTokenType(),
+            getText( position ) ) ).getValue();
+    }
+
+
+    /**
+     * Build the query of this shape with other literals.  The literal texts must have the types of this shape, and
+     * keep every value that is part of the key
+     *
+     * @param literals The text of each literal, as it would appear in the query
+     */
+    public ParsedQuery bind( final List<String> literals ) {
+        Preconditions.checkState( template != null, "This shape has no template" );
+        Preconditions.checkArgument( literals.size() == size, "Expected %s literals", size );
+
+        final StringBuilder bound = new StringBuilder( text.length() );
+
+        int last = 0;
+
+        for ( int i = 0; i < size; i++ ) {
+            bound.append( text, last, starts[i] ).append( literals.get( i ) );
+            last = ends[i];
+        }
+
+        bound.append( text, last, text.length() );
+
+        final QueryShape shape = scan( bound.toString() );
+
+        Preconditions.checkArgument( shape != null && key.equals( shape.key ), "The literals change the shape" );
+
+        return template.bind( shape.withTemplate( template ), shape.text );
+    }
+
+
+    /**
+     * Create the literal node for the token
+     */
+    static Literal<?> createLiteral( final LiteralType type, final Token token ) {
+        switch ( type ) {
+            case BOOLEAN:
+                return new BooleanLiteral( token );
+            case LONG:
+                return new LongLiteral( token );
+            case FLOAT:
+                return new FloatLiteral( token );
+            case STRING:
+                return new StringLiteral( token );
+            default:
+                return new UUIDLiteral( token );
+        }
+    }
+
+
+    /**
+     * Get the type of literal the token is, or null if it isn't a literal
+     */
+    static LiteralType getType( final Token token ) {
+        for ( final LiteralType type : TYPES ) {
+            if ( token.getType() == type.getTokenType() ) {
+                return type;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.index;
+
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class IndexFieldFilterTest {
+
+    private final IndexFieldFilter filter = IndexFieldFilter.compile( Arrays.asList( "name", "one.two" ) );
+
+
+    @Test
+    public void acceptsFieldsAndNestedFields() {
+        assertTrue( filter.accepts( "name" ) );
+        assertTrue( filter.accepts( "name.first" ) );
+        assertTrue( filter.accepts( "one.two" ) );
+        assertTrue( filter.accepts( "one.two.three" ) );
+    }
+
+
+    @Test
+    public void rejectsOtherFields() {
+        assertFalse( "parents of an indexed field aren't indexed", filter.accepts( "one" ) );
+        assertFalse( filter.accepts( "one.twoexample.three" ) );
+        assertFalse( filter.accepts( "one.three" ) );
+        assertFalse( filter.accepts( "names" ) );
+        assertFalse( filter.accepts( "two.one.two" ) );
+    }
+
+
+    @Test
+    public void walkNodes() {
+        final IndexFieldFilter.Node one = filter.root().child( "one" );
+
+        assertNotNull( "objects on the way to an indexed field are walked", one );
+        assertFalse( one.isIndexed() );
+
+        assertNull( "objects without indexed fields are skipped", filter.root().child( "other" ) );
+
+        final IndexFieldFilter.Node two = one.child( "two" );
+
+        assertTrue( two.isIndexed() );
+        assertTrue( two.child( "three" ).child( "four" ).isIndexed() );
+        assertTrue( "separators in a field name are walked", filter.root().child( "one.two.three" ).isIndexed() );
+    }
+}
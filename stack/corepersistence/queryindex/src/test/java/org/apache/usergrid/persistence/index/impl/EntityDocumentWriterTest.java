@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.index.impl;
+
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.junit.Test;
+
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.core.scope.ApplicationScopeImpl;
+import org.apache.usergrid.persistence.index.IndexEdge;
+import org.apache.usergrid.persistence.index.IndexFieldFilter;
+import org.apache.usergrid.persistence.index.SearchEdge;
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.field.ArrayField;
+import org.apache.usergrid.persistence.model.field.BooleanField;
+import org.apache.usergrid.persistence.model.field.DoubleField;
+import org.apache.usergrid.persistence.model.field.EntityObjectField;
+import org.apache.usergrid.persistence.model.field.FloatField;
+import org.apache.usergrid.persistence.model.field.IntegerField;
+import org.apache.usergrid.persistence.model.field.ListField;
+import org.apache.usergrid.persistence.model.field.LocationField;
+import org.apache.usergrid.persistence.model.field.LongField;
+import org.apache.usergrid.persistence.model.field.NullField;
+import org.apache.usergrid.persistence.model.field.StringField;
+import org.apache.usergrid.persistence.model.field.UUIDField;
+import org.apache.usergrid.persistence.model.field.value.EntityObject;
+import org.apache.usergrid.persistence.model.field.value.Location;
+import org.apache.usergrid.persistence.model.util.EntityUtils;
+import org.apache.usergrid.persistence.model.util.UUIDGenerator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+
+import static org.apache.usergrid.persistence.core.util.IdGenerator.createId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Tests the streamed document is the same as the converted map
+ */
+public class EntityDocumentWriterTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final ApplicationScope SCOPE = new ApplicationScopeImpl( createId( "application" ) );
+
+    private static final IndexEdge INDEX_EDGE =
+        new IndexEdgeImpl( createId( "source" ), "testEdgeType", SearchEdge.NodeType.SOURCE, 1000 );
+
+
+    @Test
+    public void sameAsConvertedMap() throws Exception {
+        final Entity entity = createEntity();
+
+        final Map<String, Object> written = write( entity, Optional.absent() );
+
+        assertEquals( convert( entity, Optional.absent() ), written );
+        assertTrue( fieldNames( written ).contains( "nested.deeper.name" ) );
+    }
+
+
+    @Test
+    public void sameAsConvertedMapFiltered() throws Exception {
+        final Entity entity = createEntity();
+
+        final Optional<IndexFieldFilter> filter =
+            Optional.of( IndexFieldFilter.compile( Arrays.asList( "name", "nested.deeper", "tags", "missing" ) ) );
+
+        final Map<String, Object> written = write( entity, filter );
+
+        assertEquals( convert( entity, filter ), written );
+
+        assertEquals( new HashSet<>( Arrays.asList( "name", "nested.deeper.name", "nested.deeper.count", "tags" ) ),
+            fieldNames( written ) );
+    }
+
+
+    @Test
+    public void fingerprint() throws Exception {
+        final Entity entity = createEntity();
+
+        final Optional<IndexFieldFilter> filter = Optional.of( IndexFieldFilter.compile( Arrays.asList( "name" ) ) );
+
+        final String fingerprint = EntityDocumentWriter.fingerprint( "alias", INDEX_EDGE, entity, filter );
+
+        assertEquals( "the same document has the same fingerprint", fingerprint,
+            EntityDocumentWriter.fingerprint( "alias", INDEX_EDGE, entity, filter ) );
+
+        final IndexEdge readded =
+            new IndexEdgeImpl( INDEX_EDGE.getNodeId(), INDEX_EDGE.getEdgeName(), INDEX_EDGE.getNodeType(), 2000 );
+
+        assertNotEquals( "any indexed change changes the fingerprint", fingerprint,
+            EntityDocumentWriter.fingerprint( "alias", readded, entity, filter ) );
+
+        assertNotEquals( "documents written to another index are different", fingerprint,
+            EntityDocumentWriter.fingerprint( "rebuilt", INDEX_EDGE, entity, filter ) );
+
+        assertNotEquals( fingerprint,
+            EntityDocumentWriter.fingerprint( "alias", INDEX_EDGE, entity, Optional.absent() ) );
+
+        entity.setField( new IntegerField( "count", 8 ) );
+
+        assertEquals( "fields that aren't indexed don't change the fingerprint", fingerprint,
+            EntityDocumentWriter.fingerprint( "alias", INDEX_EDGE, entity, filter ) );
+
+        entity.setField( new StringField( "name", "Renamed" ) );
+
+        assertNotEquals( fingerprint, EntityDocumentWriter.fingerprint( "alias", INDEX_EDGE, entity, filter ) );
+
+        assertNull( new IndexOperation( "alias", SCOPE, INDEX_EDGE, entity, filter ).fingerprint );
+        assertEquals( EntityDocumentWriter.fingerprint( "alias", INDEX_EDGE, entity, filter ),
+            new IndexOperation( "alias", SCOPE, INDEX_EDGE, entity, filter, true ).fingerprint );
+    }
+
+
+    @Test
+    public void operationRoundTrip() throws Exception {
+        final Entity entity = createEntity();
+
+        final IndexOperation operation =
+            new IndexOperation( "alias", SCOPE, INDEX_EDGE, entity, Optional.<IndexFieldFilter>absent(), true );
+
+        final IndexOperation read =
+            MAPPER.readValue( MAPPER.writeValueAsString( operation ), IndexOperation.class );
+
+        assertEquals( operation.documentId, read.documentId );
+        assertEquals( operation.fingerprint, read.fingerprint );
+        assertEquals( operation.getSource(), read.getSource() );
+        assertEquals( operation, read );
+    }
+
+
+    @Test
+    public void readMapOperation() throws Exception {
+        final Entity entity = createEntity();
+
+        final IndexOperation operation =
+            new IndexOperation( "alias", SCOPE, INDEX_EDGE, entity, Optional.<IndexFieldFilter>absent() );
+
+        //messages queued before the source was written raw hold the document as a map
+        final Map<String, Object> queued = new HashMap<>();
+        queued.put( "writeAlias", operation.writeAlias );
+        queued.put( "documentId", operation.documentId );
+        queued.put( "data", XContentHelper.convertToMap( operation.getSource().getBytes( "UTF-8" ), false ).v2() );
+
+        final IndexOperation read = MAPPER.readValue( MAPPER.writeValueAsString( queued ), IndexOperation.class );
+
+        assertEquals( XContentHelper.convertToMap( operation.getSource().getBytes( "UTF-8" ), false ).v2(),
+            XContentHelper.convertToMap( read.getSource().getBytes( "UTF-8" ), false ).v2() );
+    }
+
+
+    private static Entity createEntity() {
+        final EntityObject deeper = new EntityObject();
+        deeper.setField( new StringField( "Name", "Deeper" ) );
+        deeper.setField( new IntegerField( "count", 3 ) );
+
+        final EntityObject nested = new EntityObject();
+        nested.setField( new EntityObjectField( "deeper", deeper ) );
+        nested.setField( new StringField( "name", "nested" ) );
+
+        final ArrayField<Object> matrix = new ArrayField<>( "matrix" );
+        final ArrayField<Object> row = new ArrayField<>( "row" );
+        row.add( "not indexed" );
+        matrix.add( row );
+        matrix.add( nested );
+
+        final ArrayField<Object> tags = new ArrayField<>( "tags" );
+        tags.add( "One" );
+        tags.add( null );
+        tags.add( 2L );
+
+        final Entity entity = new Entity( "test" );
+        entity.setField( new StringField( "name", "Entity Name" ) );
+        entity.setField( new UUIDField( "owner", UUID.randomUUID() ) );
+        entity.setField( new BooleanField( "active", true ) );
+        entity.setField( new IntegerField( "count", 7 ) );
+        entity.setField( new LongField( "views", 12345678901L ) );
+        entity.setField( new FloatField( "ratio", 1.5f ) );
+        entity.setField( new DoubleField( "score", 2.25 ) );
+        entity.setField( new NullField( "removed" ) );
+        entity.setField( new LocationField( "location", new Location( 10, 20 ) ) );
+        entity.setField( new ListField<>( "numbers", Arrays.asList( 1, 2, 3 ) ) );
+        entity.setField( new EntityObjectField( "nested", nested ) );
+        entity.setField( matrix );
+        entity.setField( tags );
+
+        EntityUtils.setVersion( entity, UUIDGenerator.newTimeUUID() );
+
+        return entity;
+    }
+
+
+    private static Map<String, Object> write( final Entity entity, final Optional<IndexFieldFilter> filter ) {
+        return normalize( XContentHelper.convertToMap( EntityDocumentWriter.write( SCOPE, INDEX_EDGE, entity, filter ),
+            false ).v2() );
+    }
+
+
+    private static Map<String, Object> convert( final Entity entity, final Optional<IndexFieldFilter> filter )
+        throws Exception {
+
+        final Map<String, Object> document = EntityToMapConverter.convert( SCOPE, INDEX_EDGE, entity, filter );
+
+        return normalize( MAPPER.readValue( MAPPER.writeValueAsBytes( document ), Map.class ) );
+    }
+
+
+    /**
+     * The converted fields are a set, so compare them without order
+     */
+    private static Map<String, Object> normalize( final Map<String, Object> document ) {
+        document.put( IndexingUtils.ENTITY_FIELDS,
+            new HashSet<>( ( List<?> ) document.get( IndexingUtils.ENTITY_FIELDS ) ) );
+        return document;
+    }
+
+
+    private static Set<String> fieldNames( final Map<String, Object> document ) {
+        final Set<String> names = new HashSet<>();
+
+        for ( final Object field : ( Set<?> ) document.get( IndexingUtils.ENTITY_FIELDS ) ) {
+            names.add( ( String ) ( ( Map<?, ?> ) field ).get( IndexingUtils.FIELD_NAME ) );
+        }
+
+        return names;
+    }
+}
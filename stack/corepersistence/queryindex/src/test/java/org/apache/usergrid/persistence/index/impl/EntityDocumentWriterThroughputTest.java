@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.index.impl;
+
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.elasticsearch.client.Requests;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.StressTest;
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.core.scope.ApplicationScopeImpl;
+import org.apache.usergrid.persistence.index.IndexEdge;
+import org.apache.usergrid.persistence.index.IndexFieldFilter;
+import org.apache.usergrid.persistence.index.SearchEdge;
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.field.BooleanField;
+import org.apache.usergrid.persistence.model.field.DoubleField;
+import org.apache.usergrid.persistence.model.field.EntityObjectField;
+import org.apache.usergrid.persistence.model.field.LongField;
+import org.apache.usergrid.persistence.model.field.StringField;
+import org.apache.usergrid.persistence.model.field.value.EntityObject;
+import org.apache.usergrid.persistence.model.util.EntityUtils;
+import org.apache.usergrid.persistence.model.util.UUIDGenerator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+
+import static org.apache.usergrid.persistence.core.util.IdGenerator.createId;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Compares writing the documents of wide entities through a map with streaming them, in documents per second and
+ * bytes allocated per document.  The entities look like the device readings IoT applications store, 250 fields
+ * with a few nested objects.  The round trip through the queued message is timed as well, since that is the path every
+ * document takes to the index.
+ */
+@Category(StressTest.class)
+public class EntityDocumentWriterThroughputTest {
+
+    private static final Logger logger = LoggerFactory.getLogger( EntityDocumentWriterThroughputTest.class );
+
+    private static final int FIELDS = 250;
+    private static final int WARMUP = 5000;
+    private static final int ITERATIONS = 20000;
+
+    private static final ApplicationScope SCOPE = new ApplicationScopeImpl( createId( "application" ) );
+
+    private static final IndexEdge INDEX_EDGE =
+        new IndexEdgeImpl( createId( "source" ), "readings", SearchEdge.NodeType.SOURCE, 1000 );
+
+
+    private static final Optional<IndexFieldFilter> ALL = Optional.absent();
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+
+    @Test
+    public void mapVersusStreamed() {
+        final Entity entity = createEntity();
+
+        final List<String> schema = new ArrayList<>();
+        for ( int i = 0; i < FIELDS; i += 10 ) {
+            schema.add( "sensor" + i );
+        }
+        schema.add( "location.zone" );
+
+        final Optional<IndexFieldFilter> all = Optional.absent();
+        final Optional<IndexFieldFilter> filtered = Optional.of( IndexFieldFilter.compile( schema ) );
+
+        final long map = run( "map, all fields", entity, e -> writeMap( e, all ) );
+        final long streamed = run( "streamed, all fields", entity, e -> stream( e, all ) );
+
+        run( "map, schema fields", entity, e -> writeMap( e, filtered ) );
+        run( "streamed, schema fields", entity, e -> stream( e, filtered ) );
+
+        assertTrue( "streaming should be faster than building the map", streamed < map );
+    }
+
+
+    /**
+     * Times a document from the entity to the bytes of the bulk request, through the message queued in the map store
+     */
+    @Test
+    public void queueRoundTrip() {
+        final Entity entity = createEntity();
+
+        final long map = run( "map message round trip", entity, e -> mapRoundTrip( e ) );
+        final long raw = run( "raw message round trip", entity, e -> rawRoundTrip( e ) );
+
+        assertTrue( "writing the source raw should be faster than writing it as a map", raw < map );
+    }
+
+
+    private static BytesReference rawRoundTrip( final Entity entity ) {
+        try {
+            final IndexOperation operation = new IndexOperation( "alias", SCOPE, INDEX_EDGE, entity, ALL );
+
+            return MAPPER.readValue( MAPPER.writeValueAsString( operation ), IndexOperation.class ).getSourceBytes();
+        }
+        catch ( Exception e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+
+    private static BytesReference mapRoundTrip( final Entity entity ) {
+        try {
+            //what the message did when the source was a map, serialized and read back before the index request
+            final String json = MAPPER.writeValueAsString( EntityToMapConverter.convert( SCOPE, INDEX_EDGE, entity, ALL ) );
+
+            return XContentFactory.contentBuilder( Requests.INDEX_CONTENT_TYPE )
+                                  .map( MAPPER.readValue( json, Map.class ) ).bytes();
+        }
+        catch ( Exception e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+
+    private static BytesReference stream( final Entity entity, final Optional<IndexFieldFilter> filter ) {
+        return EntityDocumentWriter.write( SCOPE, INDEX_EDGE, entity, filter );
+    }
+
+
+    private static BytesReference writeMap( final Entity entity, final Optional<IndexFieldFilter> filter ) {
+        try {
+            //what the index request does with a map source
+            return XContentFactory.contentBuilder( Requests.INDEX_CONTENT_TYPE )
+                                  .map( EntityToMapConverter.convert( SCOPE, INDEX_EDGE, entity, filter ) ).bytes();
+        }
+        catch ( Exception e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+
+    /**
+     * Write the document repeatedly, returning the nanoseconds taken after warming up
+     */
+    private long run( final String name, final Entity entity, final Function<Entity, BytesReference> writer ) {
+
+        long size = 0;
+
+        for ( int i = 0; i < WARMUP; i++ ) {
+            size += writer.apply( entity ).length();
+        }
+
+        final com.sun.management.ThreadMXBean threads =
+            ( com.sun.management.ThreadMXBean ) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+
+        final long allocated = threads.getThreadAllocatedBytes( threadId );
+        final long start = System.nanoTime();
+
+        for ( int i = 0; i < ITERATIONS; i++ ) {
+            size += writer.apply( entity ).length();
+        }
+
+        final long duration = System.nanoTime() - start;
+        final long bytes = threads.getThreadAllocatedBytes( threadId ) - allocated;
+
+        logger.info( "{}: {} docs/sec, {} bytes allocated per doc, {} bytes per doc", name,
+            ITERATIONS * 1000000000L / duration, bytes / ITERATIONS, size / ( WARMUP + ITERATIONS ) );
+
+        return duration;
+    }
+
+
+    private static Entity createEntity() {
+        final Entity entity = new Entity( "reading" );
+
+        for ( int i = 0; i < FIELDS; i++ ) {
+            final String name = "sensor" + i;
+
+            switch ( i % 4 ) {
+                case 0:
+                    entity.setField( new StringField( name, "Value " + i ) );
+                    break;
+                case 1:
+                    entity.setField( new LongField( name, i * 1000L ) );
+                    break;
+                case 2:
+                    entity.setField( new DoubleField( name, i / 3.0 ) );
+                    break;
+                default:
+                    entity.setField( new BooleanField( name, i % 3 == 0 ) );
+            }
+        }
+
+        for ( String objectName : new String[] { "location", "firmware", "battery" } ) {
+            final EntityObject object = new EntityObject();
+            object.setField( new StringField( "zone", "North" ) );
+            object.setField( new LongField( "updated", System.currentTimeMillis() ) );
+            entity.setField( new EntityObjectField( objectName, object ) );
+        }
+
+        EntityUtils.setVersion( entity, UUIDGenerator.newTimeUUID() );
+
+        return entity;
+    }
+}
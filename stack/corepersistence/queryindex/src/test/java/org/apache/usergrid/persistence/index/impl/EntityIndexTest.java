@@ -728,6 +728,92 @@ public class EntityIndexTest extends BaseIT {
     }
 
 
+    @Test
+    public void testSeekCursor() throws Exception {
+
+        Id ownerId = new SimpleId( UUID.randomUUID(),"owner" );
+
+        //every document shares the edge timestamp, so only the entity id and version tie breakers order them
+        IndexEdge indexEdge = new IndexEdgeImpl( ownerId, "users", SearchEdge.NodeType.SOURCE, 10 );
+
+
+        final EntityIndexBatch batch = entityIndex.createBatch();
+
+
+        final int size = 100;
+
+
+        for ( int i = 0; i < size; i++ ) {
+
+            final int ordinal = i;
+
+            Map entityMap = new HashMap() {{
+                put( "username", "edanuff" );
+                put( "ordinal", ordinal );
+            }};
+
+            Entity user = EntityIndexMapUtils.fromMap( entityMap );
+            EntityUtils.setId( user, new SimpleId( "user" ) );
+            EntityUtils.setVersion( user, UUIDGenerator.newTimeUUID() );
+
+            batch.index( indexEdge, user );
+        }
+
+
+        indexProducer.put(batch.build()).subscribe();;
+
+        entityIndex.refreshAsync().toBlocking().first();
+
+
+        final int limit = 5;
+
+        final String query = "select *";
+
+        final StopWatch firstPage = new StopWatch();
+        firstPage.start();
+
+        CandidateResults results = entityIndex.search( indexEdge, SearchTypes.allTypes(), query, limit, 0 );
+
+        firstPage.stop();
+
+        long lastPageTime = 0;
+
+        final List<CandidateResult> offsetResults = new ArrayList<>( size );
+        final List<CandidateResult> seekResults = new ArrayList<>( size );
+
+        for ( int i = 0; i < size / limit; i++ ) {
+
+            assertEquals( limit, results.size() );
+            assertTrue( "Default sort should return seeks", results.hasSeeks() );
+
+            for ( CandidateResult candidateResult : results ) {
+                seekResults.add( candidateResult );
+            }
+
+            for ( CandidateResult candidateResult : entityIndex
+                .search( indexEdge, SearchTypes.allTypes(), query, limit, i * limit ) ) {
+                offsetResults.add( candidateResult );
+            }
+
+            final StopWatch page = new StopWatch();
+            page.start();
+
+            results = entityIndex.search( indexEdge, SearchTypes.allTypes(), query, limit,
+                results.getSeek( limit - 1 ).get() );
+
+            page.stop();
+            lastPageTime = page.getTime();
+        }
+
+        logger.info( "First page took {} ms, last page by seek took {} ms", firstPage.getTime(), lastPageTime );
+
+        assertEquals( 0, results.size() );
+
+        //seeking must visit every document exactly once, in the same order as offsets
+        assertEquals( offsetResults, seekResults );
+    }
+
+
     @Test
     public void queryByUUID() throws Throwable {
 
@@ -0,0 +1,562 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.index.impl;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.delete.DeleteRequestBuilder;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.index.IndexFig;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Tests the bulk requests the producer builds against a mocked client
+ */
+public class EsIndexProducerImplTest {
+
+    private static final String ALIAS = "alias";
+
+    private IndexFig indexFig;
+    private Client client;
+    private EsIndexProducerImpl producer;
+
+    /**
+     * Every bulk request sent, in order
+     */
+    private final List<BulkRequest> sent = Collections.synchronizedList( new ArrayList<>() );
+
+    /**
+     * Documents the mocked cluster fails to write
+     */
+    private final Set<String> failing = Collections.synchronizedSet( new HashSet<>() );
+
+    /**
+     * Documents the mocked cluster is too busy to write, and how many more times it will refuse them
+     */
+    private final Map<String, Integer> throttled = Collections.synchronizedMap( new HashMap<>() );
+
+    private IndexFingerprintSerialization fingerprintSerialization;
+
+    /**
+     * Fingerprints recorded by the producer
+     */
+    private final Map<String, String> fingerprints = Collections.synchronizedMap( new HashMap<>() );
+
+    /**
+     * The documents that were in the mocked cluster when each fingerprint was recorded
+     */
+    private final Map<String, Boolean> writtenWhenRecorded = Collections.synchronizedMap( new HashMap<>() );
+
+
+    @Before
+    public void setup() {
+        indexFig = mock( IndexFig.class );
+        when( indexFig.getIndexFlushWorkerCount() ).thenReturn( 1 );
+        when( indexFig.getIndexBatchSize() ).thenReturn( 100 );
+        when( indexFig.getIndexBatchMaxBytes() ).thenReturn( 10000000L );
+        when( indexFig.getIndexBatchLinger() ).thenReturn( 200L );
+        when( indexFig.getIndexBufferSize() ).thenReturn( 1000 );
+        when( indexFig.getIndexBufferTimeout() ).thenReturn( 5000L );
+        when( indexFig.getWriteConsistencyLevel() ).thenReturn( "one" );
+
+        client = mock( Client.class );
+
+        when( client.prepareBulk() ).thenAnswer( invocation -> new BulkRequestBuilder( client ) );
+
+        when( client.prepareIndex( anyString(), anyString(), anyString() ) ).thenAnswer( invocation -> {
+            final Object[] args = invocation.getArguments();
+            return new IndexRequestBuilder( client, ( String ) args[0] ).setType( ( String ) args[1] )
+                                                                          .setId( ( String ) args[2] );
+        } );
+
+        when( client.prepareDelete( anyString(), anyString(), anyString() ) ).thenAnswer( invocation -> {
+            final Object[] args = invocation.getArguments();
+            return new DeleteRequestBuilder( client, ( String ) args[0] ).setType( ( String ) args[1] )
+                                                                           .setId( ( String ) args[2] );
+        } );
+
+        doAnswer( invocation -> {
+            final BulkRequest request = ( BulkRequest ) invocation.getArguments()[0];
+            @SuppressWarnings( "unchecked" ) final ActionListener<BulkResponse> listener =
+                ( ActionListener<BulkResponse> ) invocation.getArguments()[1];
+
+            sent.add( request );
+            listener.onResponse( respond( request ) );
+            return null;
+        } ).when( client ).bulk( any( BulkRequest.class ), any( ActionListener.class ) );
+
+        fingerprintSerialization = mock( IndexFingerprintSerialization.class );
+
+        doAnswer( invocation -> {
+            @SuppressWarnings( "unchecked" ) final Map<String, String> recorded =
+                ( Map<String, String> ) invocation.getArguments()[0];
+
+            for ( final String documentId : recorded.keySet() ) {
+                writtenWhenRecorded.put( documentId, !sent.isEmpty() );
+            }
+
+            fingerprints.putAll( recorded );
+            return null;
+        } ).when( fingerprintSerialization ).putFingerprints( anyMap(), anyInt() );
+
+        doAnswer( invocation -> {
+            fingerprints.keySet().removeAll( ( Collection<?> ) invocation.getArguments()[0] );
+            return null;
+        } ).when( fingerprintSerialization ).removeFingerprints( any( Collection.class ) );
+    }
+
+
+    @After
+    public void shutdown() {
+        if ( producer != null ) {
+            producer.shutdown();
+        }
+    }
+
+
+    @Test
+    public void coalesceMessages() throws Exception {
+        producer = createProducer();
+
+        final IndexOperationMessage first = message( "a1", "a2" );
+        final IndexOperationMessage second = message( "b1" );
+        final IndexOperationMessage third = message( "c1", "c2", "c3" );
+
+        final Future<IndexOperationMessage> firstResult = producer.put( first ).toBlocking().toFuture();
+        final Future<IndexOperationMessage> secondResult = producer.put( second ).toBlocking().toFuture();
+        final Future<IndexOperationMessage> thirdResult = producer.put( third ).toBlocking().toFuture();
+
+        //each message is acknowledged on its own
+        assertSame( first, firstResult.get( 5, TimeUnit.SECONDS ) );
+        assertSame( second, secondResult.get( 5, TimeUnit.SECONDS ) );
+        assertSame( third, thirdResult.get( 5, TimeUnit.SECONDS ) );
+
+        //all buffered within the linger time, so one request
+        assertEquals( 1, sent.size() );
+        assertEquals( 6, sent.get( 0 ).numberOfActions() );
+    }
+
+
+    @Test
+    public void itemFailureFailsOwner() throws Exception {
+        producer = createProducer();
+
+        failing.add( "b2" );
+
+        final IndexOperationMessage first = message( "a1", "a2" );
+        final IndexOperationMessage second = message( "b1", "b2", "b3" );
+        final IndexOperationMessage third = message( "c1" );
+
+        final Future<IndexOperationMessage> firstResult = producer.put( first ).toBlocking().toFuture();
+        final Future<IndexOperationMessage> secondResult = producer.put( second ).toBlocking().toFuture();
+        final Future<IndexOperationMessage> thirdResult = producer.put( third ).toBlocking().toFuture();
+
+        assertSame( first, firstResult.get( 5, TimeUnit.SECONDS ) );
+        assertSame( third, thirdResult.get( 5, TimeUnit.SECONDS ) );
+
+        try {
+            secondResult.get( 5, TimeUnit.SECONDS );
+            fail( "The message owning the failed item should fail" );
+        }
+        catch ( ExecutionException e ) {
+            assertTrue( e.getCause().getMessage().contains( "failed to write b2" ) );
+        }
+
+        assertEquals( 1, sent.size() );
+    }
+
+
+    @Test
+    public void deindexFailureFailsOwner() throws Exception {
+        producer = createProducer();
+
+        failing.add( "removed" );
+
+        final IndexOperationMessage indexed = message( "a1" );
+
+        //one delete per index, both owned by the same message
+        final IndexOperationMessage removed = new IndexOperationMessage();
+        removed.addDeIndexRequest( new DeIndexOperation( new String[] { "first", "second" }, "removed" ) );
+
+        final Future<IndexOperationMessage> removedResult = producer.put( removed ).toBlocking().toFuture();
+        final Future<IndexOperationMessage> indexedResult = producer.put( indexed ).toBlocking().toFuture();
+
+        assertSame( indexed, indexedResult.get( 5, TimeUnit.SECONDS ) );
+
+        try {
+            removedResult.get( 5, TimeUnit.SECONDS );
+            fail( "The message owning the failed item should fail" );
+        }
+        catch ( ExecutionException e ) {
+            assertTrue( e.getCause().getMessage().contains( "failed to write removed" ) );
+        }
+
+        assertEquals( 3, sent.get( 0 ).numberOfActions() );
+    }
+
+
+    @Test
+    public void unexpectedErrorFailsDrainedMessages() throws Exception {
+        when( indexFig.isSkipUnchangedEnabled() ).thenReturn( true );
+        doThrow( new RuntimeException( "unexpected" ) ).when( fingerprintSerialization )
+                                                       .putFingerprints( anyMap(), anyInt() );
+
+        producer = createProducer();
+
+        final IndexOperationMessage first = message( "a1" );
+        final IndexOperationMessage second = message( "b1" );
+
+        for ( final IndexOperation operation : second.getIndexRequests() ) {
+            operation.fingerprint = "fingerprint";
+        }
+
+        final Future<IndexOperationMessage> firstResult = producer.put( first ).toBlocking().toFuture();
+        final Future<IndexOperationMessage> secondResult = producer.put( second ).toBlocking().toFuture();
+
+        for ( final Future<IndexOperationMessage> result : Arrays.asList( firstResult, secondResult ) ) {
+            try {
+                result.get( 5, TimeUnit.SECONDS );
+                fail( "Every drained message should fail" );
+            }
+            catch ( ExecutionException e ) {
+                assertEquals( "unexpected", e.getCause().getMessage() );
+            }
+        }
+
+        assertEquals( 0, sent.size() );
+
+        //whatever was recorded is removed, since the documents were never sent
+        verify( fingerprintSerialization ).removeFingerprints( Collections.singleton( "b1" ) );
+    }
+
+
+    @Test
+    public void throttledRetriedAfterPause() throws Exception {
+        when( indexFig.getSleepTimeForQueueError() ).thenReturn( 500L );
+
+        throttled.put( "a2", 1 );
+
+        producer = createProducer();
+
+        final IndexOperationMessage message = message( "a1", "a2" );
+
+        final long start = System.currentTimeMillis();
+
+        //the message completes once the refused document is written by the retry
+        assertSame( message, producer.put( message ).toBlocking().toFuture().get( 5, TimeUnit.SECONDS ) );
+
+        assertTrue( System.currentTimeMillis() - start >= 500 );
+        assertEquals( 2, sent.size() );
+        assertEquals( Arrays.asList( "a1", "a2" ), documentIds( sent.get( 0 ) ) );
+        assertEquals( Collections.singletonList( "a2" ), documentIds( sent.get( 1 ) ) );
+    }
+
+
+    @Test
+    public void throttledFailsOwnerAfterRetries() throws Exception {
+        when( indexFig.getSleepTimeForQueueError() ).thenReturn( 10L );
+
+        throttled.put( "b1", 100 );
+
+        producer = createProducer();
+
+        final IndexOperationMessage first = message( "a1" );
+        final IndexOperationMessage second = message( "b1" );
+
+        final Future<IndexOperationMessage> firstResult = producer.put( first ).toBlocking().toFuture();
+        final Future<IndexOperationMessage> secondResult = producer.put( second ).toBlocking().toFuture();
+
+        assertSame( first, firstResult.get( 5, TimeUnit.SECONDS ) );
+
+        try {
+            secondResult.get( 5, TimeUnit.SECONDS );
+            fail( "The message owning the refused item should fail once it's out of retries" );
+        }
+        catch ( ExecutionException e ) {
+            assertTrue( e.getCause().getMessage().contains( "too busy to write b1" ) );
+        }
+
+        //the first send and three retries
+        assertEquals( 4, sent.size() );
+    }
+
+
+    @Test
+    public void shutdownSendsBuffered() throws Exception {
+        when( indexFig.getIndexBatchLinger() ).thenReturn( 1000L );
+
+        producer = createProducer();
+
+        final IndexOperationMessage buffered = message( "a1" );
+
+        final Future<IndexOperationMessage> result = producer.put( buffered ).toBlocking().toFuture();
+
+        producer.shutdown();
+
+        assertSame( buffered, result.get( 5, TimeUnit.SECONDS ) );
+        assertEquals( 1, sent.size() );
+
+        try {
+            producer.put( message( "b1" ) ).toBlocking().last();
+            fail( "Messages put after shut down should fail" );
+        }
+        catch ( IllegalStateException e ) {
+            //expected
+        }
+    }
+
+
+    @Test
+    public void fingerprintsRecordedBeforeWrite() throws Exception {
+        when( indexFig.isSkipUnchangedEnabled() ).thenReturn( true );
+
+        producer = createProducer();
+
+        final IndexOperationMessage message = message( "a1", "a2" );
+        fingerprint( message, "a1", "fingerprint" );
+
+        assertSame( message, producer.put( message ).toBlocking().toFuture().get( 5, TimeUnit.SECONDS ) );
+
+        //every document is written, only the ones with a fingerprint have it recorded
+        assertEquals( Arrays.asList( "a1", "a2" ), documentIds( sent.get( 0 ) ) );
+        assertEquals( Collections.singletonMap( "a1", "fingerprint" ), fingerprints );
+        assertFalse( writtenWhenRecorded.get( "a1" ) );
+    }
+
+
+    @Test
+    public void failedWriteForgetsFingerprint() throws Exception {
+        when( indexFig.isSkipUnchangedEnabled() ).thenReturn( true );
+
+        failing.add( "b1" );
+
+        producer = createProducer();
+
+        final IndexOperationMessage first = message( "a1" );
+        fingerprint( first, "a1", "same" );
+
+        final IndexOperationMessage second = message( "b1" );
+        fingerprint( second, "b1", "same" );
+
+        final Future<IndexOperationMessage> firstResult = producer.put( first ).toBlocking().toFuture();
+        final Future<IndexOperationMessage> secondResult = producer.put( second ).toBlocking().toFuture();
+
+        assertSame( first, firstResult.get( 5, TimeUnit.SECONDS ) );
+
+        try {
+            secondResult.get( 5, TimeUnit.SECONDS );
+            fail( "The message owning the failed item should fail" );
+        }
+        catch ( ExecutionException e ) {
+            assertTrue( e.getCause().getMessage().contains( "failed to write b1" ) );
+        }
+
+        //removed before the message failed, so a retry writes it
+        assertEquals( Collections.singletonMap( "a1", "same" ), fingerprints );
+    }
+
+
+    @Test
+    public void removalForgetsFingerprint() throws Exception {
+        when( indexFig.isSkipUnchangedEnabled() ).thenReturn( true );
+
+        fingerprints.put( "a1", "same" );
+
+        producer = createProducer();
+
+        final IndexOperationMessage removed = new IndexOperationMessage();
+        removed.addDeIndexRequest( new DeIndexOperation( new String[] { ALIAS }, "a1" ) );
+
+        assertSame( removed, producer.put( removed ).toBlocking().toFuture().get( 5, TimeUnit.SECONDS ) );
+
+        assertTrue( fingerprints.isEmpty() );
+    }
+
+
+    @Test
+    public void fingerprintsUnusedWhenDisabled() throws Exception {
+        producer = createProducer();
+
+        final IndexOperationMessage indexed = message( "a1" );
+        fingerprint( indexed, "a1", "same" );
+
+        final IndexOperationMessage removed = new IndexOperationMessage();
+        removed.addDeIndexRequest( new DeIndexOperation( new String[] { ALIAS }, "b1" ) );
+
+        final Future<IndexOperationMessage> indexedResult = producer.put( indexed ).toBlocking().toFuture();
+        final Future<IndexOperationMessage> removedResult = producer.put( removed ).toBlocking().toFuture();
+
+        assertSame( indexed, indexedResult.get( 5, TimeUnit.SECONDS ) );
+        assertSame( removed, removedResult.get( 5, TimeUnit.SECONDS ) );
+
+        verifyZeroInteractions( fingerprintSerialization );
+    }
+
+
+    private EsIndexProducerImpl createProducer() {
+        final EsProvider provider = mock( EsProvider.class );
+        when( provider.getClient() ).thenReturn( client );
+
+        final MetricsFactory metricsFactory = mock( MetricsFactory.class );
+        when( metricsFactory.getTimer( any( Class.class ), anyString() ) ).thenAnswer( invocation -> new Timer() );
+        when( metricsFactory.getMeter( any( Class.class ), anyString() ) ).thenAnswer( invocation -> new Meter() );
+        when( metricsFactory.getCounter( any( Class.class ), anyString() ) ).thenAnswer( invocation -> new Counter() );
+        when( metricsFactory.getHistogram( any( Class.class ), anyString() ) )
+            .thenAnswer( invocation -> new Histogram( new UniformReservoir() ) );
+
+        return new EsIndexProducerImpl( indexFig, provider, metricsFactory, indexFig, fingerprintSerialization );
+    }
+
+
+    private static IndexOperationMessage message( final String... documentIds ) {
+        final IndexOperationMessage message = new IndexOperationMessage();
+
+        for ( final String documentId : documentIds ) {
+            message.addIndexRequest(
+                new IndexOperation( ALIAS, documentId, Collections.singletonMap( "name", documentId ) ) );
+        }
+
+        return message;
+    }
+
+
+    private static void fingerprint( final IndexOperationMessage message, final String documentId,
+                                     final String fingerprint ) {
+        for ( final IndexOperation operation : message.getIndexRequests() ) {
+            if ( operation.documentId.equals( documentId ) ) {
+                operation.fingerprint = fingerprint;
+            }
+        }
+    }
+
+
+    private static List<String> documentIds( final BulkRequest request ) {
+        final List<String> documentIds = new ArrayList<>();
+
+        for ( final ActionRequest item : request.requests() ) {
+            documentIds.add( item instanceof IndexRequest ? ( ( IndexRequest ) item ).id()
+                : ( ( DeleteRequest ) item ).id() );
+        }
+
+        return documentIds;
+    }
+
+
+    /**
+     * Write every item of the request, except the documents in the failing set
+     */
+    private BulkResponse respond( final BulkRequest request ) {
+        final List<ActionRequest> requests = request.requests();
+        final BulkItemResponse[] items = new BulkItemResponse[requests.size()];
+
+        for ( int i = 0; i < items.length; i++ ) {
+            final ActionRequest item = requests.get( i );
+
+            final String index;
+            final String id;
+            final String opType;
+
+            if ( item instanceof IndexRequest ) {
+                index = ( ( IndexRequest ) item ).index();
+                id = ( ( IndexRequest ) item ).id();
+                opType = "index";
+            }
+            else {
+                index = ( ( DeleteRequest ) item ).index();
+                id = ( ( DeleteRequest ) item ).id();
+                opType = "delete";
+            }
+
+            if ( throttled.getOrDefault( id, 0 ) > 0 ) {
+                throttled.put( id, throttled.get( id ) - 1 );
+
+                items[i] = new BulkItemResponse( i, opType,
+                    new BulkItemResponse.Failure( index, IndexingUtils.ES_ENTITY_TYPE, id, "too busy to write " + id,
+                        RestStatus.TOO_MANY_REQUESTS ) );
+            }
+            else if ( failing.contains( id ) ) {
+                items[i] = new BulkItemResponse( i, opType,
+                    new BulkItemResponse.Failure( index, IndexingUtils.ES_ENTITY_TYPE, id, "failed to write " + id,
+                        RestStatus.INTERNAL_SERVER_ERROR ) );
+            }
+            else if ( item instanceof IndexRequest ) {
+                items[i] = new BulkItemResponse( i, opType,
+                    new IndexResponse( index, IndexingUtils.ES_ENTITY_TYPE, id, 1, true ) );
+            }
+            else {
+                items[i] = new BulkItemResponse( i, opType,
+                    new DeleteResponse( index, IndexingUtils.ES_ENTITY_TYPE, id, 1, true ) );
+            }
+        }
+
+        return new BulkResponse( items, 1 );
+    }
+}
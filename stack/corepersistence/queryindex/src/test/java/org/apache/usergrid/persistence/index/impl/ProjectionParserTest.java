@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.index.impl;
+
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import org.apache.usergrid.persistence.core.scope.ApplicationScope;
+import org.apache.usergrid.persistence.core.scope.ApplicationScopeImpl;
+import org.apache.usergrid.persistence.index.IndexEdge;
+import org.apache.usergrid.persistence.index.SearchEdge;
+import org.apache.usergrid.persistence.index.SelectFieldMapping;
+import org.apache.usergrid.persistence.model.entity.Entity;
+import org.apache.usergrid.persistence.model.field.BooleanField;
+import org.apache.usergrid.persistence.model.field.DoubleField;
+import org.apache.usergrid.persistence.model.field.Field;
+import org.apache.usergrid.persistence.model.field.IntegerField;
+import org.apache.usergrid.persistence.model.field.ListField;
+import org.apache.usergrid.persistence.model.field.LongField;
+import org.apache.usergrid.persistence.model.field.NullField;
+import org.apache.usergrid.persistence.model.field.StringField;
+import org.apache.usergrid.persistence.model.util.EntityUtils;
+import org.apache.usergrid.persistence.model.util.UUIDGenerator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Optional;
+
+import static org.apache.usergrid.persistence.core.util.IdGenerator.createId;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class ProjectionParserTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+
+    @Test
+    public void projectsScalars() throws Exception {
+        final Entity entity = createEntity();
+        entity.setField( new LongField( "views", 12345678901L ) );
+        entity.setField( new IntegerField( "count", 7 ) );
+        entity.setField( new DoubleField( "score", 2.5 ) );
+        entity.setField( new BooleanField( "active", true ) );
+        entity.setField( new NullField( "removed" ) );
+        entity.setField( new StringField( "name", "Not Selected" ) );
+
+        final Optional<Map<String, Field>> projection =
+            ProjectionParser.parse( toSource( entity ), selects( "views", "count", "score", "active", "removed" ) );
+
+        assertTrue( projection.isPresent() );
+
+        final Map<String, Field> fields = projection.get();
+
+        assertEquals( 5, fields.size() );
+        assertEquals( 12345678901L, fields.get( "views" ).getValue() );
+        assertEquals( 7L, fields.get( "count" ).getValue() );
+        assertEquals( 2.5, fields.get( "score" ).getValue() );
+        assertEquals( true, fields.get( "active" ).getValue() );
+        assertTrue( fields.get( "removed" ) instanceof NullField );
+    }
+
+
+    @Test
+    public void lossyFieldsNotProjected() throws Exception {
+        final Entity entity = createEntity();
+        entity.setField( new LongField( "views", 10L ) );
+        entity.setField( new StringField( "name", "Mixed Case" ) );
+        entity.setField( new ListField<>( "tags", Arrays.asList( 1, 2 ) ) );
+
+        final Map<String, Object> source = toSource( entity );
+
+        assertFalse( "strings are lower cased in the index",
+            ProjectionParser.parse( source, selects( "views", "name" ) ).isPresent() );
+
+        assertFalse( "arrays are flattened in the index",
+            ProjectionParser.parse( source, selects( "views", "tags" ) ).isPresent() );
+
+        assertFalse( "missing fields may not be indexed",
+            ProjectionParser.parse( source, selects( "views", "missing" ) ).isPresent() );
+
+        assertFalse( "names are lower cased in the index",
+            ProjectionParser.parse( source, selects( "Views" ) ).isPresent() );
+
+        assertTrue( ProjectionParser.parse( source, selects( "views" ) ).isPresent() );
+    }
+
+
+    private static Entity createEntity() {
+        final Entity entity = new Entity( "test" );
+        EntityUtils.setVersion( entity, UUIDGenerator.newTimeUUID() );
+        return entity;
+    }
+
+
+    /**
+     * Convert the entity to a document source the way elasticsearch would return it
+     */
+    private static Map<String, Object> toSource( final Entity entity ) throws Exception {
+        final ApplicationScope scope = new ApplicationScopeImpl( createId( "application" ) );
+
+        final IndexEdge indexEdge =
+            new IndexEdgeImpl( createId( "source" ), "testEdgeType", SearchEdge.NodeType.SOURCE, 1000 );
+
+        final Map<String, Object> document = EntityToMapConverter.convert( scope, indexEdge, entity );
+
+        return MAPPER.readValue( MAPPER.writeValueAsBytes( document ), Map.class );
+    }
+
+
+    private static Collection<SelectFieldMapping> selects( final String... names ) {
+        return Arrays.stream( names ).map( name -> new SelectFieldMapping( name, name ) )
+                     .collect( Collectors.toList() );
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.index.impl;
+
+
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.index.query.FilterBuilder;
+import org.elasticsearch.index.query.FilterBuilders;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.WrapperFilterBuilder;
+import org.elasticsearch.index.query.WrapperQueryBuilder;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.index.IndexFig;
+import org.apache.usergrid.persistence.index.query.ParsedQuery;
+import org.apache.usergrid.persistence.index.query.ParsedQueryBuilder;
+import org.apache.usergrid.persistence.index.query.ParsedQueryCache;
+
+import com.codahale.metrics.Meter;
+import com.google.common.base.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Tests that searches bound from cached templates send the same json the visitor builds
+ */
+public class SearchTemplateCacheTest {
+
+    private IndexFig indexFig;
+    private MetricsFactory metricsFactory;
+    private Meter hitMeter;
+    private Meter missMeter;
+
+
+    @Before
+    public void setup() {
+        indexFig = mock( IndexFig.class );
+        when( indexFig.getQueryPlanCacheSize() ).thenReturn( 100 );
+
+        hitMeter = new Meter();
+        missMeter = new Meter();
+
+        metricsFactory = mock( MetricsFactory.class );
+        when( metricsFactory.getMeter( any( Class.class ), anyString() ) ).thenReturn( new Meter() );
+        when( metricsFactory.getMeter( eq( SearchTemplateCache.class ), eq( "query.template.cache.hit" ) ) )
+            .thenReturn( hitMeter );
+        when( metricsFactory.getMeter( eq( SearchTemplateCache.class ), eq( "query.template.cache.miss" ) ) )
+            .thenReturn( missMeter );
+    }
+
+
+    @Test
+    public void boundSearchesMatchVisitedSearches() {
+        final ParsedQueryCache parsedQueryCache = new ParsedQueryCache( indexFig, metricsFactory );
+        final SearchTemplateCache templateCache = new SearchTemplateCache( indexFig, metricsFactory );
+
+        final String[][] shapes = {
+            { "select * where owner = 1f37c3ac-2f3b-11e5-9d1f-6c4008b2a08a order by created desc",
+                "select * where owner = 6a1c5e36-2f3b-11e5-9d1f-6c4008b2a08a order by created desc" },
+            { "where name = 'fred' and age > 5", "where name = 'Wil\"ma\\\\' and age > -17" },
+            { "select name, age where not (age >= 3 or name contains 'a*')",
+                "select name, age where not (age >= 2 or name contains 'b*c')" },
+            { "where name = 'fr*' or nickname contains 'fred'", "where name = 'wi*' or nickname contains 'wilma'" },
+            { "select {n:name} where active = true order by name asc, age",
+                "select {n:name} where active = true order by name asc, age" },
+            { "where created < 1437000000000 and created >= 1436000000000",
+                "where created < 1 and created >= 0" }
+        };
+
+        for ( final String[] queries : shapes ) {
+            assertSameSearch( CompiledSearch.visit( ParsedQueryBuilder.build( queries[0] ) ),
+                templateCache.compile( parsedQueryCache.build( queries[0] ) ) );
+
+            final CompiledSearch bound = templateCache.compile( parsedQueryCache.build( queries[1] ) );
+
+            assertTrue( queries[1], isBound( bound ) );
+            assertSameSearch( CompiledSearch.visit( ParsedQueryBuilder.build( queries[1] ) ), bound );
+        }
+
+        //every shape was visited once, then bound
+        assertEquals( shapes.length, missMeter.getCount() );
+        assertEquals( shapes.length, hitMeter.getCount() );
+    }
+
+
+    @Test
+    public void booleansAreDifferentTemplates() {
+        final ParsedQueryCache parsedQueryCache = new ParsedQueryCache( indexFig, metricsFactory );
+        final SearchTemplateCache templateCache = new SearchTemplateCache( indexFig, metricsFactory );
+
+        for ( final String query : new String[] { "active = true", "active = false", "active = true" } ) {
+            assertSameSearch( CompiledSearch.visit( ParsedQueryBuilder.build( query ) ),
+                templateCache.compile( parsedQueryCache.build( query ) ) );
+        }
+
+        assertEquals( 2, missMeter.getCount() );
+        assertEquals( 1, hitMeter.getCount() );
+    }
+
+
+    @Test
+    public void geoAndFloatsAreVisited() {
+        final ParsedQueryCache parsedQueryCache = new ParsedQueryCache( indexFig, metricsFactory );
+        final SearchTemplateCache templateCache = new SearchTemplateCache( indexFig, metricsFactory );
+
+        final String[] queries = {
+            "location within 100 of 37.776753, -122.407846", "location within 20 of -33.5, 151.25",
+            "age > 1.5", "age > 2.5"
+        };
+
+        for ( final String query : queries ) {
+            final CompiledSearch compiled = templateCache.compile( parsedQueryCache.build( query ) );
+
+            assertFalse( query, isBound( compiled ) );
+            assertSameSearch( CompiledSearch.visit( ParsedQueryBuilder.build( query ) ), compiled );
+        }
+    }
+
+
+    @Test
+    public void sortsAreShared() {
+        final ParsedQueryCache parsedQueryCache = new ParsedQueryCache( indexFig, metricsFactory );
+        final SearchTemplateCache templateCache = new SearchTemplateCache( indexFig, metricsFactory );
+
+        final CompiledSearch first = templateCache.compile( parsedQueryCache.build( "a = 1 order by b desc" ) );
+        final CompiledSearch second = templateCache.compile( parsedQueryCache.build( "a = 2 order by b desc" ) );
+
+        assertSame( first.getSorts(), second.getSorts() );
+        assertFalse( second.isDefaultSort() );
+    }
+
+
+    @Test
+    public void disabled() {
+        when( indexFig.getQueryPlanCacheSize() ).thenReturn( 0 );
+
+        final SearchTemplateCache templateCache = new SearchTemplateCache( indexFig, metricsFactory );
+
+        final ParsedQuery query = ParsedQueryBuilder.build( "a = 1" );
+
+        assertSameSearch( CompiledSearch.visit( query ), templateCache.compile( query ) );
+        assertSameSearch( CompiledSearch.visit( query ), templateCache.compile( query ) );
+
+        assertEquals( 0, hitMeter.getCount() );
+        assertEquals( 0, missMeter.getCount() );
+    }
+
+
+    /**
+     * A bound search wraps the json the visitor would have built, so compare them the way they're sent
+     */
+    private static void assertSameSearch( final CompiledSearch expected, final CompiledSearch actual ) {
+        assertEquals( json( expected.getQueryBuilder(), true ), json( actual.getQueryBuilder(), true ) );
+        assertEquals( json( expected.getFilterBuilder(), false ), json( actual.getFilterBuilder(), false ) );
+        assertEquals( expected.isDefaultSort(), actual.isDefaultSort() );
+        assertEquals( expected.getSorts().size(), actual.getSorts().size() );
+
+        for ( int i = 0; i < expected.getSorts().size(); i++ ) {
+            assertEquals( sortJson( expected.getSorts().get( i ) ), sortJson( actual.getSorts().get( i ) ) );
+        }
+    }
+
+
+    private static boolean isBound( final CompiledSearch search ) {
+        return ( search.getQueryBuilder().isPresent() && isWrapper( search.getQueryBuilder().get() ) ) || ( search
+            .getFilterBuilder().isPresent() && isWrapper( search.getFilterBuilder().get() ) );
+    }
+
+
+    private static boolean isWrapper( final ToXContent content ) {
+        return content instanceof WrapperQueryBuilder || content instanceof WrapperFilterBuilder;
+    }
+
+
+    private static String json( final Optional<? extends ToXContent> builder, final boolean query ) {
+        if ( !builder.isPresent() ) {
+            return null;
+        }
+
+        final ToXContent content = builder.get();
+
+        if ( isWrapper( content ) ) {
+            return query ? ( ( QueryBuilder ) content ).buildAsBytes().toUtf8() :
+                   ( ( FilterBuilder ) content ).buildAsBytes().toUtf8();
+        }
+
+        return query ? QueryBuilders.wrapperQuery( ( ( QueryBuilder ) content ).buildAsBytes().toUtf8() )
+                                    .buildAsBytes().toUtf8() :
+               FilterBuilders.wrapperFilter( ( ( FilterBuilder ) content ).buildAsBytes().toUtf8() ).buildAsBytes()
+                             .toUtf8();
+    }
+
+
+    private static String sortJson( final SortBuilder sort ) {
+        return sort.toString();
+    }
+}
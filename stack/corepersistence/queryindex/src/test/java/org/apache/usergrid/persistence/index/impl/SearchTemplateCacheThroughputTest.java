@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.index.impl;
+
+
+import java.util.UUID;
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.StressTest;
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.index.IndexFig;
+import org.apache.usergrid.persistence.index.query.ParsedQueryBuilder;
+import org.apache.usergrid.persistence.index.query.ParsedQueryCache;
+
+import com.codahale.metrics.Meter;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Compares the cost of parsing, visiting and serializing a query with binding it to its cached shape and search
+ * template.  Every query has a different owner, the way clients send them.
+ */
+@Category(StressTest.class)
+public class SearchTemplateCacheThroughputTest {
+
+    private static final Logger logger = LoggerFactory.getLogger( SearchTemplateCacheThroughputTest.class );
+
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 200000;
+
+
+    @Test
+    public void parseVersusCached() throws Exception {
+        final IndexFig indexFig = mock( IndexFig.class );
+        when( indexFig.getQueryPlanCacheSize() ).thenReturn( 1000 );
+
+        final MetricsFactory metricsFactory = mock( MetricsFactory.class );
+        when( metricsFactory.getMeter( any( Class.class ), anyString() ) ).thenReturn( new Meter() );
+
+        final ParsedQueryCache parsedQueryCache = new ParsedQueryCache( indexFig, metricsFactory );
+        final SearchTemplateCache templateCache = new SearchTemplateCache( indexFig, metricsFactory );
+
+        final String[] queries = new String[1024];
+
+        for ( int i = 0; i < queries.length; i++ ) {
+            queries[i] = "select * where owner = " + UUID.randomUUID() + " and age > " + i + " order by created desc";
+        }
+
+        final long parsed =
+            run( "parse and visit", queries, ql -> CompiledSearch.visit( ParsedQueryBuilder.build( ql ) ) );
+        final long cached =
+            run( "scan and bind", queries, ql -> templateCache.compile( parsedQueryCache.build( ql ) ) );
+
+        //the shape was only parsed and visited once, binding must beat both
+        assertTrue( "cached builds should be faster than parsing", cached < parsed );
+    }
+
+
+    /**
+     * Build and serialize every query, returning the nanoseconds taken after warming up
+     */
+    private long run( final String name, final String[] queries, final Function<String, CompiledSearch> builder ) {
+
+        for ( int i = 0; i < WARMUP; i++ ) {
+            serialize( builder.apply( queries[i % queries.length] ) );
+        }
+
+        final long start = System.nanoTime();
+
+        for ( int i = 0; i < ITERATIONS; i++ ) {
+            serialize( builder.apply( queries[i % queries.length] ) );
+        }
+
+        final long duration = System.nanoTime() - start;
+
+        logger.info( "{}: {} queries in {} ms, {} ns per query", name, ITERATIONS, duration / 1000000,
+            duration / ITERATIONS );
+
+        return duration;
+    }
+
+
+    /**
+     * Serialize the query and filter the way the request will
+     */
+    private static void serialize( final CompiledSearch search ) {
+        if ( search.getQueryBuilder().isPresent() ) {
+            search.getQueryBuilder().get().buildAsBytes();
+        }
+
+        if ( search.getFilterBuilder().isPresent() ) {
+            search.getFilterBuilder().get().buildAsBytes();
+        }
+    }
+}
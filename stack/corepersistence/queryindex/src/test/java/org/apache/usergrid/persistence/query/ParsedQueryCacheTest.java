@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.persistence.query;
+
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import org.antlr.runtime.tree.Tree;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.usergrid.persistence.core.metrics.MetricsFactory;
+import org.apache.usergrid.persistence.index.IndexFig;
+import org.apache.usergrid.persistence.index.SelectFieldMapping;
+import org.apache.usergrid.persistence.index.exceptions.QueryParseException;
+import org.apache.usergrid.persistence.index.query.ParsedQuery;
+import org.apache.usergrid.persistence.index.query.ParsedQueryBuilder;
+import org.apache.usergrid.persistence.index.query.ParsedQueryCache;
+import org.apache.usergrid.persistence.index.query.QueryShape;
+import org.apache.usergrid.persistence.index.query.SortPredicate;
+import org.apache.usergrid.persistence.index.query.tree.Literal;
+
+import com.codahale.metrics.Meter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Tests that cached query shapes produce the same trees as parsing
+ */
+public class ParsedQueryCacheTest {
+
+    private IndexFig indexFig;
+    private MetricsFactory metricsFactory;
+    private Meter hitMeter;
+    private Meter missMeter;
+
+
+    @Before
+    public void setup() {
+        indexFig = mock( IndexFig.class );
+        when( indexFig.getQueryPlanCacheSize() ).thenReturn( 100 );
+
+        hitMeter = new Meter();
+        missMeter = new Meter();
+
+        metricsFactory = mock( MetricsFactory.class );
+        when( metricsFactory.getMeter( any( Class.class ), eq( "query.plan.cache.hit" ) ) ).thenReturn( hitMeter );
+        when( metricsFactory.getMeter( any( Class.class ), eq( "query.plan.cache.miss" ) ) ).thenReturn( missMeter );
+    }
+
+
+    @Test
+    public void boundQueriesMatchParsedQueries() {
+        final ParsedQueryCache cache = new ParsedQueryCache( indexFig, metricsFactory );
+
+        final String[][] shapes = {
+            { "select * where owner = 1f37c3ac-2f3b-11e5-9d1f-6c4008b2a08a order by created desc",
+                "select * where owner = 6a1c5e36-2f3b-11e5-9d1f-6c4008b2a08a order by created desc" },
+            { "where name = 'fred' and age > 5", "where name = 'Wilma' and age > -17" },
+            { "select name, age where not (age >= 1.5 or name contains 'a*')",
+                "select name, age where not (age >= 2.75e3 or name contains 'b*')" },
+            { "location within 100 of 37.776753, -122.407846", "location within 20 of -33.5, 151.25" },
+            { "select {n:name} where active = true order by name asc, age",
+                "select {n:name} where active = false order by name asc, age" },
+            { "where owner = abcdef12-2f3b-11e5-9d1f-6c4008b2a08a and a.b-c = 5",
+                "where owner = fedcba21-2f3b-11e5-9d1f-6c4008b2a08a and a.b-c = 6" },
+            { "where name = 'it\\'s' and nickname = '*'", "where name = 'O\\'Brien' and nickname = '*'" },
+            { "order by created", "order by created" }
+        };
+
+        for ( final String[] queries : shapes ) {
+            for ( final String query : queries ) {
+                assertSameQuery( ParsedQueryBuilder.build( query ), cache.build( query ) );
+            }
+        }
+
+        //every shape was parsed once, then bound
+        assertEquals( shapes.length, missMeter.getCount() );
+        assertEquals( shapes.length, hitMeter.getCount() );
+    }
+
+
+    @Test
+    public void literalTypesAreDifferentShapes() {
+        final ParsedQueryCache cache = new ParsedQueryCache( indexFig, metricsFactory );
+
+        assertSameQuery( ParsedQueryBuilder.build( "a = 5" ), cache.build( "a = 5" ) );
+        assertSameQuery( ParsedQueryBuilder.build( "a = 5.5" ), cache.build( "a = 5.5" ) );
+        assertSameQuery( ParsedQueryBuilder.build( "a = '5'" ), cache.build( "a = '5'" ) );
+
+        assertEquals( 3, missMeter.getCount() );
+        assertEquals( 0, hitMeter.getCount() );
+    }
+
+
+    @Test
+    public void wildcardsAreDifferentShapes() {
+        final ParsedQueryCache cache = new ParsedQueryCache( indexFig, metricsFactory );
+
+        assertSameQuery( ParsedQueryBuilder.build( "a = 'b'" ), cache.build( "a = 'b'" ) );
+        assertSameQuery( ParsedQueryBuilder.build( "a = 'b*'" ), cache.build( "a = 'b*'" ) );
+        assertSameQuery( ParsedQueryBuilder.build( "a = '*'" ), cache.build( "a = '*'" ) );
+
+        assertEquals( 3, missMeter.getCount() );
+        assertEquals( 0, hitMeter.getCount() );
+    }
+
+
+    @Test
+    public void shapesHoldTheirLiterals() {
+        final ParsedQueryCache cache = new ParsedQueryCache( indexFig, metricsFactory );
+
+        final UUID owner = UUID.fromString( "1f37c3ac-2f3b-11e5-9d1f-6c4008b2a08a" );
+
+        final QueryShape shape =
+            cache.build( "where name = 'Fred ' and age > -5 and owner = " + owner + " and active = true" ).getShape()
+                 .get();
+
+        assertEquals( 4, shape.getLiteralCount() );
+        assertEquals( QueryShape.LiteralType.STRING, shape.getType( 0 ) );
+        assertEquals( "'fred '", shape.getText( 0 ) );
+        assertEquals( "fred", shape.getValue( 0 ) );
+        assertEquals( QueryShape.LiteralType.LONG, shape.getType( 1 ) );
+        assertEquals( -5L, shape.getValue( 1 ) );
+        assertEquals( QueryShape.LiteralType.UUID, shape.getType( 2 ) );
+        assertEquals( owner, shape.getValue( 2 ) );
+        assertEquals( QueryShape.LiteralType.BOOLEAN, shape.getType( 3 ) );
+        assertEquals( true, shape.getValue( 3 ) );
+
+        final String other = "select * where name = 'wilma' and age > 7 and owner = 6a1c5e36-2f3b-11e5-9d1f-6c4008b2a08a"
+            + " and active = false";
+
+        assertSameQuery( ParsedQueryBuilder.build( other ), shape.bind(
+            Arrays.asList( "'wilma'", "7", "6a1c5e36-2f3b-11e5-9d1f-6c4008b2a08a", "false" ) ) );
+    }
+
+
+    @Test( expected = IllegalArgumentException.class )
+    public void bindingCannotChangeTheShape() {
+        final ParsedQueryCache cache = new ParsedQueryCache( indexFig, metricsFactory );
+
+        cache.build( "a = 'b'" ).getShape().get().bind( Arrays.asList( "'b*'" ) );
+    }
+
+
+    @Test
+    public void unscannedQueriesAreParsed() {
+        final ParsedQueryCache cache = new ParsedQueryCache( indexFig, metricsFactory );
+
+        //the lexer reads a longer id here, the scanner refuses to guess
+        final String ql = "select * where abcdef12-2f3b-11e5-9d1f-6c4008b2a08az = 5";
+
+        final ParsedQuery query = cache.build( ql );
+
+        assertSameQuery( ParsedQueryBuilder.build( ql ), query );
+        assertFalse( query.getShape().isPresent() );
+    }
+
+
+    @Test
+    public void boundTreesAreCopies() {
+        final ParsedQueryCache cache = new ParsedQueryCache( indexFig, metricsFactory );
+
+        final ParsedQuery first = cache.build( "a = 1 and b = 2" );
+        final ParsedQuery second = cache.build( "a = 1 and b = 2" );
+
+        assertNotSame( first.getRootOperand(), second.getRootOperand() );
+        assertEquals( "a = 1 and b = 2", second.getOriginalQuery() );
+    }
+
+
+    @Test( expected = QueryParseException.class )
+    public void parseErrors() {
+        final ParsedQueryCache cache = new ParsedQueryCache( indexFig, metricsFactory );
+
+        cache.build( "select * where a = " );
+    }
+
+
+    @Test
+    public void disabled() {
+        when( indexFig.getQueryPlanCacheSize() ).thenReturn( 0 );
+
+        final ParsedQueryCache cache = new ParsedQueryCache( indexFig, metricsFactory );
+
+        assertNull( cache.build( "" ) );
+        assertSameQuery( ParsedQueryBuilder.build( "a = 1" ), cache.build( "a = 1" ) );
+        assertSameQuery( ParsedQueryBuilder.build( "a = 1" ), cache.build( "a = 1" ) );
+
+        assertEquals( 0, hitMeter.getCount() );
+    }
+
+
+    private static void assertSameQuery( final ParsedQuery expected, final ParsedQuery actual ) {
+        assertEquals( expected.getOriginalQuery(), actual.getOriginalQuery() );
+        assertEquals( describe( expected.getRootOperand() ), describe( actual.getRootOperand() ) );
+        assertEquals( describe( expected.getSelectFieldMappings() ), describe( actual.getSelectFieldMappings() ) );
+        assertEquals( expected.getSortPredicates().size(), actual.getSortPredicates().size() );
+
+        for ( int i = 0; i < expected.getSortPredicates().size(); i++ ) {
+            final SortPredicate expectedSort = expected.getSortPredicates().get( i );
+            final SortPredicate actualSort = actual.getSortPredicates().get( i );
+
+            assertEquals( expectedSort.getPropertyName(), actualSort.getPropertyName() );
+            assertEquals( expectedSort.getDirection(), actualSort.getDirection() );
+        }
+    }
+
+
+    private static Set<String> describe( final Collection<SelectFieldMapping> selects ) {
+        final Set<String> described = new HashSet<>();
+
+        for ( final SelectFieldMapping select : selects ) {
+            described.add( select.getSourceFieldName() + ":" + select.getTargetFieldName() );
+        }
+
+        return described;
+    }
+
+
+    /**
+     * Describe the node types and literal values of the tree
+     */
+    private static String describe( final Tree node ) {
+        if ( node == null ) {
+            return "null";
+        }
+
+        final StringBuilder builder = new StringBuilder( node.getClass().getSimpleName() );
+
+        if ( node instanceof Literal ) {
+            builder.append( '[' ).append( ( ( Literal<?> ) node ).getValue() ).append( ']' );
+        }
+
+        builder.append( '(' );
+
+        for ( int i = 0; i < node.getChildCount(); i++ ) {
+            builder.append( describe( node.getChild( i ) ) ).append( ' ' );
+        }
+
+        return builder.append( ')' ).toString();
+    }
+}
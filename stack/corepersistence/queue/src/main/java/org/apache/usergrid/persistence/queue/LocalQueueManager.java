@@ -42,16 +42,14 @@ public class LocalQueueManager implements QueueManager {
 
     @Override
     public    List<QueueMessage> getMessages(int limit, Class klass) {
-        List<QueueMessage> returnQueue = new ArrayList<>();
+        List<QueueMessage> returnQueue = new ArrayList<>(limit);
         try {
-            QueueMessage message=null;
-            int count = 5;
-            do {
-                message = queue.poll(100, TimeUnit.MILLISECONDS);
-                if (message != null) {
-                    returnQueue.add(message);
-                }
-            }while(message!=null && count-->0);
+            //wait for the first message, then take whatever else is ready without waiting again
+            QueueMessage message = queue.poll(100, TimeUnit.MILLISECONDS);
+            if (message != null) {
+                returnQueue.add(message);
+                queue.drainTo(returnQueue, limit - 1);
+            }
         }catch (InterruptedException ie){
             throw new RuntimeException(ie);
         }
@@ -103,4 +103,42 @@ public interface QueueFig extends GuicyFig {
     @Default("false") // 30 seconds
     boolean getQuorumFallback();
 
+    /**
+     * Flag to persist the default built-in queues to an append only log on local disk, so pending messages survive
+     * a restart.  Only used when usergrid.use.default.queue is true
+     */
+    @Key( "usergrid.queue.local.durable" )
+    @Default( "false" )
+    boolean isLocalQueueDurable();
+
+    /**
+     * The directory that holds the logs of the durable built-in queues
+     */
+    @Key( "usergrid.queue.local.dir" )
+    @Default( "/var/lib/usergrid/queues" )
+    String getLocalQueueDirectory();
+
+    /**
+     * The size of each memory mapped segment of a durable built-in queue log (in bytes)
+     */
+    @Key( "usergrid.queue.local.segment_size" )
+    @Default( "67108864" ) // 64 MB
+    int getLocalQueueSegmentSize();
+
+    /**
+     * Flag to force every write of a durable built-in queue to disk before returning.  Without it writes survive a
+     * process crash, but not the loss of the machine
+     */
+    @Key( "usergrid.queue.local.fsync" )
+    @Default( "false" )
+    boolean isLocalQueueFsync();
+
+    /**
+     * When the oldest segment of a durable built-in queue has no more than this fraction of its messages left, they
+     * are copied to the newest segment so the oldest one can be deleted
+     */
+    @Key( "usergrid.queue.local.compaction_ratio" )
+    @Default( "0.1" )
+    double getLocalQueueCompactionRatio();
+
 }
@@ -53,8 +53,10 @@ public interface QueueManager {
     void commitMessages( List<QueueMessage> queueMessages);
 
     /**
-     * send messages to queue
+     * send messages to queue.  Blocks until every message was sent, or until the failed ones were retried and still
+     * could not be sent.
      * @param bodies body objects must be serializable
+     * @throws QueueSendException if some of the messages could not be sent, carries only the unsent bodies
      * @throws IOException
      */
     void sendMessages(List bodies) throws IOException;
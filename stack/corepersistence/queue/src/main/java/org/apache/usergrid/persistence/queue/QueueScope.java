@@ -38,6 +38,12 @@ public interface QueueScope  {
      */
     public String getName();
 
+    /**
+     * Get the name of the topic the queue is subscribed to.  Every queue whose scope has the same topic receives each
+     * message sent to the topic, so giving each node its own queue on a shared topic broadcasts to all of them
+     */
+    public String getTopicName();
+
     /**
      * Get the Usergrid region enum
      */
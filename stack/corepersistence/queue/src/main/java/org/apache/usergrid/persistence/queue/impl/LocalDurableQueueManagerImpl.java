@@ -0,0 +1,618 @@
+/*
+ *
+ *  * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  *  contributor license agreements.  The ASF licenses this file to You
+ *  * under the Apache License, Version 2.0 (the "License"); you may not
+ *  * use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.  For additional information regarding
+ *  * copyright in this work, please see the NOTICE file in the top level
+ *  * directory of this distribution.
+ *
+ */
+
+package org.apache.usergrid.persistence.queue.impl;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.usergrid.persistence.queue.QueueFig;
+import org.apache.usergrid.persistence.queue.QueueManager;
+import org.apache.usergrid.persistence.queue.QueueMessage;
+import org.apache.usergrid.persistence.queue.QueueScope;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+
+
+/**
+ * Built-in queue that survives restarts.  Messages are appended to a log of memory mapped segments on local disk,
+ * along with every delivery and commit, and the log is replayed on startup.  Delivered messages are invisible until
+ * they are committed or their visibility timeout expires, after which they are delivered again.  Messages received
+ * more than the delivery limit are moved to the dead letter queue, named like the queue with a _dead suffix.
+ */
+public class LocalDurableQueueManagerImpl implements QueueManager {
+
+    private static final Logger logger = LoggerFactory.getLogger( LocalDurableQueueManagerImpl.class );
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * How long to wait for messages when the queue is empty (in milliseconds)
+     */
+    private static final long POLL_WAIT = 100;
+
+    private static final String DEAD_LETTER_SUFFIX = "_dead";
+
+
+    private final QueueFig fig;
+    private final File directory;
+    private final int deliveryLimit;
+
+    /**
+     * Null for the dead letter queue itself
+     */
+    private final LocalDurableQueueManagerImpl deadLetters;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    private final TreeMap<Long, LocalQueueSegment> segments = new TreeMap<>();
+    private final Map<Long, Pending> messages = new HashMap<>();
+    private final ArrayDeque<Pending> ready = new ArrayDeque<>();
+    private final PriorityQueue<InFlight> inFlight = new PriorityQueue<>();
+
+    private LocalQueueSegment active;
+    private long nextId;
+    private boolean compacting;
+
+
+    public LocalDurableQueueManagerImpl( final QueueScope scope, final QueueFig fig ) throws IOException {
+        this( new File( fig.getLocalQueueDirectory(), scope.getName() ), fig, true );
+    }
+
+
+    private LocalDurableQueueManagerImpl( final File directory, final QueueFig fig, final boolean hasDeadLetters )
+        throws IOException {
+
+        this.fig = fig;
+        this.directory = directory;
+        this.deliveryLimit = Integer.parseInt( fig.getQueueDeliveryLimit() );
+
+        if ( !directory.isDirectory() && !directory.mkdirs() ) {
+            throw new IOException( "Unable to create queue directory " + directory );
+        }
+
+        this.deadLetters = hasDeadLetters ?
+            new LocalDurableQueueManagerImpl( new File( directory.getPath() + DEAD_LETTER_SUFFIX ), fig, false ) :
+            null;
+
+        replay();
+    }
+
+
+    @Override
+    public List<QueueMessage> getMessages( final int limit, final Class klass ) {
+
+        final List<Pending> delivered = new ArrayList<>( limit );
+        final List<byte[]> bodies = new ArrayList<>( limit );
+
+        lock.lock();
+
+        try {
+            long wait = TimeUnit.MILLISECONDS.toNanos( POLL_WAIT );
+
+            while ( true ) {
+                final long now = System.currentTimeMillis();
+
+                requeueExpired( now );
+
+                while ( delivered.size() < limit && !ready.isEmpty() ) {
+                    final Pending pending = ready.poll();
+
+                    //committed while it was waiting
+                    if ( messages.get( pending.id ) != pending ) {
+                        continue;
+                    }
+
+                    final byte[] body = pending.segment.readBody( pending.offset );
+
+                    if ( deadLetters != null && pending.receiveCount >= deliveryLimit ) {
+                        logger.warn( "Message {} in {} was received {} times, moving it to the dead letter queue",
+                            pending.id, directory, pending.receiveCount );
+
+                        deadLetters.append( Arrays.asList( body ) );
+                        appendRecord( LocalQueueSegment.ACK, pending.id, pending.receiveCount, EMPTY );
+                        remove( pending );
+                        continue;
+                    }
+
+                    pending.receiveCount++;
+                    pending.visibleAt = now + fig.getVisibilityTimeout();
+                    inFlight.add( new InFlight( pending ) );
+
+                    appendRecord( LocalQueueSegment.DELIVERY, pending.id, pending.receiveCount, EMPTY );
+
+                    delivered.add( pending );
+                    bodies.add( body );
+                }
+
+                if ( !delivered.isEmpty() || wait <= 0 ) {
+                    break;
+                }
+
+                wait = available.awaitNanos( wait );
+            }
+
+            sync();
+        }
+        catch ( InterruptedException ie ) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( ie );
+        }
+        catch ( IOException e ) {
+            throw new RuntimeException( "Unable to read messages from " + directory, e );
+        }
+        finally {
+            lock.unlock();
+        }
+
+        final List<QueueMessage> queueMessages = new ArrayList<>( delivered.size() );
+
+        for ( int i = 0; i < delivered.size(); i++ ) {
+            final Pending pending = delivered.get( i );
+            final String stringBody = new String( bodies.get( i ), StandardCharsets.UTF_8 );
+
+            final Object payload;
+
+            try {
+                payload = mapper.readValue( stringBody, klass );
+            }
+            catch ( Exception e ) {
+                throw new RuntimeException( "Unable to deserialize message " + stringBody + " for class " + klass, e );
+            }
+
+            final String messageId = String.valueOf( pending.id );
+
+            final QueueMessage queueMessage =
+                new QueueMessage( messageId, messageId + "_" + pending.receiveCount, payload, klass.getName() );
+            queueMessage.setStringBody( stringBody );
+            queueMessage.setReceiveCount( pending.receiveCount );
+
+            queueMessages.add( queueMessage );
+        }
+
+        return queueMessages;
+    }
+
+
+    @Override
+    public long getQueueDepth() {
+        lock.lock();
+
+        try {
+            return messages.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+
+    @Override
+    public void commitMessage( final QueueMessage queueMessage ) {
+        commitMessages( Arrays.asList( queueMessage ) );
+    }
+
+
+    @Override
+    public void commitMessages( final List<QueueMessage> queueMessages ) {
+        lock.lock();
+
+        try {
+            for ( final QueueMessage queueMessage : queueMessages ) {
+                final String handle = queueMessage.getHandle();
+                final Pending pending = messages.get( parseId( handle ) );
+
+                //already committed, or moved to the dead letter queue
+                if ( pending == null ) {
+                    continue;
+                }
+
+                //the visibility timeout expired and the message was delivered again, the new receiver owns it
+                final int receiveCount = parseReceiveCount( handle );
+
+                if ( receiveCount >= 0 && receiveCount != pending.receiveCount ) {
+                    logger.warn( "Ignoring commit of message {} in {} with stale handle {}, it was received {} times",
+                        pending.id, directory, handle, pending.receiveCount );
+                    continue;
+                }
+
+                appendRecord( LocalQueueSegment.ACK, pending.id, pending.receiveCount, EMPTY );
+                remove( pending );
+            }
+
+            sync();
+            compact();
+        }
+        catch ( IOException e ) {
+            throw new RuntimeException( "Unable to commit messages to " + directory, e );
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+
+    @Override
+    public void sendMessages( final List bodies ) throws IOException {
+        final List<byte[]> serialized = new ArrayList<>( bodies.size() );
+
+        for ( final Object body : bodies ) {
+            serialized.add( mapper.writeValueAsBytes( body ) );
+        }
+
+        append( serialized );
+    }
+
+
+    @Override
+    public <T extends Serializable> void sendMessage( final T body ) throws IOException {
+        append( Arrays.asList( mapper.writeValueAsBytes( body ) ) );
+    }
+
+
+    @Override
+    public <T extends Serializable> void sendMessageToTopic( final T body ) throws IOException {
+        sendMessage( body );
+    }
+
+
+    @Override
+    public void deleteQueue() {
+        lock.lock();
+
+        try {
+            logger.warn( "Deleting queue: {}", directory );
+
+            for ( final LocalQueueSegment segment : segments.values() ) {
+                segment.delete();
+            }
+
+            segments.clear();
+            messages.clear();
+            ready.clear();
+            inFlight.clear();
+
+            active = LocalQueueSegment.create( directory, nextSequence(), fig.getLocalQueueSegmentSize() );
+            segments.put( active.getSequence(), active );
+        }
+        catch ( IOException e ) {
+            throw new RuntimeException( "Unable to delete queue " + directory, e );
+        }
+        finally {
+            lock.unlock();
+        }
+
+        if ( deadLetters != null ) {
+            deadLetters.deleteQueue();
+        }
+    }
+
+
+    /**
+     * Append the serialized messages in a single batch and wake up any waiting readers
+     */
+    private void append( final List<byte[]> bodies ) throws IOException {
+        lock.lock();
+
+        try {
+            for ( final byte[] body : bodies ) {
+                Preconditions.checkArgument( LocalQueueSegment.fits( body.length, fig.getLocalQueueSegmentSize() ),
+                    "Message of " + body.length + " bytes is larger than the queue segment size" );
+
+                final long id = nextId++;
+                final Pending pending = new Pending( id, 0 );
+
+                place( pending, appendRecord( LocalQueueSegment.MESSAGE, id, 0, body ) );
+
+                messages.put( id, pending );
+                ready.add( pending );
+            }
+
+            sync();
+            available.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Append a record to the active segment, rolling to a new segment when it's full.  Returns the offset of the
+     * record in the active segment
+     */
+    private int appendRecord( final byte type, final long id, final int receiveCount, final byte[] body )
+        throws IOException {
+
+        int offset = active.append( type, id, receiveCount, body );
+
+        if ( offset < 0 ) {
+            active.force();
+            active = LocalQueueSegment.create( directory, nextSequence(), fig.getLocalQueueSegmentSize() );
+            segments.put( active.getSequence(), active );
+
+            offset = active.append( type, id, receiveCount, body );
+
+            compact();
+        }
+
+        return offset;
+    }
+
+
+    /**
+     * Record that the message now lives at the offset in the active segment
+     */
+    private void place( final Pending pending, final int offset ) {
+        pending.segment = active;
+        pending.offset = offset;
+        active.messageAdded();
+    }
+
+
+    /**
+     * Forget a committed or dead lettered message
+     */
+    private void remove( final Pending pending ) {
+        messages.remove( pending.id );
+        pending.segment.messageRemoved();
+    }
+
+
+    /**
+     * Make every delivered message whose visibility timeout has expired available again
+     */
+    private void requeueExpired( final long now ) {
+        while ( !inFlight.isEmpty() && inFlight.peek().visibleAt <= now ) {
+            final InFlight expired = inFlight.poll();
+            final Pending pending = expired.pending;
+
+            //only requeue if this is still the latest delivery of an uncommitted message
+            if ( messages.get( pending.id ) == pending && pending.visibleAt == expired.visibleAt ) {
+                ready.add( pending );
+            }
+        }
+    }
+
+
+    /**
+     * Delete old segments.  Segments are only removed from the oldest, since acks in a segment may refer to messages
+     * in older ones.  When only a few messages are left in the oldest segment, they are copied to the active segment
+     * first.
+     */
+    private void compact() throws IOException {
+        if ( compacting ) {
+            return;
+        }
+
+        compacting = true;
+
+        try {
+            while ( segments.size() > 1 ) {
+                final LocalQueueSegment oldest = segments.firstEntry().getValue();
+
+                if ( oldest.getLiveCount() > oldest.getMessageCount() * fig.getLocalQueueCompactionRatio() ) {
+                    return;
+                }
+
+                if ( oldest.getLiveCount() > 0 ) {
+                    relocate( oldest );
+                }
+
+                segments.remove( oldest.getSequence() );
+                oldest.delete();
+
+                if ( logger.isDebugEnabled() ) {
+                    logger.debug( "Removed segment {} of queue {}", oldest.getSequence(), directory );
+                }
+            }
+        }
+        finally {
+            compacting = false;
+        }
+    }
+
+
+    /**
+     * Copy the remaining messages of the segment to the active segment
+     */
+    private void relocate( final LocalQueueSegment segment ) throws IOException {
+        for ( final Pending pending : messages.values() ) {
+            if ( pending.segment != segment ) {
+                continue;
+            }
+
+            final byte[] body = segment.readBody( pending.offset );
+
+            final int offset = appendRecord( LocalQueueSegment.MESSAGE, pending.id, pending.receiveCount, body );
+
+            segment.messageRemoved();
+            place( pending, offset );
+        }
+
+        sync();
+    }
+
+
+    /**
+     * Rebuild our state from the segments on disk.  Messages that were delivered but not committed before the restart
+     * are available immediately
+     */
+    private void replay() throws IOException {
+        final File[] files = directory.listFiles( LocalQueueSegment::isSegment );
+
+        if ( files != null ) {
+            Arrays.sort( files, ( a, b ) -> Long
+                .compare( LocalQueueSegment.parseSequence( a ), LocalQueueSegment.parseSequence( b ) ) );
+
+            for ( final File file : files ) {
+                final LocalQueueSegment segment = LocalQueueSegment.open( file, fig.getLocalQueueSegmentSize() );
+
+                segments.put( segment.getSequence(), segment );
+
+                segment.replay( ( type, id, receiveCount, offset ) -> {
+
+                    nextId = Math.max( nextId, id + 1 );
+
+                    final Pending existing = messages.get( id );
+
+                    switch ( type ) {
+                        case LocalQueueSegment.MESSAGE:
+                            //a relocated copy replaces the original
+                            if ( existing != null ) {
+                                existing.segment.messageRemoved();
+                            }
+
+                            final Pending pending = new Pending( id, receiveCount );
+                            pending.segment = segment;
+                            pending.offset = offset;
+                            segment.messageAdded();
+                            messages.put( id, pending );
+                            break;
+
+                        case LocalQueueSegment.DELIVERY:
+                            if ( existing != null ) {
+                                existing.receiveCount = Math.max( existing.receiveCount, receiveCount );
+                            }
+                            break;
+
+                        case LocalQueueSegment.ACK:
+                            if ( existing != null ) {
+                                remove( existing );
+                            }
+                            break;
+
+                        default:
+                            logger.error( "Unknown record type {} in {}", type, file );
+                    }
+                } );
+            }
+        }
+
+        if ( segments.isEmpty() ) {
+            active = LocalQueueSegment.create( directory, 0, fig.getLocalQueueSegmentSize() );
+            segments.put( active.getSequence(), active );
+        }
+        else {
+            active = segments.lastEntry().getValue();
+        }
+
+        messages.values().stream().sorted( ( a, b ) -> Long.compare( a.id, b.id ) ).forEach( ready::add );
+
+        if ( !messages.isEmpty() ) {
+            logger.info( "Recovered {} messages from queue {}", messages.size(), directory );
+        }
+
+        compact();
+    }
+
+
+    private long nextSequence() {
+        return segments.isEmpty() ? 0 : segments.lastKey() + 1;
+    }
+
+
+    private void sync() {
+        if ( fig.isLocalQueueFsync() ) {
+            active.force();
+        }
+    }
+
+
+    /**
+     * Handles are {@code <id>_<receiveCount>}
+     */
+    private static long parseId( final String handle ) {
+        final int separator = handle.indexOf( '_' );
+
+        return Long.parseLong( separator < 0 ? handle : handle.substring( 0, separator ) );
+    }
+
+
+    /**
+     * @return The receive count of the delivery the handle was issued for, or -1 if the handle has none
+     */
+    private static int parseReceiveCount( final String handle ) {
+        final int separator = handle.indexOf( '_' );
+
+        return separator < 0 ? -1 : Integer.parseInt( handle.substring( separator + 1 ) );
+    }
+
+
+    /**
+     * A message that has not been committed
+     */
+    private static final class Pending {
+        private final long id;
+        private int receiveCount;
+        private long visibleAt;
+        private LocalQueueSegment segment;
+        private int offset;
+
+
+        private Pending( final long id, final int receiveCount ) {
+            this.id = id;
+            this.receiveCount = receiveCount;
+        }
+    }
+
+
+    /**
+     * A delivery of a message, ordered by the time it becomes visible again
+     */
+    private static final class InFlight implements Comparable<InFlight> {
+        private final Pending pending;
+        private final long visibleAt;
+
+
+        private InFlight( final Pending pending ) {
+            this.pending = pending;
+            this.visibleAt = pending.visibleAt;
+        }
+
+
+        @Override
+        public int compareTo( final InFlight o ) {
+            return Long.compare( visibleAt, o.visibleAt );
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ *
+ *  * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  *  contributor license agreements.  The ASF licenses this file to You
+ *  * under the Apache License, Version 2.0 (the "License"); you may not
+ *  * use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.  For additional information regarding
+ *  * copyright in this work, please see the NOTICE file in the top level
+ *  * directory of this distribution.
+ *
+ */
+
+package org.apache.usergrid.persistence.queue.impl;
+
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.google.common.base.Preconditions;
+
+
+/**
+ * A single memory mapped file of a durable local queue log.  Records are only ever appended.  Each record is
+ *
+ * [int length][byte type][long message id][int receive count][body]
+ *
+ * The length is written after the rest of the record, so a record torn by a crash reads as the end of the segment.
+ * Not thread safe, the owning queue serializes access.
+ */
+class LocalQueueSegment implements Closeable {
+
+    static final byte MESSAGE = 1;
+    static final byte DELIVERY = 2;
+    static final byte ACK = 3;
+
+    private static final int LENGTH_SIZE = 4;
+    private static final int HEADER_SIZE = 1 + 8 + 4;
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+
+
+    private final long sequence;
+    private final File file;
+    private final MappedByteBuffer buffer;
+
+    private int position;
+
+    /**
+     * Number of messages appended to this segment, and the number that are still waiting to be committed
+     */
+    private int messageCount;
+    private int liveCount;
+
+
+    private LocalQueueSegment( final long sequence, final File file, final int size ) throws IOException {
+        this.sequence = sequence;
+        this.file = file;
+
+        try ( RandomAccessFile raf = new RandomAccessFile( file, "rw" ); FileChannel channel = raf.getChannel() ) {
+            if ( raf.length() < size ) {
+                raf.setLength( size );
+            }
+
+            //the mapping stays valid after the channel is closed
+            this.buffer = channel.map( FileChannel.MapMode.READ_WRITE, 0, raf.length() );
+        }
+    }
+
+
+    /**
+     * Create a new empty segment in the directory
+     */
+    static LocalQueueSegment create( final File directory, final long sequence, final int size )
+        throws IOException {
+        return new LocalQueueSegment( sequence, new File( directory, PREFIX + sequence + SUFFIX ), size );
+    }
+
+
+    /**
+     * Open an existing segment file
+     */
+    static LocalQueueSegment open( final File file, final int size ) throws IOException {
+        return new LocalQueueSegment( parseSequence( file ), file, size );
+    }
+
+
+    /**
+     * Return true if the file is a segment
+     */
+    static boolean isSegment( final File file ) {
+        final String name = file.getName();
+        return name.startsWith( PREFIX ) && name.endsWith( SUFFIX );
+    }
+
+
+    static long parseSequence( final File file ) {
+        final String name = file.getName();
+        return Long.parseLong( name.substring( PREFIX.length(), name.length() - SUFFIX.length() ) );
+    }
+
+
+    /**
+     * Append a record.  Returns the offset of the record, or -1 if the segment does not have room for it
+     */
+    int append( final byte type, final long messageId, final int receiveCount, final byte[] body ) {
+        final int length = HEADER_SIZE + body.length;
+
+        //always leave room for the terminating empty length
+        if ( position + LENGTH_SIZE + length + LENGTH_SIZE > buffer.capacity() ) {
+            return -1;
+        }
+
+        final int offset = position;
+
+        buffer.put( offset + LENGTH_SIZE, type );
+        buffer.putLong( offset + LENGTH_SIZE + 1, messageId );
+        buffer.putInt( offset + LENGTH_SIZE + 9, receiveCount );
+
+        final ByteBuffer bodyBuffer = buffer.duplicate();
+        bodyBuffer.position( offset + LENGTH_SIZE + HEADER_SIZE );
+        bodyBuffer.put( body );
+
+        //publish the record last
+        buffer.putInt( offset, length );
+
+        position = offset + LENGTH_SIZE + length;
+
+        return offset;
+    }
+
+
+    /**
+     * Return true if a record with a body of this size fits in an empty segment
+     */
+    static boolean fits( final int bodySize, final int segmentSize ) {
+        return LENGTH_SIZE + HEADER_SIZE + bodySize + LENGTH_SIZE <= segmentSize;
+    }
+
+
+    /**
+     * Read the body of the record at the offset
+     */
+    byte[] readBody( final int offset ) {
+        final int length = buffer.getInt( offset );
+
+        Preconditions.checkState( length > HEADER_SIZE, "No message record at offset " + offset );
+
+        final byte[] body = new byte[length - HEADER_SIZE];
+
+        final ByteBuffer bodyBuffer = buffer.duplicate();
+        bodyBuffer.position( offset + LENGTH_SIZE + HEADER_SIZE );
+        bodyBuffer.get( body );
+
+        return body;
+    }
+
+
+    /**
+     * Visit every record in the order they were written, and position the segment for appends after the last one
+     */
+    void replay( final RecordVisitor visitor ) {
+        int offset = 0;
+
+        while ( offset + LENGTH_SIZE <= buffer.capacity() ) {
+            final int length = buffer.getInt( offset );
+
+            if ( length < HEADER_SIZE || offset + LENGTH_SIZE + length > buffer.capacity() ) {
+                break;
+            }
+
+            final byte type = buffer.get( offset + LENGTH_SIZE );
+            final long messageId = buffer.getLong( offset + LENGTH_SIZE + 1 );
+            final int receiveCount = buffer.getInt( offset + LENGTH_SIZE + 9 );
+
+            visitor.visit( type, messageId, receiveCount, offset );
+
+            offset += LENGTH_SIZE + length;
+        }
+
+        position = offset;
+    }
+
+
+    /**
+     * Force the written records to disk
+     */
+    void force() {
+        buffer.force();
+    }
+
+
+    long getSequence() {
+        return sequence;
+    }
+
+
+    void messageAdded() {
+        messageCount++;
+        liveCount++;
+    }
+
+
+    void messageRemoved() {
+        liveCount--;
+    }
+
+
+    int getMessageCount() {
+        return messageCount;
+    }
+
+
+    int getLiveCount() {
+        return liveCount;
+    }
+
+
+    /**
+     * Close and remove the segment file.  The mapping is released when the buffer is collected
+     */
+    void delete() {
+        if ( !file.delete() ) {
+            throw new IllegalStateException( "Unable to delete queue segment " + file );
+        }
+    }
+
+
+    @Override
+    public void close() {
+        force();
+    }
+
+
+    /**
+     * Visits the records of a segment
+     */
+    interface RecordVisitor {
+        void visit( byte type, long messageId, int receiveCount, int offset );
+    }
+}
@@ -57,7 +57,9 @@ public class QueueManagerFactoryImpl implements QueueManagerFactory {
 
                         QueueManager manager = defaultManager.get( scope.getName() );
                         if ( manager == null ) {
-                            manager = new LocalQueueManager();
+                            manager = queueFig.isLocalQueueDurable()
+                                ? new LocalDurableQueueManagerImpl( scope, queueFig )
+                                : new LocalQueueManager();
                             defaultManager.put( scope.getName(), manager );
                         }
                         return manager;
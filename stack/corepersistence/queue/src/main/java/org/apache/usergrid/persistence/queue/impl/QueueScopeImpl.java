@@ -23,10 +23,16 @@ import org.apache.usergrid.persistence.queue.QueueScope;
 public class QueueScopeImpl implements QueueScope {
 
     private final String name;
+    private final String topicName;
     private final RegionImplementation regionImpl;
 
     public QueueScopeImpl(  final String name, final RegionImplementation regionImpl) {
+        this( name, name, regionImpl );
+    }
+
+    public QueueScopeImpl(  final String name, final String topicName, final RegionImplementation regionImpl) {
         this.name = name;
+        this.topicName = topicName;
         this.regionImpl = regionImpl;
     }
 
@@ -38,6 +44,11 @@ public class QueueScopeImpl implements QueueScope {
         return name;
     }
 
+    @Override
+    public String getTopicName() {
+        return topicName;
+    }
+
     @Override
     public RegionImplementation getRegionImplementation() {return regionImpl;}
 
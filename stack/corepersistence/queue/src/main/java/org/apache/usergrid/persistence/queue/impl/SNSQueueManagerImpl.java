@@ -20,6 +20,7 @@ package org.apache.usergrid.persistence.queue.impl;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -27,6 +28,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 
 import com.amazonaws.ClientConfiguration;
 import org.slf4j.Logger;
@@ -40,6 +43,7 @@ import org.apache.usergrid.persistence.queue.QueueFig;
 import org.apache.usergrid.persistence.queue.QueueManager;
 import org.apache.usergrid.persistence.queue.QueueMessage;
 import org.apache.usergrid.persistence.queue.QueueScope;
+import org.apache.usergrid.persistence.queue.QueueSendException;
 import org.apache.usergrid.persistence.queue.util.AmazonNotificationUtils;
 
 import com.amazonaws.AmazonServiceException;
@@ -66,6 +70,9 @@ import com.amazonaws.services.sqs.model.Message;
 import com.amazonaws.services.sqs.model.QueueDoesNotExistException;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
 import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
 import com.amazonaws.services.sqs.model.SendMessageRequest;
 import com.amazonaws.services.sqs.model.SendMessageResult;
 import com.fasterxml.jackson.core.JsonFactory;
@@ -99,6 +106,10 @@ public class SNSQueueManagerImpl implements QueueManager {
     private static final ObjectMapper mapper = new ObjectMapper( JSON_FACTORY );
     private static final int MIN_CLIENT_SOCKET_TIMEOUT = 5000; // millis
     private static final int MIN_VISIBILITY_TIMEOUT = 1; //seconds
+    private static final int MAX_SEND_BATCH_SIZE = 10; //the most entries SQS accepts in one send batch
+    private static final int MAX_SEND_BATCH_BYTES = 256 * 1024; //the largest total payload of one send batch
+    private static final int MAX_SEND_ATTEMPTS = 3;
+    private static final long SEND_RETRY_BASE_MILLIS = 200; //doubled for every attempt after the first retry
 
     static {
 
@@ -191,7 +202,9 @@ public class SNSQueueManagerImpl implements QueueManager {
 
         logger.info( "Setting up setupTopics SNS/SQS..." );
 
-        String primaryTopicArn = AmazonNotificationUtils.getTopicArn( sns, queueName, true );
+        final String topicName = getTopicName();
+
+        String primaryTopicArn = AmazonNotificationUtils.getTopicArn( sns, topicName, true );
 
         if ( logger.isTraceEnabled() ) {
             logger.trace( "SNS/SQS Setup: primaryTopicArn={}", primaryTopicArn );
@@ -258,7 +271,7 @@ public class SNSQueueManagerImpl implements QueueManager {
                 AmazonSNSClient snsClient = createSNSClient( region ); // do this stuff synchronously
 
                 // getTopicArn will create the SNS topic if it doesn't exist
-                String topicArn = AmazonNotificationUtils.getTopicArn( snsClient, queueName, true );
+                String topicArn = AmazonNotificationUtils.getTopicArn( snsClient, topicName, true );
                 topicArns.put( topicArn, regionName );
 
                 // create the SQS queue if it doesn't exist
@@ -381,8 +394,21 @@ public class SNSQueueManagerImpl implements QueueManager {
 
 
     private String getName() {
+        return getQualifiedName( scope.getName() );
+    }
+
+
+    /**
+     * Get the name of the topic, which is the queue's name unless the scope shares a topic with other queues
+     */
+    private String getTopicName() {
+        return getQualifiedName( scope.getTopicName() );
+    }
+
+
+    private String getQualifiedName( final String scopeName ) {
         String name =
-            clusterFig.getClusterName() + "_" + cassandraFig.getApplicationKeyspace() + "_" + scope.getName() + "_"
+            clusterFig.getClusterName() + "_" + cassandraFig.getApplicationKeyspace() + "_" + scopeName + "_"
                 + scope.getRegionImplementation();
         name = name.toLowerCase(); //user lower case values
         Preconditions.checkArgument( name.length() <= 80, "Your name must be < than 80 characters" );
@@ -573,9 +599,148 @@ public class SNSQueueManagerImpl implements QueueManager {
             return;
         }
 
+        final String url = getReadQueue().getUrl();
+
+        final List<String> messages = new ArrayList<>( bodies.size() );
+
         for ( Object body : bodies ) {
-            sendMessage( ( Serializable ) body );
+            messages.add( toString( body ) );
+        }
+
+        //entries are identified by their position in the list, only the ones that fail are sent again
+        List<Integer> pending = new ArrayList<>( messages.size() );
+
+        for ( int i = 0; i < messages.size(); i++ ) {
+            pending.add( i );
+        }
+
+        final List<Integer> rejected = new ArrayList<>();
+
+        for ( int attempt = 1; ; attempt++ ) {
+            pending = sendBatches( url, messages, pending, rejected );
+
+            if ( pending.isEmpty() || attempt == MAX_SEND_ATTEMPTS ) {
+                break;
+            }
+
+            backOff( url, attempt );
+        }
+
+        if ( pending.isEmpty() && rejected.isEmpty() ) {
+            return;
+        }
+
+        final List<Integer> failed = new ArrayList<>( pending );
+        failed.addAll( rejected );
+        Collections.sort( failed );
+
+        final List<Object> failedBodies = new ArrayList<>( failed.size() );
+
+        for ( Integer index : failed ) {
+            failedBodies.add( bodies.get( index ) );
+        }
+
+        throw new QueueSendException(
+            "Unable to send " + failedBodies.size() + " of " + bodies.size() + " messages to " + url, failedBodies );
+    }
+
+
+    /**
+     * Wait before sending failed entries again.  The wait doubles with every attempt, and half of it is random so
+     * nodes that were throttled together don't all retry at the same moment.
+     */
+    private void backOff( final String url, final int attempt ) throws IOException {
+
+        final long ceiling = SEND_RETRY_BASE_MILLIS << ( attempt - 1 );
+        final long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong( ceiling / 2 + 1 );
+
+        try {
+            Thread.sleep( delay );
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while sending messages to " + url, e );
+        }
+    }
+
+
+    /**
+     * Send the messages at the given positions in batches within the SQS limits.  Every batch is submitted up front so
+     * the requests overlap.
+     *
+     * @param rejected Receives the positions SQS refused as malformed or too large, sending them again won't help
+     *
+     * @return The positions that failed and may succeed if sent again
+     */
+    private List<Integer> sendBatches( final String url, final List<String> messages, final List<Integer> positions,
+                                       final List<Integer> rejected ) throws IOException {
+
+        final List<List<Integer>> batches = new ArrayList<>();
+        final List<Future<SendMessageBatchResult>> futures = new ArrayList<>();
+
+        List<SendMessageBatchRequestEntry> entries = new ArrayList<>( MAX_SEND_BATCH_SIZE );
+        List<Integer> batch = new ArrayList<>( MAX_SEND_BATCH_SIZE );
+        int batchBytes = 0;
+
+        for ( Integer position : positions ) {
+            final String message = messages.get( position );
+            final int messageBytes = message.getBytes( StandardCharsets.UTF_8 ).length;
+
+            //SQS rejects a batch with too many entries or too large a total payload
+            if ( entries.size() == MAX_SEND_BATCH_SIZE
+                || ( !entries.isEmpty() && batchBytes + messageBytes > MAX_SEND_BATCH_BYTES ) ) {
+
+                futures.add( sendBatch( url, entries ) );
+                batches.add( batch );
+
+                entries = new ArrayList<>( MAX_SEND_BATCH_SIZE );
+                batch = new ArrayList<>( MAX_SEND_BATCH_SIZE );
+                batchBytes = 0;
+            }
+
+            entries.add( new SendMessageBatchRequestEntry( String.valueOf( position ), message ) );
+            batch.add( position );
+            batchBytes += messageBytes;
         }
+
+        if ( !entries.isEmpty() ) {
+            futures.add( sendBatch( url, entries ) );
+            batches.add( batch );
+        }
+
+        final List<Integer> failed = new ArrayList<>();
+
+        for ( int i = 0; i < futures.size(); i++ ) {
+            try {
+                final SendMessageBatchResult result = futures.get( i ).get();
+
+                for ( BatchResultErrorEntry error : result.getFailed() ) {
+                    logger.error( "Send failed reason: {} message index: {}", error.getMessage(), error.getId() );
+
+                    ( error.isSenderFault() ? rejected : failed ).add( Integer.valueOf( error.getId() ) );
+                }
+            }
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new IOException( "Interrupted while sending messages to " + url, e );
+            }
+            catch ( ExecutionException e ) {
+                logger.error( "Unable to send batch of {} messages to {}", batches.get( i ).size(), url, e.getCause() );
+                failed.addAll( batches.get( i ) );
+            }
+        }
+
+        return failed;
+    }
+
+
+    private Future<SendMessageBatchResult> sendBatch( final String url,
+                                                      final List<SendMessageBatchRequestEntry> entries ) {
+        if ( logger.isTraceEnabled() ) {
+            logger.trace( "Publishing batch of {} messages to url: {}", entries.size(), url );
+        }
+
+        return sqsAsync.sendMessageBatchAsync( new SendMessageBatchRequest( url, entries ) );
     }
 
 
@@ -0,0 +1,251 @@
+/*
+ *
+ *  * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  *  contributor license agreements.  The ASF licenses this file to You
+ *  * under the Apache License, Version 2.0 (the "License"); you may not
+ *  * use this file except in compliance with the License.
+ *  * You may obtain a copy of the License at
+ *  *
+ *  *     http://www.apache.org/licenses/LICENSE-2.0
+ *  *
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS,
+ *  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  * See the License for the specific language governing permissions and
+ *  * limitations under the License.  For additional information regarding
+ *  * copyright in this work, please see the NOTICE file in the top level
+ *  * directory of this distribution.
+ *
+ */
+
+package org.apache.usergrid.persistence.queue.impl;
+
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.apache.usergrid.persistence.queue.QueueFig;
+import org.apache.usergrid.persistence.queue.QueueMessage;
+import org.apache.usergrid.persistence.queue.QueueScope;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+public class LocalDurableQueueManagerImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private QueueFig fig;
+    private QueueScope scope;
+
+
+    @Before
+    public void setup() {
+        fig = mock( QueueFig.class );
+
+        when( fig.getLocalQueueDirectory() ).thenReturn( folder.getRoot().getAbsolutePath() );
+        when( fig.getLocalQueueSegmentSize() ).thenReturn( 1024 * 1024 );
+        when( fig.getLocalQueueCompactionRatio() ).thenReturn( 0.1 );
+        when( fig.getQueueDeliveryLimit() ).thenReturn( "5" );
+        when( fig.getVisibilityTimeout() ).thenReturn( 60000 );
+
+        scope = new QueueScopeImpl( "test", QueueScope.RegionImplementation.LOCAL );
+    }
+
+
+    @Test
+    public void sendReceiveCommit() throws Exception {
+        final LocalDurableQueueManagerImpl queue = new LocalDurableQueueManagerImpl( scope, fig );
+
+        queue.sendMessages( bodies( 10 ) );
+
+        assertEquals( 10, queue.getQueueDepth() );
+
+        final List<QueueMessage> messages = queue.getMessages( 100, String.class );
+
+        assertEquals( 10, messages.size() );
+        assertEquals( "body0", messages.get( 0 ).getBody() );
+        assertEquals( 1, messages.get( 0 ).getReceiveCount() );
+
+        //delivered messages are invisible
+        assertTrue( queue.getMessages( 100, String.class ).isEmpty() );
+
+        queue.commitMessages( messages );
+
+        assertEquals( 0, queue.getQueueDepth() );
+    }
+
+
+    @Test
+    public void recoverAfterRestart() throws Exception {
+        LocalDurableQueueManagerImpl queue = new LocalDurableQueueManagerImpl( scope, fig );
+
+        queue.sendMessages( bodies( 3 ) );
+
+        final List<QueueMessage> first = queue.getMessages( 1, String.class );
+        queue.commitMessages( first );
+
+        //delivered but never committed
+        queue.getMessages( 1, String.class );
+
+        queue = new LocalDurableQueueManagerImpl( scope, fig );
+
+        assertEquals( 2, queue.getQueueDepth() );
+
+        final List<QueueMessage> messages = queue.getMessages( 100, String.class );
+
+        assertEquals( 2, messages.size() );
+        assertEquals( "body1", messages.get( 0 ).getBody() );
+        assertEquals( 2, messages.get( 0 ).getReceiveCount() );
+        assertEquals( "body2", messages.get( 1 ).getBody() );
+        assertEquals( 1, messages.get( 1 ).getReceiveCount() );
+    }
+
+
+    @Test
+    public void redeliverAfterVisibilityTimeout() throws Exception {
+        when( fig.getVisibilityTimeout() ).thenReturn( 10 );
+
+        final LocalDurableQueueManagerImpl queue = new LocalDurableQueueManagerImpl( scope, fig );
+
+        queue.sendMessage( "body" );
+
+        assertEquals( 1, queue.getMessages( 10, String.class ).size() );
+
+        Thread.sleep( 20 );
+
+        final List<QueueMessage> redelivered = queue.getMessages( 10, String.class );
+
+        assertEquals( 1, redelivered.size() );
+        assertEquals( 2, redelivered.get( 0 ).getReceiveCount() );
+
+        //the handle of the latest delivery commits the message
+        queue.commitMessages( redelivered );
+
+        assertEquals( 0, queue.getQueueDepth() );
+    }
+
+
+    @Test
+    public void ignoreCommitWithStaleHandle() throws Exception {
+        when( fig.getVisibilityTimeout() ).thenReturn( 10 );
+
+        final LocalDurableQueueManagerImpl queue = new LocalDurableQueueManagerImpl( scope, fig );
+
+        queue.sendMessage( "body" );
+
+        final List<QueueMessage> first = queue.getMessages( 10, String.class );
+
+        Thread.sleep( 20 );
+
+        when( fig.getVisibilityTimeout() ).thenReturn( 60000 );
+
+        final List<QueueMessage> redelivered = queue.getMessages( 10, String.class );
+
+        assertEquals( 1, redelivered.size() );
+
+        //the first receiver is too late, the message belongs to the second one
+        queue.commitMessages( first );
+
+        assertEquals( 1, queue.getQueueDepth() );
+
+        queue.commitMessages( redelivered );
+
+        assertEquals( 0, queue.getQueueDepth() );
+    }
+
+
+    @Test
+    public void deadLetterAfterDeliveryLimit() throws Exception {
+        when( fig.getVisibilityTimeout() ).thenReturn( 0 );
+        when( fig.getQueueDeliveryLimit() ).thenReturn( "2" );
+
+        final LocalDurableQueueManagerImpl queue = new LocalDurableQueueManagerImpl( scope, fig );
+
+        queue.sendMessage( "poison" );
+
+        assertEquals( 1, queue.getMessages( 10, String.class ).size() );
+        assertEquals( 1, queue.getMessages( 10, String.class ).size() );
+        assertTrue( queue.getMessages( 10, String.class ).isEmpty() );
+
+        assertEquals( 0, queue.getQueueDepth() );
+
+        final LocalDurableQueueManagerImpl deadLetters =
+            new LocalDurableQueueManagerImpl( new QueueScopeImpl( "test_dead", QueueScope.RegionImplementation.LOCAL ),
+                fig );
+
+        assertEquals( 1, deadLetters.getQueueDepth() );
+        assertEquals( "poison", deadLetters.getMessages( 10, String.class ).get( 0 ).getBody() );
+
+        //dead lettered messages stay gone after a restart
+        assertEquals( 0, new LocalDurableQueueManagerImpl( scope, fig ).getQueueDepth() );
+    }
+
+
+    @Test
+    public void compactSegments() throws Exception {
+        when( fig.getLocalQueueSegmentSize() ).thenReturn( 2048 );
+
+        LocalDurableQueueManagerImpl queue = new LocalDurableQueueManagerImpl( scope, fig );
+
+        final Set<String> remaining = new HashSet<>();
+
+        //about 15 segments of records without compaction
+        for ( int i = 0; i < 50; i++ ) {
+            queue.sendMessages( bodies( 10 ) );
+
+            final List<QueueMessage> messages = queue.getMessages( 10, String.class );
+
+            //leave a message behind every few batches
+            final int skip = i % 10 == 0 ? 1 : 0;
+
+            if ( skip > 0 ) {
+                remaining.add( messages.get( 0 ).getMessageId() );
+            }
+
+            queue.commitMessages( messages.subList( skip, messages.size() ) );
+        }
+
+        assertTrue( "Segments should be removed, found " + segmentCount(), segmentCount() < 10 );
+
+        queue = new LocalDurableQueueManagerImpl( scope, fig );
+
+        assertEquals( remaining.size(), queue.getQueueDepth() );
+
+        final Set<String> recovered = new HashSet<>();
+
+        for ( QueueMessage message : queue.getMessages( 100, String.class ) ) {
+            recovered.add( message.getMessageId() );
+        }
+
+        assertEquals( remaining, recovered );
+    }
+
+
+    private int segmentCount() {
+        return new File( folder.getRoot(), scope.getName() ).listFiles( LocalQueueSegment::isSegment ).length;
+    }
+
+
+    private List<String> bodies( final int count ) {
+        final List<String> bodies = new ArrayList<>( count );
+
+        for ( int i = 0; i < count; i++ ) {
+            bodies.add( "body" + i );
+        }
+
+        return bodies;
+    }
+}
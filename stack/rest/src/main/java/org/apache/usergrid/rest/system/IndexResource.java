@@ -22,13 +22,18 @@ package org.apache.usergrid.rest.system;
 
 
 import com.fasterxml.jackson.jaxrs.json.annotation.JSONP;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.inject.Injector;
 
+import org.apache.usergrid.corepersistence.index.IndexRebuildService;
 import org.apache.usergrid.corepersistence.index.ReIndexRequestBuilder;
 import org.apache.usergrid.corepersistence.index.ReIndexRequestBuilderImpl;
 import org.apache.usergrid.corepersistence.index.ReIndexService;
+import org.apache.usergrid.corepersistence.service.StatusService;
+import org.apache.usergrid.corepersistence.util.CpNamingUtils;
 import org.apache.usergrid.persistence.EntityManager;
+import org.apache.usergrid.persistence.exceptions.EntityNotFoundException;
 import org.apache.usergrid.persistence.index.utils.ConversionUtils;
 import org.apache.usergrid.persistence.index.utils.UUIDUtils;
 import org.apache.usergrid.rest.AbstractContextResource;
@@ -305,6 +310,79 @@ public class IndexResource extends AbstractContextResource {
     }
 
 
+    @RequireSystemAccess
+    @POST
+    @Path( "migrate" )
+    @JSONP
+    @Produces({MediaType.APPLICATION_JSON, "application/javascript"})
+    public ApiResponse migrateIndexPost( final Map<String, Object> config,
+                                         @QueryParam( "callback" ) @DefaultValue( "callback" ) String callback )
+        throws Exception {
+
+        if (logger.isTraceEnabled()) {
+            logger.trace("Migrating all applications to a new index");
+        }
+
+        return executeMigrateAndCreateResponse( Optional.absent(), config );
+    }
+
+
+    @RequireSystemAccess
+    @POST
+    @Path( "migrate/" + RootResource.APPLICATION_ID_PATH )
+    @JSONP
+    @Produces({MediaType.APPLICATION_JSON, "application/javascript"})
+    public ApiResponse migrateIndexPost( @PathParam( "applicationId" ) final String applicationIdStr,
+                                         final Map<String, Object> config,
+                                         @QueryParam( "callback" ) @DefaultValue( "callback" ) String callback )
+        throws Exception {
+
+        final UUID appId = UUIDUtils.tryExtractUUID( applicationIdStr );
+
+        if(appId == null){
+            throw new IllegalArgumentException("Application ID in URL not a valid UUID");
+        }
+
+        return executeMigrateAndCreateResponse( Optional.of( appId ), config );
+    }
+
+
+    @RequireSystemAccess
+    @GET
+    @Path( "migrate/" + RootResource.APPLICATION_ID_PATH + "/job/{jobId}" )
+    @JSONP
+    @Produces({MediaType.APPLICATION_JSON, "application/javascript"})
+    public ApiResponse migrateIndexGet( @PathParam( "applicationId" ) final String applicationIdStr,
+                                        @PathParam( "jobId" ) final String jobIdStr,
+                                        @QueryParam( "callback" ) @DefaultValue( "callback" ) String callback )
+        throws Exception {
+
+        final UUID appId = UUIDUtils.tryExtractUUID( applicationIdStr );
+        final UUID jobId = UUIDUtils.tryExtractUUID( jobIdStr );
+
+        if(appId == null || jobId == null){
+            throw new IllegalArgumentException("Application ID and job ID in URL must be valid UUIDs");
+        }
+
+        final StatusService.JobStatus jobStatus =
+            injector.getInstance( StatusService.class ).getStatus( appId, jobId ).toBlocking().lastOrDefault( null );
+
+        if ( jobStatus == null ) {
+            throw new EntityNotFoundException( "Could not find index migration job " + jobId );
+        }
+
+        final ApiResponse response = createApiResponse();
+
+        response.setAction( "migrate index" );
+        response.setProperty( "jobId", jobId );
+        response.setProperty( "status", jobStatus.getStatus().toString() );
+        response.setProperty( "metadata", jobStatus.getData() );
+        response.setSuccess();
+
+        return response;
+    }
+
+
     private ReIndexService getReIndexService() {
         return injector.getInstance( ReIndexService.class );
     }
@@ -339,6 +417,42 @@ public class IndexResource extends AbstractContextResource {
     }
 
 
+    /**
+     * Start rebuilding into a new index and return the job to follow it with.  The status of a migration of every
+     * application is kept under the management application.
+     */
+    private ApiResponse executeMigrateAndCreateResponse( final Optional<UUID> applicationId,
+                                                         final Map<String, Object> config ) {
+
+        Preconditions
+            .checkNotNull( config, "Payload for config is null, please pass {indexSuffix:string, replicas:int, shards:int} in body" );
+
+        if ( !config.containsKey( "replicas" ) || !config.containsKey( "shards" ) ||
+            !( config.get( "replicas" ) instanceof Integer ) || !( config.get( "shards" ) instanceof Integer ) ) {
+            throw new IllegalArgumentException( "body must contains 'replicas' of type int and 'shards' of type int" );
+        }
+
+        if ( !config.containsKey( "indexSuffix" ) ) {
+            throw new IllegalArgumentException( "Please add an indexSuffix to your post" );
+        }
+
+        final UUID jobId = injector.getInstance( IndexRebuildService.class )
+                                   .rebuild( applicationId, config.get( "indexSuffix" ).toString(),
+                                       ( int ) config.get( "shards" ), ( int ) config.get( "replicas" ),
+                                       ( String ) config.get( "writeConsistency" ) );
+
+        final ApiResponse response = createApiResponse();
+
+        response.setAction( "migrate index" );
+        response.setProperty( "jobId", jobId );
+        response.setProperty( "applicationId", applicationId.or( CpNamingUtils.MANAGEMENT_APPLICATION_ID ) );
+        response.setProperty( "status", StatusService.Status.STARTED.toString() );
+        response.setSuccess();
+
+        return response;
+    }
+
+
     /**
      * Execute the request and return the response.
      */
@@ -56,6 +56,7 @@ public class ImportServiceImpl implements ImportService {
     public static final String FILE_IMPORT_ID = "fileImportId";
     public static final String FILE_IMPORT_JOB_NAME = "fileImportJob";
     public static final int HEARTBEAT_COUNT = 50;
+    public static final int ENTITY_BATCH_SIZE = 100;
 
     public static final String APP_IMPORT_CONNECTION = "imports";
     public static final String IMPORT_FILE_INCLUDES_CONNECTION = "files";
@@ -960,10 +961,11 @@ public class ImportServiceImpl implements ImportService {
         final int entityNumSkip = (int) tracker.getTotalEntityCount();
 
 
+        // the first pass only emits entities, create them in batches
         entityEventObservable.takeWhile(writeEvent -> !tracker.shouldStopProcessingEntities()).skip(entityNumSkip)
-            .flatMap(writeEvent -> {
-                return Observable.just(writeEvent).doOnNext(doWork);
-            }, 10).reduce(0, heartbeatReducer).toBlocking().last();
+            .ofType(EntityEvent.class).buffer(ENTITY_BATCH_SIZE)
+            .doOnNext(entityEvents -> createEntities(em, entityEvents, fileImport, tracker))
+            .concatMap(Observable::from).reduce(0, heartbeatReducer).toBlocking().last();
 
 
         jp.close();
@@ -1035,6 +1037,52 @@ public class ImportServiceImpl implements ImportService {
     }
 
 
+    /**
+     * Creates the entities of the events with one bulk write, tracking each entity as written or failed
+     */
+    private void createEntities(EntityManager em, List<EntityEvent> entityEvents, FileImport fileImport,
+                                FileImportTracker tracker) {
+
+        final List<Entity> entities = new ArrayList<>(entityEvents.size());
+
+        for (EntityEvent entityEvent : entityEvents) {
+            if (logger.isTraceEnabled()) {
+                logger.trace("Writing imported entity {}:{} into app {}",
+                    entityEvent.entityType, entityEvent.entityUuid, em.getApplicationId());
+            }
+
+            entities.add(new DynamicEntity(entityEvent.entityType, entityEvent.entityUuid, entityEvent.properties));
+        }
+
+        final List<EntityCreateResult> results;
+
+        try {
+            results = em.createAll(entities);
+
+        } catch (Exception e) {
+            logger.error("Error writing entities. From file:{}", fileImport.getFileName(), e);
+
+            for (int i = 0; i < entities.size(); i++) {
+                tracker.entityFailed(e.getMessage() + " From file: " + fileImport.getFileName());
+            }
+            return;
+        }
+
+        for (EntityCreateResult result : results) {
+            if (result.isSuccess()) {
+                tracker.entityWritten();
+                continue;
+            }
+
+            final Exception e = result.getError().get();
+
+            logger.error("Error writing entity. From file:{}", fileImport.getFileName(), e);
+
+            tracker.entityFailed(e.getMessage() + " From file: " + fileImport.getFileName());
+        }
+    }
+
+
     private interface WriteEvent {
         public void doWrite(EntityManager em, FileImport fileImport, FileImportTracker tracker);
     }
@@ -1055,21 +1103,7 @@ public class ImportServiceImpl implements ImportService {
         // Creates entities
         @Override
         public void doWrite(EntityManager em, FileImport fileImport, FileImportTracker tracker) {
-            try {
-                if (logger.isTraceEnabled()) {
-                    logger.trace("Writing imported entity {}:{} into app {}",
-                        entityType, entityUuid, em.getApplication().getUuid());
-                }
-
-                em.create(entityUuid, entityType, properties);
-
-                tracker.entityWritten();
-
-            } catch (Exception e) {
-                logger.error("Error writing entity. From file:{}", fileImport.getFileName(), e);
-
-                tracker.entityFailed(e.getMessage() + " From file: " + fileImport.getFileName());
-            }
+            createEntities(em, Collections.singletonList(this), fileImport, tracker);
         }
     }
 
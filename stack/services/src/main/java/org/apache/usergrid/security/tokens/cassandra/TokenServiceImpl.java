@@ -18,6 +18,9 @@ package org.apache.usergrid.security.tokens.cassandra;
 
 
 import com.codahale.metrics.Counter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Injector;
 import me.prettyprint.hector.api.Keyspace;
 import me.prettyprint.hector.api.beans.HColumn;
@@ -57,11 +60,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.util.Assert;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.core.MediaType;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static java.lang.System.currentTimeMillis;
 import static me.prettyprint.hector.api.factory.HFactory.createColumn;
@@ -89,6 +99,10 @@ public class TokenServiceImpl implements TokenService {
     public static final String PROPERTIES_AUTH_TOKEN_EXPIRES_FROM_LAST_USE =
             "usergrid.auth.token_expires_from_last_use";
     public static final String PROPERTIES_AUTH_TOKEN_REFRESH_REUSES_ID = "usergrid.auth.token_refresh_reuses_id";
+    public static final String PROPERTIES_AUTH_TOKEN_CACHE_TTL = "usergrid.auth.token.cache.time-to-live";
+    public static final String PROPERTIES_AUTH_TOKEN_CACHE_SIZE = "usergrid.auth.token.cache.size";
+    public static final String PROPERTIES_AUTH_TOKEN_ACCESS_FLUSH_INTERVAL =
+            "usergrid.auth.token.access.flush.interval";
 
     private static final String TOKEN_UUID = "uuid";
     private static final String TOKEN_TYPE = "type";
@@ -168,8 +182,24 @@ public class TokenServiceImpl implements TokenService {
 
     protected MetricsFactory metricsFactory;
 
+    /**
+     * Tokens read from Cassandra, so validating a token doesn't read its row on every request
+     */
+    private Cache<UUID, CachedToken> tokenCache = CacheBuilder.newBuilder().maximumSize( 0 ).build();
+
+    /**
+     * Access times waiting to be written, at most one per token
+     */
+    private final ConcurrentMap<UUID, TokenAccess> pendingAccesses = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService accessFlushExecutor;
+
+    private long accessFlushInterval = 5000;
+
 
     public TokenServiceImpl() {
+        accessFlushExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon( true ).setNameFormat( "token-access-flush-%d" ).build() );
     }
 
 
@@ -213,7 +243,47 @@ public class TokenServiceImpl implements TokenService {
             setExpirationFromProperties( "offline" );
 
             tokenSecretSalt = properties.getProperty( PROPERTIES_AUTH_TOKEN_SECRET_SALT, TOKEN_SECRET_SALT );
+
+            long cacheTtl = Long.parseLong( properties.getProperty( PROPERTIES_AUTH_TOKEN_CACHE_TTL, "30" ) );
+            long cacheSize = Long.parseLong( properties.getProperty( PROPERTIES_AUTH_TOKEN_CACHE_SIZE, "10000" ) );
+
+            tokenCache = CacheBuilder.newBuilder().maximumSize( cacheTtl > 0 ? cacheSize : 0 )
+                                     .expireAfterWrite( Math.max( cacheTtl, 1 ), TimeUnit.SECONDS ).build();
+
+            accessFlushInterval = Long.parseLong( properties.getProperty( PROPERTIES_AUTH_TOKEN_ACCESS_FLUSH_INTERVAL,
+                    "" + accessFlushInterval ) );
+        }
+    }
+
+
+    /**
+     * Start writing the pending access times, once the properties have been set
+     */
+    @PostConstruct
+    public void init() {
+        accessFlushExecutor.scheduleWithFixedDelay( this::flushAccesses, accessFlushInterval, accessFlushInterval,
+                TimeUnit.MILLISECONDS );
+
+        logger.info( "Token access times are written every {} ms", accessFlushInterval );
+    }
+
+
+    /**
+     * Stop the scheduled writes, and write the access times that are still pending so they aren't lost
+     */
+    @PreDestroy
+    public void destroy() {
+        accessFlushExecutor.shutdown();
+
+        try {
+            //let a flush that's running finish, so the final flush doesn't race with it
+            accessFlushExecutor.awaitTermination( accessFlushInterval, TimeUnit.MILLISECONDS );
         }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+
+        flushAccesses();
     }
 
 
@@ -314,6 +384,9 @@ public class TokenServiceImpl implements TokenService {
         TokenInfo tokenInfo = new TokenInfo( uuid, type, timestamp, timestamp, 0, duration, principal,
                 state, workflowOrgId );
         putTokenInfo( tokenInfo );
+
+        // an imported token may replace one we've already cached
+        evictToken( uuid );
     }
 
 
@@ -334,9 +407,9 @@ public class TokenServiceImpl implements TokenService {
             return isSSOEnabled() ? validateExternalToken( token, ssoTtl ) : null;
         }
 
-        TokenInfo tokenInfo;
+        CachedToken cached;
         try {
-            tokenInfo = getTokenInfo( uuid );
+            cached = getCachedToken( uuid );
         } catch (InvalidTokenException e){
             // now try from central sso
             if ( isSSOEnabled() ){
@@ -346,34 +419,121 @@ public class TokenServiceImpl implements TokenService {
             }
         }
 
-        if (updateAccessTime) {
-            //update the token
-            long now = currentTimeMillis();
+        if (!updateAccessTime) {
+            return cached.copyTokenInfo();
+        }
 
-            long maxTokenTtl = getMaxTtl(TokenCategory.getFromBase64String(token), tokenInfo.getPrincipal());
+        //update the token
+        long now = currentTimeMillis();
 
-            Mutator<UUID> batch = createMutator(cassandra.getUsergridApplicationKeyspace(), ue);
+        if ( cached.maxTokenTtl < 0 ) {
+            cached.maxTokenTtl =
+                    getMaxTtl( TokenCategory.getFromBase64String( token ), cached.tokenInfo.getPrincipal() );
+        }
 
-            HColumn<String, Long> col =
-                    createColumn(TOKEN_ACCESSED, now, calcTokenTime(tokenInfo.getExpiration(maxTokenTtl)),
-                            se, le);
-            batch.addInsertion(uuid, TOKENS_CF, col);
+        final TokenInfo tokenInfo;
+        long inactive;
 
-            long inactive = now - tokenInfo.getAccessed();
-            if (inactive > tokenInfo.getInactive()) {
-                col = createColumn(TOKEN_INACTIVE, inactive, calcTokenTime(tokenInfo.getExpiration(maxTokenTtl)),
-                        se, le);
-                batch.addInsertion(uuid, TOKENS_CF, col);
-                tokenInfo.setInactive(inactive);
+        synchronized ( cached ) {
+            inactive = now - cached.tokenInfo.getAccessed();
+            if ( inactive > cached.tokenInfo.getInactive() ) {
+                cached.tokenInfo.setInactive( inactive );
+            }
+            else {
+                inactive = -1;
             }
 
-            batch.execute();
+            //callers see the access time from before this request, as they would reading the row
+            tokenInfo = cached.copyTokenInfo();
+            cached.tokenInfo.setAccessed( now );
         }
 
+        final TokenAccess access =
+                new TokenAccess( now, inactive, calcTokenTime( tokenInfo.getExpiration( cached.maxTokenTtl ) ) );
+
+        pendingAccesses.merge( uuid, access, TokenAccess::merge );
+
         return tokenInfo;
     }
 
 
+    /**
+     * Get the token from the cache, reading it from Cassandra if it isn't cached or has passed its expiration
+     */
+    private CachedToken getCachedToken( UUID uuid ) throws Exception {
+        CachedToken cached = tokenCache.getIfPresent( uuid );
+
+        if ( cached != null ) {
+            long duration = cached.tokenInfo.getDuration();
+
+            //the row's columns expire at the end of the duration, so the cached copy can't outlive them
+            if ( duration <= 0 || currentTimeMillis() < cached.tokenInfo.getCreated() + duration ) {
+                return cached;
+            }
+
+            tokenCache.invalidate( uuid );
+        }
+
+        cached = new CachedToken( getTokenInfo( uuid ) );
+        tokenCache.put( uuid, cached );
+
+        return cached;
+    }
+
+
+    /**
+     * Write every pending access time to Cassandra.  Accesses that can't be written are kept for the next flush
+     */
+    void flushAccesses() {
+        if ( pendingAccesses.isEmpty() ) {
+            return;
+        }
+
+        Map<UUID, TokenAccess> flushing = new HashMap<>();
+
+        for ( UUID uuid : pendingAccesses.keySet() ) {
+            TokenAccess access = pendingAccesses.remove( uuid );
+            if ( access != null ) {
+                flushing.put( uuid, access );
+            }
+        }
+
+        Mutator<UUID> batch = createMutator( cassandra.getUsergridApplicationKeyspace(), ue );
+
+        for ( Map.Entry<UUID, TokenAccess> entry : flushing.entrySet() ) {
+            TokenAccess access = entry.getValue();
+
+            batch.addInsertion( entry.getKey(), TOKENS_CF,
+                    createColumn( TOKEN_ACCESSED, access.accessed, access.ttl, se, le ) );
+
+            if ( access.inactive >= 0 ) {
+                batch.addInsertion( entry.getKey(), TOKENS_CF,
+                        createColumn( TOKEN_INACTIVE, access.inactive, access.ttl, se, le ) );
+            }
+        }
+
+        try {
+            batch.execute();
+        }
+        catch ( Exception e ) {
+            logger.error( "Unable to write access times for {} tokens, will retry", flushing.size(), e );
+
+            for ( Map.Entry<UUID, TokenAccess> entry : flushing.entrySet() ) {
+                pendingAccesses.merge( entry.getKey(), entry.getValue(), TokenAccess::merge );
+            }
+        }
+    }
+
+
+    /**
+     * Forget the cached token and its pending access time, so a removed token isn't written back
+     */
+    private void evictToken( UUID tokenId ) {
+        tokenCache.invalidate( tokenId );
+        pendingAccesses.remove( tokenId );
+    }
+
+
     /** Get the max ttl per app. This is null safe,and will return the default in the case of missing data */
     private long getMaxTtl( TokenCategory tokenCategory, AuthPrincipalInfo principal ) throws Exception {
 
@@ -427,6 +587,10 @@ public class TokenServiceImpl implements TokenService {
         batch.addDeletion( principalKey( principal ), PRINCIPAL_TOKEN_CF );
 
         batch.execute();
+
+        for ( UUID tokenId : tokenIds ) {
+            evictToken( tokenId );
+        }
     }
 
 
@@ -464,6 +628,8 @@ public class TokenServiceImpl implements TokenService {
         batch.addDeletion( bytebuffer( tokenId ), TOKENS_CF );
 
         batch.execute();
+
+        evictToken( tokenId );
     }
 
 
@@ -985,4 +1151,49 @@ public class TokenServiceImpl implements TokenService {
     }
 
 
+    /**
+     * A token read from Cassandra, and the max ttl of its application once it has been looked up
+     */
+    private static final class CachedToken {
+        private final TokenInfo tokenInfo;
+        private volatile long maxTokenTtl = -1;
+
+
+        private CachedToken( TokenInfo tokenInfo ) {
+            this.tokenInfo = tokenInfo;
+        }
+
+
+        /**
+         * Copy the token info, so callers never change the cached instance
+         */
+        private synchronized TokenInfo copyTokenInfo() {
+            return new TokenInfo( tokenInfo.getUuid(), tokenInfo.getType(), tokenInfo.getCreated(),
+                    tokenInfo.getAccessed(), tokenInfo.getInactive(), tokenInfo.getDuration(),
+                    tokenInfo.getPrincipal(), tokenInfo.getState(), tokenInfo.getWorkflowOrgId() );
+        }
+    }
+
+
+    /**
+     * An access time waiting to be written.  An inactive time of -1 means it doesn't need to be written
+     */
+    private static final class TokenAccess {
+        private final long accessed;
+        private final long inactive;
+        private final int ttl;
+
+
+        private TokenAccess( long accessed, long inactive, int ttl ) {
+            this.accessed = accessed;
+            this.inactive = inactive;
+            this.ttl = ttl;
+        }
+
+
+        private static TokenAccess merge( TokenAccess first, TokenAccess second ) {
+            TokenAccess latest = first.accessed >= second.accessed ? first : second;
+            return new TokenAccess( latest.accessed, Math.max( first.inactive, second.inactive ), latest.ttl );
+        }
+    }
 }
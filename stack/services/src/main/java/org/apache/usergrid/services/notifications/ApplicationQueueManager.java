@@ -38,6 +38,18 @@ public interface ApplicationQueueManager {
 
     String DEFAULT_QUEUE_NAME = "push"; //keep this short as AWS limits queue name size to 80 chars
 
+    String QUEUE_BATCH_SIZE_PROPERTY = "usergrid.push.queue.batch_size";
+
+    int DEFAULT_QUEUE_BATCH_SIZE = 100;
+
+    String QUEUE_BATCH_LINGER_PROPERTY = "usergrid.push.queue.batch_linger";
+
+    long DEFAULT_QUEUE_BATCH_LINGER = 100; //ms to wait for a batch to fill before publishing it
+
+    String QUEUE_PUBLISHERS_PROPERTY = "usergrid.push.queue.publishers";
+
+    int DEFAULT_QUEUE_PUBLISHERS = 4;
+
     /**
      * send notification to queue
      *
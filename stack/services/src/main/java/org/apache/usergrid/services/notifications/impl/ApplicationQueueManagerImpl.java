@@ -16,6 +16,7 @@
  */
 package org.apache.usergrid.services.notifications.impl;
 
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import org.apache.usergrid.batch.JobExecution;
 import org.apache.usergrid.persistence.*;
@@ -24,7 +25,9 @@ import org.apache.usergrid.persistence.entities.*;
 import org.apache.usergrid.persistence.Query;
 import org.apache.usergrid.persistence.queue.QueueManager;
 import org.apache.usergrid.persistence.queue.QueueMessage;
+import org.apache.usergrid.persistence.queue.QueueSendException;
 import org.apache.usergrid.services.notifications.*;
+import org.apache.usergrid.utils.UUIDSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rx.Observable;
@@ -36,6 +39,7 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 public class ApplicationQueueManagerImpl implements ApplicationQueueManager {
@@ -51,6 +55,11 @@ public class ApplicationQueueManagerImpl implements ApplicationQueueManager {
     private final String queueName;
     private final Meter queueMeter;
     private final Meter sendMeter;
+    private final Meter queueFailureMeter;
+    private final Histogram dedupMemoryHistogram;
+    private final int queueBatchSize;
+    private final long queueBatchLinger;
+    private final int queuePublisherCount;
 
     HashMap<Object, ProviderAdapter> notifierHashMap; // only retrieve notifiers once
 
@@ -63,6 +72,11 @@ public class ApplicationQueueManagerImpl implements ApplicationQueueManager {
         this.queueName = getQueueNames(properties);
         queueMeter = metricsFactory.getMeter(ApplicationQueueManagerImpl.class, "notification.queue");
         sendMeter = metricsFactory.getMeter(NotificationsService.class, "queue.send");
+        queueFailureMeter = metricsFactory.getMeter(ApplicationQueueManagerImpl.class, "notification.queue.failure");
+        dedupMemoryHistogram = metricsFactory.getHistogram(ApplicationQueueManagerImpl.class, "notification.dedup.bytes");
+        queueBatchSize = Integer.parseInt(properties.getProperty(QUEUE_BATCH_SIZE_PROPERTY, "" + DEFAULT_QUEUE_BATCH_SIZE));
+        queueBatchLinger = Long.parseLong(properties.getProperty(QUEUE_BATCH_LINGER_PROPERTY, "" + DEFAULT_QUEUE_BATCH_LINGER));
+        queuePublisherCount = Integer.parseInt(properties.getProperty(QUEUE_PUBLISHERS_PROPERTY, "" + DEFAULT_QUEUE_PUBLISHERS));
 
     }
 
@@ -96,6 +110,7 @@ public class ApplicationQueueManagerImpl implements ApplicationQueueManager {
         final PathQuery<Device> pathQuery = notification.getPathQuery().buildPathQuery(); //devices query
         final AtomicInteger deviceCount = new AtomicInteger(); //count devices so you can make a judgement on batching
         final ConcurrentLinkedQueue<String> errorMessages = new ConcurrentLinkedQueue<>(); //build up list of issues
+        final AtomicLong queueFailures = new AtomicLong(); //count messages we were unable to put on the queue
 
 
         //get devices in querystring, and make sure you have access
@@ -118,6 +133,9 @@ public class ApplicationQueueManagerImpl implements ApplicationQueueManager {
             final UUID appId = em.getApplication().getUuid();
             final Map<String, Object> payloads = notification.getPayloads();
 
+            //devices already queued, flatMap emits serially so the set is never updated concurrently
+            final UUIDSet seenDevices = new UUIDSet();
+
             final Func1<EntityRef, Optional<ApplicationQueueMessage>> sendMessageFunction = deviceRef -> {
                 try {
 
@@ -181,32 +199,48 @@ public class ApplicationQueueManagerImpl implements ApplicationQueueManager {
                     return Observable.from(getDevices(entity));
 
                 }, 50)
-                .distinct(ref -> ref.getUuid())
+                .filter(ref -> seenDevices.add(ref.getUuid()))
                 .map(sendMessageFunction)
-                .doOnNext( message -> {
+                .filter(message -> message.isPresent())
+                .map(message -> message.get())
+                // publish messages in batches, flushing early if devices are slow to arrive
+                .buffer(queueBatchLinger, TimeUnit.MILLISECONDS, queueBatchSize)
+                .filter(batch -> !batch.isEmpty())
+                .flatMap(batch -> Observable.just(batch).doOnNext(messages -> {
                         try {
-                            if(message.isPresent()){
-                                qm.sendMessage( message.get() );
-                                queueMeter.mark();
-                            }
-
+                            qm.sendMessages(messages);
+                            queueMeter.mark(messages.size());
+                        } catch (QueueSendException e) {
+                            // the rest of the batch was queued, only count the devices that weren't
+                            final int failed = e.getFailedBodies().size();
+                            logger.error("Unable to queue {} of {} notifications for notification UUID {}",
+                                failed, messages.size(), notification.getUuid(), e);
+                            queueMeter.mark(messages.size() - failed);
+                            queueFailures.addAndGet(failed);
+                            queueFailureMeter.mark(failed);
+                            errorMessages.add("Failed to queue " + failed + " devices, error:" + e);
                         } catch (IOException e) {
-
-                            if(message.isPresent()){
-                                logger.error("Unable to queue notification for notification UUID {} and device UUID {} ",
-                                    message.get().getNotificationId(), message.get().getDeviceId());
-                            }
-                            else{
-                                logger.error("Unable to queue notification as it's not present when trying to send to queue");
-                            }
-
+                            logger.error("Unable to queue batch of {} notifications for notification UUID {}",
+                                messages.size(), notification.getUuid(), e);
+                            queueFailures.addAndGet(messages.size());
+                            queueFailureMeter.mark(messages.size());
+                            errorMessages.add("Failed to queue " + messages.size() + " devices, error:" + e);
                         }
-
-
-                })
+                    }).subscribeOn(Schedulers.io()), queuePublisherCount)
                 .doOnCompleted( () -> {
 
                     try {
+                        if (queueFailures.get() > 0) {
+                            notification.updateStatistics(0, queueFailures.get());
+                            if (notification.getErrorMessage() == null) {
+                                notification.setErrorMessage("There was a problem delivering all of your notifications. See deliveryErrors in properties");
+                            }
+                        }
+                        dedupMemoryHistogram.update(seenDevices.getMemoryBytes());
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("notification {} de-duplicated {} devices using {} bytes",
+                                notification.getUuid(), seenDevices.size(), seenDevices.getMemoryBytes());
+                        }
                         notification.setProcessingFinished(System.currentTimeMillis());
                         em.update(notification);
                     } catch (Exception e) {
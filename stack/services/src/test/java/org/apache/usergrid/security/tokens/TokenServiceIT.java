@@ -99,6 +99,7 @@ public class TokenServiceIT {
 
         tokenInfo = setup.getTokenSvc().getTokenInfo( tokenStr );
 
+        //the cached token carries the previous read's access time, before it's flushed to cassandra
         assertTrue( last_access < tokenInfo.getAccessed() );
     }
 
@@ -122,6 +123,7 @@ public class TokenServiceIT {
 
         tokenInfo = setup.getTokenSvc().getTokenInfo( tokenStr );
 
+        //the cached token carries the previous read's access time, before it's flushed to cassandra
         assertTrue( last_access < tokenInfo.getAccessed() );
     }
 
@@ -0,0 +1,339 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.usergrid.security.tokens.cassandra;
+
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.Deletion;
+import org.apache.cassandra.thrift.Mutation;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationContext;
+
+import org.apache.usergrid.corepersistence.CpEntityManagerFactory;
+import org.apache.usergrid.persistence.EntityManager;
+import org.apache.usergrid.persistence.cassandra.CassandraService;
+import org.apache.usergrid.persistence.entities.Application;
+import org.apache.usergrid.security.AuthPrincipalInfo;
+import org.apache.usergrid.security.AuthPrincipalType;
+import org.apache.usergrid.security.tokens.TokenCategory;
+import org.apache.usergrid.security.tokens.TokenInfo;
+import org.apache.usergrid.security.tokens.exceptions.InvalidTokenException;
+import org.apache.usergrid.utils.UUIDUtils;
+
+import me.prettyprint.cassandra.model.ExecutingKeyspace;
+import me.prettyprint.cassandra.model.ExecutionResult;
+import me.prettyprint.cassandra.model.QuorumAllConsistencyLevelPolicy;
+import me.prettyprint.cassandra.service.Operation;
+import me.prettyprint.hector.api.Keyspace;
+import me.prettyprint.hector.api.Serializer;
+import me.prettyprint.hector.api.beans.HColumn;
+import me.prettyprint.hector.api.exceptions.HectorException;
+
+import com.google.inject.Injector;
+
+import static me.prettyprint.hector.api.factory.HFactory.createColumn;
+import static org.apache.usergrid.persistence.cassandra.CassandraService.PRINCIPAL_TOKEN_CF;
+import static org.apache.usergrid.persistence.cassandra.CassandraService.TOKENS_CF;
+import static org.apache.usergrid.persistence.cassandra.Serializers.be;
+import static org.apache.usergrid.persistence.cassandra.Serializers.se;
+import static org.apache.usergrid.utils.ConversionUtils.bytebuffer;
+import static org.apache.usergrid.utils.ConversionUtils.getLong;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Tests the token cache and the write-behind of access times against a mocked keyspace, which keeps the columns it's
+ * written in memory
+ */
+public class TokenServiceImplTest {
+
+    private static final String TOKEN_ACCESSED = "accessed";
+
+    /**
+     * Column family -> row key -> column name -> value, as written through the mocked keyspace
+     */
+    private final Map<String, Map<ByteBuffer, Map<ByteBuffer, ByteBuffer>>> columnFamilies = new HashMap<>();
+
+    private CassandraService cassandra;
+
+    private TokenServiceImpl tokenService;
+
+    private int failedWrites;
+
+
+    @Before
+    public void setup() throws Exception {
+        ExecutingKeyspace keyspace = mock( ExecutingKeyspace.class );
+        when( keyspace.doExecuteOperation( any( Operation.class ) ) ).thenAnswer( invocation -> {
+            if ( failedWrites > 0 ) {
+                failedWrites--;
+                throw new HectorException( "Unable to write" );
+            }
+
+            Cassandra.Client client = mock( Cassandra.Client.class );
+            doAnswer( mutate -> {
+                apply( ( Map<ByteBuffer, Map<String, List<Mutation>>> ) mutate.getArguments()[0] );
+                return null;
+            } ).when( client ).batch_mutate( any( Map.class ), any( ConsistencyLevel.class ) );
+
+            Operation<?> operation = ( Operation<?> ) invocation.getArguments()[0];
+            operation.consistencyLevelPolicy = new QuorumAllConsistencyLevelPolicy();
+            operation.execute( client );
+
+            return new ExecutionResult<>( null, 0, null );
+        } );
+
+        cassandra = mock( CassandraService.class );
+        when( cassandra.getUsergridApplicationKeyspace() ).thenReturn( keyspace );
+
+        when( cassandra.getColumns( any( Keyspace.class ), eq( TOKENS_CF ), any( UUID.class ), anySetOf( String.class ),
+                any( Serializer.class ), any( Serializer.class ) ) ).thenAnswer( invocation -> {
+            List<HColumn<String, ByteBuffer>> columns = new ArrayList<>();
+            for ( Map.Entry<ByteBuffer, ByteBuffer> column : row( TOKENS_CF,
+                    bytebuffer( ( UUID ) invocation.getArguments()[2] ) ).entrySet() ) {
+                columns.add( createColumn( se.fromByteBuffer( column.getKey().duplicate() ),
+                        column.getValue().duplicate(), se, be ) );
+            }
+            return columns;
+        } );
+
+        when( cassandra.getColumns( any( Keyspace.class ), eq( PRINCIPAL_TOKEN_CF ), any( ByteBuffer.class ), any(),
+                any(), anyInt(), anyBoolean() ) ).thenAnswer( invocation -> {
+            List<HColumn<ByteBuffer, ByteBuffer>> columns = new ArrayList<>();
+            for ( Map.Entry<ByteBuffer, ByteBuffer> column : row( PRINCIPAL_TOKEN_CF,
+                    ( ByteBuffer ) invocation.getArguments()[2] ).entrySet() ) {
+                columns.add( createColumn( column.getKey().duplicate(), column.getValue().duplicate(), be, be ) );
+            }
+            return columns;
+        } );
+
+        ApplicationContext applicationContext = mock( ApplicationContext.class );
+        when( applicationContext.getBean( Injector.class ) ).thenReturn( mock( Injector.class ) );
+
+        EntityManager em = mock( EntityManager.class );
+        CpEntityManagerFactory emf = mock( CpEntityManagerFactory.class );
+        when( emf.getApplicationContext() ).thenReturn( applicationContext );
+        when( emf.getEntityManager( any( UUID.class ) ) ).thenReturn( em );
+        when( em.get( any( UUID.class ), eq( Application.class ) ) ).thenReturn( null );
+
+        tokenService = new TokenServiceImpl();
+        tokenService.setProperties( new Properties() );
+        tokenService.setCassandraService( cassandra );
+        tokenService.setEntityManagerFactory( emf );
+    }
+
+
+    @Test
+    public void cacheHitSkipsRead() throws Exception {
+        String token = tokenService.createToken( TokenCategory.ACCESS, null, null, null, 0 );
+
+        TokenInfo first = tokenService.getTokenInfo( token );
+        TokenInfo second = tokenService.getTokenInfo( token );
+
+        assertEquals( first.getUuid(), second.getUuid() );
+        assertTrue( first.getAccessed() <= second.getAccessed() );
+
+        verifyReads( 1 );
+    }
+
+
+    @Test
+    public void flushWritesAccess() throws Exception {
+        String token = tokenService.createToken( TokenCategory.ACCESS, null, null, null, 0 );
+        UUID uuid = tokenService.getTokenInfo( token ).getUuid();
+
+        long created = accessed( uuid );
+
+        Thread.sleep( 10 );
+        tokenService.getTokenInfo( token );
+
+        //nothing is written until the flush
+        assertEquals( created, accessed( uuid ) );
+
+        tokenService.flushAccesses();
+
+        assertTrue( accessed( uuid ) > created );
+    }
+
+
+    @Test
+    public void failedFlushRetried() throws Exception {
+        String token = tokenService.createToken( TokenCategory.ACCESS, null, null, null, 0 );
+        UUID uuid = tokenService.getTokenInfo( token ).getUuid();
+
+        long created = accessed( uuid );
+
+        Thread.sleep( 10 );
+        tokenService.getTokenInfo( token );
+
+        failedWrites = 1;
+        tokenService.flushAccesses();
+
+        assertEquals( created, accessed( uuid ) );
+
+        tokenService.flushAccesses();
+
+        assertTrue( accessed( uuid ) > created );
+    }
+
+
+    @Test
+    public void revokeEvicts() throws Exception {
+        String token = tokenService.createToken( TokenCategory.ACCESS, null, null, null, 0 );
+        UUID uuid = tokenService.getTokenInfo( token ).getUuid();
+
+        tokenService.revokeToken( token );
+
+        assertInvalid( token );
+
+        //the access from before the revoke isn't written back to the deleted row
+        tokenService.flushAccesses();
+
+        assertTrue( row( TOKENS_CF, bytebuffer( uuid ) ).isEmpty() );
+    }
+
+
+    @Test
+    public void removeTokensEvicts() throws Exception {
+        AuthPrincipalInfo principal =
+                new AuthPrincipalInfo( AuthPrincipalType.ADMIN_USER, UUIDUtils.newTimeUUID(), UUIDUtils.newTimeUUID() );
+
+        String first = tokenService.createToken( TokenCategory.ACCESS, null, principal, null, 0 );
+        String second = tokenService.createToken( TokenCategory.ACCESS, null, principal, null, 0 );
+
+        UUID firstId = tokenService.getTokenInfo( first ).getUuid();
+        UUID secondId = tokenService.getTokenInfo( second ).getUuid();
+
+        tokenService.removeTokens( principal );
+
+        assertInvalid( first );
+        assertInvalid( second );
+
+        tokenService.flushAccesses();
+
+        assertTrue( row( TOKENS_CF, bytebuffer( firstId ) ).isEmpty() );
+        assertTrue( row( TOKENS_CF, bytebuffer( secondId ) ).isEmpty() );
+    }
+
+
+    @Test
+    public void cachedTokenBoundedByDuration() throws Exception {
+        long duration = 3000;
+
+        //email tokens don't carry their expiration, so only the duration in the row limits them
+        String token = tokenService.createToken( TokenCategory.EMAIL, null, null, null, duration, null,
+                System.currentTimeMillis() - duration + 1000 );
+
+        tokenService.getTokenInfo( token, false );
+        tokenService.getTokenInfo( token, false );
+
+        verifyReads( 1 );
+
+        Thread.sleep( 1100 );
+
+        //the row's columns would have expired, so the token is read again rather than served from the cache
+        tokenService.getTokenInfo( token, false );
+
+        verifyReads( 2 );
+    }
+
+
+    private void assertInvalid( String token ) throws Exception {
+        try {
+            tokenService.getTokenInfo( token );
+            fail( "Token should have been removed" );
+        }
+        catch ( InvalidTokenException e ) {
+            //expected
+        }
+    }
+
+
+    private void verifyReads( int count ) throws Exception {
+        verify( cassandra, times( count ) )
+                .getColumns( any( Keyspace.class ), eq( TOKENS_CF ), any( UUID.class ), anySetOf( String.class ),
+                        any( Serializer.class ), any( Serializer.class ) );
+    }
+
+
+    private long accessed( UUID uuid ) {
+        ByteBuffer value = row( TOKENS_CF, bytebuffer( uuid ) ).get( se.toByteBuffer( TOKEN_ACCESSED ) );
+        assertFalse( value == null );
+        return getLong( value.duplicate() );
+    }
+
+
+    private Map<ByteBuffer, ByteBuffer> row( String columnFamily, ByteBuffer key ) {
+        return columnFamilies.computeIfAbsent( columnFamily, cf -> new HashMap<>() )
+                             .computeIfAbsent( key, k -> new HashMap<>() );
+    }
+
+
+    private void apply( Map<ByteBuffer, Map<String, List<Mutation>>> mutations ) {
+        for ( Map.Entry<ByteBuffer, Map<String, List<Mutation>>> rowMutations : mutations.entrySet() ) {
+            for ( Map.Entry<String, List<Mutation>> cfMutations : rowMutations.getValue().entrySet() ) {
+                Map<ByteBuffer, ByteBuffer> row = row( cfMutations.getKey(), rowMutations.getKey() );
+
+                for ( Mutation mutation : cfMutations.getValue() ) {
+                    if ( mutation.isSetColumn_or_supercolumn() ) {
+                        Column column = mutation.getColumn_or_supercolumn().getColumn();
+                        row.put( column.bufferForName(), column.bufferForValue() );
+                        continue;
+                    }
+
+                    Deletion deletion = mutation.getDeletion();
+                    if ( deletion.getPredicate() == null ) {
+                        row.clear();
+                    }
+                    else {
+                        for ( ByteBuffer name : deletion.getPredicate().getColumn_names() ) {
+                            row.remove( name );
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+}
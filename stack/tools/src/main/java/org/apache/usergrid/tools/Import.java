@@ -18,6 +18,7 @@ package org.apache.usergrid.tools;
 
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -35,7 +36,9 @@ import org.slf4j.LoggerFactory;
 import org.apache.usergrid.management.ApplicationInfo;
 import org.apache.usergrid.management.OrganizationInfo;
 import org.apache.usergrid.management.UserInfo;
+import org.apache.usergrid.persistence.DynamicEntity;
 import org.apache.usergrid.persistence.Entity;
+import org.apache.usergrid.persistence.EntityCreateResult;
 import org.apache.usergrid.persistence.EntityManager;
 import org.apache.usergrid.persistence.EntityRef;
 import org.apache.usergrid.persistence.entities.Application;
@@ -66,6 +69,9 @@ public class Import extends ToolBase {
 
     static final String DEFAULT_INPUT_DIR = "export";
 
+    /** Number of entities created with each bulk write */
+    static final int ENTITY_BATCH_SIZE = 100;
+
     JsonFactory jsonFactory = new JsonFactory();
 
 
@@ -229,33 +235,61 @@ public class Import extends ToolBase {
         }
 
 
+        // Import/create the entities in batches
+        List<Entity> entities = new ArrayList<Entity>( ENTITY_BATCH_SIZE );
+
         while ( jp.nextValue() != JsonToken.END_ARRAY ) {
             @SuppressWarnings("unchecked") Map<String, Object> entityProps = jp.readValueAs( HashMap.class );
-            // Import/create the entity
-            UUID uuid = getId( entityProps );
-            String type = getType( entityProps );
 
-            try {
-                em.create( uuid, type, entityProps );
+            entities.add( new DynamicEntity( getType( entityProps ), getId( entityProps ), entityProps ) );
+
+            if ( entities.size() == ENTITY_BATCH_SIZE ) {
+                createEntities( em, entities );
+                entities.clear();
             }
-            catch ( DuplicateUniquePropertyExistsException de ) {
-                logger.error( "Unable to create entity.  It appears to be a duplicate", de );
-                continue;
+        }
+
+        createEntities( em, entities );
+
+        logger.info( "----- End of application:" + application.getName() );
+        jp.close();
+    }
+
+
+    /** Create the entities with one bulk write, and check the ones that were created can be read back */
+    private void createEntities( EntityManager em, List<Entity> entities ) throws Exception {
+
+        if ( entities.isEmpty() ) {
+            return;
+        }
+
+        List<EntityCreateResult> results = em.createAll( entities );
+
+        for ( int i = 0; i < results.size(); i++ ) {
+            EntityCreateResult result = results.get( i );
+            Entity entity = entities.get( i );
+
+            if ( !result.isSuccess() ) {
+                Exception e = result.getError().get();
+
+                if ( e instanceof DuplicateUniquePropertyExistsException ) {
+                    logger.error( "Unable to create entity.  It appears to be a duplicate", e );
+                    continue;
+                }
+
+                throw e;
             }
 
-            if ( em.get( new SimpleEntityRef( type, uuid )) == null ) {
+            if ( em.get( new SimpleEntityRef( entity.getType(), entity.getUuid() ) ) == null ) {
                 logger.error( "Holy hell, we wrote an entity and it's missing.  "
-                        + "Entity Id was {} and type is {}", uuid, type );
+                        + "Entity Id was {} and type is {}", entity.getUuid(), entity.getType() );
                 System.exit( 1 );
             }
 
-            logger.info( "Counts {}", JsonUtils.mapToFormattedJsonString( em.getApplicationCounters() ) );
-
-            echo( entityProps );
+            echo( entity.getProperties() );
         }
 
-        logger.info( "----- End of application:" + application.getName() );
-        jp.close();
+        logger.info( "Counts {}", JsonUtils.mapToFormattedJsonString( em.getApplicationCounters() ) );
     }
 
 